@@ -0,0 +1,196 @@
+/**
+ *
+ */
+package jayhorn;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import jayhorn.checker.Checker;
+import jayhorn.old_inconsistency_check.InconsistencyChecker;
+import jayhorn.solver.ProverFactory;
+import soottocfg.cfg.Program;
+import soottocfg.cfg.SourceLocation;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.soot.SootToCfg;
+
+/**
+ * Analyzes many jars in one JVM, so that the JVM and the provers are only
+ * started once. Each jar is translated and then checked before the next
+ * jar is translated.
+ *
+ * Translation and checking must not overlap: each jar gets a fresh
+ * SootToCfg, which resets the global SootTranslationHelpers, and the
+ * checker still reads the memory model and program from there (e.g., when
+ * it creates statements and expressions during SSA and loop removal).
+ *
+ * The result of each jar is written to its own file in the output folder.
+ *
+ * @author schaef
+ *
+ */
+public class BatchDriver {
+
+	private static class Job {
+		final File jar;
+		final Program program;
+		final Set<SourceLocation> duplicatedLocations;
+		final long translationMillis;
+		final Throwable error;
+
+		Job(File jar, Program program, Set<SourceLocation> duplicatedLocations, long translationMillis,
+				Throwable error) {
+			this.jar = jar;
+			this.program = program;
+			this.duplicatedLocations = duplicatedLocations;
+			this.translationMillis = translationMillis;
+			this.error = error;
+		}
+	}
+
+	private final File outputDir;
+	private final ProverFactory factory;
+	private final Set<String> outputNames = new HashSet<String>();
+
+	private long translationMillis = 0, checkingMillis = 0;
+
+	/**
+	 * @param outputDir
+	 *            Folder for the result files.
+	 * @param factory
+	 *            Factory for the provers of the checker.
+	 */
+	public BatchDriver(File outputDir, ProverFactory factory) {
+		this.outputDir = outputDir;
+		this.factory = factory;
+	}
+
+	/**
+	 * Reads a manifest with one jar per line. Empty lines and lines starting
+	 * with '#' are ignored, and relative paths are resolved against the
+	 * folder of the manifest.
+	 *
+	 * @param manifest
+	 * @return
+	 */
+	public static List<File> readManifest(File manifest) {
+		List<File> jars = new LinkedList<File>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				File jar = new File(line);
+				if (!jar.isAbsolute()) {
+					jar = new File(manifest.getAbsoluteFile().getParentFile(), line);
+				}
+				jars.add(jar);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+		return jars;
+	}
+
+	/**
+	 * Translates and checks all 'jars'.
+	 *
+	 * @param jars
+	 */
+	public void run(List<File> jars) {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new RuntimeException("Cannot create " + outputDir);
+		}
+		long start = System.currentTimeMillis();
+		try {
+			for (File jar : jars) {
+				check(translate(jar));
+			}
+		} finally {
+			// release the last scene.
+			soot.G.reset();
+		}
+		Log.info(String.format("Analyzed %d jars in %d ms (translation %d ms, checking %d ms).", jars.size(),
+				System.currentTimeMillis() - start, translationMillis, checkingMillis));
+	}
+
+	private Job translate(File jar) {
+		long start = System.currentTimeMillis();
+		try {
+			SootToCfg soot2cfg = Main.createTranslator();
+			soot2cfg.run(jar.getPath(), Options.v().getClasspath());
+			return new Job(jar, soot2cfg.getProgram(), soot2cfg.getDuplicatedSourceLocations(),
+					System.currentTimeMillis() - start, null);
+		} catch (Throwable t) {
+			return new Job(jar, null, null, System.currentTimeMillis() - start, t);
+		}
+	}
+
+	private void check(Job job) {
+		translationMillis += job.translationMillis;
+		File output = outputFile(job.jar);
+		long start = System.currentTimeMillis();
+		try (PrintWriter out = new PrintWriter(
+				new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+			out.println("jar: " + job.jar.getPath());
+			out.println("translation: " + job.translationMillis + " ms");
+			if (job.error != null) {
+				out.println("error: " + job.error.toString());
+				return;
+			}
+			try {
+				if ("safety".equals(Options.v().getChecker())) {
+					Checker checker = new Checker(factory);
+					out.println("checker says " + checker.checkProgram(job.program));
+				} else if ("inconsistency".equals(Options.v().getChecker())) {
+					InconsistencyChecker checker = new InconsistencyChecker(factory);
+					checker.setDuplicatedSourceLocations(job.duplicatedLocations);
+					checker.checkProgram(job.program);
+					for (Entry<String, Set<CfgBlock>> entry : checker.getInconsistentBlocksPerMethod().entrySet()) {
+						if (!entry.getValue().isEmpty()) {
+							out.println("inconsistent: " + entry.getKey() + " (" + entry.getValue().size()
+									+ " blocks)");
+						}
+					}
+				} else {
+					out.println("error: checker " + Options.v().getChecker() + " is unknown");
+				}
+			} catch (Throwable t) {
+				t.printStackTrace();
+				out.println("error: " + t.toString());
+			}
+			out.println("checking: " + (System.currentTimeMillis() - start) + " ms");
+		} catch (IOException e) {
+			Log.error("Cannot write " + output + ": " + e.toString());
+		} finally {
+			checkingMillis += System.currentTimeMillis() - start;
+		}
+	}
+
+	private File outputFile(File jar) {
+		String name = jar.getName();
+		if (name.endsWith(".jar")) {
+			name = name.substring(0, name.length() - ".jar".length());
+		}
+		String unique = name;
+		for (int i = 1; !outputNames.add(unique); i++) {
+			unique = name + "_" + i;
+		}
+		return new File(outputDir, unique + ".txt");
+	}
+}
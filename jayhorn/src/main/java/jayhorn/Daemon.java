@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package jayhorn;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import jayhorn.solver.ProverPool;
+import jayhorn.solver.princess.PrincessProverFactory;
+
+/**
+ * Serves analysis requests in one JVM, so that each request does not pay for
+ * the JVM startup, the initialization of the Scala runtime and of Princess,
+ * and the scanning of unchanged jars again. Each line of the input is one
+ * request with the same options as the command line, separated by
+ * whitespace, e.g., -j "my project/foo.jar" -checker safety. Arguments that
+ * contain whitespace are put in double quotes; inside quotes, \" and \\
+ * stand for " and \. Every request is answered with a line "DONE <ms>" or
+ * "ERROR <message>", also if the request cannot be parsed. The line "quit"
+ * ends the daemon.
+ *
+ * Every request gets fresh Options and a fresh Soot scene (soot.G is reset
+ * before and after each request). The provers come from a ProverPool that
+ * initializes them in advance.
+ *
+ * @author schaef
+ *
+ */
+public class Daemon {
+
+	private final ProverPool pool;
+
+	/**
+	 * @param poolSize
+	 *            Number of provers that are kept initialized.
+	 */
+	public Daemon(int poolSize) {
+		pool = new ProverPool(new PrincessProverFactory(), poolSize);
+	}
+
+	/**
+	 * Serves the requests from 'in' until 'in' ends or the request 'quit' is
+	 * read.
+	 *
+	 * @param in
+	 * @param out
+	 */
+	public void serve(InputStream in, PrintStream out) {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				if ("quit".equals(line)) {
+					break;
+				}
+				handle(line, out);
+			}
+		} catch (IOException e) {
+			Log.error(e.toString());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Splits a request into its arguments as described in the class comment.
+	 *
+	 * @param request
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a quote is not closed.
+	 */
+	private static List<String> splitRequest(String request) {
+		List<String> args = new LinkedList<String>();
+		StringBuilder current = null;
+		boolean quoted = false;
+		for (int i = 0; i < request.length(); i++) {
+			char c = request.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					quoted = false;
+				} else if (c == '\\' && i + 1 < request.length()
+						&& (request.charAt(i + 1) == '"' || request.charAt(i + 1) == '\\')) {
+					current.append(request.charAt(++i));
+				} else {
+					current.append(c);
+				}
+			} else if (Character.isWhitespace(c)) {
+				if (current != null) {
+					args.add(current.toString());
+					current = null;
+				}
+			} else {
+				if (current == null) {
+					current = new StringBuilder();
+				}
+				if (c == '"') {
+					quoted = true;
+				} else {
+					current.append(c);
+				}
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("Missing closing quote in request: " + request);
+		}
+		if (current != null) {
+			args.add(current.toString());
+		}
+		return args;
+	}
+
+	private void handle(String request, PrintStream out) {
+		long start = System.currentTimeMillis();
+		Options.resetInstance();
+		soot.G.reset();
+		CmdLineParser parser = new CmdLineParser(Options.v());
+		try {
+			parser.parseArgument(splitRequest(request));
+			Main.checkDisabledStages(parser);
+			if (Options.v().isDaemon()) {
+				out.println("ERROR Option -daemon is not allowed in a request.");
+				return;
+			}
+			Main.analyze(pool);
+			out.println("DONE " + (System.currentTimeMillis() - start));
+		} catch (CmdLineException | IllegalArgumentException e) {
+			out.println("ERROR " + e.getMessage());
+		} catch (Throwable t) {
+			// keep serving other requests.
+			t.printStackTrace();
+			out.println("ERROR " + t.toString());
+		} finally {
+			out.flush();
+			Options.resetInstance();
+			soot.G.reset();
+		}
+	}
+}
@@ -3,14 +3,22 @@
  */
 package jayhorn;
 
+import java.io.File;
+import java.util.LinkedList;
+import java.util.List;
+
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 
 import jayhorn.checker.Checker;
 import jayhorn.old_inconsistency_check.InconsistencyChecker;
+import jayhorn.solver.ProverFactory;
 import jayhorn.solver.princess.PrincessProverFactory;
 import soottocfg.soot.SootToCfg;
 import soottocfg.soot.SootToCfg.MemModel;
+import soottocfg.soot.util.LibrarySummaries;
+import soottocfg.soot.util.PhaseTimer.Phase;
+import soottocfg.soot.util.ScopeFilter;
 
 public class Main {
 
@@ -20,22 +28,18 @@ public class Main {
 		try {
 			// parse command-line arguments
 			parser.parseArgument(args);
-			
-			if ("safety".equals(Options.v().getChecker())) {
-				SootToCfg soot2cfg = new SootToCfg();
-				soot2cfg.run(Options.v().getJavaInput(), Options.v().getClasspath());			
-				Checker checker = new Checker();
-				boolean result = checker.checkProgram(soot2cfg.getProgram());
-				System.out.println("checker says "+ result);		
-			} else if ("inconsistency".equals(Options.v().getChecker())) {
-				SootToCfg soot2cfg = new SootToCfg(false, true, MemModel.BurstallBornat);
-				soot2cfg.run(Options.v().getJavaInput(), Options.v().getClasspath());			
-				InconsistencyChecker checker = new InconsistencyChecker(new PrincessProverFactory());
-				checker.checkProgram(soot2cfg.getProgram());				
+			checkDisabledStages(parser);
+
+			if (Options.v().isDaemon()) {
+				Daemon daemon = new Daemon(Options.v().getProverPoolSize());
+				daemon.serve(System.in, System.out);
+			} else if (Options.v().getBatchManifest() != null) {
+				BatchDriver driver = new BatchDriver(new File(Options.v().getBatchOutput()),
+						new PrincessProverFactory());
+				driver.run(BatchDriver.readManifest(new File(Options.v().getBatchManifest())));
 			} else {
-				Log.error(String.format("Checker %s is unknown", Options.v().getChecker()) );
+				analyze(new PrincessProverFactory());
 			}
-			
 		} catch (CmdLineException e) {
 			Log.error(e.toString());
 			Log.error("java -jar joogie.jar [options...] arguments...");
@@ -49,4 +53,105 @@ public class Main {
 		}
 	}
 
+	/**
+	 * Translates the input set in Options and runs the checker set in
+	 * Options on it.
+	 * 
+	 * @param factory
+	 *            Factory for the provers used by the checker.
+	 */
+	static void analyze(ProverFactory factory) {
+		if ("safety".equals(Options.v().getChecker())) {
+			SootToCfg soot2cfg = createTranslator();
+			soot2cfg.run(Options.v().getJavaInput(), Options.v().getClasspath());			
+			Checker checker = new Checker(factory);
+			boolean result = checker.checkProgram(soot2cfg.getProgram());
+			System.out.println("checker says "+ result);		
+		} else if ("inconsistency".equals(Options.v().getChecker())) {
+			SootToCfg soot2cfg = createTranslator();
+			soot2cfg.run(Options.v().getJavaInput(), Options.v().getClasspath());			
+			InconsistencyChecker checker = new InconsistencyChecker(factory);
+			checker.checkProgram(soot2cfg.getProgram());				
+		} else {
+			Log.error(String.format("Checker %s is unknown", Options.v().getChecker()) );
+		}
+	}
+
+	/**
+	 * Creates a SootToCfg with the memory model of the checker and the
+	 * translation options set in Options. Creating it resets soot.G.
+	 * 
+	 * @return
+	 */
+	static SootToCfg createTranslator() {
+		SootToCfg soot2cfg;
+		if ("inconsistency".equals(Options.v().getChecker())) {
+			soot2cfg = new SootToCfg(false, true, MemModel.BurstallBornat);
+		} else {
+			soot2cfg = new SootToCfg();
+		}
+		soot2cfg.setTranslationThreads(Options.v().getTranslationThreads());
+		soot2cfg.setLazyTranslation(Options.v().isLazyTranslation());
+		soot2cfg.setInterproceduralNullness(Options.v().isInterproceduralNullness());
+		soot2cfg.setPointsToAnalysis(Options.v().isPointsToAnalysis());
+		soot2cfg.setTypeSwitchDispatch(Options.v().isTypeSwitchDispatch());
+		soot2cfg.setEntryPoints(Options.v().getEntryPoints());
+		soot2cfg.setVerbosity(Options.v().getTranslationVerbosity());
+		soot2cfg.setScope(new ScopeFilter(Options.v().getScopePatterns()));
+		soot2cfg.setLibrarySummaries(loadLibrarySummaries());
+		soot2cfg.setStagedPreprocessing(Options.v().isStagedPreprocessing(), Options.v().getStageQueueSize());
+		List<Phase> disabledStages = new LinkedList<Phase>();
+		for (String stage : Options.v().getDisabledStages()) {
+			disabledStages.add(lookupStage(stage));
+		}
+		soot2cfg.setDisabledStages(disabledStages);
+		if (Options.v().getTranslationCache() != null) {
+			soot2cfg.setCacheDirectory(new File(Options.v().getTranslationCache()));
+		}
+		return soot2cfg;
+	}
+
+	/**
+	 * Checks that each stage in Options.getDisabledStages is a stage that
+	 * can be disabled.
+	 * 
+	 * @param parser
+	 *            The parser that has read the options.
+	 * @throws CmdLineException
+	 */
+	static void checkDisabledStages(CmdLineParser parser) throws CmdLineException {
+		for (String stage : Options.v().getDisabledStages()) {
+			if (lookupStage(stage) == null) {
+				throw new CmdLineException(parser, String.format(
+						"Unknown stage %s in -disable-stages. Stages that can be disabled: %s", stage,
+						SootToCfg.optionalStages));
+			}
+		}
+	}
+
+	private static Phase lookupStage(String name) {
+		for (Phase stage : SootToCfg.optionalStages) {
+			if (stage.name().equals(name)) {
+				return stage;
+			}
+		}
+		return null;
+	}
+
+	// the bundled summaries never change, so they are only parsed once per
+	// JVM (e.g., once per daemon).
+	private static LibrarySummaries bundledSummaries = null;
+
+	private static synchronized LibrarySummaries loadLibrarySummaries() {
+		String summaries = Options.v().getLibrarySummaries();
+		if (summaries == null) {
+			return null;
+		} else if ("bundled".equals(summaries)) {
+			if (bundledSummaries == null) {
+				bundledSummaries = LibrarySummaries.loadBundled();
+			}
+			return bundledSummaries;
+		}
+		return LibrarySummaries.load(new File(summaries));
+	}
 }
\ No newline at end of file
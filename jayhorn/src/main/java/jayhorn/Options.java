@@ -19,6 +19,9 @@
 
 package jayhorn;
 
+import java.util.LinkedList;
+import java.util.List;
+
 import org.kohsuke.args4j.Option;
 
 /**
@@ -48,6 +51,10 @@ public class Options {
 	public String getChecker() {
 		return checker;
 	}
+
+	public void setChecker(String checker) {
+		this.checker = checker;
+	}
 	
 	
 	/**
@@ -63,13 +70,24 @@ public class Options {
 	/**
 	 * Scope
 	 */
-	@Option(name = "--scope", usage = "Only analyze classes/methods that contain the scope string")
+	@Option(name = "--scope", usage = "Semicolon-separated list of package prefixes (foo.bar), class globs (foo.*Test), or method signatures (<Foo: void bar(int)>). Only these classes/methods are analyzed.")
 	private String scope = null;
 	public String getScope() {
 		return scope;
 	}
 	public boolean hasScope() {
-		return scope == null || scope.isEmpty();
+		return !getScopePatterns().isEmpty();
+	}
+	public List<String> getScopePatterns() {
+		List<String> patterns = new LinkedList<String>();
+		if (scope != null) {
+			for (String s : scope.split(";")) {
+				if (!s.trim().isEmpty()) {
+					patterns.add(s.trim());
+				}
+			}
+		}
+		return patterns;
 	}
 
 	/**
@@ -85,6 +103,283 @@ public class Options {
 		return this.timeout;
 	}
 
+	@Option(name = "-checkpoint", usage = "File used to record the results of the inconsistency checker. Methods recorded in this file are skipped unless their body changed.")
+	private String checkpointFile = null;
+
+	public String getCheckpointFile() {
+		return this.checkpointFile;
+	}
+
+	public void setCheckpointFile(String file) {
+		this.checkpointFile = file;
+	}
+
+	@Option(name = "-adaptive", usage = "Retry methods that time out or run out of memory in a cheaper mode, using the time saved on methods that finish early.")
+	private boolean adaptive = false;
+
+	public boolean isAdaptive() {
+		return this.adaptive;
+	}
+
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	@Option(name = "-adaptive-size", usage = "In adaptive mode, methods with more blocks and statements than this are checked in the cheaper mode right away. (Default is 5000)")
+	private int adaptiveSizeLimit = 5000;
+
+	public int getAdaptiveSizeLimit() {
+		return this.adaptiveSizeLimit;
+	}
+
+	public void setAdaptiveSizeLimit(int limit) {
+		this.adaptiveSizeLimit = limit;
+	}
+
+	@Option(name = "-translation-threads", usage = "Number of methods that are translated in parallel. (Default is 1)")
+	private int translationThreads = 1;
+
+	public int getTranslationThreads() {
+		return this.translationThreads;
+	}
+
+	public void setTranslationThreads(int threads) {
+		this.translationThreads = threads;
+	}
+
+	@Option(name = "-lazy-translation", usage = "Only translate methods that are reachable from the entry points.")
+	private boolean lazyTranslation = false;
+
+	public boolean isLazyTranslation() {
+		return this.lazyTranslation;
+	}
+
+	public void setLazyTranslation(boolean lazy) {
+		this.lazyTranslation = lazy;
+	}
+
+	@Option(name = "-interprocedural-nullness", usage = "Use non-null parameters, return values, and final fields to avoid null checks.")
+	private boolean interproceduralNullness = false;
+
+	public boolean isInterproceduralNullness() {
+		return this.interproceduralNullness;
+	}
+
+	public void setInterproceduralNullness(boolean enabled) {
+		this.interproceduralNullness = enabled;
+	}
+
+	@Option(name = "-points-to", usage = "Use SPARK to restrict the callees of virtual calls. Assumes that the program allocates all objects it calls methods on.")
+	private boolean pointsToAnalysis = false;
+
+	public boolean isPointsToAnalysis() {
+		return this.pointsToAnalysis;
+	}
+
+	public void setPointsToAnalysis(boolean enabled) {
+		this.pointsToAnalysis = enabled;
+	}
+
+	@Option(name = "-type-switch-dispatch", usage = "Translate virtual calls with several callees as one branch over the dynamic type instead of a sequence of instanceof checks.")
+	private boolean typeSwitchDispatch = false;
+
+	public boolean isTypeSwitchDispatch() {
+		return this.typeSwitchDispatch;
+	}
+
+	public void setTypeSwitchDispatch(boolean enabled) {
+		this.typeSwitchDispatch = enabled;
+	}
+
+	@Option(name = "-entry-points", usage = "Semicolon-separated list of method signatures used as entry points, e.g., \"<Foo: void bar(int)>\". (Default are the entry points computed by Soot)")
+	private String entryPoints = null;
+
+	public List<String> getEntryPoints() {
+		List<String> signatures = new LinkedList<String>();
+		if (this.entryPoints != null) {
+			for (String s : this.entryPoints.split(";")) {
+				if (!s.trim().isEmpty()) {
+					signatures.add(s.trim());
+				}
+			}
+		}
+		return signatures;
+	}
+
+	public void setEntryPoints(String entryPoints) {
+		this.entryPoints = entryPoints;
+	}
+
+	@Option(name = "-translation-cache", usage = "Directory in which translated classes are cached between runs.")
+	private String translationCache = null;
+
+	public String getTranslationCache() {
+		return this.translationCache;
+	}
+
+	public void setTranslationCache(String dir) {
+		this.translationCache = dir;
+	}
+
+	@Option(name = "-daemon", usage = "Read one analysis request (the same options as on the command line) per line from stdin until 'quit'.")
+	private boolean daemon = false;
+
+	public boolean isDaemon() {
+		return this.daemon;
+	}
+
+	public void setDaemon(boolean daemon) {
+		this.daemon = daemon;
+	}
+
+	@Option(name = "-prover-pool", usage = "Number of provers that the daemon keeps initialized.")
+	private int proverPoolSize = 2;
+
+	public int getProverPoolSize() {
+		return this.proverPoolSize;
+	}
+
+	public void setProverPoolSize(int size) {
+		this.proverPoolSize = size;
+	}
+
+	@Option(name = "-staged-preprocessing", usage = "Run each pre-processing stage of the translation on its own thread.")
+	private boolean stagedPreprocessing = false;
+
+	public boolean isStagedPreprocessing() {
+		return this.stagedPreprocessing;
+	}
+
+	public void setStagedPreprocessing(boolean staged) {
+		this.stagedPreprocessing = staged;
+	}
+
+	@Option(name = "-stage-queue", usage = "Number of bodies that may wait in front of each pre-processing stage.")
+	private int stageQueueSize = 16;
+
+	public int getStageQueueSize() {
+		return this.stageQueueSize;
+	}
+
+	public void setStageQueueSize(int size) {
+		this.stageQueueSize = size;
+	}
+
+	@Option(name = "-disable-stages", usage = "Comma-separated pre-processing stages to skip, e.g., VirtualCallResolver,DuplicatedCatchDetection. Skipping MayThrowAnalysis keeps the exceptional edges of calls that cannot throw.")
+	private String disabledStages = null;
+
+	public List<String> getDisabledStages() {
+		List<String> stages = new LinkedList<String>();
+		if (this.disabledStages != null) {
+			for (String s : this.disabledStages.split(",")) {
+				if (!s.trim().isEmpty()) {
+					stages.add(s.trim());
+				}
+			}
+		}
+		return stages;
+	}
+
+	public void setDisabledStages(String stages) {
+		this.disabledStages = stages;
+	}
+
+	@Option(name = "-batch", usage = "File with one jar per line. Translates and checks all jars, one after the other, in one JVM.")
+	private String batchManifest = null;
+
+	public String getBatchManifest() {
+		return this.batchManifest;
+	}
+
+	public void setBatchManifest(String manifest) {
+		this.batchManifest = manifest;
+	}
+
+	@Option(name = "-batch-output", usage = "Folder for the result file of each jar in batch mode.")
+	private String batchOutput = ".";
+
+	public String getBatchOutput() {
+		return this.batchOutput;
+	}
+
+	public void setBatchOutput(String dir) {
+		this.batchOutput = dir;
+	}
+
+	@Option(name = "-library-summaries", usage = "Use summaries of JDK methods instead of empty contracts: 'bundled' for the summaries shipped with JayHorn, or a summary file.")
+	private String librarySummaries = null;
+
+	public String getLibrarySummaries() {
+		return this.librarySummaries;
+	}
+
+	public void setLibrarySummaries(String summaries) {
+		this.librarySummaries = summaries;
+	}
+
+	@Option(name = "-translation-verbosity", usage = "0: quiet, 1: time per translation phase, 2: also the slowest methods, 3: also print all bodies.")
+	private int translationVerbosity = 0;
+
+	public int getTranslationVerbosity() {
+		return this.translationVerbosity;
+	}
+
+	public void setTranslationVerbosity(int level) {
+		this.translationVerbosity = level;
+	}
+
+	@Option(name = "-localization-threads", usage = "Number of inconsistencies that are localized in parallel. (Default is 1)")
+	private int localizationThreads = 1;
+
+	public int getLocalizationThreads() {
+		return this.localizationThreads;
+	}
+
+	public void setLocalizationThreads(int threads) {
+		this.localizationThreads = threads;
+	}
+
+	@Option(name = "-localization-timeout", usage = "Timeout for the localization of one inconsistency in seconds. Use 0 for no timeout. (Default is the value of -t)")
+	private int localizationTimeout = -1;
+
+	public int getLocalizationTimeout() {
+		if (this.localizationTimeout < 0) {
+			return this.timeout;
+		}
+		return this.localizationTimeout;
+	}
+
+	@Option(name = "-localization-mode", usage = "Fault localization with [interpolation, or unsatcore]. (Default is interpolation)")
+	private String localizationMode = "interpolation";
+
+	public String getLocalizationMode() {
+		return this.localizationMode;
+	}
+
+	public void setLocalizationMode(String mode) {
+		this.localizationMode = mode;
+	}
+
+	public boolean useUnsatCoreLocalization() {
+		if ("unsatcore".equals(this.localizationMode)) {
+			return true;
+		} else if (!"interpolation".equals(this.localizationMode)) {
+			throw new RuntimeException("Unknown localization mode " + this.localizationMode);
+		}
+		return false;
+	}
+
+	@Option(name = "-localization-per-inconsistency", usage = "Localize each inconsistency with its own prover instead of sharing interpolation queries between the inconsistencies of a method.")
+	private boolean localizationPerInconsistency = false;
+
+	public boolean isLocalizationPerInconsistency() {
+		return this.localizationPerInconsistency;
+	}
+
+	public void setLocalizationPerInconsistency(boolean perInconsistency) {
+		this.localizationPerInconsistency = perInconsistency;
+	}
+
 
 	/**
 	 * Determines, whether Joogie has an additional classpath
@@ -90,7 +90,15 @@ public class Checker {
 		}
 	}
 
-	private final ProverFactory factory = new PrincessProverFactory();
+	private final ProverFactory factory;
+
+	public Checker() {
+		this(new PrincessProverFactory());
+	}
+
+	public Checker(ProverFactory factory) {
+		this.factory = factory;
+	}
 
 	private final Map<CfgBlock, HornPredicate> blockPredicates = new LinkedHashMap<CfgBlock, HornPredicate>();
 	private Map<String, MethodContract> methodContracts = new LinkedHashMap<String, MethodContract>();
@@ -3,6 +3,7 @@
  */
 package jayhorn.old_inconsistency_check;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -12,7 +13,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -24,7 +27,7 @@ import com.google.common.base.Preconditions;
 
 import jayhorn.Log;
 import jayhorn.Options;
-import jayhorn.old_inconsistency_check.faultlocalization.LocalizationThread;
+import jayhorn.old_inconsistency_check.InconsistencyCheckpoint.Outcome;
 import jayhorn.solver.Prover;
 import jayhorn.solver.ProverFactory;
 import soottocfg.cfg.Program;
@@ -33,6 +36,7 @@ import soottocfg.cfg.method.CfgBlock;
 import soottocfg.cfg.method.Method;
 import soottocfg.cfg.statement.Statement;
 import soottocfg.cfg.util.Dominators;
+import soottocfg.util.Pair;
 
 /**
  * @author schaef
@@ -52,7 +56,40 @@ public class InconsistencyChecker {
 	// statistics counters
 	int normal = 0, timeouts = 0, interrupt = 0, execException = 0, outOfMemory = 0, other = 0;
 	private final Map<String, Set<CfgBlock>> inconsistentBlocksPerMethod = new HashMap<String, Set<CfgBlock>>();
-	private final Map<Inconsistency, Set<Statement>> localizedInconsistencies = new HashMap<Inconsistency, Set<Statement>>();
+	// filled concurrently by the LocalizationPipeline.
+	private final Map<Inconsistency, Set<Statement>> localizedInconsistencies = new ConcurrentHashMap<Inconsistency, Set<Statement>>();
+	// results of methods that have been skipped because they are already
+	// recorded in the checkpoint file.
+	private final Map<String, InconsistencyCheckpoint.Entry> restoredResults = new HashMap<String, InconsistencyCheckpoint.Entry>();
+	int restored = 0;
+	// how the last analysis of a method terminated.
+	private Outcome lastOutcome = null;
+
+	/**
+	 * A method that timed out or ran out of memory and that will be
+	 * retried in cheap mode once all other methods are done.
+	 */
+	private static class PendingRetry {
+		final InconsistencyThread thread;
+		final String fingerprint;
+		final Outcome outcome;
+
+		PendingRetry(InconsistencyThread thread, String fingerprint, Outcome outcome) {
+			this.thread = thread;
+			this.fingerprint = fingerprint;
+			this.outcome = outcome;
+		}
+	}
+
+	// state of the adaptive mode (see Options.v().isAdaptive())
+	private static final long minRetryMillis = 1000;
+	// how long we wait for a thread to stop after its prover was stopped.
+	private static final long stopGraceMillis = 10000;
+	// false if the last thread did not stop after its timeout.
+	private boolean lastThreadStopped = true;
+	private final Queue<PendingRetry> pendingRetries = new LinkedList<PendingRetry>();
+	private long savedMillis = 0;
+	int cheapRightAway = 0, retried = 0, recovered = 0;
 
 	public Map<String, Set<CfgBlock>> getInconsistentBlocksPerMethod() {
 		return inconsistentBlocksPerMethod;
@@ -71,25 +108,50 @@ public class InconsistencyChecker {
 	 * stored in 'localizedInconsistencies' (which can be retrieved using
 	 * getLocalizedInconsistencies()).
 	 * 
+	 * The fault localization runs on a separate pool of threads (see
+	 * LocalizationPipeline) while the detection continues with the next
+	 * method.
+	 * 
+	 * If Options.v().getCheckpointFile() is set, the result of each method
+	 * whose detection terminated normally is appended to that file together
+	 * with the outcome of its localization. Methods whose body did not
+	 * change since they have been recorded with a normal outcome are not
+	 * analyzed again.
+	 * 
 	 * @param program
 	 */
 	public void checkProgram(Program program) {
+		InconsistencyCheckpoint checkpoint = null;
+		if (Options.v().getCheckpointFile() != null) {
+			checkpoint = new InconsistencyCheckpoint(new File(Options.v().getCheckpointFile()));
+		}
 		ExecutorService executor = null;
+		LocalizationPipeline localization = null;
 		try {
 			executor = Executors.newSingleThreadExecutor();
+			localization = new LocalizationPipeline(factory, Options.v().getLocalizationThreads(),
+					Options.v().getLocalizationTimeout(), !Options.v().isLocalizationPerInconsistency(),
+					Options.v().useUnsatCoreLocalization(), localizedInconsistencies);
 
 			for (Method method : program.getMethods()) {
-				Set<Inconsistency> inconsistencies = findInconsistenciesInMethod(executor, program, method);
-
-				// if we found inconsistencies, do the fault localization.
-				if (!inconsistencies.isEmpty()) {
-					System.out.println("Running fault localization.");
-					for (Inconsistency inconsistency : inconsistencies) {
-						localizedInconsistencies.put(inconsistency,
-								localizeInconsistency(executor, program, inconsistency));
+				String fingerprint = null;
+				if (checkpoint != null && !method.vertexSet().isEmpty()) {
+					// compute the fingerprint before the analysis modifies
+					// the method.
+					fingerprint = InconsistencyCheckpoint.fingerprint(method);
+					InconsistencyCheckpoint.Entry entry = checkpoint.lookup(method.getMethodName(), fingerprint);
+					if (entry != null) {
+						restoreFromCheckpoint(method.getMethodName(), entry);
+						continue;
 					}
 				}
+				Set<Inconsistency> inconsistencies = findInconsistenciesInMethod(executor, program, method,
+						fingerprint);
+				localizeAndRecord(localization, method, inconsistencies, checkpoint, fingerprint);
 			}
+			retryPendingMethods(executor, localization, checkpoint);
+			// wait for the remaining localizations.
+			localization.shutdown();
 
 		} catch (Throwable e) {
 			e.printStackTrace();
@@ -98,6 +160,9 @@ public class InconsistencyChecker {
 			if (executor != null) {
 				executor.shutdownNow();
 			}
+			if (localization != null) {
+				localization.shutdownNow();
+			}
 
 		}
 
@@ -105,13 +170,22 @@ public class InconsistencyChecker {
 		sb.append("Statistics:");
 		sb.append(String.format("%n  Analyzed procedure: %d", program.getMethods().length));
 		sb.append(String.format("%n  Analysis terminated normally for: %d", normal));
-		sb.append(String.format("%n\t With inconsistencies: %d", inconsistentBlocksPerMethod.size()));
+		sb.append(String.format("%n\t With inconsistencies: %d",
+				inconsistentBlocksPerMethod.size() + restoredResults.size()));
 		sb.append(String.format("%n  Analysis terminated with timeout after %d sec: %d", Options.v().getTimeout(),
 				timeouts));
 		sb.append(String.format("%n  Analysis terminated with intterupt exception: %d", interrupt));
 		sb.append(String.format("%n  Analysis terminated with execException exception: %d", execException));
 		sb.append(String.format("%n  Analysis terminated with outOfMemory exception: %d", outOfMemory));
 		sb.append(String.format("%n  Analysis terminated with other exception: %d", other));
+		if (checkpoint != null) {
+			sb.append(String.format("%n  Restored from checkpoint: %d", restored));
+		}
+		if (Options.v().isAdaptive()) {
+			sb.append(String.format("%n  Analyzed in cheap mode right away: %d", cheapRightAway));
+			sb.append(String.format("%n  Retried in cheap mode: %d", retried));
+			sb.append(String.format("%n\t Terminated normally after retry: %d", recovered));
+		}
 		Log.info(sb.toString());
 
 		printResults(inconsistentBlocksPerMethod);
@@ -119,6 +193,104 @@ public class InconsistencyChecker {
 		Log.info(printLocalizedInconsistencies(localizedInconsistencies));
 	}
 
+	/**
+	 * Submits all 'inconsistencies' of 'method' to the fault localization
+	 * and, if a checkpoint is given, records the result for 'method' once
+	 * the localization is done. If the localization of any inconsistency
+	 * timed out or failed, the method is recorded with that outcome so that
+	 * the next run analyzes it again.
+	 * 
+	 * @param localization
+	 * @param method
+	 * @param inconsistencies
+	 * @param checkpoint
+	 *            The checkpoint or null.
+	 * @param fingerprint
+	 *            The fingerprint of 'method' or null.
+	 */
+	private void localizeAndRecord(final LocalizationPipeline localization, final Method method,
+			Set<Inconsistency> inconsistencies, final InconsistencyCheckpoint checkpoint, final String fingerprint) {
+		if (!inconsistencies.isEmpty()) {
+			System.out.println("Running fault localization.");
+		}
+		final List<Inconsistency> submitted = new LinkedList<Inconsistency>(inconsistencies);
+		Runnable whenDone = null;
+		// only methods whose detection terminated normally are recorded.
+		// Methods that timed out or failed are analyzed again in the next
+		// run, which may have a larger timeout or more memory.
+		if (checkpoint != null && fingerprint != null && lastOutcome == Outcome.Normal) {
+			// compute everything that is not thread-safe now, and only
+			// collect the localized lines once the localization is done.
+			String reportedFileName = null;
+			List<Integer> reportedLines = new LinkedList<Integer>();
+			if (inconsistentBlocksPerMethod.containsKey(method.getMethodName())) {
+				Pair<String, List<Integer>> reported = reportedLines(method.getMethodName(),
+						inconsistentBlocksPerMethod.get(method.getMethodName()));
+				if (reported != null) {
+					reportedFileName = reported.getFirst();
+					reportedLines = reported.getSecond();
+				}
+			}
+			final String sourceFileName = reportedFileName;
+			final List<Integer> lines = reportedLines;
+			whenDone = new Runnable() {
+				@Override
+				public void run() {
+					List<List<Integer>> localizedLines = new LinkedList<List<Integer>>();
+					Outcome outcome = Outcome.Normal;
+					for (Inconsistency inconsistency : submitted) {
+						if (localization.getOutcome(inconsistency) != Outcome.Normal) {
+							outcome = localization.getOutcome(inconsistency);
+						}
+						if (localizedInconsistencies.containsKey(inconsistency)) {
+							localizedLines.add(sortedLineNumbers(localizedInconsistencies.get(inconsistency)));
+						}
+					}
+					checkpoint.record(method.getMethodName(), new InconsistencyCheckpoint.Entry(fingerprint, outcome,
+							sourceFileName, lines, localizedLines));
+				}
+			};
+		}
+		localization.submit(submitted, whenDone);
+	}
+
+	/**
+	 * Updates the statistics counters and the results with an entry that
+	 * has been recorded in the checkpoint file by a previous run. The
+	 * checkpoint only returns entries with a normal outcome.
+	 * 
+	 * @param methodName
+	 * @param entry
+	 */
+	private void restoreFromCheckpoint(String methodName, InconsistencyCheckpoint.Entry entry) {
+		Preconditions.checkArgument(entry.getOutcome() == Outcome.Normal);
+		normal++;
+		restored++;
+		if (!entry.getInconsistentLines().isEmpty() || !entry.getLocalizedLines().isEmpty()) {
+			restoredResults.put(methodName, entry);
+		}
+	}
+
+	private void countOutcome(Outcome outcome) {
+		switch (outcome) {
+		case Normal:
+			normal++;
+			break;
+		case Timeout:
+			timeouts++;
+			break;
+		case Interrupt:
+			interrupt++;
+			break;
+		case OutOfMemory:
+			outOfMemory++;
+			break;
+		default:
+			other++;
+			break;
+		}
+	}
+
 	/**
 	 * Finds inconsistencies in a given 'method' and returns a set of
 	 * inconsistencies that is "minimal" in the sense that no block given
@@ -127,6 +299,12 @@ public class InconsistencyChecker {
 	 * This starts a new thread (with optional timeout given by
 	 * Options.v().getTimeout()).
 	 * 
+	 * If Options.v().isAdaptive() is set, methods that are larger than
+	 * Options.v().getAdaptiveSizeLimit() are checked in cheap mode right
+	 * away, and methods that time out or run out of memory after they have
+	 * been preprocessed are put aside to be retried in cheap mode by
+	 * retryPendingMethods.
+	 * 
 	 * WARNING: This method DOES modify the program. It unwinds loops and
 	 * adds additional blocks during SSA transformation!
 	 * 
@@ -136,118 +314,218 @@ public class InconsistencyChecker {
 	 *            The current program.
 	 * @param method
 	 *            A method from 'program' that we want to analyze.
+	 * @param fingerprint
+	 *            The checkpoint fingerprint of 'method' or null.
 	 * @return Set of inconsistencies.
 	 */
-	private Set<Inconsistency> findInconsistenciesInMethod(ExecutorService executor, Program program, Method method) {
+	private Set<Inconsistency> findInconsistenciesInMethod(ExecutorService executor, Program program, Method method,
+			String fingerprint) {
 		Set<Inconsistency> inconsistencies = new HashSet<Inconsistency>();
 		if (method.vertexSet().isEmpty()) {
 			// ignore empty methods
 			normal++;
+			lastOutcome = Outcome.Normal;
 			return inconsistencies;
 		}
 		Prover prover = factory.spawn();
 		Preconditions.checkArgument(prover != null, "Failed to initialize prover.");
 		prover.setHornLogic(false);
 
-		Set<CfgBlock> inconsistentBlocks = new HashSet<CfgBlock>();
-
 		InconsistencyThread thread = new InconsistencyThread(program, method, prover);
-		final Future<?> future = executor.submit(thread);
-		try {
-			 
-			if (Options.v().getTimeout() <= 0) {
-				future.get();
+		if (Options.v().isAdaptive() && estimateSize(method) > Options.v().getAdaptiveSizeLimit()) {
+			Log.info("Using cheap mode for " + method.getMethodName());
+			thread.setCheapMode(true);
+			cheapRightAway++;
+		}
+		final long timeoutMillis = Options.v().getTimeout() * 1000L;
+		final long startTime = System.currentTimeMillis();
+		lastOutcome = runInconsistencyThread(executor, thread, prover, timeoutMillis);
+		final long elapsed = System.currentTimeMillis() - startTime;
+
+		if (lastOutcome == Outcome.Normal) {
+			if (Options.v().isAdaptive() && timeoutMillis > 0) {
+				// put the time that we did not need into the pool for
+				// the methods that need to be retried.
+				savedMillis += Math.max(0, timeoutMillis - elapsed);
+			}
+			inconsistencies.addAll(collectInconsistencies(method, thread));
+		} else if (Options.v().isAdaptive()
+				&& (lastOutcome == Outcome.Timeout || lastOutcome == Outcome.OutOfMemory)) {
+			if (!lastThreadStopped) {
+				// the retry would share the method and the covered blocks
+				// with a thread that is still running.
+				Log.info("Cannot retry " + method.getMethodName() + " because the analysis did not stop.");
+			} else if (thread.isPreprocessed()) {
+				// the counters are updated once the retry is done.
+				pendingRetries.add(new PendingRetry(thread, fingerprint, lastOutcome));
+				return inconsistencies;
 			} else {
-				future.get(Options.v().getTimeout(), TimeUnit.SECONDS);
+				Log.info("Cannot retry " + method.getMethodName() + " because preprocessing did not finish.");
 			}
-			normal++;
-			inconsistencies.addAll(getInconsistencies(method, thread.getInconsistentBlocks()));
+		}
+		countOutcome(lastOutcome);
+		return inconsistencies;
+	}
 
-			inconsistentBlocks.addAll(thread.getInconsistentBlocks());
-			if (!inconsistentBlocks.isEmpty()) {
-				inconsistentBlocksPerMethod.put(method.getMethodName(), inconsistentBlocks);
+	/**
+	 * Retries all methods that timed out or ran out of memory in cheap mode.
+	 * The time saved on methods that terminated before the timeout is
+	 * shared evenly among the methods that have to be retried. If there is
+	 * not enough time left, the method is given up.
+	 * 
+	 * @param executor
+	 * @param localization
+	 * @param checkpoint
+	 *            The checkpoint or null.
+	 */
+	private void retryPendingMethods(ExecutorService executor, LocalizationPipeline localization,
+			InconsistencyCheckpoint checkpoint) {
+		while (!pendingRetries.isEmpty()) {
+			PendingRetry pending = pendingRetries.poll();
+			Method method = pending.thread.getMethod();
+			long budget = 0;
+			if (Options.v().getTimeout() > 0) {
+				budget = savedMillis / (pendingRetries.size() + 1);
+				if (budget < minRetryMillis) {
+					Log.info("Not enough time left to retry " + method.getMethodName());
+					countOutcome(pending.outcome);
+					continue;
+				}
 			}
-		} catch (TimeoutException e) {
-			if (!future.cancel(true)) {
-				System.err.println("failed to cancel after timeout");
+			Log.info(String.format("Retrying %s in cheap mode with %d ms.", method.getMethodName(), budget));
+			retried++;
+			Prover prover = factory.spawn();
+			Preconditions.checkArgument(prover != null, "Failed to initialize prover.");
+			prover.setHornLogic(false);
+			InconsistencyThread thread = new InconsistencyThread(pending.thread, prover);
+
+			final long startTime = System.currentTimeMillis();
+			lastOutcome = runInconsistencyThread(executor, thread, prover, budget);
+			if (budget > 0) {
+				savedMillis -= Math.min(budget, System.currentTimeMillis() - startTime);
 			}
-			timeouts++;
-			Log.error("Timeout for " + method.getMethodName());
-		} catch (InterruptedException e) {
-			interrupt++;
-			e.printStackTrace();
-		} catch (ExecutionException e) {
-			execException++;
-			throw new RuntimeException(e);
-		} catch (OutOfMemoryError e) {
-			outOfMemory++;
-			e.printStackTrace();
-		} catch (Throwable e) {
-			other++;
-			e.printStackTrace();
-		} finally {
-			prover.stop();
-			prover.shutdown();
-			if (future != null && !future.isDone() && !future.cancel(true)) {
-				throw new RuntimeException("Could not cancel broken thread!");
+			countOutcome(lastOutcome);
+			Set<Inconsistency> inconsistencies = new HashSet<Inconsistency>();
+			if (lastOutcome == Outcome.Normal) {
+				recovered++;
+				inconsistencies.addAll(collectInconsistencies(method, thread));
 			}
+			localizeAndRecord(localization, method, inconsistencies, checkpoint, pending.fingerprint);
 		}
-		return inconsistencies;
 	}
 
 	/**
-	 * Uses the algorithm form "Explaining Inconsistent Code" (FSE'13) to find a
-	 * small set of statements that is sufficient to explain the inconsistency.
+	 * Rough estimate of the size of the verification condition of 'method'.
 	 * 
-	 * This starts a new thread (with optional timeout given by
-	 * Options.v().getTimeout()).
+	 * @param method
+	 * @return Number of blocks and statements in 'method'.
+	 */
+	private int estimateSize(Method method) {
+		int size = 0;
+		for (CfgBlock b : method.vertexSet()) {
+			size += 1 + b.getStatements().size();
+		}
+		return size;
+	}
+
+	private Set<Inconsistency> collectInconsistencies(Method method, InconsistencyThread thread) {
+		Set<CfgBlock> inconsistentBlocks = new HashSet<CfgBlock>(thread.getInconsistentBlocks());
+		if (!inconsistentBlocks.isEmpty()) {
+			inconsistentBlocksPerMethod.put(method.getMethodName(), inconsistentBlocks);
+		}
+		return getInconsistencies(method, inconsistentBlocks);
+	}
+
+	/**
+	 * Runs 'thread' with the given timeout and returns how it terminated.
+	 * The 'prover' is shut down afterwards.
 	 * 
-	 * Note that this algorithm does not modify the program.
+	 * Cancelling the future only interrupts 'thread', which may keep
+	 * running for a while (e.g., during the SSA transformation). So on a
+	 * timeout, the prover is stopped and we wait until the executor is
+	 * idle again before the prover is shut down. If the thread does not
+	 * stop within stopGraceMillis, lastThreadStopped is set to false. This
+	 * relies on 'executor' having a single thread.
 	 * 
 	 * @param executor
-	 *            ExecutorService used to start the thread.
-	 * @param inconsistency
-	 *            The inconsistency which we want to localize
-	 * @return A (not necessarily minimal) subset of statements needed to
-	 *         understand the inconsistency.
+	 * @param thread
+	 * @param prover
+	 *            The prover used by 'thread'.
+	 * @param timeoutMillis
+	 *            Timeout in milliseconds. Use 0 for no timeout.
+	 * @return The outcome of the analysis.
 	 */
-	private Set<Statement> localizeInconsistency(ExecutorService executor, Program program,
-			Inconsistency inconsistency) {
-		Set<Statement> relevantStmts = new HashSet<Statement>();
-		Prover prover = factory.spawn();
-		Preconditions.checkArgument(prover != null, "Failed to initialize prover.");
-		prover.setHornLogic(false);
-		LocalizationThread localizationThread = new LocalizationThread(inconsistency, prover);
-		final Future<?> inconsistencyFuture = executor.submit(localizationThread);
+	private Outcome runInconsistencyThread(ExecutorService executor, InconsistencyThread thread, Prover prover,
+			long timeoutMillis) {
+		final Future<?> future = executor.submit(thread);
 		try {
-//			while (!inconsistencyFuture.isDone() || executor.awaitTermination(Options.v().getTimeout(), TimeUnit.SECONDS));
-			if (Options.v().getTimeout() <= 0) {
-				inconsistencyFuture.get();
+
+			if (timeoutMillis <= 0) {
+				future.get();
 			} else {
-				inconsistencyFuture.get(Options.v().getTimeout(), TimeUnit.SECONDS);
+				future.get(timeoutMillis, TimeUnit.MILLISECONDS);
 			}
-			relevantStmts.addAll(localizationThread.getRelevantStatements());
-		} catch (TimeoutException e) {			
-			if (!inconsistencyFuture.cancel(true)) {
+			return Outcome.Normal;
+		} catch (TimeoutException e) {
+			if (!future.cancel(true)) {
 				System.err.println("failed to cancel after timeout");
 			}
-			Log.error("Localization timeout for " + inconsistency.getMethod().getMethodName());
+			Log.error("Timeout for " + thread.getMethod().getMethodName());
+			return Outcome.Timeout;
 		} catch (InterruptedException e) {
 			e.printStackTrace();
+			return Outcome.Interrupt;
 		} catch (ExecutionException e) {
+			if (e.getCause() instanceof OutOfMemoryError) {
+				Log.error("Out of memory for " + thread.getMethod().getMethodName());
+				return Outcome.OutOfMemory;
+			}
+			execException++;
 			throw new RuntimeException(e);
 		} catch (OutOfMemoryError e) {
 			e.printStackTrace();
+			return Outcome.OutOfMemory;
 		} catch (Throwable e) {
 			e.printStackTrace();
+			return Outcome.Other;
 		} finally {
 			prover.stop();
-			prover.shutdown();
-			if (inconsistencyFuture != null && !inconsistencyFuture.isDone() && !inconsistencyFuture.cancel(true)) {
+			if (future != null && !future.isDone() && !future.cancel(true)) {
 				throw new RuntimeException("Could not cancel broken thread!");
 			}
+			lastThreadStopped = awaitIdle(executor);
+			if (!lastThreadStopped) {
+				Log.error("Analysis of " + thread.getMethod().getMethodName() + " did not stop.");
+			}
+			prover.shutdown();
+		}
+	}
+
+	/**
+	 * Waits until the single thread of 'executor' has finished all tasks
+	 * that have been submitted so far, including cancelled ones that are
+	 * still running.
+	 * 
+	 * @param executor
+	 * @return false if the thread did not finish within stopGraceMillis.
+	 */
+	private boolean awaitIdle(ExecutorService executor) {
+		Future<?> barrier = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				// nothing to do.
+			}
+		});
+		try {
+			barrier.get(stopGraceMillis, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			barrier.cancel(false);
+			return false;
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			return false;
 		}
-		return relevantStmts;
 	}
 
 	/**
@@ -358,45 +636,116 @@ public class InconsistencyChecker {
 				}
 			}
 		}
+		// statements are not recorded in the checkpoint, so for restored
+		// methods we can only report the line numbers.
+		for (Entry<String, InconsistencyCheckpoint.Entry> entry : restoredResults.entrySet()) {
+			if (entry.getValue().getLocalizedLines().isEmpty()) {
+				continue;
+			}
+			sb.append("Method: ");
+			sb.append(entry.getKey());
+			sb.append(" (restored from checkpoint)");
+			sb.append(System.getProperty("line.separator"));
+			for (List<Integer> lines : entry.getValue().getLocalizedLines()) {
+				sb.append("  Line numbers:");
+				String comma = "";
+				for (Integer i : lines) {
+					sb.append(comma);
+					comma = ", ";
+					sb.append(i);
+				}
+				sb.append(System.getProperty("line.separator"));
+			}
+		}
 		return sb.toString();
 	}
 
+	/**
+	 * Returns the sorted line numbers of all statements in 'stmts' that
+	 * have a source location.
+	 * 
+	 * @param stmts
+	 * @return
+	 */
+	private static List<Integer> sortedLineNumbers(Set<Statement> stmts) {
+		Set<Integer> lineNumberSet = new HashSet<Integer>();
+		for (Statement s : stmts) {
+			if (s.getSourceLocation() != null) {
+				lineNumberSet.add(s.getSourceLocation().getLineNumber());
+			}
+		}
+		List<Integer> sortedLineNumbers = new LinkedList<Integer>(lineNumberSet);
+		Collections.sort(sortedLineNumbers);
+		return sortedLineNumbers;
+	}
+
+	/**
+	 * Computes the source file and the sorted lines that are reported for
+	 * the inconsistent 'blocks' of method 'methodName'. Returns null if the
+	 * warning is suppressed because it contains a duplicated line. The list
+	 * of lines is empty if the blocks do not have any line numbers.
+	 * 
+	 * @param methodName
+	 * @param blocks
+	 * @return Pair of source file name and sorted line numbers, or null.
+	 */
+	private Pair<String, List<Integer>> reportedLines(String methodName, Set<CfgBlock> blocks) {
+		String sourceFileName = "Unknown";
+		LinkedHashSet<Integer> lines = new LinkedHashSet<Integer>();
+		for (CfgBlock b : blocks) {
+			for (Statement s : b.getStatements()) {
+				SourceLocation loc = s.getSourceLocation();
+				if (loc != null) {
+					if (loc.getSourceFileName() != null) {
+						sourceFileName = loc.getSourceFileName();
+					}
+					if (lineNumbersWithDuplicates.containsKey(methodName)
+							&& lineNumbersWithDuplicates.get(methodName).contains(loc.getLineNumber())) {
+						// ditch that warning because it contians a
+						// duplicated block
+						return null;
+					}
+					lines.add(loc.getLineNumber());
+				}
+			}
+		}
+		List<Integer> sortedLines = new LinkedList<Integer>(lines);
+		Collections.sort(sortedLines);
+		return new Pair<String, List<Integer>>(sourceFileName, sortedLines);
+	}
+
 	private void printResults(Map<String, Set<CfgBlock>> result) {
 		Map<String, Map<String, List<Integer>>> resultsByFile = new HashMap<String, Map<String, List<Integer>>>();
 		for (Entry<String, Set<CfgBlock>> entry : result.entrySet()) {
-			String sourceFileName = "Unknown";
-			LinkedHashSet<Integer> lines = new LinkedHashSet<Integer>();
-			for (CfgBlock b : entry.getValue()) {
-				for (Statement s : b.getStatements()) {
-					SourceLocation loc = s.getSourceLocation();
-					if (loc != null) {
-						if (loc.getSourceFileName() != null) {
-							sourceFileName = loc.getSourceFileName();
-						}
-						if (lineNumbersWithDuplicates.containsKey(entry.getKey())
-								&& lineNumbersWithDuplicates.get(entry.getKey()).contains(loc.getLineNumber())) {
-							// ditch that warning because it contians a
-							// duplicated block
-							Log.error("Suppressed lines");
-							lines.clear();
-							break;
-						}
-						lines.add(loc.getLineNumber());
-					}
-				}
+			Pair<String, List<Integer>> reported = reportedLines(entry.getKey(), entry.getValue());
+			if (reported == null) {
+				Log.error("Suppressed lines");
+				continue;
 			}
-			if (lines.isEmpty()) {
+			String sourceFileName = reported.getFirst();
+			if (reported.getSecond().isEmpty()) {
 				Log.error("Inconsistency without lines in " + sourceFileName);
 				continue;
 			}
-			List<Integer> sortedLines = new LinkedList<Integer>(lines);
-			Collections.sort(sortedLines);
 			if (!resultsByFile.containsKey(sourceFileName)) {
 				resultsByFile.put(sourceFileName, new HashMap<String, List<Integer>>());
 			}
 			Map<String, List<Integer>> r = resultsByFile.get(sourceFileName);
 			if (!r.containsKey(entry.getKey())) {
-				r.put(entry.getKey(), sortedLines);
+				r.put(entry.getKey(), reported.getSecond());
+			}
+		}
+		for (Entry<String, InconsistencyCheckpoint.Entry> entry : restoredResults.entrySet()) {
+			String sourceFileName = entry.getValue().getSourceFileName();
+			if (sourceFileName == null || entry.getValue().getInconsistentLines().isEmpty()) {
+				continue;
+			}
+			if (!resultsByFile.containsKey(sourceFileName)) {
+				resultsByFile.put(sourceFileName, new HashMap<String, List<Integer>>());
+			}
+			Map<String, List<Integer>> r = resultsByFile.get(sourceFileName);
+			if (!r.containsKey(entry.getKey())) {
+				r.put(entry.getKey(), entry.getValue().getInconsistentLines());
 			}
 		}
 		StringBuilder sb = new StringBuilder();
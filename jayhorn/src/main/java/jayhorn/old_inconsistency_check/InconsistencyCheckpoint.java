@@ -0,0 +1,266 @@
+/**
+ *
+ */
+package jayhorn.old_inconsistency_check;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.hash.Hashing;
+
+import jayhorn.Log;
+import soottocfg.cfg.Variable;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.Method;
+
+/**
+ * Append-only record of the methods that the {@link InconsistencyChecker}
+ * has already finished. Each line stores the signature of a method, a
+ * fingerprint of its body, how the analysis of that method terminated, and
+ * the source lines that were reported for it.
+ *
+ * When a run is restarted with the same checkpoint file, all methods whose
+ * fingerprint did not change are skipped and their recorded result is
+ * reported instead. Methods that changed since the last run (or that have
+ * never been analyzed) are analyzed again. Only results of analyses that
+ * terminated normally are restored, so methods whose detection or
+ * localization timed out or failed are analyzed again as well. Since the file is only ever
+ * appended, a run that gets killed loses at most the method that was
+ * being analyzed at that time.
+ *
+ * @author schaef
+ *
+ */
+public class InconsistencyCheckpoint {
+
+	public enum Outcome {
+		Normal, Timeout, Interrupt, OutOfMemory, Other
+	}
+
+	/**
+	 * The recorded result for one method.
+	 */
+	public static class Entry {
+		private final String fingerprint;
+		private final Outcome outcome;
+		private final String sourceFileName;
+		private final List<Integer> inconsistentLines;
+		private final List<List<Integer>> localizedLines;
+
+		public Entry(String fingerprint, Outcome outcome, String sourceFileName, List<Integer> inconsistentLines,
+				List<List<Integer>> localizedLines) {
+			this.fingerprint = fingerprint;
+			this.outcome = outcome;
+			this.sourceFileName = sourceFileName;
+			this.inconsistentLines = inconsistentLines;
+			this.localizedLines = localizedLines;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		/**
+		 * Returns the name of the source file that contains the inconsistent
+		 * lines, or null if there are no inconsistent lines.
+		 *
+		 * @return
+		 */
+		public String getSourceFileName() {
+			return sourceFileName;
+		}
+
+		/**
+		 * Returns the sorted list of lines that have been reported as
+		 * inconsistent.
+		 *
+		 * @return
+		 */
+		public List<Integer> getInconsistentLines() {
+			return inconsistentLines;
+		}
+
+		/**
+		 * Returns one sorted list of lines per localized inconsistency.
+		 *
+		 * @return
+		 */
+		public List<List<Integer>> getLocalizedLines() {
+			return localizedLines;
+		}
+	}
+
+	private static final String separator = "\t";
+	private static final String none = "-";
+
+	private final File file;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	public InconsistencyCheckpoint(File checkpointFile) {
+		file = checkpointFile;
+		if (file.exists()) {
+			load();
+		}
+	}
+
+	/**
+	 * Computes a fingerprint of the body of 'method'. This has to be called
+	 * before the method is modified by the analysis (e.g., loop removal or
+	 * SSA).
+	 *
+	 * @param method
+	 * @return hex string of the fingerprint.
+	 */
+	public static String fingerprint(Method method) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(method.getMethodName());
+		sb.append("\n");
+		// the locals are stored in a HashSet, so we have to sort them
+		// to get the same fingerprint in every run.
+		List<String> locals = new ArrayList<String>();
+		for (Variable v : method.getLocals()) {
+			locals.add(v.toString());
+		}
+		Collections.sort(locals);
+		for (String s : locals) {
+			sb.append(s);
+			sb.append("\n");
+		}
+		for (CfgBlock b : method.vertexSet()) {
+			sb.append(b);
+		}
+		return Hashing.sha1().hashString(sb, StandardCharsets.UTF_8).toString();
+	}
+
+	/**
+	 * Returns the recorded result for the method with signature
+	 * 'methodName' if it has been recorded with the same 'fingerprint' and
+	 * its analysis terminated normally, and null otherwise.
+	 *
+	 * @param methodName
+	 * @param fingerprint
+	 * @return
+	 */
+	public synchronized Entry lookup(String methodName, String fingerprint) {
+		Entry entry = entries.get(methodName);
+		if (entry != null && entry.getFingerprint().equals(fingerprint) && entry.getOutcome() == Outcome.Normal) {
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Appends the result for the method with signature 'methodName' to the
+	 * checkpoint file. An existing entry for the same method is overridden.
+	 * This may be called from several threads.
+	 *
+	 * @param methodName
+	 * @param entry
+	 */
+	public synchronized void record(String methodName, Entry entry) {
+		entries.put(methodName, entry);
+		StringBuilder sb = new StringBuilder();
+		sb.append(methodName);
+		sb.append(separator);
+		sb.append(entry.getFingerprint());
+		sb.append(separator);
+		sb.append(entry.getOutcome().name());
+		sb.append(separator);
+		sb.append(entry.getSourceFileName() == null ? none : entry.getSourceFileName());
+		sb.append(separator);
+		sb.append(linesToString(entry.getInconsistentLines()));
+		sb.append(separator);
+		if (entry.getLocalizedLines().isEmpty()) {
+			sb.append(none);
+		} else {
+			String semicolon = "";
+			for (List<Integer> lines : entry.getLocalizedLines()) {
+				sb.append(semicolon);
+				semicolon = ";";
+				sb.append(linesToString(lines));
+			}
+		}
+		sb.append(System.getProperty("line.separator"));
+		try (FileOutputStream fileStream = new FileOutputStream(file, true);
+				Writer writer = new OutputStreamWriter(fileStream, StandardCharsets.UTF_8);) {
+			writer.write(sb.toString());
+			writer.flush();
+		} catch (IOException e) {
+			Log.error("Failed to write checkpoint " + file + ": " + e.toString());
+		}
+	}
+
+	private void load() {
+		try (FileInputStream fileStream = new FileInputStream(file);
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(fileStream, StandardCharsets.UTF_8));) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(separator, -1);
+				if (fields.length != 6) {
+					// the last line may be incomplete if the previous run
+					// was killed while writing it.
+					continue;
+				}
+				try {
+					List<List<Integer>> localized = new LinkedList<List<Integer>>();
+					if (!none.equals(fields[5])) {
+						for (String group : fields[5].split(";")) {
+							localized.add(stringToLines(group));
+						}
+					}
+					String sourceFileName = none.equals(fields[3]) ? null : fields[3];
+					entries.put(fields[0], new Entry(fields[1], Outcome.valueOf(fields[2]), sourceFileName,
+							stringToLines(fields[4]), localized));
+				} catch (IllegalArgumentException e) {
+					// NumberFormatException is an IllegalArgumentException
+					Log.error("Ignoring broken checkpoint entry: " + line);
+				}
+			}
+		} catch (IOException e) {
+			Log.error("Failed to read checkpoint " + file + ": " + e.toString());
+		}
+		Log.info(String.format("Loaded %d methods from checkpoint %s", entries.size(), file));
+	}
+
+	private String linesToString(List<Integer> lines) {
+		if (lines.isEmpty()) {
+			return none;
+		}
+		StringBuilder sb = new StringBuilder();
+		String comma = "";
+		for (Integer i : lines) {
+			sb.append(comma);
+			comma = ",";
+			sb.append(i);
+		}
+		return sb.toString();
+	}
+
+	private List<Integer> stringToLines(String s) {
+		List<Integer> lines = new LinkedList<Integer>();
+		if (!none.equals(s)) {
+			for (String i : s.split(",")) {
+				lines.add(Integer.parseInt(i));
+			}
+		}
+		return lines;
+	}
+}
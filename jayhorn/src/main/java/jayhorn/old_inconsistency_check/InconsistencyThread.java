@@ -3,6 +3,7 @@
  */
 package jayhorn.old_inconsistency_check;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -11,6 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jgrapht.Graphs;
 
@@ -49,10 +51,40 @@ public class InconsistencyThread implements Runnable {
 
 	private final Set<CfgBlock> inconsistentBlocks = new HashSet<CfgBlock>();
 
+	// blocks that are known to be on a feasible path. This is shared with
+	// threads that retry the same method, so progress is not lost on a
+	// timeout.
+	private final Set<CfgBlock> covered;
+
+	// true once loops are removed and the method is in SSA.
+	private volatile boolean preprocessed = false;
+
+	private boolean cheapMode = false;
+
 	public Set<CfgBlock> getInconsistentBlocks() {
 		return this.inconsistentBlocks;
 	}
 
+	public Method getMethod() {
+		return this.method;
+	}
+
+	public boolean isPreprocessed() {
+		return this.preprocessed;
+	}
+
+	/**
+	 * In cheap mode, each query only asks for a path through at least
+	 * one block that is not covered yet instead of blocking every path
+	 * that has been found. This needs at most one query per block and
+	 * does not grow the formula.
+	 * 
+	 * @param cheap
+	 */
+	public void setCheapMode(boolean cheap) {
+		this.cheapMode = cheap;
+	}
+
 	/**
 	 * 
 	 */
@@ -60,6 +92,26 @@ public class InconsistencyThread implements Runnable {
 		method = m;
 		prover = p;
 		program = prog;
+		covered = Collections.newSetFromMap(new ConcurrentHashMap<CfgBlock, Boolean>());
+	}
+
+	/**
+	 * Creates a thread that retries the method of 'previous' in cheap mode
+	 * with a new prover. The method must already be preprocessed by
+	 * 'previous', and 'previous' must have stopped running because both
+	 * threads share the method and the covered blocks. All blocks covered
+	 * by 'previous' are considered covered.
+	 * 
+	 * @param previous
+	 * @param p
+	 */
+	public InconsistencyThread(InconsistencyThread previous, Prover p) {
+		method = previous.method;
+		prover = p;
+		program = previous.program;
+		covered = previous.covered;
+		preprocessed = previous.preprocessed;
+		cheapMode = true;
 	}
 	
 	/*
@@ -77,6 +129,43 @@ public class InconsistencyThread implements Runnable {
 			System.out.println("Analyzing " + method.getMethodName());
 		}		
 		
+		if (!preprocessed) {
+			if (!preprocess()) {
+				return;
+			}
+			preprocessed = true;
+		}
+
+//		{
+//		SsaPrinter printer = new SsaPrinter();
+//		StringBuilder sb = new StringBuilder();
+//		printer.printMethod(sb, method);
+//		System.out.println(sb);
+//		}
+
+		createVerificationCondition();
+
+		if (cheapMode) {
+			coverUncoveredBlocks();
+		} else {
+			coverAllPaths();
+		}
+
+		Set<CfgBlock> notCovered = new HashSet<CfgBlock>(blockVars.keySet());
+		notCovered.removeAll(covered);
+
+		inconsistentBlocks.addAll(notCovered);
+
+		return;
+	}
+
+	/**
+	 * Removes unreachable nodes, turns edge labels into assumes, removes
+	 * loops, and transforms the method into SSA.
+	 * 
+	 * @return false if the method cannot be checked.
+	 */
+	private boolean preprocess() {
 		UnreachableNodeRemover<CfgBlock, CfgEdge> unr = new UnreachableNodeRemover<CfgBlock, CfgEdge>(method, method.getSource(), method.getSink());
 		if (unr.pruneUnreachableNodes()) {
 			System.err.println("removed unreachable nodes for "+method.getMethodName());
@@ -93,7 +182,7 @@ public class InconsistencyThread implements Runnable {
 			if (!GraphUtil.isReducibleGraph(method, method.getSource())) {
 				Log.error(method.getMethodName() + " has an irreducible CFG with loops and cannot be checked."); 
 				//TODO dont give up ... make the thing reducible instead.
-				return;
+				return false;
 			} else {
 				throw new RuntimeException(e);
 			}
@@ -103,24 +192,20 @@ public class InconsistencyThread implements Runnable {
 		
 		SsaTransformer ssa = new SsaTransformer(program, method);
 		ssa.eliminatePhiStatements();
+		return true;
+	}
 
-//		{
-//		SsaPrinter printer = new SsaPrinter();
-//		StringBuilder sb = new StringBuilder();
-//		printer.printMethod(sb, method);
-//		System.out.println(sb);
-//		}
-
-		createVerificationCondition();
-
+	/**
+	 * Enumerates feasible paths and blocks each path after it has been
+	 * found until no more feasible path exists.
+	 */
+	private void coverAllPaths() {
 		Set<ProverExpr> enablingClause = new HashSet<ProverExpr>();
 		Map<ProverExpr, CfgBlock> blocks2cover = new HashMap<ProverExpr, CfgBlock>();
 		for (Entry<CfgBlock, ProverExpr> entry : blockVars.entrySet()) {
 			blocks2cover.put(entry.getValue(), entry.getKey());
 			enablingClause.add(entry.getValue());
 		}
-		Set<CfgBlock> covered = new HashSet<CfgBlock>();
-
 		ProverResult result = prover.checkSat(true);
 		// prover.push();
 
@@ -153,13 +238,36 @@ public class InconsistencyThread implements Runnable {
 			result = prover.checkSat(true);
 		}
 		// prover.pop();
-		
-		Set<CfgBlock> notCovered = new HashSet<CfgBlock>(blockVars.keySet());
-		notCovered.removeAll(covered);
-
-		inconsistentBlocks.addAll(notCovered);
+	}
 
-		return;
+	/**
+	 * Asks for a feasible path through at least one uncovered block until
+	 * all blocks are covered or no such path exists.
+	 */
+	private void coverUncoveredBlocks() {
+		Set<CfgBlock> uncovered = new HashSet<CfgBlock>(blockVars.keySet());
+		uncovered.removeAll(covered);
+		while (!uncovered.isEmpty()) {
+			List<ProverExpr> enablingClause = new LinkedList<ProverExpr>();
+			for (CfgBlock b : uncovered) {
+				enablingClause.add(blockVars.get(b));
+			}
+			prover.push();
+			prover.addAssertion(prover.mkOr(enablingClause.toArray(new ProverExpr[enablingClause.size()])));
+			ProverResult result = prover.checkSat(true);
+			if (result == ProverResult.Sat) {
+				for (CfgBlock b : uncovered) {
+					if (prover.evaluate(blockVars.get(b)).getBooleanLiteralValue()) {
+						covered.add(b);
+					}
+				}
+			}
+			prover.pop();
+			if (result != ProverResult.Sat) {
+				break;
+			}
+			uncovered.removeAll(covered);
+		}
 	}
 
 
@@ -0,0 +1,270 @@
+/**
+ *
+ */
+package jayhorn.old_inconsistency_check;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+import jayhorn.Log;
+import jayhorn.old_inconsistency_check.InconsistencyCheckpoint.Outcome;
+import jayhorn.old_inconsistency_check.faultlocalization.LocalizationThread;
+import jayhorn.solver.Prover;
+import jayhorn.solver.ProverFactory;
+import soottocfg.cfg.method.Method;
+import soottocfg.cfg.statement.Statement;
+
+/**
+ * Runs the fault localization of inconsistencies on its own pool of
+ * threads. The InconsistencyChecker submits the inconsistencies of a
+ * method as soon as they are found, so the localization overlaps with
+ * the detection of inconsistencies in the following methods.
+ *
+ * If 'shareQueries' is set, all inconsistencies of one method are localized
+ * by one task with one prover, which allows the LocalizationThread to share
+ * interpolation queries between them. Otherwise, each inconsistency is
+ * localized independently with its own prover. The timeout of a task is
+ * the timeout per inconsistency times the number of its inconsistencies.
+ * The localization only reads the method of an inconsistency, so it must
+ * not be submitted before the detection for that method is done.
+ *
+ * Inconsistencies whose localization timed out or failed keep an empty set
+ * of relevant statements, and getOutcome tells how their localization
+ * terminated.
+ *
+ * @author schaef
+ *
+ */
+public class LocalizationPipeline {
+
+	private final ProverFactory factory;
+	private final int timeout;
+	private final boolean shareQueries;
+	private final boolean useUnsatCores;
+	private final ExecutorService pool;
+	// stops provers of localizations that exceed the timeout.
+	private final ScheduledExecutorService watchdog;
+	private final Map<Inconsistency, Set<Statement>> localizedInconsistencies;
+	// localizations that did not terminate normally.
+	private final Map<Inconsistency, Outcome> failedLocalizations = new ConcurrentHashMap<Inconsistency, Outcome>();
+
+	/**
+	 * @param f
+	 *            Factory used to create one prover per inconsistency.
+	 * @param threads
+	 *            Number of localizations that run in parallel.
+	 * @param timeoutSeconds
+	 *            Timeout per inconsistency. Use 0 for no timeout.
+	 * @param shareQueries
+	 *            Localize all inconsistencies of a method in one task.
+	 * @param useUnsatCores
+	 *            Use unsat cores instead of interpolation.
+	 * @param results
+	 *            Thread-safe map in which the relevant statements of each
+	 *            inconsistency are stored.
+	 */
+	public LocalizationPipeline(ProverFactory f, int threads, int timeoutSeconds, boolean shareQueries,
+			boolean useUnsatCores, Map<Inconsistency, Set<Statement>> results) {
+		Preconditions.checkArgument(threads > 0, "Need at least one thread for fault localization.");
+		factory = f;
+		timeout = timeoutSeconds;
+		this.shareQueries = shareQueries;
+		this.useUnsatCores = useUnsatCores;
+		localizedInconsistencies = results;
+		pool = Executors.newFixedThreadPool(threads);
+		watchdog = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	/**
+	 * Queues the localization of all 'inconsistencies'. Once all of them are
+	 * done, 'whenDone' is run on the thread that finished last. If
+	 * 'inconsistencies' is empty, 'whenDone' is run right away.
+	 *
+	 * @param inconsistencies
+	 * @param whenDone
+	 *            Callback or null.
+	 */
+	public void submit(Collection<Inconsistency> inconsistencies, final Runnable whenDone) {
+		if (inconsistencies.isEmpty()) {
+			if (whenDone != null) {
+				whenDone.run();
+			}
+			return;
+		}
+		List<List<Inconsistency>> tasks = new LinkedList<List<Inconsistency>>();
+		if (shareQueries) {
+			Map<Method, List<Inconsistency>> byMethod = new LinkedHashMap<Method, List<Inconsistency>>();
+			for (Inconsistency inconsistency : inconsistencies) {
+				if (!byMethod.containsKey(inconsistency.getMethod())) {
+					byMethod.put(inconsistency.getMethod(), new LinkedList<Inconsistency>());
+				}
+				byMethod.get(inconsistency.getMethod()).add(inconsistency);
+			}
+			tasks.addAll(byMethod.values());
+		} else {
+			for (Inconsistency inconsistency : inconsistencies) {
+				List<Inconsistency> task = new LinkedList<Inconsistency>();
+				task.add(inconsistency);
+				tasks.add(task);
+			}
+		}
+		final AtomicInteger remaining = new AtomicInteger(tasks.size());
+		for (final List<Inconsistency> task : tasks) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						localizedInconsistencies.putAll(localizeInconsistencies(task));
+					} finally {
+						if (remaining.decrementAndGet() == 0 && whenDone != null) {
+							whenDone.run();
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns how the localization of 'inconsistency' terminated. Must only
+	 * be called once that localization is done.
+	 *
+	 * @param inconsistency
+	 * @return Outcome.Normal unless the localization timed out or failed.
+	 */
+	public Outcome getOutcome(Inconsistency inconsistency) {
+		Outcome outcome = failedLocalizations.get(inconsistency);
+		return outcome == null ? Outcome.Normal : outcome;
+	}
+
+	/**
+	 * Waits until all queued localizations are done and releases the
+	 * threads.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+		try {
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				Log.info("Waiting for fault localization to finish.");
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			pool.shutdownNow();
+		} finally {
+			watchdog.shutdownNow();
+		}
+	}
+
+	/**
+	 * Stops all running localizations and drops the queued ones.
+	 */
+	public void shutdownNow() {
+		pool.shutdownNow();
+		watchdog.shutdownNow();
+	}
+
+	/**
+	 * Uses the algorithm form "Explaining Inconsistent Code" (FSE'13) to find a
+	 * small set of statements that is sufficient to explain each
+	 * inconsistency.
+	 *
+	 * Runs on the current thread. If the timeout is exceeded, the prover is
+	 * stopped and the thread is interrupted.
+	 *
+	 * @param inconsistencies
+	 *            The inconsistencies of one method which we want to localize
+	 * @return For each inconsistency, a (not necessarily minimal) subset of
+	 *         statements needed to understand the inconsistency.
+	 */
+	private Map<Inconsistency, Set<Statement>> localizeInconsistencies(List<Inconsistency> inconsistencies) {
+		Map<Inconsistency, Set<Statement>> relevantStmts = new LinkedHashMap<Inconsistency, Set<Statement>>();
+		for (Inconsistency inconsistency : inconsistencies) {
+			relevantStmts.put(inconsistency, new HashSet<Statement>());
+		}
+		final Prover prover = factory.spawn();
+		Preconditions.checkArgument(prover != null, "Failed to initialize prover.");
+		prover.setHornLogic(false);
+		LocalizationThread localizationThread = new LocalizationThread(inconsistencies, prover);
+		localizationThread.setUseUnsatCores(useUnsatCores);
+
+		// the watchdog and this thread synchronize on 'state' so that the
+		// watchdog cannot interrupt this thread once we are done.
+		final int[] state = { 0 }; // 0 = running, 1 = done, 2 = timed out
+		final Thread worker = Thread.currentThread();
+		Outcome outcome = Outcome.Normal;
+		ScheduledFuture<?> alarm = null;
+		if (timeout > 0) {
+			alarm = watchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (state) {
+						if (state[0] == 0) {
+							state[0] = 2;
+							prover.stop();
+							worker.interrupt();
+						}
+					}
+				}
+			}, (long) timeout * inconsistencies.size(), TimeUnit.SECONDS);
+		}
+		try {
+			localizationThread.run();
+			synchronized (state) {
+				if (state[0] == 0) {
+					state[0] = 1;
+					for (Entry<Inconsistency, Set<Statement>> entry : localizationThread
+							.getRelevantStatementsPerInconsistency().entrySet()) {
+						relevantStmts.get(entry.getKey()).addAll(entry.getValue());
+					}
+				}
+			}
+		} catch (OutOfMemoryError e) {
+			e.printStackTrace();
+			outcome = Outcome.OutOfMemory;
+		} catch (Throwable e) {
+			outcome = Outcome.Other;
+			synchronized (state) {
+				if (state[0] != 2) {
+					e.printStackTrace();
+				}
+			}
+		} finally {
+			synchronized (state) {
+				if (state[0] == 2) {
+					Log.error("Localization timeout for " + inconsistencies.get(0).getMethod().getMethodName());
+					outcome = Outcome.Timeout;
+				}
+				state[0] = Math.max(state[0], 1);
+			}
+			if (outcome != Outcome.Normal) {
+				for (Inconsistency inconsistency : inconsistencies) {
+					failedLocalizations.put(inconsistency, outcome);
+				}
+			}
+			if (alarm != null) {
+				alarm.cancel(false);
+			}
+			// clear the interrupt from the watchdog before the pool
+			// reuses this thread.
+			Thread.interrupted();
+			prover.stop();
+			prover.shutdown();
+		}
+		return relevantStmts;
+	}
+}
@@ -18,7 +18,7 @@ import com.google.common.base.Verify;
 
 import jayhorn.solver.Prover;
 import jayhorn.solver.ProverExpr;
-import jayhorn.solver.ProverResult;
+import jayhorn.old_inconsistency_check.faultlocalization.SequenceInterpolator.FaultLocalizationException;
 import jayhorn.util.SimplCfgToProver;
 import soottocfg.cfg.method.CfgBlock;
 import soottocfg.cfg.method.CfgEdge;
@@ -33,18 +33,62 @@ import soottocfg.util.Pair;
 public class InconsistencyLocalization {
 
 	private final Prover prover;
+	private final SequenceInterpolator interpolator;
 	private final Map<ProverExpr, Statement> peToStatement;
 	private final Map<ProverExpr, VertexPair<CfgBlock>> nestedDiamondMap;
 
+	/**
+	 * The proof obligations of one (possibly nested) localization problem.
+	 */
+	static class Query {
+		final Method graph;
+		final List<ProverExpr> proofObligations;
+		final List<ProverExpr> axioms;
+		final Optional<ProverExpr> precondition;
+		final Optional<ProverExpr> postcondition;
+
+		Query(Method graph, List<ProverExpr> proofObligations, List<ProverExpr> axioms,
+				Optional<ProverExpr> precondition, Optional<ProverExpr> postcondition) {
+			this.graph = graph;
+			this.proofObligations = proofObligations;
+			this.axioms = axioms;
+			this.precondition = precondition;
+			this.postcondition = postcondition;
+		}
+	}
+
 	public InconsistencyLocalization(Prover p) {
+		this(p, new SequenceInterpolator(p));
+	}
+
+	/**
+	 * @param p
+	 * @param interpolator
+	 *            Interpolator (and its cache) that is shared with other
+	 *            localizations on the same prover.
+	 */
+	public InconsistencyLocalization(Prover p, SequenceInterpolator interpolator) {
 		prover = p;
+		this.interpolator = interpolator;
 		peToStatement = new HashMap<ProverExpr, Statement>();
 		nestedDiamondMap = new HashMap<ProverExpr, VertexPair<CfgBlock>>();
 	}
 
 	public Set<Statement> computeRelevantStatements(SimplCfgToProver s2p, Method graph, CfgBlock source,
 			CfgBlock joinAfterSink, Optional<ProverExpr> precondition, Optional<ProverExpr> postcondition) {
-		Set<Statement> result = new LinkedHashSet<Statement>();
+		Query query = createQuery(s2p, graph, source, joinAfterSink, precondition, postcondition);
+		ProverExpr[] interpolants = interpolator.interpolate(query.proofObligations, query.axioms,
+				query.precondition, query.postcondition);
+		return computeRelevantStatements(s2p, query, interpolants);
+	}
+
+	/**
+	 * Generates the proof obligations for the subgraph of 'graph' between
+	 * 'source' and 'joinAfterSink' (or all of 'graph' if 'joinAfterSink' is
+	 * null) without sending anything to the prover.
+	 */
+	Query createQuery(SimplCfgToProver s2p, Method graph, CfgBlock source, CfgBlock joinAfterSink,
+			Optional<ProverExpr> precondition, Optional<ProverExpr> postcondition) {
 		if (source.equals(graph.getSource()) && joinAfterSink == null) {
 			// this is the original graph and we can use it immediately.			
 		} else {
@@ -75,9 +119,18 @@ public class InconsistencyLocalization {
 		//TODO hack.
 		List<ProverExpr> axioms = ((SimplCfgToProver)s2p).generateParamTypeAxioms(graph); 
 		axioms.addAll(s2p.generatedAxioms());
-		
-		ProverExpr[] interpolants = computeInterpolants(proofObligations, axioms, precondition,
-				postcondition);
+		return new Query(graph, proofObligations, axioms, precondition, postcondition);
+	}
+
+	/**
+	 * Maps the positions where the 'interpolants' of 'query' change back to
+	 * statements. Nested diamonds are localized recursively.
+	 */
+	Set<Statement> computeRelevantStatements(SimplCfgToProver s2p, Query query, ProverExpr[] interpolants) {
+		Set<Statement> result = new LinkedHashSet<Statement>();
+		Method graph = query.graph;
+		List<ProverExpr> proofObligations = query.proofObligations;
+		Optional<ProverExpr> postcondition = query.postcondition;
 		List<Integer> changePositions = findPositionsWhereInterpolantChanges(interpolants);
 		if (changePositions.isEmpty()) {
 //			System.err.println("Nothing changed for " + graph);
@@ -111,7 +164,7 @@ public class InconsistencyLocalization {
 						.fromNullable(prover.mkAnd(newPostCondition.toArray(new ProverExpr[newPostCondition.size()])));
 				for (CfgBlock suc : Graphs.successorListOf(graph, diamond.getFirst())) {
 					try {
-					InconsistencyLocalization nestedLoc = new InconsistencyLocalization(prover);
+					InconsistencyLocalization nestedLoc = new InconsistencyLocalization(prover, interpolator);
 					result.addAll(nestedLoc.computeRelevantStatements(s2p, graph, suc, diamond.getSecond(),
 							interpolantBefore, interpolantAfter));
 					} catch (FaultLocalizationException e) {
@@ -124,52 +177,6 @@ public class InconsistencyLocalization {
 		return result;
 	}
 
-	private ProverExpr[] computeInterpolants(List<ProverExpr> proofObligations, List<ProverExpr> axioms,
-			Optional<ProverExpr> precondition, Optional<ProverExpr> postcondition) {
-		prover.push();
-
-		int partition = 0;
-		prover.setPartitionNumber(partition++);
-		if (precondition.isPresent()) {
-			prover.addAssertion(precondition.get());
-		} else {
-			prover.addAssertion(prover.mkLiteral(true));
-		}
-
-		for (ProverExpr pe : proofObligations) {
-			prover.setPartitionNumber(partition++);
-			prover.addAssertion(pe);
-		}
-		prover.setPartitionNumber(partition++);
-
-		for (ProverExpr axiom : axioms) {
-			prover.addAssertion(axiom);
-		}
-
-		if (postcondition.isPresent()) {
-			prover.addAssertion(postcondition.get());
-		}
-
-		ProverResult proverResult = prover.checkSat(true);
-		if (proverResult != ProverResult.Unsat) {
-			throw new FaultLocalizationException("Fault localization failed because is "+proverResult+" and not UNSAT");
-		}
-
-		int[][] ordering = new int[partition][1];
-		for (int i = 0; i < partition; i++) {
-			ordering[i][0] = i;
-		}
-		ProverExpr[] interpolants = prover.interpolate(ordering);
-		prover.pop();
-		return interpolants;
-	}
-
-	private static class FaultLocalizationException extends RuntimeException {
-		private static final long serialVersionUID = 1L;
-		public FaultLocalizationException(String msg) {
-			super(msg);
-		}
-	}
  	
 	/**
 	 * Traverses 'interpolants' from left to right and returns the list of all
@@ -3,12 +3,18 @@
  */
 package jayhorn.old_inconsistency_check.faultlocalization;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.base.Optional;
 
+import jayhorn.Log;
 import jayhorn.old_inconsistency_check.Inconsistency;
+import jayhorn.old_inconsistency_check.faultlocalization.InconsistencyLocalization.Query;
 import jayhorn.solver.Prover;
 import jayhorn.solver.ProverExpr;
 import jayhorn.util.ConvertToDiamondShape;
@@ -25,38 +31,127 @@ import soottocfg.cfg.util.GraphUtil;
 public class LocalizationThread implements Runnable {
 
 	// private final Program program;
-	private final Inconsistency inconsistency;
+	private final List<Inconsistency> inconsistencies;
 	private final Prover prover;
-	private final Set<Statement> relevantStatements;
+	private final Map<Inconsistency, Set<Statement>> relevantStatements;
+	private boolean useUnsatCores = false;
 	
 	public LocalizationThread(Inconsistency ic, Prover p) {
 		// program = prog;
-		inconsistency = ic;
+		inconsistencies = new ArrayList<Inconsistency>();
+		inconsistencies.add(ic);
 		prover = p;
-		relevantStatements = new HashSet<Statement>();
+		relevantStatements = new LinkedHashMap<Inconsistency, Set<Statement>>();
+	}
+
+	/**
+	 * Localizes several inconsistencies of the same method with one prover.
+	 * Interpolation queries with common prefixes share the asserted prefix,
+	 * and identical queries are only sent once.
+	 * 
+	 * @param ics
+	 * @param p
+	 */
+	public LocalizationThread(List<Inconsistency> ics, Prover p) {
+		inconsistencies = new ArrayList<Inconsistency>(ics);
+		prover = p;
+		relevantStatements = new LinkedHashMap<Inconsistency, Set<Statement>>();
 	}
 	
+	/**
+	 * Use UnsatCoreLocalization instead of interpolation.
+	 * 
+	 * @param b
+	 */
+	public void setUseUnsatCores(boolean b) {
+		this.useUnsatCores = b;
+	}
+
+	/**
+	 * Returns the relevant statements of all inconsistencies.
+	 * 
+	 * @return
+	 */
 	public Set<Statement> getRelevantStatements() {
+		Set<Statement> result = new HashSet<Statement>();
+		for (Set<Statement> stmts : relevantStatements.values()) {
+			result.addAll(stmts);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the relevant statements for each inconsistency that has been
+	 * localized.
+	 * 
+	 * @return
+	 */
+	public Map<Inconsistency, Set<Statement>> getRelevantStatementsPerInconsistency() {
 		return relevantStatements;
 	}
 
 	@Override
 	public void run() {
+		if (useUnsatCores) {
+			// no proofs needed.
+			SimplCfgToProver s2p = new SimplCfgToProver(prover);
+			UnsatCoreLocalization ucl = new UnsatCoreLocalization(prover);
+			for (Inconsistency inconsistency : inconsistencies) {
+				relevantStatements.put(inconsistency, ucl.computeRelevantStatements(s2p, inconsistency));
+			}
+			Log.debug(String.format("Localized %d inconsistencies with %d unsat core queries.",
+					inconsistencies.size(), ucl.getNumberOfQueries()));
+			return;
+		}
 	
 		prover.setConstructProofs(true);
 		SimplCfgToProver s2p = new SimplCfgToProver(prover);
-		//first generate a subgraph of the method that only contains
-		//paths through the inconsistent block and where all branching
-		//has diamond shape.
-		Method subgraph = createDiamondShapedSliceForFaultLocalization(inconsistency.getMethod(),
-				inconsistency.getRootOfInconsistency());
-		//now run the fault localization on 'subgraph'. For this to work,
-		//we have to be sure that subgraph has no feasible path.
-		InconsistencyLocalization il = new InconsistencyLocalization(prover);
+		SequenceInterpolator interpolator = new SequenceInterpolator(prover);
 		Optional<ProverExpr> pre = Optional.absent();
 		Optional<ProverExpr> post = Optional.absent();
-		Set<Statement> res = il.computeRelevantStatements(s2p, subgraph, subgraph.getSource(), null, pre, post);
-		relevantStatements.addAll(res);
+		if (inconsistencies.size() == 1) {
+			Inconsistency inconsistency = inconsistencies.get(0);
+			//first generate a subgraph of the method that only contains
+			//paths through the inconsistent block and where all branching
+			//has diamond shape.
+			Method subgraph = createDiamondShapedSliceForFaultLocalization(inconsistency.getMethod(),
+					inconsistency.getRootOfInconsistency());
+			//now run the fault localization on 'subgraph'. For this to work,
+			//we have to be sure that subgraph has no feasible path.
+			InconsistencyLocalization il = new InconsistencyLocalization(prover, interpolator);
+			Set<Statement> res = il.computeRelevantStatements(s2p, subgraph, subgraph.getSource(), null, pre, post);
+			relevantStatements.put(inconsistency, new HashSet<Statement>(res));
+			return;
+		}
+
+		// generate the proof obligations for all slices first, so that
+		// the top-level queries can be grouped by common prefixes.
+		List<InconsistencyLocalization> localizations = new ArrayList<InconsistencyLocalization>();
+		List<Query> queries = new ArrayList<Query>();
+		List<List<ProverExpr>> sequences = new ArrayList<List<ProverExpr>>();
+		List<List<ProverExpr>> axioms = new ArrayList<List<ProverExpr>>();
+		for (Inconsistency inconsistency : inconsistencies) {
+			Method subgraph = createDiamondShapedSliceForFaultLocalization(inconsistency.getMethod(),
+					inconsistency.getRootOfInconsistency());
+			InconsistencyLocalization il = new InconsistencyLocalization(prover, interpolator);
+			Query query = il.createQuery(s2p, subgraph, subgraph.getSource(), null, pre, post);
+			localizations.add(il);
+			queries.add(query);
+			sequences.add(query.proofObligations);
+			axioms.add(query.axioms);
+		}
+		List<ProverExpr[]> interpolants = interpolator.interpolateAll(sequences, axioms);
+		for (int i = 0; i < inconsistencies.size(); i++) {
+			if (interpolants.get(i) == null) {
+				continue;
+			}
+			relevantStatements.put(inconsistencies.get(i), new HashSet<Statement>(
+					localizations.get(i).computeRelevantStatements(s2p, queries.get(i), interpolants.get(i))));
+		}
+		Log.debug(String.format("Localized %d inconsistencies with %d interpolation queries "
+				+ "(%d cache hits, %d shared partitions).", inconsistencies.size(),
+				interpolator.getNumberOfQueries(), interpolator.getNumberOfCacheHits(),
+				interpolator.getNumberOfSharedPartitions()));
 	}
 		
 	/**
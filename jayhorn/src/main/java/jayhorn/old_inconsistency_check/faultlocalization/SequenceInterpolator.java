@@ -0,0 +1,302 @@
+/**
+ *
+ */
+package jayhorn.old_inconsistency_check.faultlocalization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+
+import jayhorn.Log;
+import jayhorn.solver.Prover;
+import jayhorn.solver.ProverExpr;
+import jayhorn.solver.ProverResult;
+
+/**
+ * Computes sequence interpolants for the fault localization.
+ *
+ * Queries are cached, so the same sequence (e.g., a nested diamond that is
+ * part of the slices of several inconsistencies) is only interpolated once.
+ *
+ * Several sequences can be interpolated at once. Sequences that start with
+ * the same proof obligations are grouped, the common prefix is asserted
+ * once, and only the remaining partitions are asserted for each sequence
+ * under push/pop. Note that the interpolants for the prefix still depend
+ * on the rest of the sequence, so they are computed by each query.
+ *
+ * Proof obligations are compared by their string representation, as in
+ * InconsistencyLocalization.interpolantsAreEqual.
+ *
+ * @author schaef
+ *
+ */
+public class SequenceInterpolator {
+
+	private final Prover prover;
+	private final Map<String, ProverExpr[]> cache = new HashMap<String, ProverExpr[]>();
+
+	private int queries = 0, cacheHits = 0, sharedPartitions = 0;
+
+	public SequenceInterpolator(Prover p) {
+		prover = p;
+	}
+
+	/**
+	 * Number of interpolation queries sent to the prover.
+	 */
+	public int getNumberOfQueries() {
+		return queries;
+	}
+
+	/**
+	 * Number of interpolation queries answered from the cache.
+	 */
+	public int getNumberOfCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * Number of partitions that did not have to be asserted again because
+	 * they were part of a shared prefix.
+	 */
+	public int getNumberOfSharedPartitions() {
+		return sharedPartitions;
+	}
+
+	/**
+	 * Returns the sequence interpolants for precondition, proofObligations,
+	 * and axioms together with the postcondition. The formula must be
+	 * unsatisfiable.
+	 *
+	 * @param proofObligations
+	 * @param axioms
+	 * @param precondition
+	 * @param postcondition
+	 * @return One interpolant per partition boundary.
+	 * @throws FaultLocalizationException
+	 *             if the formula is not unsatisfiable.
+	 */
+	public ProverExpr[] interpolate(List<ProverExpr> proofObligations, List<ProverExpr> axioms,
+			Optional<ProverExpr> precondition, Optional<ProverExpr> postcondition) {
+		String key = cacheKey(proofObligations, axioms, precondition, postcondition);
+		if (cache.containsKey(key)) {
+			cacheHits++;
+			return cache.get(key);
+		}
+		prover.push();
+		int partition = 0;
+		prover.setPartitionNumber(partition++);
+		if (precondition.isPresent()) {
+			prover.addAssertion(precondition.get());
+		} else {
+			prover.addAssertion(prover.mkLiteral(true));
+		}
+		ProverExpr[] interpolants;
+		try {
+			interpolants = interpolateSuffix(proofObligations, 0, partition, axioms, postcondition);
+		} finally {
+			prover.pop();
+		}
+		cache.put(key, interpolants);
+		return interpolants;
+	}
+
+	/**
+	 * Returns the sequence interpolants for each sequence of proof
+	 * obligations in 'sequences' (without pre- or postcondition), or null
+	 * for each sequence that is not unsatisfiable.
+	 *
+	 * @param sequences
+	 * @param axioms
+	 *            The axioms for each sequence.
+	 * @return List of interpolants in the same order as 'sequences'.
+	 */
+	public List<ProverExpr[]> interpolateAll(final List<List<ProverExpr>> sequences,
+			List<List<ProverExpr>> axioms) {
+		final List<List<String>> keys = new ArrayList<List<String>>();
+		for (List<ProverExpr> sequence : sequences) {
+			List<String> k = new ArrayList<String>();
+			for (ProverExpr pe : sequence) {
+				k.add(pe.toString());
+			}
+			keys.add(k);
+		}
+		// sort the sequences so that sequences with a common prefix are
+		// next to each other.
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < sequences.size(); i++) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				List<String> k1 = keys.get(i1), k2 = keys.get(i2);
+				for (int i = 0; i < Math.min(k1.size(), k2.size()); i++) {
+					int c = k1.get(i).compareTo(k2.get(i));
+					if (c != 0) {
+						return c;
+					}
+				}
+				return Integer.compare(k1.size(), k2.size());
+			}
+		});
+
+		ProverExpr[][] result = new ProverExpr[sequences.size()][];
+		int first = 0;
+		while (first < order.size()) {
+			// extend the group as long as the common prefix is not empty.
+			List<String> firstKey = keys.get(order.get(first));
+			int prefixLength = firstKey.size();
+			int last = first + 1;
+			while (last < order.size()) {
+				int common = commonPrefixLength(firstKey, keys.get(order.get(last)));
+				if (common == 0) {
+					break;
+				}
+				prefixLength = Math.min(prefixLength, common);
+				last++;
+			}
+			List<Integer> group = order.subList(first, last);
+			if (group.size() == 1) {
+				int idx = group.get(0);
+				result[idx] = interpolateOrNull(sequences.get(idx), axioms.get(idx));
+			} else {
+				// keep at least one proof obligation per sequence out of
+				// the prefix, so that each query has its own partitions.
+				for (int idx : group) {
+					prefixLength = Math.min(prefixLength, sequences.get(idx).size() - 1);
+				}
+				interpolateGroup(sequences, axioms, group, Math.max(prefixLength, 0), result);
+			}
+			first = last;
+		}
+		List<ProverExpr[]> interpolants = new LinkedList<ProverExpr[]>();
+		for (ProverExpr[] i : result) {
+			interpolants.add(i);
+		}
+		return interpolants;
+	}
+
+	private void interpolateGroup(List<List<ProverExpr>> sequences, List<List<ProverExpr>> axioms,
+			List<Integer> group, int prefixLength, ProverExpr[][] result) {
+		List<ProverExpr> prefix = sequences.get(group.get(0)).subList(0, prefixLength);
+		Optional<ProverExpr> none = Optional.absent();
+		prover.push();
+		try {
+			int partition = 0;
+			prover.setPartitionNumber(partition++);
+			prover.addAssertion(prover.mkLiteral(true));
+			for (ProverExpr pe : prefix) {
+				prover.setPartitionNumber(partition++);
+				prover.addAssertion(pe);
+			}
+			for (int idx : group) {
+				List<ProverExpr> sequence = sequences.get(idx);
+				String key = cacheKey(sequence, axioms.get(idx), none, none);
+				if (cache.containsKey(key)) {
+					cacheHits++;
+					result[idx] = cache.get(key);
+					continue;
+				}
+				sharedPartitions += prefixLength;
+				prover.push();
+				try {
+					result[idx] = interpolateSuffix(sequence, prefixLength, partition, axioms.get(idx), none);
+					cache.put(key, result[idx]);
+				} catch (FaultLocalizationException e) {
+					Log.error(e.getMessage());
+					result[idx] = null;
+				} finally {
+					prover.pop();
+				}
+			}
+		} finally {
+			prover.pop();
+		}
+	}
+
+	private ProverExpr[] interpolateOrNull(List<ProverExpr> sequence, List<ProverExpr> axioms) {
+		Optional<ProverExpr> none = Optional.absent();
+		try {
+			return interpolate(sequence, axioms, none, none);
+		} catch (FaultLocalizationException e) {
+			Log.error(e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Asserts proofObligations[from..] starting with partition 'partition',
+	 * then axioms and postcondition in one last partition, and
+	 * interpolates over all partitions.
+	 */
+	private ProverExpr[] interpolateSuffix(List<ProverExpr> proofObligations, int from, int partition,
+			List<ProverExpr> axioms, Optional<ProverExpr> postcondition) {
+		for (ProverExpr pe : proofObligations.subList(from, proofObligations.size())) {
+			prover.setPartitionNumber(partition++);
+			prover.addAssertion(pe);
+		}
+		prover.setPartitionNumber(partition++);
+
+		for (ProverExpr axiom : axioms) {
+			prover.addAssertion(axiom);
+		}
+
+		if (postcondition.isPresent()) {
+			prover.addAssertion(postcondition.get());
+		}
+
+		queries++;
+		ProverResult proverResult = prover.checkSat(true);
+		if (proverResult != ProverResult.Unsat) {
+			throw new FaultLocalizationException(
+					"Fault localization failed because is " + proverResult + " and not UNSAT");
+		}
+
+		int[][] ordering = new int[partition][1];
+		for (int i = 0; i < partition; i++) {
+			ordering[i][0] = i;
+		}
+		return prover.interpolate(ordering);
+	}
+
+	private int commonPrefixLength(List<String> k1, List<String> k2) {
+		int i = 0;
+		while (i < k1.size() && i < k2.size() && k1.get(i).equals(k2.get(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private String cacheKey(List<ProverExpr> proofObligations, List<ProverExpr> axioms,
+			Optional<ProverExpr> precondition, Optional<ProverExpr> postcondition) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(precondition.isPresent() ? precondition.get() : "true");
+		sb.append("\n");
+		for (ProverExpr pe : proofObligations) {
+			sb.append(pe);
+			sb.append("\n");
+		}
+		sb.append("--\n");
+		for (ProverExpr axiom : axioms) {
+			sb.append(axiom);
+			sb.append("\n");
+		}
+		sb.append(postcondition.isPresent() ? postcondition.get() : "true");
+		return sb.toString();
+	}
+
+	static class FaultLocalizationException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public FaultLocalizationException(String msg) {
+			super(msg);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ *
+ */
+package jayhorn.old_inconsistency_check.faultlocalization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.Graphs;
+
+import jayhorn.Log;
+import jayhorn.old_inconsistency_check.Inconsistency;
+import jayhorn.solver.Prover;
+import jayhorn.solver.ProverExpr;
+import jayhorn.solver.ProverResult;
+import jayhorn.util.SimplCfgToProver;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.Method;
+import soottocfg.cfg.statement.Statement;
+import soottocfg.cfg.util.GraphUtil;
+
+/**
+ * Fault localization with unsat cores instead of interpolants. This does
+ * not need proofs, so it is usually much faster than
+ * InconsistencyLocalization, but the result does not say in which order
+ * the statements contribute to the inconsistency.
+ *
+ * Each statement on a path through the inconsistent block is guarded by
+ * a fresh Boolean indicator literal. The formula that all paths through the
+ * inconsistent block are infeasible is unsatisfiable if all indicators are
+ * assumed, and the unsat core returned by the prover is minimized by
+ * deletion: an indicator is dropped if the remaining ones are still
+ * unsatisfiable. The statements of the remaining indicators are the
+ * relevant statements.
+ *
+ * @author schaef
+ *
+ */
+public class UnsatCoreLocalization {
+
+	private final Prover prover;
+	private int indicatorCounter = 0;
+	private int queries = 0;
+
+	public UnsatCoreLocalization(Prover p) {
+		prover = p;
+	}
+
+	/**
+	 * Number of queries sent to the prover so far.
+	 *
+	 * @return
+	 */
+	public int getNumberOfQueries() {
+		return queries;
+	}
+
+	/**
+	 * Returns a subset of the statements on paths through the inconsistent
+	 * block that is sufficient to explain the inconsistency and from which
+	 * no statement can be removed.
+	 *
+	 * @param s2p
+	 * @param inconsistency
+	 * @return Relevant statements, or an empty set if the paths through the
+	 *         inconsistent block are not infeasible.
+	 */
+	public Set<Statement> computeRelevantStatements(SimplCfgToProver s2p, Inconsistency inconsistency) {
+		Method method = inconsistency.getMethod();
+		CfgBlock root = inconsistency.getRootOfInconsistency();
+		Method slice = method.createMethodFromSubgraph(GraphUtil.computeSubgraphThroughVertex(method, root),
+				method.getMethodName() + "_slice");
+
+		Map<ProverExpr, Statement> indicatorToStatement = new HashMap<ProverExpr, Statement>();
+		List<ProverExpr> indicators = new ArrayList<ProverExpr>();
+
+		prover.push();
+		try {
+			Map<CfgBlock, ProverExpr> blockVars = new LinkedHashMap<CfgBlock, ProverExpr>();
+			for (CfgBlock b : slice.vertexSet()) {
+				blockVars.put(b, prover.mkVariable(b.getLabel(), prover.getBooleanType()));
+			}
+			// only complete paths through the inconsistent block.
+			prover.addAssertion(blockVars.get(slice.getSource()));
+			prover.addAssertion(blockVars.get(root));
+
+			for (CfgBlock b : slice.vertexSet()) {
+				List<ProverExpr> conj = new LinkedList<ProverExpr>();
+				List<ProverExpr> comeFrom = new LinkedList<ProverExpr>();
+				for (CfgBlock pre : Graphs.predecessorListOf(slice, b)) {
+					comeFrom.add(blockVars.get(pre));
+				}
+				if (!comeFrom.isEmpty()) {
+					conj.add(prover.mkOr(comeFrom.toArray(new ProverExpr[comeFrom.size()])));
+				}
+				for (Statement s : b.getStatements()) {
+					ProverExpr pe = s2p.statementToTransitionRelation(s);
+					// TODO: hack - pe should not be null later.
+					if (pe == null) {
+						continue;
+					}
+					ProverExpr indicator = prover.mkVariable("$indicator" + (indicatorCounter++),
+							prover.getBooleanType());
+					indicators.add(indicator);
+					indicatorToStatement.put(indicator, s);
+					conj.add(prover.mkImplies(indicator, pe));
+				}
+				List<ProverExpr> disj = new LinkedList<ProverExpr>();
+				for (CfgBlock succ : Graphs.successorListOf(slice, b)) {
+					disj.add(blockVars.get(succ));
+				}
+				if (!disj.isEmpty()) {
+					conj.add(prover.mkOr(disj.toArray(new ProverExpr[disj.size()])));
+				}
+				if (!conj.isEmpty()) {
+					prover.addAssertion(prover.mkImplies(blockVars.get(b),
+							prover.mkAnd(conj.toArray(new ProverExpr[conj.size()]))));
+				}
+			}
+			for (ProverExpr axiom : s2p.generateParamTypeAxioms(slice)) {
+				prover.addAssertion(axiom);
+			}
+			for (ProverExpr axiom : s2p.generatedAxioms()) {
+				prover.addAssertion(axiom);
+			}
+
+			queries++;
+			ProverResult result = prover.checkSat(indicators.toArray(new ProverExpr[indicators.size()]));
+			if (result != ProverResult.Unsat) {
+				Log.error("Fault localization failed because is " + result + " and not UNSAT");
+				return new HashSet<Statement>();
+			}
+			List<ProverExpr> core = minimizeCore(Arrays.asList(prover.getUnsatCore()));
+
+			Set<Statement> relevantStatements = new LinkedHashSet<Statement>();
+			for (ProverExpr indicator : core) {
+				relevantStatements.add(indicatorToStatement.get(indicator));
+			}
+			return relevantStatements;
+		} finally {
+			prover.pop();
+		}
+	}
+
+	/**
+	 * Deletion-based minimization: tries to drop each indicator once and
+	 * keeps it dropped if the remaining indicators are still unsatisfiable.
+	 * The core returned for the smaller set is used right away, which often
+	 * drops several indicators at once.
+	 *
+	 * @param core
+	 *            Unsatisfiable set of indicators.
+	 * @return Unsatisfiable subset of 'core' from which no indicator can be
+	 *         removed.
+	 */
+	private List<ProverExpr> minimizeCore(List<ProverExpr> core) {
+		List<ProverExpr> result = new ArrayList<ProverExpr>(core);
+		int i = 0;
+		while (i < result.size()) {
+			List<ProverExpr> candidate = new ArrayList<ProverExpr>(result);
+			candidate.remove(i);
+			queries++;
+			if (prover.checkSat(candidate.toArray(new ProverExpr[candidate.size()])) == ProverResult.Unsat) {
+				// every indicator before 'i' is needed, so it is also in
+				// the new core.
+				Set<ProverExpr> smallerCore = new HashSet<ProverExpr>(Arrays.asList(prover.getUnsatCore()));
+				result = new ArrayList<ProverExpr>();
+				for (ProverExpr indicator : candidate) {
+					if (smallerCore.contains(indicator)) {
+						result.add(indicator);
+					}
+				}
+			} else {
+				i++;
+			}
+		}
+		return result;
+	}
+}
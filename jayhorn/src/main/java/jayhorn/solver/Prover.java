@@ -115,6 +115,21 @@ public interface Prover {
 	 */
 	ProverResult checkSat(boolean block);
 
+	/**
+	 * Check satisfiability of the currently asserted formulae under the given
+	 * <code>assumptions</code>, which must be Boolean variables. The
+	 * assumptions are not asserted. Blocks until completion.
+	 */
+	ProverResult checkSat(ProverExpr[] assumptions);
+
+	/**
+	 * If the last call to <code>checkSat(assumptions)</code> returned
+	 * <code>Unsat</code>, return a subset of the assumptions that is
+	 * sufficient for unsatisfiability. The subset is not necessarily minimal,
+	 * and some provers simply return all assumptions.
+	 */
+	ProverExpr[] getUnsatCore();
+
 	/**
 	 * After a <code>Sat</code> result, continue searching for the next model.
 	 * In most ways, this method behaves exactly like <code>checkSat</code>.
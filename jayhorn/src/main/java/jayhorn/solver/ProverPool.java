@@ -0,0 +1,87 @@
+package jayhorn.solver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProverFactory that keeps a number of provers spawned in advance, so that
+ * callers do not wait for the initialization of a new prover. Every prover
+ * handed out by spawn is replaced by a new one in the background. Provers
+ * are not reused, so callers shut them down as usual.
+ *
+ * @author schaef
+ *
+ */
+public class ProverPool implements ProverFactory {
+
+	private final ProverFactory factory;
+	private final LinkedBlockingQueue<Prover> idle = new LinkedBlockingQueue<Prover>();
+	private final ExecutorService spawner;
+
+	/**
+	 * @param f
+	 *            Factory used to spawn the provers.
+	 * @param size
+	 *            Number of provers that are kept ready.
+	 */
+	public ProverPool(ProverFactory f, int size) {
+		factory = f;
+		spawner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "prover-pool");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		for (int i = 0; i < size; i++) {
+			replenish();
+		}
+	}
+
+	private void replenish() {
+		spawner.execute(new Runnable() {
+			@Override
+			public void run() {
+				idle.add(factory.spawn());
+			}
+		});
+	}
+
+	@Override
+	public Prover spawn() {
+		Prover p = idle.poll();
+		if (p == null) {
+			// the pool is not warm yet, don't wait for the spawner.
+			return factory.spawn();
+		}
+		replenish();
+		return p;
+	}
+
+	@Override
+	public Prover spawnWithLog(String basename) {
+		return factory.spawnWithLog(basename);
+	}
+
+	/**
+	 * Stops spawning and shuts down the provers that have not been handed
+	 * out.
+	 */
+	public void shutdown() {
+		spawner.shutdownNow();
+		try {
+			// wait for a spawn that is in progress.
+			spawner.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Prover p;
+		while ((p = idle.poll()) != null) {
+			p.shutdown();
+		}
+	}
+}
@@ -345,6 +345,24 @@ public class PrincessProver implements Prover {
 
 	// ////////////////////////////////////////////////////////////////////////////
 
+	private ProverExpr[] lastAssumptions = new ProverExpr[0];
+
+	public ProverResult checkSat(ProverExpr[] assumptions) {
+		// Princess only computes unsat cores with proofs, so we assert
+		// the assumptions temporarily and report all of them as core.
+		api.push();
+		for (ProverExpr assumption : assumptions)
+			api.addAssertion(((PrincessProverExpr) assumption).toFormula());
+		final ProverResult res = translateRes(api.checkSat(true));
+		api.pop();
+		lastAssumptions = assumptions.clone();
+		return res;
+	}
+
+	public ProverExpr[] getUnsatCore() {
+		return lastAssumptions.clone();
+	}
+
 	public ProverResult checkSat(boolean block) {
             if (assertedClauses.isEmpty()) {
                 return translateRes(api.checkSat(block));
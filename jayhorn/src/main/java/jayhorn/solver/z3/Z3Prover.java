@@ -4,10 +4,13 @@
 package jayhorn.solver.z3;
 
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
@@ -455,18 +458,33 @@ public class Z3Prover implements Prover {
 	@Override
 	public void push() {
 		this.solver.push();
+		// remember the partitions so that pop only drops the assertions
+		// that have been added after this push.
+		SortedMap<Integer, List<BoolExpr>> snapshot = new TreeMap<Integer, List<BoolExpr>>();
+		for (Entry<Integer, List<BoolExpr>> entry : interpolationPattern.entrySet()) {
+			snapshot.put(entry.getKey(), new LinkedList<BoolExpr>(entry.getValue()));
+		}
+		interpolationPatternStack.push(snapshot);
+		interpolationPartitionStack.push(interpolationPartition);
 	}
 
 	@Override
 	public void pop() {
 		this.solver.pop();
-		interpolationPattern.clear(); //TODO make this a bit smarter.
-		interpolationPartition = -1;
+		if (interpolationPatternStack.isEmpty()) {
+			interpolationPattern.clear();
+			interpolationPartition = -1;
+		} else {
+			interpolationPattern = interpolationPatternStack.pop();
+			interpolationPartition = interpolationPartitionStack.pop();
+		}
 	}
 
 	
 	private SortedMap<Integer, List<BoolExpr>> interpolationPattern = new TreeMap<Integer, List<BoolExpr>>();
 	private int interpolationPartition = -1;
+	private Deque<SortedMap<Integer, List<BoolExpr>>> interpolationPatternStack = new ArrayDeque<SortedMap<Integer, List<BoolExpr>>>();
+	private Deque<Integer> interpolationPartitionStack = new ArrayDeque<Integer>();
 
 	@Override
 	public void addAssertion(ProverExpr assertion) {
@@ -541,6 +559,28 @@ public class Z3Prover implements Prover {
 		}
 	}
 
+	private final Map<Expr, ProverExpr> lastAssumptions = new HashMap<Expr, ProverExpr>();
+
+	@Override
+	public ProverResult checkSat(ProverExpr[] assumptions) {
+		lastAssumptions.clear();
+		for (ProverExpr assumption : assumptions) {
+			lastAssumptions.put(unpack(assumption), assumption);
+		}
+		return translateResult(this.solver.check(unpack(assumptions)));
+	}
+
+	@Override
+	public ProverExpr[] getUnsatCore() {
+		List<ProverExpr> core = new LinkedList<ProverExpr>();
+		for (BoolExpr e : this.solver.getUnsatCore()) {
+			if (lastAssumptions.containsKey(e)) {
+				core.add(lastAssumptions.get(e));
+			}
+		}
+		return core.toArray(new ProverExpr[core.size()]);
+	}
+
 	private ProverResult translateResult(Status status) {
 		if (status == Status.SATISFIABLE) {
 			return ProverResult.Sat;
@@ -761,6 +801,8 @@ public class Z3Prover implements Prover {
 		this.solver.reset();
 		this.interpolationPattern = new TreeMap<Integer, List<BoolExpr>>();
 		this.interpolationPartition = -1;
+		this.interpolationPatternStack.clear();
+		this.interpolationPartitionStack.clear();
 	}
 
 	// //////////////////////////////////////////////////////////////////////////
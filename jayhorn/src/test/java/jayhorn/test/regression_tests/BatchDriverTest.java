@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package jayhorn.test.regression_tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import jayhorn.BatchDriver;
+import jayhorn.Options;
+import jayhorn.old_inconsistency_check.InconsistencyChecker;
+import jayhorn.solver.princess.PrincessProverFactory;
+import jayhorn.test.Util;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.soot.SootToCfg;
+import soottocfg.soot.SootToCfg.MemModel;
+
+/**
+ * Runs the batch driver on a manifest that contains the same input twice
+ * and an input that does not exist, and on several different inputs, and
+ * checks that each input gets its own result file with the same result as
+ * a check outside of the batch.
+ *
+ * @author schaef
+ *
+ */
+public class BatchDriverTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	@After
+	public void resetOptions() {
+		Options.resetInstance();
+	}
+
+	@Test
+	public void testBatch() throws IOException {
+		File classDir = Util.compileJavaFile(new File(testRoot + "inconsistencies/TruePositives01.java"));
+		Assert.assertNotNull(classDir);
+		File batchDir = Util.getTempDir();
+		try {
+			File manifest = new File(batchDir, "manifest.txt");
+			try (PrintWriter out = new PrintWriter(manifest, "UTF-8")) {
+				out.println("# inputs");
+				out.println(classDir.getAbsolutePath());
+				out.println();
+				out.println("missing.jar");
+				out.println(classDir.getAbsolutePath());
+			}
+			List<File> jars = BatchDriver.readManifest(manifest);
+			Assert.assertEquals(3, jars.size());
+			Assert.assertEquals(new File(batchDir, "missing.jar"), jars.get(1));
+
+			Options.v().setChecker("inconsistency");
+			Set<String> expected = check(classDir);
+			Assert.assertFalse(expected.isEmpty());
+
+			File outputDir = new File(batchDir, "out");
+			new BatchDriver(outputDir, new PrincessProverFactory()).run(jars);
+			Assert.assertEquals(expected, inconsistentLines(new File(outputDir, classDir.getName() + ".txt")));
+			Assert.assertEquals(expected, inconsistentLines(new File(outputDir, classDir.getName() + "_1.txt")));
+			List<String> missing = Files.readAllLines(new File(outputDir, "missing.txt").toPath(),
+					StandardCharsets.UTF_8);
+			Assert.assertTrue(missing.toString(), missing.get(missing.size() - 1).startsWith("error: "));
+		} finally {
+			Util.delete(classDir);
+			Util.delete(batchDir);
+		}
+	}
+
+	/**
+	 * Each input is checked with the memory model of its own translation,
+	 * so every result must match the check of that input on its own.
+	 */
+	@Test
+	public void testSeveralInputs() throws IOException {
+		String[] sources = { "inconsistencies/TruePositives01.java", "faultlocalization/FaultLocalization01.java",
+				"faultlocalization/FaultLocalization02.java" };
+		List<File> classDirs = new ArrayList<File>();
+		File outputDir = Util.getTempDir();
+		try {
+			for (String source : sources) {
+				File classDir = Util.compileJavaFile(new File(testRoot + source));
+				Assert.assertNotNull(classDir);
+				classDirs.add(classDir);
+			}
+			Options.v().setChecker("inconsistency");
+			List<Set<String>> expected = new ArrayList<Set<String>>();
+			for (File classDir : classDirs) {
+				expected.add(check(classDir));
+			}
+
+			new BatchDriver(outputDir, new PrincessProverFactory()).run(classDirs);
+			for (int i = 0; i < classDirs.size(); i++) {
+				File output = new File(outputDir, classDirs.get(i).getName() + ".txt");
+				Assert.assertEquals(sources[i], expected.get(i), inconsistentLines(output));
+				Assert.assertFalse(sources[i], Util.fileToString(output).contains("error: "));
+			}
+		} finally {
+			for (File classDir : classDirs) {
+				Util.delete(classDir);
+			}
+			Util.delete(outputDir);
+		}
+	}
+
+	/**
+	 * Checks 'classDir' outside of the batch driver and returns the lines
+	 * that the batch driver would write for the inconsistent methods.
+	 */
+	private Set<String> check(File classDir) {
+		SootToCfg soot2cfg = new SootToCfg(false, true, MemModel.BurstallBornat);
+		soot2cfg.run(classDir.getAbsolutePath(), null);
+		InconsistencyChecker checker = new InconsistencyChecker(new PrincessProverFactory());
+		checker.setDuplicatedSourceLocations(soot2cfg.getDuplicatedSourceLocations());
+		checker.checkProgram(soot2cfg.getProgram());
+		Set<String> lines = new HashSet<String>();
+		for (Entry<String, Set<CfgBlock>> entry : checker.getInconsistentBlocksPerMethod().entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				lines.add("inconsistent: " + entry.getKey() + " (" + entry.getValue().size() + " blocks)");
+			}
+		}
+		return lines;
+	}
+
+	private Set<String> inconsistentLines(File output) throws IOException {
+		Set<String> lines = new HashSet<String>();
+		for (String line : Files.readAllLines(output.toPath(), StandardCharsets.UTF_8)) {
+			if (line.startsWith("inconsistent: ")) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+}
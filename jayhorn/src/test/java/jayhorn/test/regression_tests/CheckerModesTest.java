@@ -0,0 +1,209 @@
+/**
+ *
+ */
+package jayhorn.test.regression_tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import jayhorn.Options;
+import jayhorn.old_inconsistency_check.Inconsistency;
+import jayhorn.old_inconsistency_check.InconsistencyChecker;
+import jayhorn.solver.princess.PrincessProverFactory;
+import jayhorn.test.Util;
+import soottocfg.cfg.expression.IdentifierExpression;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.Method;
+import soottocfg.cfg.statement.AssignStatement;
+import soottocfg.cfg.statement.Statement;
+import soottocfg.soot.SootToCfg;
+import soottocfg.soot.SootToCfg.MemModel;
+
+/**
+ * Runs the inconsistency checker on the same program in different modes
+ * and checks that all modes report the same inconsistent blocks and, where
+ * the mode does not change the localization, the same localized lines.
+ *
+ * @author schaef
+ *
+ */
+public class CheckerModesTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	private static File classDir = null;
+
+	@BeforeClass
+	public static void compile() throws IOException {
+		classDir = Util.compileJavaFile(new File(testRoot + "inconsistencies/TruePositives01.java"));
+	}
+
+	@AfterClass
+	public static void cleanUp() {
+		if (classDir != null) {
+			classDir.deleteOnExit();
+		}
+	}
+
+	@After
+	public void resetOptions() {
+		Options.resetInstance();
+	}
+
+	@Test
+	public void testCheapMode() {
+		Map<String, Set<String>> expected = inconsistentBlocks(check());
+		Assert.assertFalse(expected.isEmpty());
+		// check every method in cheap mode right away.
+		Options.v().setAdaptive(true);
+		Options.v().setAdaptiveSizeLimit(0);
+		Assert.assertEquals(expected, inconsistentBlocks(check()));
+	}
+
+	@Test
+	public void testLocalizationThreads() {
+		InconsistencyChecker sequential = check();
+		Map<String, List<Integer>> expected = localizedLines(sequential);
+		Assert.assertEquals(sequential.getInconsistentBlocksPerMethod().keySet(), localizedMethods(sequential));
+		Options.v().setLocalizationThreads(4);
+		InconsistencyChecker parallel = check();
+		Assert.assertEquals(inconsistentBlocks(sequential), inconsistentBlocks(parallel));
+		Assert.assertEquals(expected, localizedLines(parallel));
+	}
+
+	@Test
+	public void testSharedInterpolation() {
+		// shared prefixes are the default.
+		InconsistencyChecker shared = check();
+		Assert.assertEquals(shared.getInconsistentBlocksPerMethod().keySet(), localizedMethods(shared));
+		Options.v().setLocalizationPerInconsistency(true);
+		InconsistencyChecker unshared = check();
+		Assert.assertEquals(inconsistentBlocks(unshared), inconsistentBlocks(shared));
+		Assert.assertEquals(localizedLines(unshared), localizedLines(shared));
+	}
+
+	@Test
+	public void testParallelLocalizationPerInconsistency() throws IOException {
+		final String methodName = "<faultlocalization.FaultLocalization02: int severalInconsistencies(java.lang.Object,java.lang.Object,int[])>";
+		File dir = Util.compileJavaFile(new File(testRoot + "faultlocalization/FaultLocalization02.java"));
+		try {
+			Options.v().setLocalizationPerInconsistency(true);
+			InconsistencyChecker sequential = check(dir);
+			Map<String, List<Integer>> expected = localizedLines(sequential);
+			Options.v().setLocalizationThreads(4);
+			InconsistencyChecker parallel = check(dir);
+			Assert.assertEquals(inconsistentBlocks(sequential), inconsistentBlocks(parallel));
+			Assert.assertEquals(expected, localizedLines(parallel));
+
+			Method method = null;
+			int inconsistencies = 0;
+			for (Entry<Inconsistency, Set<Statement>> entry : parallel.getLocalizedInconsistencies().entrySet()) {
+				if (entry.getKey().getMethod().getMethodName().equals(methodName)) {
+					method = entry.getKey().getMethod();
+					inconsistencies++;
+					Assert.assertFalse(entry.getValue().isEmpty());
+				}
+			}
+			Assert.assertTrue("Expected several inconsistencies in " + methodName, inconsistencies > 1);
+			// the slices of the localization must not add statements to the
+			// blocks that they share with the method.
+			int thisAssignments = 0;
+			for (Statement s : method.getSource().getStatements()) {
+				if (s instanceof AssignStatement && ((AssignStatement) s).getLeft() instanceof IdentifierExpression
+						&& ((IdentifierExpression) ((AssignStatement) s).getLeft()).getVariable()
+								.equals(method.getThisVariable().get())) {
+					thisAssignments++;
+				}
+			}
+			Assert.assertEquals(1, thisAssignments);
+		} finally {
+			dir.deleteOnExit();
+		}
+	}
+
+	private InconsistencyChecker check() {
+		return check(classDir);
+	}
+
+	/**
+	 * Translates the program and checks it. The program has to be translated
+	 * for each run because the checker modifies it.
+	 *
+	 * @param dir
+	 *            The directory with the compiled program.
+	 * @return The checker after checkProgram is done.
+	 */
+	private InconsistencyChecker check(File dir) {
+		SootToCfg soot2cfg = new SootToCfg(false, true, MemModel.BurstallBornat);
+		soot2cfg.run(dir.getAbsolutePath(), null);
+		InconsistencyChecker checker = new InconsistencyChecker(new PrincessProverFactory());
+		checker.setDuplicatedSourceLocations(soot2cfg.getDuplicatedSourceLocations());
+		checker.checkProgram(soot2cfg.getProgram());
+		return checker;
+	}
+
+	/**
+	 * Returns the labels of the inconsistent blocks per method.
+	 *
+	 * @param checker
+	 * @return
+	 */
+	private Map<String, Set<String>> inconsistentBlocks(InconsistencyChecker checker) {
+		Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+		for (Entry<String, Set<CfgBlock>> entry : checker.getInconsistentBlocksPerMethod().entrySet()) {
+			Set<String> labels = new HashSet<String>();
+			for (CfgBlock b : entry.getValue()) {
+				labels.add(b.getLabel());
+			}
+			result.put(entry.getKey(), labels);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the sorted lines of the localized statements per method and
+	 * label of the inconsistent block.
+	 *
+	 * @param checker
+	 * @return
+	 */
+	private Map<String, List<Integer>> localizedLines(InconsistencyChecker checker) {
+		Map<String, List<Integer>> result = new HashMap<String, List<Integer>>();
+		for (Entry<Inconsistency, Set<Statement>> entry : checker.getLocalizedInconsistencies().entrySet()) {
+			Set<Integer> lines = new HashSet<Integer>();
+			for (Statement s : entry.getValue()) {
+				if (s.getSourceLocation() != null) {
+					lines.add(s.getSourceLocation().getLineNumber());
+				}
+			}
+			List<Integer> sortedLines = new LinkedList<Integer>(lines);
+			Collections.sort(sortedLines);
+			result.put(entry.getKey().getMethod().getMethodName() + " "
+					+ entry.getKey().getRootOfInconsistency().getLabel(), sortedLines);
+		}
+		return result;
+	}
+
+	private Set<String> localizedMethods(InconsistencyChecker checker) {
+		Set<String> methodNames = new HashSet<String>();
+		for (Inconsistency inconsistency : checker.getLocalizedInconsistencies().keySet()) {
+			methodNames.add(inconsistency.getMethod().getMethodName());
+		}
+		return methodNames;
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package jayhorn.test.regression_tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jayhorn.Daemon;
+import jayhorn.test.Util;
+
+/**
+ * Sends a sequence of requests to a daemon and checks that each request is
+ * answered, that quoted arguments may contain spaces, and that malformed
+ * requests are answered with an error.
+ *
+ * @author schaef
+ *
+ */
+public class DaemonTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	@Test
+	public void testRequests() throws IOException {
+		File classDir = Util.compileJavaFile(new File(testRoot + "inconsistencies/TruePositives01.java"));
+		Assert.assertNotNull(classDir);
+		File spacedDir = new File(classDir.getParentFile(), classDir.getName() + " with space");
+		Assert.assertTrue(classDir.renameTo(spacedDir));
+		try {
+			String quotedDir = "\"" + spacedDir.getAbsolutePath().replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+			StringBuilder requests = new StringBuilder();
+			requests.append("-j " + quotedDir + " -checker inconsistency\n");
+			requests.append("\n");
+			requests.append("-j \"missing quote\n");
+			requests.append("-no-such-option\n");
+			requests.append("-daemon\n");
+			requests.append("-disable-stages NoSuchStage\n");
+			// not a pre-processing stage.
+			requests.append("-disable-stages VirtualCallResolver,SootStmtSwitch\n");
+			requests.append("quit\n");
+			// not answered after quit.
+			requests.append("-no-such-option\n");
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			PrintStream out = new PrintStream(bytes, true, "UTF-8");
+			new Daemon(1).serve(new ByteArrayInputStream(requests.toString().getBytes(StandardCharsets.UTF_8)), out);
+			String[] answers = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n");
+			Assert.assertEquals(6, answers.length);
+			Assert.assertTrue(answers[0], answers[0].startsWith("DONE "));
+			Assert.assertTrue(answers[1], answers[1].startsWith("ERROR Missing closing quote"));
+			Assert.assertTrue(answers[2], answers[2].startsWith("ERROR "));
+			Assert.assertTrue(answers[3], answers[3].startsWith("ERROR "));
+			Assert.assertTrue(answers[4], answers[4].startsWith("ERROR Unknown stage NoSuchStage"));
+			Assert.assertTrue(answers[5], answers[5].startsWith("ERROR Unknown stage SootStmtSwitch"));
+		} finally {
+			Util.delete(spacedDir);
+		}
+	}
+}
@@ -5,20 +5,27 @@ package jayhorn.test.regression_tests;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import jayhorn.Options;
+import jayhorn.old_inconsistency_check.Inconsistency;
 import jayhorn.old_inconsistency_check.InconsistencyChecker;
 import jayhorn.solver.ProverFactory;
 import jayhorn.solver.princess.PrincessProverFactory;
 import jayhorn.solver.z3.Z3ProverFactory;
 import jayhorn.test.Util;
+import soottocfg.cfg.statement.Statement;
 import soottocfg.soot.SootToCfg;
 import soottocfg.soot.SootToCfg.MemModel;
 
@@ -67,16 +74,26 @@ public class FaultLocalizationTest {
 
 	@Test
 	public void testOldAlgorithmWithPrincess() {
-		oldAlgorithm(new PrincessProverFactory());
+		oldAlgorithm(new PrincessProverFactory(), "interpolation");
 	}
 
 	@Test
 	public void testOldAlgorithmWithZ3() {
-		oldAlgorithm(new Z3ProverFactory());
+		oldAlgorithm(new Z3ProverFactory(), "interpolation");
+	}
+
+	@Test
+	public void testUnsatCoresWithPrincess() {
+		oldAlgorithm(new PrincessProverFactory(), "unsatcore");
+	}
+
+	@Test
+	public void testUnsatCoresWithZ3() {
+		oldAlgorithm(new Z3ProverFactory(), "unsatcore");
 	}
 
 	
-	protected void oldAlgorithm(ProverFactory factory) {
+	protected void oldAlgorithm(ProverFactory factory, String localizationMode) {
 		/**
 		 * TODO: for now, this just ensures that the interpolation
 		 * does not crash during the fault localization. 
@@ -88,8 +105,9 @@ public class FaultLocalizationTest {
 		 * Then we could ensure that the result by both solvers is
 		 * sort of minimal.
 		 */
-		System.out.println("\nRunning test " + this.sourceFile.getName() + " with "+factory.getClass()+"\n");
+		System.out.println("\nRunning test " + this.sourceFile.getName() + " with "+factory.getClass()+" ("+localizationMode+")\n");
 		File classDir = null;
+		Options.v().setLocalizationMode(localizationMode);
 		try {
 			classDir = Util.compileJavaFile(this.sourceFile);
 			SootToCfg soot2cfg = new SootToCfg(false, true, MemModel.BurstallBornat);
@@ -98,14 +116,51 @@ public class FaultLocalizationTest {
 			checker.setDuplicatedSourceLocations(soot2cfg.getDuplicatedSourceLocations());
 			
 			checker.checkProgram(soot2cfg.getProgram());
+			if ("FaultLocalization01.java".equals(this.sourceFile.getName())) {
+				// the comparison of the string literals is needed to explain
+				// the dead return statement.
+				checkLocalizedLines(checker, "<faultlocalization.FaultLocalization01: boolean stringCompare()>",
+						new HashSet<Integer>(Arrays.asList(18, 19, 20)), 19);
+				checkLocalizedLines(checker, "<faultlocalization.FaultLocalization01: void loopOfByOne(int[])>",
+						new HashSet<Integer>(Arrays.asList(24, 25)), null);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			Assert.fail();
 		} finally {
+			Options.resetInstance();
 			if (classDir!=null) {
 				classDir.deleteOnExit();
 			}
 		}	
 	}
+
+	/**
+	 * Checks that 'methodName' has at least one localized inconsistency,
+	 * that all localized lines of 'methodName' are in 'allowedLines', and
+	 * that each inconsistency contains 'requiredLine' unless it is null.
+	 */
+	private void checkLocalizedLines(InconsistencyChecker checker, String methodName, Set<Integer> allowedLines,
+			Integer requiredLine) {
+		boolean found = false;
+		for (Entry<Inconsistency, Set<Statement>> entry : checker.getLocalizedInconsistencies().entrySet()) {
+			if (!entry.getKey().getMethod().getMethodName().equals(methodName)) {
+				continue;
+			}
+			Set<Integer> lines = new HashSet<Integer>();
+			for (Statement s : entry.getValue()) {
+				if (s.getSourceLocation() != null) {
+					lines.add(s.getSourceLocation().getLineNumber());
+				}
+			}
+			Assert.assertFalse("Nothing localized for " + methodName, lines.isEmpty());
+			Assert.assertTrue("Unexpected lines " + lines + " for " + methodName, allowedLines.containsAll(lines));
+			if (requiredLine != null) {
+				Assert.assertTrue("Missing line " + requiredLine + " for " + methodName, lines.contains(requiredLine));
+			}
+			found = true;
+		}
+		Assert.assertTrue("No inconsistency localized for " + methodName, found);
+	}
 		
 }
@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package jayhorn.test.regression_tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jayhorn.old_inconsistency_check.InconsistencyCheckpoint;
+import jayhorn.old_inconsistency_check.InconsistencyCheckpoint.Entry;
+import jayhorn.old_inconsistency_check.InconsistencyCheckpoint.Outcome;
+
+/**
+ * Writes entries to a checkpoint file, loads the file again, and checks
+ * that only the entries of analyses that terminated normally are restored.
+ *
+ * @author schaef
+ *
+ */
+public class InconsistencyCheckpointTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File file = File.createTempFile("checkpoint", ".txt");
+		try {
+			List<List<Integer>> localized = new LinkedList<List<Integer>>();
+			localized.add(Arrays.asList(3, 4));
+			localized.add(Arrays.asList(7));
+			InconsistencyCheckpoint checkpoint = new InconsistencyCheckpoint(file);
+			checkpoint.record("<A: void f()>",
+					new Entry("f1", Outcome.Normal, "A.java", Arrays.asList(3, 4, 7), localized));
+			checkpoint.record("<A: void g()>", new Entry("g1", Outcome.Normal, null, Collections.<Integer> emptyList(),
+					new LinkedList<List<Integer>>()));
+			checkpoint.record("<A: void h()>", new Entry("h1", Outcome.Normal, null,
+					Collections.<Integer> emptyList(), new LinkedList<List<Integer>>()));
+			// e.g., the localization of h timed out in a later run.
+			checkpoint.record("<A: void h()>", new Entry("h1", Outcome.Timeout, null,
+					Collections.<Integer> emptyList(), new LinkedList<List<Integer>>()));
+			// a later entry overrides an earlier one.
+			checkpoint.record("<A: void g()>", new Entry("g2", Outcome.Normal, null, Collections.<Integer> emptyList(),
+					new LinkedList<List<Integer>>()));
+
+			InconsistencyCheckpoint restored = new InconsistencyCheckpoint(file);
+			Entry f = restored.lookup("<A: void f()>", "f1");
+			Assert.assertNotNull(f);
+			Assert.assertEquals(Outcome.Normal, f.getOutcome());
+			Assert.assertEquals("A.java", f.getSourceFileName());
+			Assert.assertEquals(Arrays.asList(3, 4, 7), f.getInconsistentLines());
+			Assert.assertEquals(localized, f.getLocalizedLines());
+
+			Entry g = restored.lookup("<A: void g()>", "g2");
+			Assert.assertNotNull(g);
+			Assert.assertNull(g.getSourceFileName());
+			Assert.assertTrue(g.getInconsistentLines().isEmpty());
+			Assert.assertTrue(g.getLocalizedLines().isEmpty());
+
+			// changed bodies and methods that did not terminate normally are
+			// analyzed again.
+			Assert.assertNull(restored.lookup("<A: void f()>", "f2"));
+			Assert.assertNull(restored.lookup("<A: void g()>", "g1"));
+			Assert.assertNull(restored.lookup("<A: void h()>", "h1"));
+			Assert.assertNull(restored.lookup("<A: void i()>", "i1"));
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+}
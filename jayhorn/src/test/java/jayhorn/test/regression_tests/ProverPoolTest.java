@@ -0,0 +1,82 @@
+/**
+ *
+ */
+package jayhorn.test.regression_tests;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jayhorn.solver.Prover;
+import jayhorn.solver.ProverExpr;
+import jayhorn.solver.ProverFactory;
+import jayhorn.solver.ProverPool;
+import jayhorn.solver.ProverResult;
+import jayhorn.solver.princess.PrincessProverFactory;
+
+/**
+ * Checks that a ProverPool spawns its provers in advance, replaces each
+ * prover that it hands out, and hands out provers that work.
+ *
+ * @author schaef
+ *
+ */
+public class ProverPoolTest {
+
+	/**
+	 * Counts the provers spawned by a factory.
+	 */
+	private static class CountingFactory implements ProverFactory {
+		private final ProverFactory factory = new PrincessProverFactory();
+		final AtomicInteger spawned = new AtomicInteger();
+
+		@Override
+		public Prover spawn() {
+			Prover p = factory.spawn();
+			spawned.incrementAndGet();
+			return p;
+		}
+
+		@Override
+		public Prover spawnWithLog(String basename) {
+			return factory.spawnWithLog(basename);
+		}
+	}
+
+	@Test
+	public void testPool() throws InterruptedException {
+		CountingFactory factory = new CountingFactory();
+		ProverPool pool = new ProverPool(factory, 2);
+		try {
+			waitForSpawned(factory, 2);
+			Prover first = pool.spawn();
+			Prover second = pool.spawn();
+			Assert.assertNotSame(first, second);
+			// both provers are replaced.
+			waitForSpawned(factory, 4);
+			for (Prover p : new Prover[] { first, second }) {
+				ProverExpr x = p.mkVariable("x", p.getIntType());
+				p.addAssertion(p.mkGt(x, p.mkLiteral(0)));
+				Assert.assertEquals(ProverResult.Sat, p.checkSat(true));
+				p.addAssertion(p.mkLt(x, p.mkLiteral(0)));
+				Assert.assertEquals(ProverResult.Unsat, p.checkSat(true));
+				p.shutdown();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		// no provers are spawned after shutdown.
+		int spawned = factory.spawned.get();
+		Thread.sleep(100);
+		Assert.assertEquals(spawned, factory.spawned.get());
+	}
+
+	private void waitForSpawned(CountingFactory factory, int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 60000;
+		while (factory.spawned.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(expected, factory.spawned.get());
+	}
+}
@@ -0,0 +1,25 @@
+package faultlocalization;
+
+/**
+ * @author schaef
+ *
+ */
+public class FaultLocalization02 {
+
+	public int severalInconsistencies(Object a, Object b, int[] arr) {
+		int r = 0;
+		a.hashCode();
+		if (a == null) {
+			r = 1; // INFEASIBLE
+		}
+		b.hashCode();
+		if (b == null) {
+			r = 2; // INFEASIBLE
+		}
+		int i = arr.length;
+		if (arr == null) {
+			r = i; // INFEASIBLE
+		}
+		return r;
+	}
+}
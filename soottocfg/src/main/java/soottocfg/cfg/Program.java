@@ -15,7 +15,6 @@ import org.jgrapht.Graphs;
 import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
 
-import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
 
 import soottocfg.cfg.method.CfgBlock;
@@ -25,6 +24,10 @@ import soottocfg.cfg.statement.Statement;
 import soottocfg.cfg.type.Type;
 
 /**
+ * Methods and globals can be added from several threads while the methods
+ * are translated in parallel, so the accessors for methods and globals are
+ * synchronized.
+ * 
  * @author schaef
  *
  */
@@ -40,49 +43,41 @@ public class Program {
 	private DirectedGraph<Method, DefaultEdge> callGraph;
 	private Map<Method, Set<Variable>> modifiedGlobals;
 	
-	public Variable[] getGlobalVariables() {
+	public synchronized Variable[] getGlobalVariables() {
 		return this.globalVariables.values().toArray(new Variable[this.globalVariables.size()]);
 	}
 
-	public Variable createFreshGlobal(String prefix, Type t) {
-		final String vname = prefix + this.globalVariables.size();
-		Preconditions.checkArgument(!globalVariables.containsKey(vname));
-		Variable v = new Variable(vname, t);
-		this.globalVariables.put(vname, v);
-		return v;
-	}
-
 	public Variable lookupGlobalVariable(String varName, Type t) {
 		return lookupGlobalVariable(varName, t, false, false);
 	}
 
-	public Variable lookupGlobalVariable(String varName, Type t, boolean constant, boolean unique) {
+	public synchronized Variable lookupGlobalVariable(String varName, Type t, boolean constant, boolean unique) {
 		if (!this.globalVariables.containsKey(varName)) {
 			this.globalVariables.put(varName, new Variable(varName, t, constant, unique));
 		}
 		return this.globalVariables.get(varName);
 	}
 
-	public Method loopupMethod(String methodSignature) {
+	public synchronized Method loopupMethod(String methodSignature) {
 		return methods.get(methodSignature);
 	}
 	
-	public void addMethod(Method m) {
+	public synchronized void addMethod(Method m) {
 		//set the callGraph to null because it has to be recomputed.
 		callGraph=null;
 		modifiedGlobals=null;
 		this.methods.put(m.getMethodName(), m);
 	}
 
-	public void addEntryPoint(Method entry) {
+	public synchronized void addEntryPoint(Method entry) {
 		this.entryPoints.add(entry);
 	}
 
-	public Method[] getEntryPoints() {
+	public synchronized Method[] getEntryPoints() {
 		return entryPoints.toArray(new Method[entryPoints.size()]);
 	}
 
-	public Method[] getMethods() {
+	public synchronized Method[] getMethods() {
 		return methods.values().toArray(new Method[methods.size()]);
 	}
 
@@ -3,11 +3,15 @@
  */
 package soottocfg.cfg;
 
+import java.io.Serializable;
+
 /**
  * @author schaef
  *
  */
-public class SourceLocation {
+public class SourceLocation implements Serializable {
+
+	private static final long serialVersionUID = -1493264811728436519L;
 
 	private final String sourceFileName;
 	private final int lineNumber;
@@ -70,6 +70,17 @@ public class Method extends AbstractBaseGraph<CfgBlock, CfgEdge> implements Node
 		this.parameterList = Collections.unmodifiableList(params);
 	}
 
+	/**
+	 * Creates a new method from a subgraph of this method. The new method
+	 * shares its blocks with this method, so the statements of these blocks
+	 * must not be modified. The blocks already contain the assignment to
+	 * the this-variable, so it is not added again and several threads can
+	 * create methods from subgraphs of the same method.
+	 * 
+	 * @param subgraph
+	 * @param newMethodName
+	 * @return The new method.
+	 */
 	public Method createMethodFromSubgraph(DirectedGraph<CfgBlock, CfgEdge> subgraph, String newMethodName) {
 		Preconditions.checkArgument(vertexSet().containsAll(subgraph.vertexSet()), "Method does not contain all nodes from subgraph.");
 		Method subgraphMethod = new Method(newMethodName, this.parameterList, this.returnType);
@@ -80,7 +91,7 @@ public class Method extends AbstractBaseGraph<CfgBlock, CfgEdge> implements Node
 		for (CfgEdge e : subgraph.edgeSet()) {
 			subgraphMethod.addEdge(subgraph.getEdgeSource(e), subgraph.getEdgeTarget(e));
 		}
-		subgraphMethod.initialize(thisVariable, returnVariable, locals, source, isProgramEntry);
+		subgraphMethod.restore(thisVariable, returnVariable, locals, source, isProgramEntry);
 		return subgraphMethod;
 	}
 	
@@ -90,14 +101,7 @@ public class Method extends AbstractBaseGraph<CfgBlock, CfgEdge> implements Node
 
 	public void initialize(Variable thisVariable, Variable returnVariable,
 			Collection<Variable> locals, CfgBlock source, boolean isEntryPoint) {
-		Preconditions.checkNotNull(parameterList, "Parameter list must not be null");
-		Preconditions.checkNotNull(source);
-		
-		this.thisVariable = thisVariable;
-		this.returnVariable = returnVariable;
-		this.locals = new HashSet<Variable>(locals);
-		this.source = source;
-		this.isProgramEntry = isEntryPoint;
+		restore(thisVariable, returnVariable, locals, source, isEntryPoint);
 			
 		if (this.thisVariable!=null) {
 			//then the first parameter must be the reference to the current instance
@@ -110,7 +114,28 @@ public class Method extends AbstractBaseGraph<CfgBlock, CfgEdge> implements Node
 		}		
 	}
 	
-
+	/**
+	 * Like initialize, but for a method whose blocks have been restored from
+	 * a previous translation (e.g., from a cache). The blocks already contain
+	 * the assignment to the this-variable, so it is not added again.
+	 * 
+	 * @param thisVariable
+	 * @param returnVariable
+	 * @param locals
+	 * @param source
+	 * @param isEntryPoint
+	 */
+	public void restore(Variable thisVariable, Variable returnVariable,
+			Collection<Variable> locals, CfgBlock source, boolean isEntryPoint) {
+		Preconditions.checkNotNull(parameterList, "Parameter list must not be null");
+		Preconditions.checkNotNull(source);
+		
+		this.thisVariable = thisVariable;
+		this.returnVariable = returnVariable;
+		this.locals = new HashSet<Variable>(locals);
+		this.source = source;
+		this.isProgramEntry = isEntryPoint;
+	}
 
 	/**
 	 * Adds a guard expression as label to an edge. The label must not be null
@@ -222,6 +247,15 @@ public class Method extends AbstractBaseGraph<CfgBlock, CfgEdge> implements Node
 		return ret;
 	}
 
+	/**
+	 * Returns an {@link Optional} Variable of the this-variable of the
+	 * current Method, which is absent for static methods.
+	 * @return Optional this-variable.
+	 */
+	public Optional<Variable> getThisVariable() {
+		return Optional.fromNullable(thisVariable);
+	}
+
 	/**
 	 * Returns an {@link Optional} return type of the method.
 	 * I.e., either a type or None if the method returns void
@@ -29,4 +29,13 @@ public class BoolType extends PrimitiveType {
 	public String toString() {
 		return "boolean";
 	}
+
+	/**
+	 * Keeps the instance unique when it is deserialized.
+	 * 
+	 * @return
+	 */
+	private Object readResolve() {
+		return instance;
+	}
 }
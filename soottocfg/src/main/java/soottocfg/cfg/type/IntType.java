@@ -29,4 +29,13 @@ public class IntType extends PrimitiveType {
 	public String toString() {
 		return "int";
 	}
+
+	/**
+	 * Keeps the instance unique when it is deserialized.
+	 * 
+	 * @return
+	 */
+	private Object readResolve() {
+		return instance;
+	}
 }
@@ -21,4 +21,13 @@ public class Type implements Serializable {
 	protected Type() {
 	}
 
+	/**
+	 * Keeps the instance unique when it is deserialized.
+	 * 
+	 * @return
+	 */
+	private Object readResolve() {
+		return instance;
+	}
+
 }
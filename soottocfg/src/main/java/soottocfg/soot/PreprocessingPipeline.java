@@ -0,0 +1,179 @@
+/**
+ *
+ */
+package soottocfg.soot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.common.base.Preconditions;
+
+import soot.Body;
+import soot.SootMethod;
+import soottocfg.soot.util.PhaseTimer;
+import soottocfg.soot.util.PhaseTimer.MethodTimer;
+import soottocfg.soot.util.PhaseTimer.Phase;
+import soottocfg.soot.util.SootTranslationHelpers;
+
+/**
+ * The transformations that are applied to each body before it is
+ * translated, as a list of stages. The stages either run one after the
+ * other on the current thread (run), or on a separate thread that passes
+ * the transformed bodies through a bounded queue to a sink on the current
+ * thread (runStaged). In the second case, the sink works on one body while
+ * the stages work on the next ones.
+ *
+ * The stages modify global Soot state that is not thread-safe (e.g., the
+ * ThrowableSet.Manager, the caches of the Hierarchy, and the phantom
+ * classes of the Scene), so all stages run on the same thread, and the sink
+ * must not modify Soot state.
+ *
+ * @author schaef
+ *
+ */
+public class PreprocessingPipeline {
+
+	/**
+	 * One transformation of a body. A stage must not keep state between
+	 * bodies.
+	 */
+	public interface Stage {
+		Phase getPhase();
+
+		void transform(Body body);
+	}
+
+	/**
+	 * Receives the bodies after the last stage. It runs at the same time as
+	 * the stages, so it must only read the Soot state.
+	 */
+	public interface Sink {
+		void accept(Body body, MethodTimer mt);
+	}
+
+	private static class Item {
+		final Body body;
+		final MethodTimer mt;
+		Throwable error = null;
+
+		Item(Body body, MethodTimer mt) {
+			this.body = body;
+			this.mt = mt;
+		}
+	}
+
+	// put in the queue after the last body.
+	private static final Item endOfBodies = new Item(null, null);
+
+	private final List<Stage> stages;
+
+	public PreprocessingPipeline(List<Stage> stages) {
+		this.stages = Collections.unmodifiableList(new ArrayList<Stage>(stages));
+	}
+
+	public List<Stage> getStages() {
+		return stages;
+	}
+
+	/**
+	 * Applies all stages to 'body' on the current thread.
+	 *
+	 * @param body
+	 * @param mt
+	 *            Timer in which the time of each stage is recorded.
+	 */
+	public void run(Body body, MethodTimer mt) {
+		for (Stage stage : stages) {
+			mt.begin();
+			stage.transform(body);
+			mt.end(stage.getPhase());
+		}
+	}
+
+	/**
+	 * Applies all stages to all 'bodies' on one separate thread, and passes
+	 * each body to 'sink' on the current thread once the last stage is done
+	 * with it. If a stage or the sink throws an exception, the remaining
+	 * bodies are still pre-processed (but not passed to the sink), and the
+	 * first exception is thrown at the end. The caller has to create the
+	 * Soot state that the sink uses and that is created lazily (e.g., the
+	 * Hierarchy) before, because the sink must not modify Soot state.
+	 *
+	 * @param bodies
+	 * @param queueSize
+	 *            Number of pre-processed bodies that may wait for the sink.
+	 * @param timer
+	 *            Timer in which the time of each stage is recorded.
+	 * @param sink
+	 */
+	public void runStaged(final List<Body> bodies, int queueSize, final PhaseTimer timer, Sink sink) {
+		Preconditions.checkArgument(queueSize > 0, "Queue size must be positive.");
+		final BlockingQueue<Item> queue = new ArrayBlockingQueue<Item>(queueSize);
+		Thread preprocessor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (Body body : bodies) {
+						Item item = new Item(body, timer.startMethod(body.getMethod().getSignature()));
+						try {
+							setContext(body);
+							PreprocessingPipeline.this.run(body, item.mt);
+						} catch (Throwable t) {
+							item.error = t;
+						}
+						queue.put(item);
+					}
+					queue.put(endOfBodies);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "preprocessing");
+		preprocessor.setDaemon(true);
+		preprocessor.start();
+
+		Throwable error = null;
+		try {
+			Item item;
+			while ((item = queue.take()) != endOfBodies) {
+				if (error == null) {
+					error = item.error;
+				}
+				if (error == null) {
+					try {
+						sink.accept(item.body, item.mt);
+					} catch (Throwable t) {
+						error = t;
+					}
+				}
+			}
+			preprocessor.join();
+		} catch (InterruptedException e) {
+			preprocessor.interrupt();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e.toString());
+		}
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		} else if (error instanceof Error) {
+			throw (Error) error;
+		} else if (error != null) {
+			throw new RuntimeException(error);
+		}
+	}
+
+	/**
+	 * Sets the translation context of the current thread to 'body', which
+	 * is needed, e.g., to create source locations.
+	 *
+	 * @param body
+	 */
+	static void setContext(Body body) {
+		SootMethod sm = body.getMethod();
+		SootTranslationHelpers.v().setCurrentClass(sm.getDeclaringClass());
+		SootTranslationHelpers.v().setCurrentMethod(sm);
+	}
+}
@@ -21,22 +21,20 @@ package soottocfg.soot;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
+import java.util.Set;
 
 import soot.BooleanType;
 import soot.Local;
 import soot.Modifier;
+import soot.PackManager;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootField;
@@ -45,6 +43,9 @@ import soot.Type;
 import soot.VoidType;
 import soot.jimple.Jimple;
 import soot.jimple.JimpleBody;
+import soot.jimple.toolkits.pointer.DumbPointsToAnalysis;
+import soottocfg.soot.util.JarScanner;
+import soottocfg.soot.util.ScopeFilter;
 
 /**
  * The Soot Runner
@@ -56,10 +57,60 @@ public class SootRunner {
 
 	private final soot.options.Options sootOpt;
 
+	private final Set<String> skippedClasses = new HashSet<String>();
+	private ScopeFilter scope = new ScopeFilter();
+
 	public SootRunner() {
 		sootOpt = soot.options.Options.v();
 	}
 
+	/**
+	 * Sets classes of the input that do not have to be translated (e.g.,
+	 * because their translation has been cached). Soot does not load their
+	 * bodies, and they are not application classes. Soot still loads their
+	 * signatures if they are referenced by other classes.
+	 * 
+	 * @param classNames
+	 */
+	public void setSkippedClasses(Collection<String> classNames) {
+		skippedClasses.clear();
+		skippedClasses.addAll(classNames);
+	}
+
+	/**
+	 * Restricts the application classes to the classes in 'scope'. Soot does
+	 * not load the bodies of the other classes of the input, and they become
+	 * library classes.
+	 * 
+	 * @param scope
+	 */
+	public void setScope(ScopeFilter scope) {
+		this.scope = scope;
+	}
+
+	/**
+	 * Runs SPARK on the classes loaded by run. All methods of application
+	 * classes are treated as reachable. Only the points-to analysis is kept
+	 * in the Scene; the call graph is released because it misses the edges
+	 * of calls on objects that are not allocated in the loaded bodies. If
+	 * SPARK fails, the Scene keeps a points-to analysis that knows nothing,
+	 * and the exception is passed on to the caller.
+	 */
+	public void runPointsToAnalysis() {
+		sootOpt.set_whole_program(true);
+		sootOpt.setPhaseOption("cg", "all-reachable:true");
+		sootOpt.setPhaseOption("cg.spark", "enabled:true");
+		sootOpt.setPhaseOption("cg.spark", "on-fly-cg:true");
+		try {
+			PackManager.v().getPack("cg").apply();
+		} catch (RuntimeException e) {
+			Scene.v().setPointsToAnalysis(DumbPointsToAnalysis.v());
+			throw e;
+		} finally {
+			Scene.v().releaseCallGraph();
+		}
+	}
+
 	public void run(String input, String classPath) {
 		if (null == input || input.isEmpty()) {
 			return;
@@ -191,6 +242,9 @@ public class SootRunner {
 		sootOpt.set_allow_phantom_refs(true);
 
 		for (String s : classes) {
+			if (skippedClasses.contains(s) || !scope.containsClass(s)) {
+				continue;
+			}
 			Scene.v().addBasicClass(s, SootClass.BODIES);
 		}
 
@@ -223,7 +277,14 @@ public class SootRunner {
 					sc.setResolvingLevel(SootClass.SIGNATURES);
 				}
 
-				if (classes.contains(sc.getName())) {
+				if (skippedClasses.contains(sc.getName())) {
+					sc.setLibraryClass();
+				} else if (!scope.containsClass(sc.getName())) {
+					// classes from a process dir are application classes.
+					if (sc.isApplicationClass() && !assertionClassName.equals(sc.getName())) {
+						sc.setLibraryClass();
+					}
+				} else if (classes.contains(sc.getName())) {
 					sc.setApplicationClass();
 				}
 			}
@@ -293,44 +354,7 @@ public class SootRunner {
 	 * @returns jarFiles List of dependent JARs
 	 */
 	protected List<File> extractClassPath(File file) {
-		List<File> jarFiles = new LinkedList<File>();
-		try {
-			// open JAR file
-			JarFile jarFile = new JarFile(file);
-
-			// get manifest and their main attributes
-			Manifest manifest = jarFile.getManifest();
-			if (manifest == null) {
-				jarFile.close();
-				return jarFiles;
-			}
-			Attributes mainAttributes = manifest.getMainAttributes();
-			if (mainAttributes == null) {
-				jarFile.close();
-				return jarFiles;
-			}
-			String classPath = mainAttributes.getValue(Attributes.Name.CLASS_PATH);
-
-			// close JAR file
-			jarFile.close();
-
-			// empty class path?
-			if (null == classPath)
-				return jarFiles;
-
-			// look for dependent JARs
-			String[] classPathItems = classPath.split(" ");
-			for (String classPathItem : classPathItems) {
-				if (classPathItem.endsWith(".jar")) {
-					// add jar
-					jarFiles.add(new File(file.getParent(), classPathItem));
-				}
-			}
-
-		} catch (IOException e) {
-			throw new RuntimeException(e.toString());
-		}
-		return jarFiles;
+		return new LinkedList<File>(JarScanner.scan(file).getClassPath());
 	}
 
 	/**
@@ -341,34 +365,7 @@ public class SootRunner {
 	 * @returns list of classes in the Jar file.
 	 */
 	protected List<String> enumClasses(File file) {
-		List<String> classes = new LinkedList<String>();
-		try {
-			// open JAR file
-			JarFile jarFile = new JarFile(file);
-			Enumeration<JarEntry> entries = jarFile.entries();
-
-			// iterate JAR entries
-			while (entries.hasMoreElements()) {
-				JarEntry entry = entries.nextElement();
-				String entryName = entry.getName();
-
-				if (entryName.endsWith(".class")) {
-					// get class
-					String className = entryName.substring(0, entryName.length() - ".class".length());
-					className = className.replace('/', '.');
-
-					// add class
-					classes.add(className);
-				}
-			}
-
-			// close JAR file
-			jarFile.close();
-
-		} catch (IOException e) {
-			throw new RuntimeException(e.getMessage());
-		}
-		return classes;
+		return new LinkedList<String>(JarScanner.scan(file).getClasses());
 	}
 
 }
@@ -3,34 +3,65 @@
  */
 package soottocfg.soot;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.google.common.base.Preconditions;
 
 import soot.Body;
+import soot.Hierarchy;
 import soot.RefType;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootField;
 import soot.SootMethod;
 import soot.Unit;
+import soot.jimple.InterfaceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.VirtualInvokeExpr;
 import soot.jimple.toolkits.annotation.nullcheck.NullnessAnalysis;
 import soot.jimple.toolkits.scalar.UnreachableCodeEliminator;
 import soot.toolkits.graph.CompleteUnitGraph;
 import soottocfg.cfg.Program;
 import soottocfg.cfg.SourceLocation;
 import soottocfg.cfg.Variable;
+import soottocfg.cfg.method.CfgBlock;
 import soottocfg.cfg.method.Method;
+import soottocfg.cfg.statement.CallStatement;
+import soottocfg.cfg.statement.Statement;
+import soottocfg.soot.PreprocessingPipeline.Stage;
 import soottocfg.soot.transformers.AssertionReconstruction;
 import soottocfg.soot.transformers.ExceptionTransformer;
 import soottocfg.soot.transformers.SwitchStatementRemover;
 import soottocfg.soot.transformers.VirtualCallResolver;
+import soottocfg.soot.util.DispatchIndex;
 import soottocfg.soot.util.DuplicatedCatchDetection;
+import soottocfg.soot.memory_model.BasicMemoryModel;
+import soottocfg.soot.memory_model.MemoryModel;
+import soottocfg.soot.util.LibrarySummaries;
+import soottocfg.soot.util.MayThrowSummaries;
 import soottocfg.soot.util.MethodInfo;
+import soottocfg.soot.util.NonNullSummaries;
+import soottocfg.soot.util.PointsToTargets;
+import soottocfg.soot.util.PhaseTimer;
+import soottocfg.soot.util.PhaseTimer.MethodTimer;
+import soottocfg.soot.util.PhaseTimer.Phase;
+import soottocfg.soot.util.ScopeFilter;
 import soottocfg.soot.util.SootTranslationHelpers;
+import soottocfg.soot.util.TranslationCache;
 import soottocfg.soot.visitors.SootStmtSwitch;
 
 /**
@@ -49,10 +80,51 @@ public class SootToCfg {
 
 	private boolean debug = false;
 
+	// 0: quiet, 1: time per phase, 2: also the slowest methods, 3: also
+	// print every body and translated method.
+	private int verbosity = 0;
+	private final PhaseTimer timer = new PhaseTimer(10);
+
 	private final boolean resolveVirtualCalls;
 	private final boolean createAssertionsForUncaughtExceptions;
+	private final MemModel memoryModelKind;
+
+	private final Set<SourceLocation> locations = Collections
+			.newSetFromMap(new ConcurrentHashMap<SourceLocation, Boolean>());
+
+	private int translationThreads = 1;
 
-	private final Set<SourceLocation> locations = new HashSet<SourceLocation>();
+	private boolean lazyTranslation = false;
+	private final List<String> entryPointSignatures = new LinkedList<String>();
+
+	private ScopeFilter scope = new ScopeFilter();
+
+	private LibrarySummaries librarySummaries = null;
+
+	/**
+	 * The stages that can be disabled with setDisabledStages.
+	 */
+	public static final Set<Phase> optionalStages = Collections.unmodifiableSet(EnumSet.of(Phase.MayThrowAnalysis,
+			Phase.UnreachableCodeEliminator, Phase.DuplicatedCatchDetection, Phase.AssertionReconstruction,
+			Phase.ExceptionTransformer, Phase.SwitchStatementRemover, Phase.VirtualCallResolver));
+
+	private final Set<Phase> disabledStages = EnumSet.noneOf(Phase.class);
+	private boolean stagedPreprocessing = false;
+	private int stageQueueSize = 16;
+	private PreprocessingPipeline preprocessing;
+	private MayThrowSummaries mayThrowSummaries = null;
+	private boolean interproceduralNullness = false;
+	private NonNullSummaries nonNullSummaries = null;
+	private DispatchIndex dispatchIndex = null;
+	private boolean pointsToAnalysis = false;
+	private PointsToTargets pointsToTargets = null;
+	private boolean typeSwitchDispatch = false;
+
+	private File cacheDirectory = null;
+	// signatures of the methods that have been restored from the cache.
+	private final Set<String> restoredMethods = new HashSet<String>();
+	// concrete methods for which we tried to retrieve a body.
+	private final Set<SootMethod> attemptedMethods = new HashSet<SootMethod>();
 
 	// Create a new program
 	private final Program program = new Program();
@@ -73,10 +145,176 @@ public class SootToCfg {
 
 		resolveVirtualCalls = resolveVCalls;
 		createAssertionsForUncaughtExceptions = excAsAssert;
+		memoryModelKind = memModel;
 
 		SootTranslationHelpers.v().setProgram(program);
 	}
 
+	/**
+	 * Sets the number of threads that translate pre-processed method bodies
+	 * into CFGs in parallel. The pre-processing always runs on the calling
+	 * thread. With one thread (the default), all methods are translated on
+	 * the calling thread.
+	 * 
+	 * @param threads
+	 */
+	public void setTranslationThreads(int threads) {
+		Preconditions.checkArgument(threads > 0, "Need at least one thread for the translation.");
+		translationThreads = threads;
+	}
+
+	/**
+	 * If set, only methods that are reachable from the entry points are
+	 * translated. Starting from the entry points, a method is translated once
+	 * the first CallStatement that targets it has been created. Methods that
+	 * are never called do not end up in the program.
+	 * 
+	 * @param lazy
+	 */
+	public void setLazyTranslation(boolean lazy) {
+		lazyTranslation = lazy;
+	}
+
+	/**
+	 * Sets the signatures of the entry points of the program (e.g.,
+	 * "<Foo: void bar(int)>"). If none are set, the entry points computed by
+	 * Soot are used.
+	 * 
+	 * @param signatures
+	 */
+	public void setEntryPoints(Collection<String> signatures) {
+		entryPointSignatures.clear();
+		entryPointSignatures.addAll(signatures);
+	}
+
+	/**
+	 * Restricts the translation to the classes and methods in 'scope'. Other
+	 * classes are not application classes and other methods are not
+	 * translated, so calls to them are calls to methods without body (i.e.,
+	 * their effect is havoced). An empty scope (the default) contains all
+	 * classes.
+	 * 
+	 * @param scope
+	 */
+	public void setScope(ScopeFilter scope) {
+		this.scope = scope;
+	}
+
+	/**
+	 * Sets the summaries that are used as bodies of the called methods that
+	 * are not translated (e.g., JDK methods). By default, these methods have
+	 * no body.
+	 * 
+	 * @param summaries
+	 */
+	public void setLibrarySummaries(LibrarySummaries summaries) {
+		librarySummaries = summaries;
+	}
+
+	/**
+	 * Enables the interprocedural analysis of non-null parameters, return
+	 * values, and final fields, so that ExceptionTransformer adds no null
+	 * checks for their dereferences. Disabled by default.
+	 * 
+	 * @param enabled
+	 */
+	public void setInterproceduralNullness(boolean enabled) {
+		interproceduralNullness = enabled;
+	}
+
+	/**
+	 * Enables SPARK to restrict the callees of virtual calls to the types of
+	 * the objects that their receivers may point to. Calls on receivers that
+	 * may hold objects that the program does not allocate itself are not
+	 * restricted (see PointsToTargets). Only has an effect if virtual calls
+	 * are resolved.
+	 * Disabled by default.
+	 * 
+	 * @param enabled
+	 */
+	public void setPointsToAnalysis(boolean enabled) {
+		pointsToAnalysis = enabled;
+	}
+
+	/**
+	 * If set, virtual calls with several possible callees are translated as
+	 * a single branch over the dynamic type of the base with one block per
+	 * callee, instead of a sequence of instanceof checks (see DispatchTag).
+	 * Only has an effect if virtual calls are resolved. Disabled by default.
+	 * 
+	 * @param enabled
+	 */
+	public void setTypeSwitchDispatch(boolean enabled) {
+		typeSwitchDispatch = enabled;
+	}
+
+	/**
+	 * Disables the pre-processing stages in 'stages' (e.g., to measure their
+	 * cost). Only the stages in optionalStages can be disabled. Disabling
+	 * MayThrowAnalysis makes ExceptionTransformer assume that each call may
+	 * throw everything its signature permits. Note that the translation may
+	 * not support bodies that have not been pre-processed by all stages.
+	 * 
+	 * @param stages
+	 */
+	public void setDisabledStages(Collection<Phase> stages) {
+		for (Phase stage : stages) {
+			Preconditions.checkArgument(optionalStages.contains(stage), "Stage " + stage + " cannot be disabled.");
+		}
+		disabledStages.clear();
+		disabledStages.addAll(stages);
+	}
+
+	/**
+	 * If set, the pre-processing stages run on a separate thread, and the
+	 * pre-processed bodies are passed to the translation on the calling
+	 * thread through a queue that holds up to 'queueSize' bodies. This
+	 * replaces the translation threads.
+	 * 
+	 * @param staged
+	 * @param queueSize
+	 */
+	public void setStagedPreprocessing(boolean staged, int queueSize) {
+		Preconditions.checkArgument(queueSize > 0, "Queue size must be positive.");
+		stagedPreprocessing = staged;
+		stageQueueSize = queueSize;
+	}
+
+	/**
+	 * Sets how much is printed about the translation: 0 prints nothing, 1
+	 * prints the time and allocated memory per phase, 2 also prints the
+	 * slowest methods, and 3 also prints each Jimple body and each
+	 * translated method.
+	 * 
+	 * @param level
+	 */
+	public void setVerbosity(int level) {
+		verbosity = level;
+	}
+
+	/**
+	 * Returns the timer that measures the phases of the translation.
+	 * 
+	 * @return
+	 */
+	public PhaseTimer getPhaseTimer() {
+		return timer;
+	}
+
+	/**
+	 * Enables the translation cache in 'directory'. Classes of the input
+	 * whose class file and dependencies did not change since they have been
+	 * stored in the cache (with the same options and class path) are
+	 * restored from the cache. Soot does
+	 * not load their bodies, and they are not translated again. Only works
+	 * for jar files and class folders.
+	 * 
+	 * @param directory
+	 */
+	public void setCacheDirectory(File directory) {
+		cacheDirectory = directory;
+	}
+
 	/**
 	 * Run Soot and translate classes into Boogie/Horn
 	 * 
@@ -88,9 +326,49 @@ public class SootToCfg {
 	 * @param cfg
 	 */
 	public void run(String input, String classPath) {
+		TranslationCache cache = null;
+		Map<String, String> fingerprints = new HashMap<String, String>();
+		Set<String> cachedClasses = new HashSet<String>();
+		if (cacheDirectory != null) {
+			cache = new TranslationCache(cacheDirectory, String.format("%s,%s,%s,%s,%s,%s,%s,%s", resolveVirtualCalls,
+					createAssertionsForUncaughtExceptions, memoryModelKind, disabledStages, interproceduralNullness,
+					pointsToAnalysis, typeSwitchDispatch, classPath));
+			fingerprints = cache.fingerprintClasses(input);
+			for (Entry<String, String> entry : fingerprints.entrySet()) {
+				if (scope.containsAllMethodsOf(entry.getKey()) && cache.contains(entry.getValue())) {
+					cachedClasses.add(entry.getKey());
+				}
+			}
+		}
+
 		// run soot to load all classes.
 		SootRunner runner = new SootRunner();
+		runner.setSkippedClasses(cachedClasses);
+		runner.setScope(scope);
+		long startBytes = timer.allocatedBytes();
+		long startNanos = System.nanoTime();
 		runner.run(input, classPath);
+		timer.addTotal(Phase.SootLoad, System.nanoTime() - startNanos, timer.allocatedBytes() - startBytes);
+		if (pointsToAnalysis && resolveVirtualCalls) {
+			startBytes = timer.allocatedBytes();
+			startNanos = System.nanoTime();
+			try {
+				runner.runPointsToAnalysis();
+				if (PointsToTargets.isAvailable()) {
+					pointsToTargets = new PointsToTargets(getEntryPoints());
+				}
+			} catch (RuntimeException e) {
+				if (verbosity >= 1) {
+					System.out.println("Points-to analysis failed, using the declared types: " + e.toString());
+				}
+			}
+			timer.addTotal(Phase.PointsToAnalysis, System.nanoTime() - startNanos,
+					timer.allocatedBytes() - startBytes);
+		}
+
+		if (cache != null) {
+			restoreFromCache(cache, fingerprints, cachedClasses);
+		}
 
 		SootTranslationHelpers.v().getExceptionGlobalRef();
 
@@ -108,28 +386,85 @@ public class SootToCfg {
 		}
 		
 		
-		List<SootClass> classes = new LinkedList<SootClass>(Scene.v().getClasses());
-		for (SootClass sc : classes) {
-			if (sc == SootTranslationHelpers.v().getAssertionClass()) {
-				// no need to process this guy.
-				continue;
+		List<SootMethod> entryPoints = getEntryPoints();
+		for (String signature : restoredMethods) {
+			// restored methods are not in application classes anymore.
+			Method m = program.loopupMethod(signature);
+			if (entryPointSignatures.isEmpty() && m.isProgramEntryPoint() && Scene.v().containsMethod(signature)
+					&& !Scene.v().getMethod(signature).isStaticInitializer()) {
+				entryPoints.add(Scene.v().getMethod(signature));
 			}
-			processSootClass(sc);
+		}
+		boolean translateReachable = lazyTranslation && !entryPoints.isEmpty();
+		// with lazy translation, only the methods that may be translated are
+		// summarized, so we do not retrieve the other bodies.
+		List<SootMethod> summarizedMethods = null;
+		if (!disabledStages.contains(Phase.MayThrowAnalysis) || interproceduralNullness) {
+			summarizedMethods = translateReachable ? getReachableMethods(entryPoints) : getTranslatedMethods();
 		}
 
-		// now set the entry points.
-		for (SootMethod entryPoint : Scene.v().getEntryPoints()) {
-			if (entryPoint.getDeclaringClass().isApplicationClass()) {
-				if (entryPoint.isStaticInitializer()) {
-					//TODO hack? do not use static initializers as entry points.
+		if (!disabledStages.contains(Phase.MayThrowAnalysis)) {
+			startBytes = timer.allocatedBytes();
+			startNanos = System.nanoTime();
+			mayThrowSummaries = new MayThrowSummaries(summarizedMethods, createAssertionsForUncaughtExceptions);
+			timer.addTotal(Phase.MayThrowAnalysis, System.nanoTime() - startNanos,
+					timer.allocatedBytes() - startBytes);
+			if (verbosity >= 1) {
+				System.out.println("Computed may-throw summaries for " + mayThrowSummaries.size() + " methods.");
+			}
+		}
+		if (interproceduralNullness) {
+			startBytes = timer.allocatedBytes();
+			startNanos = System.nanoTime();
+			nonNullSummaries = new NonNullSummaries(summarizedMethods);
+			timer.addTotal(Phase.NonNullAnalysis, System.nanoTime() - startNanos,
+					timer.allocatedBytes() - startBytes);
+		}
+		if (resolveVirtualCalls) {
+			// shared by the VirtualCallResolver of all bodies.
+			dispatchIndex = new DispatchIndex();
+		}
+		preprocessing = createPreprocessingPipeline();
+		if (translateReachable) {
+			translateReachableMethods(entryPoints);
+		} else {
+			if (lazyTranslation && verbosity >= 1) {
+				System.out.println("No entry points found. Translating all methods.");
+			}
+			List<Body> bodies = new LinkedList<Body>();
+			List<SootClass> classes = new LinkedList<SootClass>(Scene.v().getClasses());
+			for (SootClass sc : classes) {
+				if (sc == SootTranslationHelpers.v().getAssertionClass()) {
+					// no need to process this guy.
 					continue;
 				}
-				Method m = program.loopupMethod(entryPoint.getSignature());
-				if (m != null) {
-					System.out.println("Adding entry point " + m.getMethodName());
-					program.addEntryPoint(m);
-				}
+				processSootClass(sc, bodies);
 			}
+			translateBodies(bodies);
+		}
+
+		if (librarySummaries != null) {
+			int applied = librarySummaries.applyTo(program);
+			if (verbosity >= 1) {
+				System.out.println("Used " + applied + " library summaries.");
+			}
+		}
+
+		// now set the entry points.
+		for (SootMethod entryPoint : entryPoints) {
+			Method m = program.loopupMethod(entryPoint.getSignature());
+			if (m != null) {
+				System.out.println("Adding entry point " + m.getMethodName());
+				program.addEntryPoint(m);
+			}
+		}
+
+		if (cache != null) {
+			storeInCache(cache, fingerprints, cachedClasses);
+		}
+
+		if (verbosity >= 1) {
+			System.out.print(timer.report(verbosity >= 2));
 		}
 
 		// reset all the soot stuff.
@@ -147,11 +482,185 @@ public class SootToCfg {
 	}
 
 	/**
-	 * Analyze a single SootClass and transform all its Methods
+	 * Returns the signatures of the methods that have been restored from
+	 * the translation cache instead of being translated.
+	 * 
+	 * @return
+	 */
+	public Set<String> getRestoredMethods() {
+		return Collections.unmodifiableSet(restoredMethods);
+	}
+
+	/**
+	 * Restores the methods of 'cachedClasses' from 'cache'. If an entry cannot
+	 * be restored, Soot loads the class after all, so that it is translated.
+	 * 
+	 * @param cache
+	 * @param fingerprints
+	 * @param cachedClasses
+	 */
+	private void restoreFromCache(TranslationCache cache, Map<String, String> fingerprints,
+			Set<String> cachedClasses) {
+		MemoryModel mm = SootTranslationHelpers.v().getMemoryModel();
+		if (!(mm instanceof BasicMemoryModel)) {
+			throw new RuntimeException("Translation cache is not supported for " + mm.getClass());
+		}
+		for (String className : new LinkedList<String>(cachedClasses)) {
+			List<Method> methods = cache.restore(fingerprints.get(className), program, (BasicMemoryModel) mm);
+			if (methods == null) {
+				cachedClasses.remove(className);
+				SootClass sc = Scene.v().forceResolve(className, SootClass.BODIES);
+				sc.setApplicationClass();
+				continue;
+			}
+			for (Method m : methods) {
+				restoredMethods.add(m.getMethodName());
+			}
+		}
+		if (verbosity >= 1) {
+			System.out.println("Restored " + restoredMethods.size() + " methods of " + cachedClasses.size()
+					+ " classes from the translation cache.");
+		}
+	}
+
+	/**
+	 * Stores the translation of each class of the input that has not been
+	 * restored from 'cache' and of which all concrete methods have been
+	 * translated (which is not the case for lazy translation).
+	 * 
+	 * @param cache
+	 * @param fingerprints
+	 * @param cachedClasses
+	 */
+	private void storeInCache(TranslationCache cache, Map<String, String> fingerprints, Set<String> cachedClasses) {
+		BasicMemoryModel mm = (BasicMemoryModel) SootTranslationHelpers.v().getMemoryModel();
+		for (Entry<String, String> entry : fingerprints.entrySet()) {
+			if (cachedClasses.contains(entry.getKey()) || !Scene.v().containsClass(entry.getKey())) {
+				continue;
+			}
+			SootClass sc = Scene.v().getSootClass(entry.getKey());
+			List<Method> methods = new LinkedList<Method>();
+			boolean complete = sc.isApplicationClass();
+			for (SootMethod sm : sc.getMethods()) {
+				if (!sm.isConcrete()) {
+					continue;
+				}
+				if (!attemptedMethods.contains(sm)) {
+					complete = false;
+					break;
+				}
+				Method m = program.loopupMethod(sm.getSignature());
+				if (m != null) {
+					methods.add(m);
+				}
+			}
+			if (complete) {
+				cache.store(entry.getValue(), methods, program, mm);
+			}
+		}
+	}
+
+	/**
+	 * Returns the methods for the signatures set with setEntryPoints, or, if
+	 * none are set, the entry points computed by Soot that belong to
+	 * application classes.
+	 * 
+	 * @return
+	 */
+	private List<SootMethod> getEntryPoints() {
+		List<SootMethod> entryPoints = new LinkedList<SootMethod>();
+		if (!entryPointSignatures.isEmpty()) {
+			for (String signature : entryPointSignatures) {
+				if (Scene.v().containsMethod(signature)) {
+					entryPoints.add(Scene.v().getMethod(signature));
+				} else {
+					System.err.println("Entry point " + signature + " not found.");
+				}
+			}
+			return entryPoints;
+		}
+		for (SootMethod entryPoint : Scene.v().getEntryPoints()) {
+			if (entryPoint.getDeclaringClass().isApplicationClass() && inScope(entryPoint)) {
+				if (entryPoint.isStaticInitializer()) {
+					//TODO hack? do not use static initializers as entry points.
+					continue;
+				}
+				entryPoints.add(entryPoint);
+			}
+		}
+		return entryPoints;
+	}
+
+	/**
+	 * Translates the methods that are reachable from 'entryPoints' using a
+	 * worklist. Each round retrieves and translates the bodies of the methods
+	 * on the worklist, and then adds the targets of all CallStatements in the
+	 * translated methods that have not been seen before. Only concrete
+	 * methods of application classes are translated, as in processSootClass.
+	 * 
+	 * @param entryPoints
+	 */
+	private void translateReachableMethods(List<SootMethod> entryPoints) {
+		Set<SootMethod> visited = new HashSet<SootMethod>(entryPoints);
+		List<SootMethod> worklist = new LinkedList<SootMethod>(visited);
+		int translated = 0;
+		while (!worklist.isEmpty()) {
+			List<Body> bodies = new LinkedList<Body>();
+			List<Method> reached = new LinkedList<Method>();
+			for (SootMethod sm : worklist) {
+				if (restoredMethods.contains(sm.getSignature())) {
+					// no need to translate, but we still have to follow
+					// its calls.
+					reached.add(program.loopupMethod(sm.getSignature()));
+					continue;
+				}
+				SootClass sc = sm.getDeclaringClass();
+				if (sc == SootTranslationHelpers.v().getAssertionClass() || !sc.isApplicationClass()
+						|| sc.resolvingLevel() < SootClass.SIGNATURES || !inScope(sm)) {
+					continue;
+				}
+				SootTranslationHelpers.v().setCurrentClass(sc);
+				processSootMethod(sm, bodies);
+			}
+			translateBodies(bodies);
+			translated += bodies.size();
+
+			for (Body body : bodies) {
+				reached.add(program.loopupMethod(body.getMethod().getSignature()));
+			}
+
+			worklist = new LinkedList<SootMethod>();
+			for (Method m : reached) {
+				for (CfgBlock b : m.vertexSet()) {
+					for (Statement s : b.getStatements()) {
+						if (!(s instanceof CallStatement)) {
+							continue;
+						}
+						String callee = ((CallStatement) s).getCallTarget().getMethodName();
+						if (Scene.v().containsMethod(callee)) {
+							SootMethod target = Scene.v().getMethod(callee);
+							if (visited.add(target)) {
+								worklist.add(target);
+							}
+						}
+					}
+				}
+			}
+		}
+		if (verbosity >= 1) {
+			System.out.println("Translated " + translated + " methods reachable from " + entryPoints.size()
+					+ " entry points.");
+		}
+	}
+
+	/**
+	 * Analyze a single SootClass and collect the bodies of all its Methods
 	 * 
 	 * @param sc
+	 * @param bodies
+	 *            List to which the bodies are added.
 	 */
-	private void processSootClass(SootClass sc) {
+	private void processSootClass(SootClass sc, List<Body> bodies) {
 		if (sc.resolvingLevel() < SootClass.SIGNATURES) {
 			return;
 		}
@@ -162,12 +671,110 @@ public class SootToCfg {
 			SootTranslationHelpers.v().setCurrentClass(sc);
 
 			for (SootMethod sm : sc.getMethods()) {
-				processSootMethod(sm);
+				if (inScope(sm)) {
+					processSootMethod(sm, bodies);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the concrete methods that are translated if all methods are
+	 * translated (i.e., ignoring lazy translation).
+	 * 
+	 * @return
+	 */
+	private List<SootMethod> getTranslatedMethods() {
+		List<SootMethod> methods = new LinkedList<SootMethod>();
+		for (SootClass sc : new LinkedList<SootClass>(Scene.v().getApplicationClasses())) {
+			if (sc == SootTranslationHelpers.v().getAssertionClass() || sc.resolvingLevel() < SootClass.BODIES) {
+				continue;
+			}
+			for (SootMethod sm : sc.getMethods()) {
+				if (sm.isConcrete() && inScope(sm)) {
+					methods.add(sm);
+				}
+			}
+		}
+		return methods;
+	}
+
+	/**
+	 * Returns the methods in getTranslatedMethods that are reachable from
+	 * 'entryPoints', i.e., the methods that lazy translation may translate.
+	 * A call reaches the called method and, for virtual calls, all methods
+	 * it may be dispatched to. The calls of restored methods are taken from
+	 * their CFG.
+	 * 
+	 * @param entryPoints
+	 * @return
+	 */
+	private List<SootMethod> getReachableMethods(List<SootMethod> entryPoints) {
+		Set<SootMethod> translated = new HashSet<SootMethod>(getTranslatedMethods());
+		Hierarchy hierarchy = Scene.v().getActiveHierarchy();
+		List<SootMethod> reachable = new LinkedList<SootMethod>();
+		Set<SootMethod> visited = new HashSet<SootMethod>(entryPoints);
+		LinkedList<SootMethod> worklist = new LinkedList<SootMethod>(visited);
+		while (!worklist.isEmpty()) {
+			SootMethod sm = worklist.poll();
+			List<SootMethod> callees = new LinkedList<SootMethod>();
+			if (restoredMethods.contains(sm.getSignature())) {
+				for (CfgBlock b : program.loopupMethod(sm.getSignature()).vertexSet()) {
+					for (Statement s : b.getStatements()) {
+						if (s instanceof CallStatement) {
+							String callee = ((CallStatement) s).getCallTarget().getMethodName();
+							if (Scene.v().containsMethod(callee)) {
+								callees.add(Scene.v().getMethod(callee));
+							}
+						}
+					}
+				}
+			} else if (translated.contains(sm)) {
+				Body body;
+				try {
+					body = sm.retrieveActiveBody();
+				} catch (RuntimeException e) {
+					continue;
+				}
+				reachable.add(sm);
+				for (Unit u : body.getUnits()) {
+					if (!((Stmt) u).containsInvokeExpr()) {
+						continue;
+					}
+					InvokeExpr ivk = ((Stmt) u).getInvokeExpr();
+					SootMethod callee = ivk.getMethod();
+					callees.add(callee);
+					if (ivk instanceof VirtualInvokeExpr || ivk instanceof InterfaceInvokeExpr) {
+						try {
+							callees.addAll(hierarchy.resolveAbstractDispatch(callee.getDeclaringClass(), callee));
+						} catch (RuntimeException e) {
+							// e.g., phantom classes.
+						}
+					}
+				}
+			}
+			for (SootMethod callee : callees) {
+				if (visited.add(callee)) {
+					worklist.add(callee);
+				}
 			}
 		}
+		return reachable;
 	}
 
-	private void processSootMethod(SootMethod sm) {
+	private boolean inScope(SootMethod sm) {
+		return scope.containsMethod(sm.getDeclaringClass().getName(), sm.getSignature());
+	}
+
+	/**
+	 * Retrieves the body of 'sm' and adds it to 'bodies'. Soot's body
+	 * retrieval is not thread-safe, so this always runs on the calling
+	 * thread.
+	 * 
+	 * @param sm
+	 * @param bodies
+	 */
+	private void processSootMethod(SootMethod sm, List<Body> bodies) {
 		if (sm.isConcrete()) {
 			// System.out.println("Processing method: " + sm);
 
@@ -178,6 +785,7 @@ public class SootToCfg {
 			// System.err.println(sm.getSignature());
 
 			SootTranslationHelpers.v().setCurrentMethod(sm);
+			attemptedMethods.add(sm);
 
 			Body body = null;
 			try {
@@ -186,12 +794,88 @@ public class SootToCfg {
 				System.err.println("Soot failed to parse " + sm.getSignature());
 				return;
 			}
-			processMethodBody(body);
+			bodies.add(body);
+		}
+	}
+
+	/**
+	 * Pre-processes and translates all 'bodies'. If more than one thread is
+	 * used, all bodies are pre-processed on the calling thread first, because
+	 * the transformations modify Soot's data structures, which are not
+	 * thread-safe. Then each pre-processed body is translated into a CFG by
+	 * its own task on a fork/join pool. The translation only reads the
+	 * scene, so everything that Soot creates lazily is created before the
+	 * tasks start. Each task sets the translation context of its thread
+	 * before it translates the body, and everything that is shared between
+	 * methods (i.e., the Program and the maps in the memory model) is
+	 * thread-safe.
+	 * 
+	 * @param bodies
+	 */
+	private void translateBodies(List<Body> bodies) {
+		if (stagedPreprocessing && bodies.size() > 1) {
+			// create everything that is created lazily before we start the
+			// thread.
+			Scene.v().getActiveHierarchy();
+			Scene.v().getOrMakeFastHierarchy();
+			SootTranslationHelpers.v().getMemoryModel();
+			preprocessing.runStaged(bodies, stageQueueSize, timer, new PreprocessingPipeline.Sink() {
+				@Override
+				public void accept(Body body, MethodTimer mt) {
+					PreprocessingPipeline.setContext(body);
+					translatePreprocessedBody(body, mt);
+				}
+			});
+			return;
+		}
+		if (translationThreads <= 1 || bodies.size() <= 1) {
+			for (Body body : bodies) {
+				translateBody(body);
+			}
+			return;
+		}
+		final Map<Body, MethodTimer> timers = new HashMap<Body, MethodTimer>();
+		for (Body body : bodies) {
+			PreprocessingPipeline.setContext(body);
+			timers.put(body, preprocessBody(body));
+		}
+		// create everything that is created lazily before we start the
+		// threads.
+		Scene.v().getActiveHierarchy();
+		Scene.v().getOrMakeFastHierarchy();
+		SootTranslationHelpers.v().getMemoryModel();
+
+		ForkJoinPool pool = new ForkJoinPool(translationThreads);
+		try {
+			List<ForkJoinTask<?>> tasks = new LinkedList<ForkJoinTask<?>>();
+			for (final Body body : bodies) {
+				final MethodTimer mt = timers.get(body);
+				tasks.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						PreprocessingPipeline.setContext(body);
+						translatePreprocessedBody(body, mt);
+					}
+				}));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				// re-throws exceptions from the translation.
+				task.join();
+			}
+		} finally {
+			pool.shutdown();
 		}
 	}
 
-	private void processMethodBody(Body body) {
-		System.err.println(body);
+	private void translateBody(Body body) {
+		PreprocessingPipeline.setContext(body);
+		translatePreprocessedBody(body, preprocessBody(body));
+	}
+
+	private MethodTimer preprocessBody(Body body) {
+		if (verbosity >= 3) {
+			System.err.println(body);
+		}
 		// StringBuilder sb = new StringBuilder();
 		// for (Unit u : body.getUnits()) {
 		// sb.append(u.getJavaSourceStartLineNumber());
@@ -201,54 +885,135 @@ public class SootToCfg {
 		// }
 		// System.err.println(sb.toString());
 
-		preProcessBody(body);
+		MethodTimer mt = timer.startMethod(body.getMethod().getSignature());
+		preprocessing.run(body, mt);
+		return mt;
+	}
 
+	private void translatePreprocessedBody(Body body, MethodTimer mt) {
 		// generate the CFG structures on the processed body.
+		mt.begin();
 		MethodInfo mi = new MethodInfo(body.getMethod(), SootTranslationHelpers.v().getCurrentSourceFileName());
 		SootStmtSwitch ss = new SootStmtSwitch(body, mi);
 		mi.setSource(ss.getEntryBlock());
+		mt.end(Phase.SootStmtSwitch);
 
+		mt.begin();
 		mi.finalizeAndAddToProgram();
+		mt.end(Phase.FinalizeMethod);
+		timer.finishMethod(mt);
 		Method m = mi.getMethod();
 
 		if (debug) {
 			// System.out.println("adding method: " + m.getMethodName());
 			getProgram().addEntryPoint(m);
 		}
-		 System.out.println(m.toString());
+		if (verbosity >= 3) {
+			System.out.println(m.toString());
+		}
 	}
 
-	private void preProcessBody(Body body) {
-		// pre-process the body
-
-		UnreachableCodeEliminator.v().transform(body);
+	/**
+	 * Creates the stages that pre-process each body, without the stages in
+	 * disabledStages.
+	 * 
+	 * @return
+	 */
+	private PreprocessingPipeline createPreprocessingPipeline() {
+		List<Stage> stages = new LinkedList<Stage>();
+		stages.add(new Stage() {
+			@Override
+			public Phase getPhase() {
+				return Phase.UnreachableCodeEliminator;
+			}
 
+			@Override
+			public void transform(Body body) {
+				UnreachableCodeEliminator.v().transform(body);
+			}
+		});
 		// detect duplicated finally blocks
-		DuplicatedCatchDetection duplicatedUnits = new DuplicatedCatchDetection();
-		Map<Unit, Set<Unit>> duplicatedFinallyUnits = duplicatedUnits.identifiedDuplicatedUnitsFromFinallyBlocks(body);
-		for (Entry<Unit, Set<Unit>> entry : duplicatedFinallyUnits.entrySet()) {
-			locations.add(SootTranslationHelpers.v().getSourceLocation(entry.getKey()));
-			for (Unit u : entry.getValue()) {
-				locations.add(SootTranslationHelpers.v().getSourceLocation(u));
+		stages.add(new Stage() {
+			@Override
+			public Phase getPhase() {
+				return Phase.DuplicatedCatchDetection;
 			}
-		}
 
+			@Override
+			public void transform(Body body) {
+				DuplicatedCatchDetection duplicatedUnits = new DuplicatedCatchDetection();
+				Map<Unit, Set<Unit>> duplicatedFinallyUnits = duplicatedUnits
+						.identifiedDuplicatedUnitsFromFinallyBlocks(body);
+				for (Entry<Unit, Set<Unit>> entry : duplicatedFinallyUnits.entrySet()) {
+					locations.add(SootTranslationHelpers.v().getSourceLocation(entry.getKey()));
+					for (Unit u : entry.getValue()) {
+						locations.add(SootTranslationHelpers.v().getSourceLocation(u));
+					}
+				}
+			}
+		});
 		// first reconstruct the assertions.
-		AssertionReconstruction ar = new AssertionReconstruction();
-		ar.transform(body);
+		stages.add(new Stage() {
+			@Override
+			public Phase getPhase() {
+				return Phase.AssertionReconstruction;
+			}
 
+			@Override
+			public void transform(Body body) {
+				new AssertionReconstruction().transform(body);
+			}
+		});
 		// make the exception handling explicit
-		ExceptionTransformer em = new ExceptionTransformer(new NullnessAnalysis(new CompleteUnitGraph(body)),
-				createAssertionsForUncaughtExceptions);
-		em.transform(body);
+		stages.add(new Stage() {
+			@Override
+			public Phase getPhase() {
+				return Phase.ExceptionTransformer;
+			}
+
+			@Override
+			public void transform(Body body) {
+				ExceptionTransformer em = new ExceptionTransformer(
+						new NullnessAnalysis(new CompleteUnitGraph(body)), createAssertionsForUncaughtExceptions,
+						mayThrowSummaries);
+				em.setNonNullSummaries(nonNullSummaries);
+				em.transform(body);
+				timer.count("Eliminated bounds checks", em.getEliminatedBoundsChecks());
+			}
+		});
 		// replace all switches by sets of IfStmt
-		SwitchStatementRemover so = new SwitchStatementRemover();
-		so.transform(body);
+		stages.add(new Stage() {
+			@Override
+			public Phase getPhase() {
+				return Phase.SwitchStatementRemover;
+			}
 
+			@Override
+			public void transform(Body body) {
+				new SwitchStatementRemover().transform(body);
+			}
+		});
 		if (resolveVirtualCalls) {
-			VirtualCallResolver vc = new VirtualCallResolver();
-			vc.transform(body);
+			stages.add(new Stage() {
+				@Override
+				public Phase getPhase() {
+					return Phase.VirtualCallResolver;
+				}
+
+				@Override
+				public void transform(Body body) {
+					VirtualCallResolver vr = new VirtualCallResolver(dispatchIndex, pointsToTargets);
+					vr.setTypeSwitchDispatch(typeSwitchDispatch);
+					vr.transform(body);
+					timer.count("Calls narrowed by points-to", vr.getNarrowedCalls());
+				}
+			});
 		}
-		
+		for (Stage stage : new LinkedList<Stage>(stages)) {
+			if (disabledStages.contains(stage.getPhase())) {
+				stages.remove(stage);
+			}
+		}
+		return new PreprocessingPipeline(stages);
 	}
 }
@@ -4,15 +4,17 @@
 package soottocfg.soot.memory_model;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.lang.model.type.NullType;
 
 import com.google.common.base.Verify;
+import com.google.common.hash.Hashing;
 
 import soot.ArrayType;
 import soot.RefLikeType;
@@ -33,6 +35,7 @@ import soot.jimple.NewMultiArrayExpr;
 import soot.jimple.StringConstant;
 import soottocfg.cfg.ClassVariable;
 import soottocfg.cfg.Program;
+import soottocfg.cfg.SourceLocation;
 import soottocfg.cfg.Variable;
 import soottocfg.cfg.expression.BinaryExpression;
 import soottocfg.cfg.expression.BinaryExpression.BinaryOperator;
@@ -56,10 +59,13 @@ public abstract class BasicMemoryModel extends MemoryModel {
 
 	protected final Variable nullConstant;
 	protected Program program;
-	protected final Map<soot.Type, soottocfg.cfg.type.Type> types = new HashMap<soot.Type, soottocfg.cfg.type.Type>();
-	protected final Map<SootField, Variable> fieldGlobals = new HashMap<SootField, Variable>();
+	// the maps are shared by all methods that are translated in parallel.
+	// Lookups that create new entries synchronize on the memory model so
+	// that each type, field, and constant is only created once.
+	protected final Map<soot.Type, soottocfg.cfg.type.Type> types = new ConcurrentHashMap<soot.Type, soottocfg.cfg.type.Type>();
+	protected final Map<SootField, Variable> fieldGlobals = new ConcurrentHashMap<SootField, Variable>();
 
-	protected final Map<Constant, Variable> constantDictionary = new HashMap<Constant, Variable>();
+	protected final Map<Constant, Variable> constantDictionary = new ConcurrentHashMap<Constant, Variable>();
 
 	protected final Type nullType;
 
@@ -95,28 +101,28 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	@Override
 	public Expression mkNewExpr(NewExpr arg0) {
 		Type newType = this.lookupType(arg0.getBaseType());
-		MethodInfo mi = this.statementSwitch.getMethodInto();
+		MethodInfo mi = getStmtSwitch().getMethodInto();
 		Variable newLocal = mi.createFreshLocal("$new", newType, true, true);
 		// add: assume newLocal!=null
-		this.statementSwitch.push(
-				new AssumeStatement(statementSwitch.getCurrentLoc(),
-						new BinaryExpression(this.statementSwitch.getCurrentLoc(), BinaryOperator.Ne,
-								new IdentifierExpression(this.statementSwitch.getCurrentLoc(), newLocal),
+		getStmtSwitch().push(
+				new AssumeStatement(getStmtSwitch().getCurrentLoc(),
+						new BinaryExpression(getStmtSwitch().getCurrentLoc(), BinaryOperator.Ne,
+								new IdentifierExpression(getStmtSwitch().getCurrentLoc(), newLocal),
 								this.mkNullConstant())));
 		//TODO add: assume newLocal instanceof newType
-//		Expression instof = foo(new IdentifierExpression(this.statementSwitch.getCurrentLoc(), newLocal),
+//		Expression instof = foo(new IdentifierExpression(getStmtSwitch().getCurrentLoc(), newLocal),
 //				newType);
-//		this.statementSwitch.push(
-//				new AssumeStatement(statementSwitch.getCurrentLoc(),
-//						new BinaryExpression(this.statementSwitch.getCurrentLoc(), BinaryOperator.Ne, instof,
+//		getStmtSwitch().push(
+//				new AssumeStatement(getStmtSwitch().getCurrentLoc(),
+//						new BinaryExpression(getStmtSwitch().getCurrentLoc(), BinaryOperator.Ne, instof,
 //								IntegerLiteral.zero())));
 
-		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(), newLocal);
+		return new IdentifierExpression(getStmtSwitch().getCurrentLoc(), newLocal);
 	}
 
 
 	// new InstanceOfExpression(, new
-	// IdentifierExpression(this.statementSwitch.getCurrentLoc(), newLocal),
+	// IdentifierExpression(getStmtSwitch().getCurrentLoc(), newLocal),
 	// lookupRefLikeType(arg0.getBaseType()));
 
 	/*
@@ -128,26 +134,26 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	@Override
 	public Expression mkNewArrayExpr(NewArrayExpr arg0) {
 		Type newType = this.lookupType(arg0.getType());
-		MethodInfo mi = this.statementSwitch.getMethodInto();
+		MethodInfo mi = getStmtSwitch().getMethodInto();
 		Variable newLocal = mi.createFreshLocal("$newArr", newType, true, true);
 
-		this.statementSwitch.push(
-				new AssumeStatement(statementSwitch.getCurrentLoc(),
-						new BinaryExpression(this.statementSwitch.getCurrentLoc(), BinaryOperator.Ne,
-								new IdentifierExpression(this.statementSwitch.getCurrentLoc(), newLocal),
+		getStmtSwitch().push(
+				new AssumeStatement(getStmtSwitch().getCurrentLoc(),
+						new BinaryExpression(getStmtSwitch().getCurrentLoc(), BinaryOperator.Ne,
+								new IdentifierExpression(getStmtSwitch().getCurrentLoc(), newLocal),
 								this.mkNullConstant())));
 
 		//TODO
-//		arg0.getSize().apply(valueSwitch);
-//		Expression sizeExpression = valueSwitch.popExpression();
-//		this.statementSwitch.push(
-//				new AssumeStatement(statementSwitch.getCurrentLoc(),
-//						new BinaryExpression(this.statementSwitch.getCurrentLoc(), BinaryOperator.Eq,
-//								new ArrayLengthExpression(this.statementSwitch.getCurrentLoc(),
-//										new IdentifierExpression(this.statementSwitch.getCurrentLoc(), newLocal)),
+//		arg0.getSize().apply(getValueSwitch());
+//		Expression sizeExpression = getValueSwitch().popExpression();
+//		getStmtSwitch().push(
+//				new AssumeStatement(getStmtSwitch().getCurrentLoc(),
+//						new BinaryExpression(getStmtSwitch().getCurrentLoc(), BinaryOperator.Eq,
+//								new ArrayLengthExpression(getStmtSwitch().getCurrentLoc(),
+//										new IdentifierExpression(getStmtSwitch().getCurrentLoc(), newLocal)),
 //						sizeExpression)));
 
-		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(), newLocal);
+		return new IdentifierExpression(getStmtSwitch().getCurrentLoc(), newLocal);
 	}
 	
 	/*
@@ -161,8 +167,9 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	public Expression mkNewMultiArrayExpr(NewMultiArrayExpr arg0) {
 		// TODO Auto-generated method stub
 		System.err.println("New Multi-Array still not implemented");
-		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(),
-				SootTranslationHelpers.v().getProgram().createFreshGlobal("TODO", lookupType(arg0.getType())));
+		MethodInfo mi = getStmtSwitch().getMethodInto();
+		return new IdentifierExpression(getStmtSwitch().getCurrentLoc(),
+				mi.createFreshLocal("$newMultiArr", lookupType(arg0.getType()), false, false));
 	}
 
 	/*
@@ -172,8 +179,9 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	 */
 	@Override
 	public Expression mkStringLengthExpr(Value arg0) {
-		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(),
-				SootTranslationHelpers.v().getProgram().createFreshGlobal("TODO", IntType.instance()));
+		MethodInfo mi = getStmtSwitch().getMethodInto();
+		return new IdentifierExpression(getStmtSwitch().getCurrentLoc(),
+				mi.createFreshLocal("$strLen", IntType.instance(), false, false));
 	}
 
 	/*
@@ -183,7 +191,10 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	 */
 	@Override
 	public Expression mkNullConstant() {
-		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(), nullConstant);
+		// also used outside of the translation of a body (e.g., for library
+		// summaries), where there is no statement switch.
+		SourceLocation loc = getStmtSwitch() == null ? null : getStmtSwitch().getCurrentLoc();
+		return new IdentifierExpression(loc, nullConstant);
 	}
 
 	/*
@@ -194,11 +205,7 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	 */
 	@Override
 	public Expression mkStringConstant(StringConstant arg0) {
-		if (!constantDictionary.containsKey(arg0)) {
-			constantDictionary.put(arg0, SootTranslationHelpers.v().getProgram().lookupGlobalVariable(
-					"$string" + constantDictionary.size(), lookupType(arg0.getType()), true, true));
-		}
-		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(), constantDictionary.get(arg0));
+		return new IdentifierExpression(getStmtSwitch().getCurrentLoc(), lookupConstantVariable(arg0));
 	}
 
 	/*
@@ -209,11 +216,7 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	 */
 	@Override
 	public Expression mkDoubleConstant(DoubleConstant arg0) {
-		if (!constantDictionary.containsKey(arg0)) {
-			constantDictionary.put(arg0, SootTranslationHelpers.v().getProgram().lookupGlobalVariable(
-					"$double" + constantDictionary.size(), lookupType(arg0.getType()), true, true));
-		}
-		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(), constantDictionary.get(arg0));
+		return new IdentifierExpression(getStmtSwitch().getCurrentLoc(), lookupConstantVariable(arg0));
 	}
 
 	/*
@@ -224,11 +227,76 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	 */
 	@Override
 	public Expression mkFloatConstant(FloatConstant arg0) {
-		if (!constantDictionary.containsKey(arg0)) {
-			constantDictionary.put(arg0, SootTranslationHelpers.v().getProgram().lookupGlobalVariable(
-					"$float" + constantDictionary.size(), lookupType(arg0.getType()), true, true));
+		return new IdentifierExpression(getStmtSwitch().getCurrentLoc(), lookupConstantVariable(arg0));
+	}
+
+	/**
+	 * Returns the unique global constant that represents the string, double,
+	 * or float constant 'c'. The name of the global only depends on the
+	 * value of 'c', so it does not matter in which order the methods are
+	 * translated.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public synchronized Variable lookupConstantVariable(Constant c) {
+		if (!constantDictionary.containsKey(c)) {
+			constantDictionary.put(c, SootTranslationHelpers.v().getProgram().lookupGlobalVariable(
+					constantVariableName(c), lookupType(c.getType()), true, true));
+		}
+		return constantDictionary.get(c);
+	}
+
+	// string constants that are longer than this are named by their hash.
+	private static final int maxEscapedStringLength = 32;
+
+	/**
+	 * Returns the name of the global that represents the constant 'c'.
+	 * Different constants get different names.
+	 * 
+	 * @param c
+	 * @return
+	 */
+	public static String constantVariableName(Constant c) {
+		if (c instanceof StringConstant) {
+			final String value = ((StringConstant) c).value;
+			if (value.length() > maxEscapedStringLength) {
+				return "$string$" + Hashing.sha1().hashUnencodedChars(value).toString();
+			}
+			StringBuilder sb = new StringBuilder();
+			sb.append("$string_");
+			for (char ch : value.toCharArray()) {
+				if (ch < 128 && Character.isLetterOrDigit(ch)) {
+					sb.append(ch);
+				} else {
+					// escape all other characters (including '_') with a
+					// fixed length, so the names stay unique.
+					sb.append(String.format("_%04x", (int) ch));
+				}
+			}
+			return sb.toString();
+		} else if (c instanceof DoubleConstant) {
+			return "$double_" + Long.toHexString(Double.doubleToLongBits(((DoubleConstant) c).value));
+		} else if (c instanceof FloatConstant) {
+			return "$float_" + Integer.toHexString(Float.floatToIntBits(((FloatConstant) c).value));
+		}
+		throw new UnsupportedOperationException("Unsupported constant " + c.getClass());
+	}
+
+	/**
+	 * Returns the constant that is represented by the global 'v', or null if
+	 * 'v' was not created by lookupConstantVariable.
+	 * 
+	 * @param v
+	 * @return
+	 */
+	public synchronized Constant findConstant(Variable v) {
+		for (Entry<Constant, Variable> entry : constantDictionary.entrySet()) {
+			if (entry.getValue() == v && !(v instanceof ClassVariable)) {
+				return entry.getKey();
+			}
 		}
-		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(), constantDictionary.get(arg0));
+		return null;
 	}
 
 //	@Override
@@ -237,7 +305,7 @@ public abstract class BasicMemoryModel extends MemoryModel {
 //			constantDictionary.put(arg0, SootTranslationHelpers.v().getProgram().lookupGlobalVariable(
 //					"$cc" + arg0.getValue(), lookupType(arg0.getType()), true, true));
 //		}
-//		return new IdentifierExpression(this.statementSwitch.getCurrentLoc(), constantDictionary.get(arg0));
+//		return new IdentifierExpression(getStmtSwitch().getCurrentLoc(), constantDictionary.get(arg0));
 //	}
 
 	/*
@@ -247,7 +315,7 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	 * TODO: check which types to use for Short, Lond, Double, and Float.
 	 */
 	@Override
-	public Type lookupType(soot.Type t) {
+	public synchronized Type lookupType(soot.Type t) {
 		if (!types.containsKey(t)) {
 			Type type = null;
 			if (t instanceof soot.BooleanType) {
@@ -294,7 +362,7 @@ public abstract class BasicMemoryModel extends MemoryModel {
 	}
 
 	
-	public ClassVariable lookupClassVariable(ClassConstant cc) {
+	public synchronized ClassVariable lookupClassVariable(ClassConstant cc) {
 		if (!this.constantDictionary.containsKey(cc)) {
 			final String name = cc.getValue();
 			if (Scene.v().containsClass(cc.getValue())) {
@@ -338,7 +406,7 @@ public abstract class BasicMemoryModel extends MemoryModel {
 //		return classVariables.get(t);
 //	}
 
-	protected Variable lookupField(SootField field) {
+	protected synchronized Variable lookupField(SootField field) {
 		if (!this.fieldGlobals.containsKey(field)) {
 			final String fieldName = field.getDeclaringClass().getName() + "." + field.getName();
 			Variable fieldVar = this.program.lookupGlobalVariable(fieldName, this.lookupType(field.getType()));
@@ -26,18 +26,28 @@ import soottocfg.soot.visitors.SootValueSwitch;
  */
 public abstract class MemoryModel {
 
-	protected SootStmtSwitch statementSwitch;
-	protected SootValueSwitch valueSwitch;
+	// the memory model is shared by all methods, but each thread translates
+	// its own method with its own switches.
+	private final ThreadLocal<SootStmtSwitch> statementSwitch = new ThreadLocal<SootStmtSwitch>();
+	private final ThreadLocal<SootValueSwitch> valueSwitch = new ThreadLocal<SootValueSwitch>();
 
 	public MemoryModel() {
 	}
 
 	public void setStmtSwitch(SootStmtSwitch ss) {
-		this.statementSwitch = ss;
+		this.statementSwitch.set(ss);
 	}
 
 	public void setValueSwitch(SootValueSwitch vs) {
-		this.valueSwitch = vs;
+		this.valueSwitch.set(vs);
+	}
+
+	protected SootStmtSwitch getStmtSwitch() {
+		return this.statementSwitch.get();
+	}
+
+	protected SootValueSwitch getValueSwitch() {
+		return this.valueSwitch.get();
 	}
 
 	public abstract void mkHeapWriteStatement(Unit u, FieldRef field, Value rhs);
@@ -36,34 +36,34 @@ public class NewMemoryModel extends BasicMemoryModel {
 		Variable fieldVar = lookupField(field.getField());
 		if (field instanceof InstanceFieldRef) {
 			InstanceFieldRef ifr = (InstanceFieldRef) field;
-			ifr.getBase().apply(valueSwitch);
-			IdentifierExpression base = (IdentifierExpression) valueSwitch.popExpression();
-			rhs.apply(valueSwitch);
-			Expression value = valueSwitch.popExpression();
+			ifr.getBase().apply(getValueSwitch());
+			IdentifierExpression base = (IdentifierExpression) getValueSwitch().popExpression();
+			rhs.apply(getValueSwitch());
+			Expression value = getValueSwitch().popExpression();
 
 			// ------------- unpack ---------------
 			ClassVariable c = lookupClassVariable(SootTranslationHelpers.v().getClassConstant(field.getField().getDeclaringClass().getType()));
 			List<IdentifierExpression> unpackedVars = new LinkedList<IdentifierExpression>();
 			Variable[] vars = c.getAssociatedFields();
 			for (int i = 0; i < vars.length; i++) {
-				unpackedVars.add(new IdentifierExpression(this.statementSwitch.getCurrentLoc(), vars[i]));
+				unpackedVars.add(new IdentifierExpression(getStmtSwitch().getCurrentLoc(), vars[i]));
 			}
-			this.statementSwitch.push(new UnPackStatement(loc, c, base, unpackedVars));
+			getStmtSwitch().push(new UnPackStatement(loc, c, base, unpackedVars));
 			// ------------------------------------
-			this.statementSwitch.push(new AssignStatement(loc, new IdentifierExpression(this.statementSwitch.getCurrentLoc(), fieldVar), value));
+			getStmtSwitch().push(new AssignStatement(loc, new IdentifierExpression(getStmtSwitch().getCurrentLoc(), fieldVar), value));
 			// ------------- pack -----------------
 			List<Expression> packedVars = new LinkedList<Expression>();
 			for (int i = 0; i < vars.length; i++) {
-				packedVars.add(new IdentifierExpression(this.statementSwitch.getCurrentLoc(), vars[i]));
+				packedVars.add(new IdentifierExpression(getStmtSwitch().getCurrentLoc(), vars[i]));
 			}
-			this.statementSwitch.push(new PackStatement(loc, c, base, packedVars));
+			getStmtSwitch().push(new PackStatement(loc, c, base, packedVars));
 			// ------------------------------------
 
 		} else if (field instanceof StaticFieldRef) {
-			Expression left = new IdentifierExpression(this.statementSwitch.getCurrentLoc(), fieldVar);
-			rhs.apply(valueSwitch);
-			Expression right = valueSwitch.popExpression();
-			this.statementSwitch.push(new AssignStatement(loc, left, right));
+			Expression left = new IdentifierExpression(getStmtSwitch().getCurrentLoc(), fieldVar);
+			rhs.apply(getValueSwitch());
+			Expression right = getValueSwitch().popExpression();
+			getStmtSwitch().push(new AssignStatement(loc, left, right));
 		} else {
 			throw new RuntimeException("not implemented");
 		}
@@ -74,35 +74,35 @@ public class NewMemoryModel extends BasicMemoryModel {
 		SourceLocation loc = SootTranslationHelpers.v().getSourceLocation(u);
 		Variable fieldVar = lookupField(field.getField());
 		if (field instanceof InstanceFieldRef) {
-			lhs.apply(valueSwitch);
-			IdentifierExpression left = (IdentifierExpression) valueSwitch.popExpression();
+			lhs.apply(getValueSwitch());
+			IdentifierExpression left = (IdentifierExpression) getValueSwitch().popExpression();
 
 			InstanceFieldRef ifr = (InstanceFieldRef) field;
-			ifr.getBase().apply(valueSwitch);
-			IdentifierExpression base = (IdentifierExpression) valueSwitch.popExpression();
+			ifr.getBase().apply(getValueSwitch());
+			IdentifierExpression base = (IdentifierExpression) getValueSwitch().popExpression();
 
 			// ------------- unpack ---------------
 			ClassVariable c = lookupClassVariable(SootTranslationHelpers.v().getClassConstant(field.getField().getDeclaringClass().getType()));
 			List<IdentifierExpression> unpackedVars = new LinkedList<IdentifierExpression>();
 			Variable[] vars = c.getAssociatedFields();
 			for (int i = 0; i < vars.length; i++) {
-				unpackedVars.add(new IdentifierExpression(this.statementSwitch.getCurrentLoc(), vars[i]));
+				unpackedVars.add(new IdentifierExpression(getStmtSwitch().getCurrentLoc(), vars[i]));
 			}
-			this.statementSwitch.push(new UnPackStatement(loc, c, base, unpackedVars));
+			getStmtSwitch().push(new UnPackStatement(loc, c, base, unpackedVars));
 			// ------------------------------------
-			this.statementSwitch.push(new AssignStatement(loc, left, new IdentifierExpression(this.statementSwitch.getCurrentLoc(), fieldVar)));
+			getStmtSwitch().push(new AssignStatement(loc, left, new IdentifierExpression(getStmtSwitch().getCurrentLoc(), fieldVar)));
 			// ------------- pack -----------------
 			List<Expression> packedVars = new LinkedList<Expression>();
 			for (int i = 0; i < vars.length; i++) {
-				packedVars.add(new IdentifierExpression(this.statementSwitch.getCurrentLoc(), vars[i]));
+				packedVars.add(new IdentifierExpression(getStmtSwitch().getCurrentLoc(), vars[i]));
 			}
-			this.statementSwitch.push(new PackStatement(loc, c, base, packedVars));
+			getStmtSwitch().push(new PackStatement(loc, c, base, packedVars));
 			// ------------------------------------
 		} else if (field instanceof StaticFieldRef) {
-			lhs.apply(valueSwitch);
-			Expression left = valueSwitch.popExpression();
-			Expression right = new IdentifierExpression(this.statementSwitch.getCurrentLoc(), fieldVar);
-			this.statementSwitch.push(new AssignStatement(loc, left, right));
+			lhs.apply(getValueSwitch());
+			Expression left = getValueSwitch().popExpression();
+			Expression right = new IdentifierExpression(getStmtSwitch().getCurrentLoc(), fieldVar);
+			getStmtSwitch().push(new AssignStatement(loc, left, right));
 		} else {
 			throw new RuntimeException("not implemented");
 		}
@@ -48,20 +48,20 @@ public class SimpleBurstallBornatModel extends BasicMemoryModel {
 		Variable fieldVar = lookupField(field.getField());
 		if (field instanceof InstanceFieldRef) {
 			InstanceFieldRef ifr = (InstanceFieldRef) field;
-			ifr.getBase().apply(valueSwitch);
-			Expression base = valueSwitch.popExpression();
-			rhs.apply(valueSwitch);
-			Expression value = valueSwitch.popExpression();
+			ifr.getBase().apply(getValueSwitch());
+			Expression base = getValueSwitch().popExpression();
+			rhs.apply(getValueSwitch());
+			Expression value = getValueSwitch().popExpression();
 			IdentifierExpression target;
 			Expression[] indices;
-			indices = new Expression[] { base, new IdentifierExpression(this.statementSwitch.getCurrentLoc(), fieldVar) };
-			target = new IdentifierExpression(this.statementSwitch.getCurrentLoc(), this.heapVariable);
-			this.statementSwitch.push(new ArrayStoreStatement(loc, target, indices, value));
+			indices = new Expression[] { base, new IdentifierExpression(getStmtSwitch().getCurrentLoc(), fieldVar) };
+			target = new IdentifierExpression(getStmtSwitch().getCurrentLoc(), this.heapVariable);
+			getStmtSwitch().push(new ArrayStoreStatement(loc, target, indices, value));
 		} else if (field instanceof StaticFieldRef) {
-			Expression left = new IdentifierExpression(this.statementSwitch.getCurrentLoc(), fieldVar);
-			rhs.apply(valueSwitch);
-			Expression right = valueSwitch.popExpression();
-			this.statementSwitch.push(new AssignStatement(loc, left, right));
+			Expression left = new IdentifierExpression(getStmtSwitch().getCurrentLoc(), fieldVar);
+			rhs.apply(getValueSwitch());
+			Expression right = getValueSwitch().popExpression();
+			getStmtSwitch().push(new AssignStatement(loc, left, right));
 		} else {
 			throw new RuntimeException("not implemented");
 		}
@@ -72,22 +72,22 @@ public class SimpleBurstallBornatModel extends BasicMemoryModel {
 		SourceLocation loc = SootTranslationHelpers.v().getSourceLocation(u);
 		Variable fieldVar = lookupField(field.getField());
 		if (field instanceof InstanceFieldRef) {
-			lhs.apply(valueSwitch);
-			IdentifierExpression left = (IdentifierExpression) valueSwitch.popExpression();
+			lhs.apply(getValueSwitch());
+			IdentifierExpression left = (IdentifierExpression) getValueSwitch().popExpression();
 
 			InstanceFieldRef ifr = (InstanceFieldRef) field;
-			ifr.getBase().apply(valueSwitch);
-			Expression base = valueSwitch.popExpression();
+			ifr.getBase().apply(getValueSwitch());
+			Expression base = getValueSwitch().popExpression();
 			IdentifierExpression target;
 			Expression[] indices;
-			indices = new Expression[] { base, new IdentifierExpression(this.statementSwitch.getCurrentLoc(), fieldVar) };
-			target = new IdentifierExpression(this.statementSwitch.getCurrentLoc(), this.heapVariable);
-			this.statementSwitch.push(new ArrayReadStatement(loc, target, indices, left));
+			indices = new Expression[] { base, new IdentifierExpression(getStmtSwitch().getCurrentLoc(), fieldVar) };
+			target = new IdentifierExpression(getStmtSwitch().getCurrentLoc(), this.heapVariable);
+			getStmtSwitch().push(new ArrayReadStatement(loc, target, indices, left));
 		} else if (field instanceof StaticFieldRef) {
-			lhs.apply(valueSwitch);
-			Expression left = valueSwitch.popExpression();
-			Expression right = new IdentifierExpression(this.statementSwitch.getCurrentLoc(), fieldVar);
-			this.statementSwitch.push(new AssignStatement(loc, left, right));
+			lhs.apply(getValueSwitch());
+			Expression left = getValueSwitch().popExpression();
+			Expression right = new IdentifierExpression(getStmtSwitch().getCurrentLoc(), fieldVar);
+			getStmtSwitch().push(new AssignStatement(loc, left, right));
 		} else {
 			throw new RuntimeException("not implemented");
 		}
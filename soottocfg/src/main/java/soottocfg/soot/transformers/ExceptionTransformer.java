@@ -58,7 +58,14 @@ import soot.jimple.ThrowStmt;
 import soot.jimple.UnopExpr;
 import soot.jimple.toolkits.annotation.nullcheck.NullnessAnalysis;
 import soot.tagkit.Host;
+import soot.toolkits.graph.CompleteUnitGraph;
+import soot.toolkits.scalar.LocalDefs;
+import soot.toolkits.scalar.SimpleLocalDefs;
+import soottocfg.soot.util.ArrayBoundsAnalysis;
+import soottocfg.soot.util.MayThrowSummaries;
+import soottocfg.soot.util.NonNullSummaries;
 import soottocfg.soot.util.SootTranslationHelpers;
+import soottocfg.soot.util.TrapIndex;
 import soottocfg.util.Pair;
 
 /**
@@ -72,6 +79,13 @@ public class ExceptionTransformer extends AbstractTransformer {
 			arrayIndexOutOfBoundsExceptionClass, classCastExceptionClass, errorExceptionClass, throwableClass;
 
 	private final boolean treatUncaughtExceptionsAsAssertions;
+	// may be null, then every call may throw the exceptions in its throws
+	// clause and any runtime exception.
+	private final MayThrowSummaries mayThrowSummaries;
+	// may be null, then only the NullnessAnalysis is used.
+	private NonNullSummaries nonNullSummaries = null;
+	// the definitions in the body that the nonNullSummaries are queried on.
+	private LocalDefs localDefs;
 
 	private Body body;
 
@@ -85,6 +99,26 @@ public class ExceptionTransformer extends AbstractTransformer {
 	private final Map<Unit, Local> caughtExceptionLocal = new HashMap<Unit, Local>();
 	private Map<SootClass, Unit> generatedThrowStatements = new HashMap<SootClass, Unit>();
 
+	private TrapIndex trapIndex;
+	private ArrayBoundsAnalysis boundsAnalysis;
+	private int eliminatedBoundsChecks = 0;
+	// cache for isSubclassOfIncluding: child -> parent -> result.
+	private final Map<SootClass, Map<SootClass, Boolean>> subclassCache = new HashMap<SootClass, Map<SootClass, Boolean>>();
+
+	// sorts subclasses before their superclasses.
+	private final Comparator<SootClass> subclassesFirst = new Comparator<SootClass>() {
+		@Override
+		public int compare(final SootClass a, final SootClass b) {
+			if (a == b)
+				return 0;
+			if (isSubclassOfIncluding(a, b))
+				return -1;
+			if (isSubclassOfIncluding(b, a))
+				return 1;
+			return 0;
+		}
+	};
+
 	/**
 	 * 
 	 */
@@ -93,7 +127,21 @@ public class ExceptionTransformer extends AbstractTransformer {
 	}
 
 	public ExceptionTransformer(NullnessAnalysis nna, boolean uncaughtAsAssertion) {
+		this(nna, uncaughtAsAssertion, null);
+	}
+
+	/**
+	 * @param nna
+	 * @param uncaughtAsAssertion
+	 * @param summaries
+	 *            Exceptions that may escape each method. At call sites, only
+	 *            the exceptions that the callee may throw are checked. Use
+	 *            null to check all exceptions that the callee may throw
+	 *            according to its signature.
+	 */
+	public ExceptionTransformer(NullnessAnalysis nna, boolean uncaughtAsAssertion, MayThrowSummaries summaries) {
 		treatUncaughtExceptionsAsAssertions = uncaughtAsAssertion;
+		mayThrowSummaries = summaries;
 		nullnessAnalysis = nna;
 		exceptionClass = Scene.v().getSootClass("java.lang.Exception");
 		throwableClass = Scene.v().getSootClass("java.lang.Throwable");
@@ -104,6 +152,27 @@ public class ExceptionTransformer extends AbstractTransformer {
 		errorExceptionClass = Scene.v().getSootClass("java.lang.Error");
 	}
 
+	/**
+	 * Sets interprocedural facts about non-null values. Dereferences of
+	 * values that are non-null according to these facts or the
+	 * NullnessAnalysis get no null check.
+	 * 
+	 * @param summaries
+	 */
+	public void setNonNullSummaries(NonNullSummaries summaries) {
+		nonNullSummaries = summaries;
+	}
+
+	/**
+	 * Returns the number of array accesses that got no bounds check because
+	 * the ArrayBoundsAnalysis proved them in bounds.
+	 * 
+	 * @return
+	 */
+	public int getEliminatedBoundsChecks() {
+		return eliminatedBoundsChecks;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -119,10 +188,18 @@ public class ExceptionTransformer extends AbstractTransformer {
 		removeUnreachableTraps(body);
 		removeMonitorTraps(body);
 
+		boundsAnalysis = new ArrayBoundsAnalysis(body);
+		if (nonNullSummaries != null) {
+			localDefs = new SimpleLocalDefs(new CompleteUnitGraph(body));
+		}
 		PatchingChain<Unit> units = body.getUnits();
 		for (Unit u : units) {
 			collectPossibleExceptions(u);
 		}
+		// the handlers below only ask for the traps of units that exist at
+		// this point, so the index does not have to be updated when they
+		// insert new units.
+		trapIndex = new TrapIndex(body);
 
 		Set<Trap> usedTraps = new HashSet<Trap>();
 
@@ -144,7 +221,7 @@ public class ExceptionTransformer extends AbstractTransformer {
 					if (!replacementMap.containsKey(ds)) {
 						Value left = ds.getLeftOp();
 						Value right = caughtExceptionLocal.get(t.getHandlerUnit());
-						if (!hierarchy.isClassSubclassOfIncluding(((RefType) right.getType()).getSootClass(),
+						if (!isSubclassOfIncluding(((RefType) right.getType()).getSootClass(),
 								((RefType) left.getType()).getSootClass())) {
 							// if the left has a narrower type then we need to
 							// add a cast.
@@ -201,11 +278,11 @@ public class ExceptionTransformer extends AbstractTransformer {
 		// handle the runtime exceptions first.
 		for (Entry<Unit, List<Pair<Value, SootClass>>> entry : runtimeExceptions.entrySet()) {
 			Unit u = entry.getKey();
-			List<Trap> surroundingTraps = getTrapsGuardingUnit(u, body);
+			List<Trap> surroundingTraps = trapIndex.getTrapsGuardingUnit(u);
 			for (Pair<Value, SootClass> pair : entry.getValue()) {
 				Trap trap = null;
 				for (Trap t : surroundingTraps) {
-					if (hierarchy.isClassSubclassOfIncluding(pair.getSecond(), t.getException())) {
+					if (isSubclassOfIncluding(pair.getSecond(), t.getException())) {
 						trap = t;
 						break;
 					}
@@ -232,17 +309,17 @@ public class ExceptionTransformer extends AbstractTransformer {
 			// first, add everything in the throws clause.
 			possibleExceptions.addAll(ivk.getMethod().getExceptions());
 			// now get all caught exceptions of type RuntimeException or Error
-			List<Trap> surroundingTraps = getTrapsGuardingUnit(u, body);
+			List<Trap> surroundingTraps = trapIndex.getTrapsGuardingUnit(u);
 			for (Trap t : surroundingTraps) {
-				if (hierarchy.isClassSubclassOfIncluding(t.getException(), runtimeExceptionClass)
-						|| hierarchy.isClassSubclassOfIncluding(t.getException(), errorExceptionClass)) {
+				if (isSubclassOfIncluding(t.getException(), runtimeExceptionClass)
+						|| isSubclassOfIncluding(t.getException(), errorExceptionClass)) {
 					if (!possibleExceptions.contains(t.getException())) {
 						possibleExceptions.add(t.getException());
 					}
 				}
 				// if there is a catch block for exception or throwable add that
 				// as well.
-				if (hierarchy.isClassSubclassOfIncluding(exceptionClass, t.getException())) {
+				if (isSubclassOfIncluding(exceptionClass, t.getException())) {
 					if (!possibleExceptions.contains(t.getException())) {
 						possibleExceptions.add(t.getException());
 					}
@@ -251,27 +328,27 @@ public class ExceptionTransformer extends AbstractTransformer {
 				// sub-classes
 				// of what is declared in the throws clause.
 				for (SootClass sc : ivk.getMethod().getExceptions()) {
-					if (hierarchy.isClassSubclassOfIncluding(t.getException(), sc)) {
+					if (isSubclassOfIncluding(t.getException(), sc)) {
 						if (!possibleExceptions.contains(t.getException())) {
 							possibleExceptions.add(t.getException());
 						}
 					}
 				}
 			}
-			// now sort the classes.
-			Collections.sort(possibleExceptions, new Comparator<SootClass>() {
-				@Override
-				public int compare(final SootClass a, final SootClass b) {
-					if (a == b)
-						return 0;
-					hierarchy = Scene.v().getActiveHierarchy();
-					if (hierarchy.isClassSubclassOf(a, b))
-						return -1;
-					if (hierarchy.isClassSuperclassOf(a, b))
-						return 1;
-					return 0;
+			if (mayThrowSummaries != null) {
+				// drop the exceptions that the callee cannot throw.
+				Iterator<SootClass> it = possibleExceptions.iterator();
+				while (it.hasNext()) {
+					if (!mayThrowSummaries.mayThrow(u, ivk, it.next())) {
+						it.remove();
+					}
 				}
-			});
+				if (possibleExceptions.isEmpty()) {
+					continue;
+				}
+			}
+			// now sort the classes.
+			Collections.sort(possibleExceptions, subclassesFirst);
 			// create the exception handling statements
 			List<Unit> toInsert = new LinkedList<Unit>();
 			Local exceptionVarLocal = getFreshLocal(body, throwableClass.getType());
@@ -283,7 +360,7 @@ public class ExceptionTransformer extends AbstractTransformer {
 					// check if the trap is either super- or sub-class
 					// because the procedure might throw a sub type of
 					// what it declares.
-					if (hierarchy.isClassSubclassOfIncluding(exception, t.getException())) {
+					if (isSubclassOfIncluding(exception, t.getException())) {
 						trap = t;
 						break;
 					}
@@ -328,7 +405,7 @@ public class ExceptionTransformer extends AbstractTransformer {
 			// must be a RefType
 			RefType rt = (RefType) pair.getSecond().getType();
 			SootClass thrownException = rt.getSootClass();
-			List<Trap> surroundingTraps = getTrapsGuardingUnit(u, body);
+			List<Trap> surroundingTraps = trapIndex.getTrapsGuardingUnit(u);
 
 			List<SootClass> possibleExceptions = new LinkedList<SootClass>();
 			possibleExceptions.add(thrownException);
@@ -337,27 +414,15 @@ public class ExceptionTransformer extends AbstractTransformer {
 			// finally block.
 			for (Trap t : surroundingTraps) {
 				// find any trap that is sub- or super-class
-				if (hierarchy.isClassSubclassOfIncluding(t.getException(), thrownException)
-						|| hierarchy.isClassSubclassOfIncluding(thrownException, t.getException())) {
+				if (isSubclassOfIncluding(t.getException(), thrownException)
+						|| isSubclassOfIncluding(thrownException, t.getException())) {
 					if (!possibleExceptions.contains(t.getException())) {
 						possibleExceptions.add(t.getException());
 					}
 				}
 			}
 			// now sort the classes.
-			Collections.sort(possibleExceptions, new Comparator<SootClass>() {
-				@Override
-				public int compare(final SootClass a, final SootClass b) {
-					if (a == b)
-						return 0;
-					hierarchy = Scene.v().getActiveHierarchy();
-					if (hierarchy.isClassSubclassOf(a, b))
-						return -1;
-					if (hierarchy.isClassSuperclassOf(a, b))
-						return 1;
-					return 0;
-				}
-			});
+			Collections.sort(possibleExceptions, subclassesFirst);
 			// insert a jump for each possible exception.
 			List<Unit> toInsert = new LinkedList<Unit>();
 			boolean caughtThrowable = false;
@@ -371,7 +436,7 @@ public class ExceptionTransformer extends AbstractTransformer {
 					// check if the trap is either super- or sub-class
 					// because the procedure might throw a sub type of
 					// what it declares.
-					if (hierarchy.isClassSubclassOfIncluding(exception, t.getException())) {
+					if (isSubclassOfIncluding(exception, t.getException())) {
 						trap = t;
 						break;
 					}
@@ -761,8 +826,7 @@ public class ExceptionTransformer extends AbstractTransformer {
 				// if its an instance invoke, check
 				// if the base is null.
 				InstanceInvokeExpr iivk = (InstanceInvokeExpr) ivk;
-				if (iivk.getBase() instanceof Immediate
-						&& nullnessAnalysis.isAlwaysNonNullBefore(u, (Immediate) iivk.getBase())) {
+				if (isNonNullBefore(u, iivk.getBase())) {
 					// do nothing.
 				} else {
 					registerRuntimeException(u, iivk.getBase(), nullPointerExceptionClass);
@@ -795,8 +859,7 @@ public class ExceptionTransformer extends AbstractTransformer {
 		if (r instanceof InstanceFieldRef) {
 			InstanceFieldRef e = (InstanceFieldRef) r;
 			collectPossibleExceptions(u, e.getBase());
-			if (e.getBase() instanceof Immediate
-					&& nullnessAnalysis.isAlwaysNonNullBefore(u, (Immediate) e.getBase())) {
+			if (isNonNullBefore(u, e.getBase())) {
 				// no need to add null pointer check.
 			} else {
 				registerRuntimeException(u, e.getBase(), nullPointerExceptionClass);
@@ -805,12 +868,23 @@ public class ExceptionTransformer extends AbstractTransformer {
 			ArrayRef e = (ArrayRef) r;
 			collectPossibleExceptions(u, e.getBase());
 			collectPossibleExceptions(u, e.getIndex());
-			registerRuntimeException(u, e, arrayIndexOutOfBoundsExceptionClass);
+			if (boundsAnalysis.isInBounds(u, e)) {
+				eliminatedBoundsChecks++;
+			} else {
+				registerRuntimeException(u, e, arrayIndexOutOfBoundsExceptionClass);
+			}
 		} else if (r instanceof IdentityRef || r instanceof StaticFieldRef) {
 			// do nothing.
 		}
 	}
 
+	private boolean isNonNullBefore(Unit u, Value v) {
+		if (v instanceof Immediate && nullnessAnalysis.isAlwaysNonNullBefore(u, (Immediate) v)) {
+			return true;
+		}
+		return nonNullSummaries != null && nonNullSummaries.isNonNullBefore(body.getMethod(), localDefs, u, v);
+	}
+
 	private void registerRuntimeException(Unit u, Value v, SootClass ex) {
 		if (!runtimeExceptions.containsKey(u)) {
 			runtimeExceptions.put(u, new LinkedList<Pair<Value, SootClass>>());
@@ -819,7 +893,31 @@ public class ExceptionTransformer extends AbstractTransformer {
 	}
 
 	/**
-	 * Get the list of all traps that may catch exceptions thrown by u.
+	 * Returns true if 'child' is 'parent' or a subclass of it. The results
+	 * are cached, because the same pairs of exception and catch type are
+	 * checked for many units.
+	 * 
+	 * @param child
+	 * @param parent
+	 * @return
+	 */
+	protected boolean isSubclassOfIncluding(SootClass child, SootClass parent) {
+		Map<SootClass, Boolean> parents = subclassCache.get(child);
+		if (parents == null) {
+			parents = new HashMap<SootClass, Boolean>();
+			subclassCache.put(child, parents);
+		}
+		Boolean result = parents.get(parent);
+		if (result == null) {
+			result = hierarchy.isClassSubclassOfIncluding(child, parent);
+			parents.put(parent, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the list of all traps that may catch exceptions thrown by u. This
+	 * scans all traps of b, use a TrapIndex when asking for many units.
 	 * 
 	 * @param u
 	 * @param b
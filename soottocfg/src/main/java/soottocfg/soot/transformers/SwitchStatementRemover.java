@@ -3,16 +3,19 @@
  */
 package soottocfg.soot.transformers;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import soot.Body;
 import soot.PatchingChain;
 import soot.Unit;
-import soot.jimple.Expr;
+import soot.Value;
 import soot.jimple.IntConstant;
 import soot.jimple.Jimple;
 import soot.jimple.LookupSwitchStmt;
@@ -20,11 +23,28 @@ import soot.jimple.SwitchStmt;
 import soot.jimple.TableSwitchStmt;
 
 /**
+ * Replaces switch statements by a balanced binary search over the case
+ * values, so that a switch with n cases needs O(log n) IfStmts on each path
+ * instead of a chain of n equality tests.
+ * 
  * @author schaef
  *
  */
 public class SwitchStatementRemover extends AbstractTransformer {
 
+	// keys in [low, high] go to 'target'.
+	private static class CaseRange {
+		final long low;
+		long high;
+		final Unit target;
+
+		CaseRange(long low, long high, Unit target) {
+			this.low = low;
+			this.high = high;
+			this.target = target;
+		}
+	}
+
 	/**
 	 * 
 	 */
@@ -58,44 +78,99 @@ public class SwitchStatementRemover extends AbstractTransformer {
 	}
 
 	/**
-	 * Replace a SwitchStatement by a sequence of IfStmts and a Goto for the
-	 * default case.
+	 * Replace a SwitchStatement by a binary search over the case values. The
+	 * cases are sorted and split into ranges of consecutive values with the
+	 * same target. The gaps between the cases are ranges that go to the
+	 * default target. Each IfStmt halves the remaining ranges, and a single
+	 * range is checked with at most two comparisons.
 	 * 
 	 * @param s
 	 * @return
 	 */
 	private List<Unit> replaceSwitchStatement(SwitchStmt s) {
-		List<Unit> result = new LinkedList<Unit>();
-
-		List<Expr> cases = new LinkedList<Expr>();
-		List<Unit> targets = new LinkedList<Unit>();
+		SortedMap<Integer, Unit> cases = new TreeMap<Integer, Unit>();
 		Unit defaultTarget = s.getDefaultTarget();
 
 		if (s instanceof TableSwitchStmt) {
 			TableSwitchStmt arg0 = (TableSwitchStmt) s;
 			int counter = 0;
 			for (int i = arg0.getLowIndex(); i <= arg0.getHighIndex(); i++) {
-				cases.add(Jimple.v().newEqExpr(arg0.getKey(), IntConstant.v(i)));
-				targets.add(arg0.getTarget(counter));
+				cases.put(i, arg0.getTarget(counter));
 				counter++;
 			}
 		} else {
 			LookupSwitchStmt arg0 = (LookupSwitchStmt) s;
 			for (int i = 0; i < arg0.getTargetCount(); i++) {
-				cases.add(Jimple.v().newEqExpr(arg0.getKey(), IntConstant.v(i)));
-				targets.add(arg0.getTarget(i));
+				cases.put(arg0.getLookupValue(i), arg0.getTarget(i));
 			}
 		}
 
-		for (int i = 0; i < cases.size(); i++) {
-			// create the ifstmt
-			Unit ifstmt = ifStmtFor(cases.get(i), targets.get(i), s);
-			result.add(ifstmt);
+		List<CaseRange> ranges = new ArrayList<CaseRange>();
+		for (Entry<Integer, Unit> entry : cases.entrySet()) {
+			long value = entry.getKey();
+			if (!ranges.isEmpty() && ranges.get(ranges.size() - 1).high + 1 < value) {
+				addRange(ranges, ranges.get(ranges.size() - 1).high + 1, value - 1, defaultTarget);
+			}
+			addRange(ranges, value, value, entry.getValue());
 		}
-		if (defaultTarget != null) {
-			Unit gotoStmt = gotoStmtFor(defaultTarget, s);
-			result.add(gotoStmt);
+
+		if (ranges.isEmpty()) {
+			List<Unit> result = new LinkedList<Unit>();
+			result.add(gotoStmtFor(defaultTarget, s));
+			return result;
+		}
+		return lowerRanges(s, ranges, 0, ranges.size(), Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	// adds [low, high] to the ranges, or extends the last range if it ends at
+	// low - 1 and has the same target.
+	private void addRange(List<CaseRange> ranges, long low, long high, Unit target) {
+		CaseRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+		if (last != null && last.high + 1 == low && last.target == target) {
+			last.high = high;
+		} else {
+			ranges.add(new CaseRange(low, high, target));
+		}
+	}
+
+	/**
+	 * Creates the units that jump to the targets of ranges[from, to),
+	 * assuming that lowerBound <= key <= upperBound. Keys outside of the
+	 * ranges go to the default target. The first unit is the entry, and each
+	 * path ends with a GotoStmt.
+	 */
+	private List<Unit> lowerRanges(SwitchStmt s, List<CaseRange> ranges, int from, int to, long lowerBound,
+			long upperBound) {
+		List<Unit> result = new LinkedList<Unit>();
+		Value key = s.getKey();
+		Unit defaultTarget = s.getDefaultTarget();
+		if (to - from == 1) {
+			CaseRange range = ranges.get(from);
+			Unit target = range.target;
+			if (target != defaultTarget && (lowerBound < range.low || upperBound > range.high)) {
+				if (range.low == range.high) {
+					result.add(ifStmtFor(Jimple.v().newEqExpr(key, IntConstant.v((int) range.low)), target, s));
+					target = defaultTarget;
+				} else {
+					if (lowerBound < range.low) {
+						result.add(ifStmtFor(Jimple.v().newLtExpr(key, IntConstant.v((int) range.low)),
+								defaultTarget, s));
+					}
+					if (upperBound > range.high) {
+						result.add(ifStmtFor(Jimple.v().newGtExpr(key, IntConstant.v((int) range.high)),
+								defaultTarget, s));
+					}
+				}
+			}
+			result.add(gotoStmtFor(target, s));
+			return result;
 		}
+		int mid = (from + to) / 2;
+		CaseRange pivot = ranges.get(mid);
+		List<Unit> right = lowerRanges(s, ranges, mid, to, pivot.low, upperBound);
+		result.add(ifStmtFor(Jimple.v().newGeExpr(key, IntConstant.v((int) pivot.low)), right.get(0), s));
+		result.addAll(lowerRanges(s, ranges, from, mid, lowerBound, pivot.low - 1));
+		result.addAll(right);
 		return result;
 	}
 
@@ -3,6 +3,7 @@
  */
 package soottocfg.soot.transformers;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -12,6 +13,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import soot.Body;
 import soot.BooleanType;
@@ -35,7 +37,10 @@ import soot.jimple.SpecialInvokeExpr;
 import soot.jimple.Stmt;
 import soot.tagkit.Host;
 import soot.toolkits.graph.CompleteUnitGraph;
+import soottocfg.soot.util.DispatchIndex;
+import soottocfg.soot.util.DispatchTag;
 import soottocfg.soot.util.LocalTypeFinder;
+import soottocfg.soot.util.PointsToTargets;
 import soottocfg.util.Pair;
 
 /**
@@ -45,14 +50,64 @@ import soottocfg.util.Pair;
 public class VirtualCallResolver extends AbstractTransformer {
 
 	private final Hierarchy hierarchy;
+	// may be null, then the hierarchy and the classes are queried directly.
+	private final DispatchIndex dispatchIndex;
+	// may be null, then only the LocalTypeFinder restricts the callees.
+	private final PointsToTargets pointsToTargets;
+
+	private boolean typeSwitchDispatch = false;
 
 	private LocalTypeFinder ltf;
+	private int narrowedCalls = 0;
 
 	/**
 	 * 
 	 */
 	public VirtualCallResolver() {
+		this(null);
+	}
+
+	/**
+	 * @param index
+	 *            Index of the class hierarchy that is shared by all bodies.
+	 */
+	public VirtualCallResolver(DispatchIndex index) {
+		this(index, null);
+	}
+
+	/**
+	 * @param index
+	 *            Index of the class hierarchy that is shared by all bodies.
+	 * @param pointsTo
+	 *            Targets of the calls according to the points-to analysis.
+	 *            The callees found by the LocalTypeFinder are restricted to
+	 *            these targets.
+	 */
+	public VirtualCallResolver(DispatchIndex index, PointsToTargets pointsTo) {
 		hierarchy = Scene.v().getActiveHierarchy();
+		dispatchIndex = index;
+		pointsToTargets = pointsTo;
+	}
+
+	/**
+	 * If set, calls with several possible callees are not replaced by a
+	 * sequence of instanceof checks. Instead, they get a DispatchTag and are
+	 * translated as a single branch over the dynamic type of the base.
+	 * 
+	 * @param enabled
+	 */
+	public void setTypeSwitchDispatch(boolean enabled) {
+		typeSwitchDispatch = enabled;
+	}
+
+	/**
+	 * Returns the number of calls whose callees have been restricted by the
+	 * points-to analysis.
+	 * 
+	 * @return
+	 */
+	public int getNarrowedCalls() {
+		return narrowedCalls;
 	}
 
 	/*
@@ -64,7 +119,7 @@ public class VirtualCallResolver extends AbstractTransformer {
 	@Override
 	protected void internalTransform(Body body, String arg1, Map<String, String> arg2) {
 
-		ltf = new LocalTypeFinder(new CompleteUnitGraph(body),body);
+		ltf = new LocalTypeFinder(new CompleteUnitGraph(body), body, dispatchIndex);
 
 		Map<Unit, Pair<InstanceInvokeExpr, List<SootMethod>>> callsToResolve = new HashMap<Unit, Pair<InstanceInvokeExpr, List<SootMethod>>>();
 
@@ -91,6 +146,11 @@ public class VirtualCallResolver extends AbstractTransformer {
 			InstanceInvokeExpr ivk = entry.getValue().getFirst();
 			List<SootMethod> callees = entry.getValue().getSecond();
 
+			if (typeSwitchDispatch) {
+				originalCall.addTag(createDispatchTag(callees));
+				continue;
+			}
+
 			int counter = 0;
 			for (SootMethod callee : callees) {
 				counter++;
@@ -119,6 +179,20 @@ public class VirtualCallResolver extends AbstractTransformer {
 		body.validate();
 	}
 
+	private DispatchTag createDispatchTag(List<SootMethod> callees) {
+		List<List<SootClass>> excludedClasses = new ArrayList<List<SootClass>>();
+		for (SootMethod callee : callees) {
+			List<SootClass> excluded = new LinkedList<SootClass>();
+			for (SootMethod other : callees) {
+				if (isSubclass(other.getDeclaringClass(), callee.getDeclaringClass())) {
+					excluded.add(other.getDeclaringClass());
+				}
+			}
+			excludedClasses.add(excluded);
+		}
+		return new DispatchTag(new ArrayList<SootMethod>(callees), excludedClasses);
+	}
+
 	private List<Unit> createVirtualCall(Body body, SootMethod callee, Unit originalCall, InstanceInvokeExpr ivk) {
 		List<Unit> units = new LinkedList<Unit>();
 		Local l = getFreshLocal(body, callee.getDeclaringClass().getType());
@@ -188,10 +262,16 @@ public class VirtualCallResolver extends AbstractTransformer {
 			}
 		}
 
+		String subSignature = callee.getSubSignature();
 		for (SootClass sub : possibleClasses) {
 			if (sub.resolvingLevel() < SootClass.SIGNATURES) {
 				// Log.error("Not checking subtypes of " + sub.getName());
 				// Then we probably really don't care.
+			} else if (dispatchIndex != null) {
+				SootMethod target = dispatchIndex.getDeclaredMethod(sub, subSignature);
+				if (target != null) {
+					res.add(target);
+				}
 			} else {
 				if (sub.declaresMethod(callee.getName(), callee.getParameterTypes(), callee.getReturnType())) {
 					// if (callee.hasActiveBody()) {
@@ -203,6 +283,15 @@ public class VirtualCallResolver extends AbstractTransformer {
 			}
 		}
 
+		if (pointsToTargets != null && res.size() > 1) {
+			Set<SootMethod> targets = pointsToTargets.getTargets(u, call);
+			// if the targets have nothing in common, the points-to analysis
+			// missed something.
+			if (targets != null && !Collections.disjoint(res, targets) && res.retainAll(targets)) {
+				narrowedCalls++;
+			}
+		}
+
 		if (res.isEmpty()) {
 			// TODO check when this happens... usually when we have no body for
 			// any version
@@ -227,9 +316,9 @@ public class VirtualCallResolver extends AbstractTransformer {
 			public int compare(final SootMethod a, final SootMethod b) {
 				if (a == b || a.getDeclaringClass() == b.getDeclaringClass())
 					return 0;
-				if (hierarchy.isClassSubclassOf(a.getDeclaringClass(), b.getDeclaringClass()))
+				if (isSubclass(a.getDeclaringClass(), b.getDeclaringClass()))
 					return -1;
-				if (hierarchy.isClassSuperclassOf(a.getDeclaringClass(), b.getDeclaringClass()))
+				if (isSubclass(b.getDeclaringClass(), a.getDeclaringClass()))
 					return 1;
 				return 0;
 			}
@@ -237,4 +326,11 @@ public class VirtualCallResolver extends AbstractTransformer {
 		return res;
 	}
 
+	// true if 'sub' is a proper subclass of 'sup'.
+	private boolean isSubclass(SootClass sub, SootClass sup) {
+		if (dispatchIndex != null && dispatchIndex.contains(sub) && dispatchIndex.contains(sup)) {
+			return sub != sup && !sup.isInterface() && dispatchIndex.isSubtypeIncluding(sub, sup);
+		}
+		return hierarchy.isClassSubclassOf(sub, sup);
+	}
 }
@@ -0,0 +1,309 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.Local;
+import soot.Trap;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AddExpr;
+import soot.jimple.ArrayRef;
+import soot.jimple.BinopExpr;
+import soot.jimple.ConditionExpr;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.EqExpr;
+import soot.jimple.GeExpr;
+import soot.jimple.GtExpr;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.LeExpr;
+import soot.jimple.LengthExpr;
+import soot.jimple.LtExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.SubExpr;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Intraprocedural analysis that proves array accesses a[i] in bounds, so
+ * that ExceptionTransformer does not need to add a bounds check. It covers
+ * the loops that javac generates for, e.g.,
+ *
+ * <pre>
+ * for (int i = 0; i &lt; a.length; i++)
+ * for (int i = a.length - 1; i &gt;= 0; i--)
+ * </pre>
+ *
+ * The analysis tracks three kinds of facts about locals: i &gt;= 0, n ==
+ * a.length, and i &lt; a.length. Facts are generated by constants, length
+ * expressions, additions and subtractions of constants (only where they
+ * cannot overflow), and by the conditions of if statements on the branch
+ * where they hold. A fact is killed when one of its locals is assigned.
+ * Facts hold at a unit if they hold on all incoming edges; exception
+ * handlers start without facts.
+ *
+ * The analysis works on the body as it is when the analysis is created.
+ *
+ * @author schaef
+ *
+ */
+public class ArrayBoundsAnalysis {
+
+	private enum Kind {
+		NonNegative, LengthOf, LessThanLengthOf
+	}
+
+	private static class Fact {
+		final Kind kind;
+		final Local x;
+		// the array for LengthOf and LessThanLengthOf.
+		final Local array;
+
+		Fact(Kind kind, Local x, Local array) {
+			this.kind = kind;
+			this.x = x;
+			this.array = array;
+		}
+
+		boolean mentions(Local l) {
+			return x == l || array == l;
+		}
+
+		Fact replace(Local from, Local to) {
+			return new Fact(kind, x == from ? to : x, array == from ? to : array);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Fact)) {
+				return false;
+			}
+			Fact other = (Fact) o;
+			return kind == other.kind && x == other.x && array == other.array;
+		}
+
+		@Override
+		public int hashCode() {
+			return kind.hashCode() * 31 * 31 + System.identityHashCode(x) * 31
+					+ (array == null ? 0 : System.identityHashCode(array));
+		}
+	}
+
+	private final Body body;
+	// facts before each unit. Units without entry have not been reached.
+	private final Map<Unit, Set<Fact>> factsBefore = new HashMap<Unit, Set<Fact>>();
+
+	public ArrayBoundsAnalysis(Body body) {
+		this.body = body;
+		UnitGraph graph = new BriefUnitGraph(body);
+		Set<Unit> handlers = new HashSet<Unit>();
+		for (Trap t : body.getTraps()) {
+			handlers.add(t.getHandlerUnit());
+		}
+		Set<Unit> worklist = new LinkedHashSet<Unit>(body.getUnits());
+		while (!worklist.isEmpty()) {
+			Iterator<Unit> it = worklist.iterator();
+			Unit u = it.next();
+			it.remove();
+			Set<Fact> in = null;
+			List<Unit> preds = graph.getPredsOf(u);
+			if (preds.isEmpty() || handlers.contains(u)) {
+				// the graph has no exceptional edges, so nothing is known
+				// about the handlers.
+				in = new HashSet<Fact>();
+				preds = Collections.emptyList();
+			}
+			for (Unit pred : preds) {
+				if (!factsBefore.containsKey(pred)) {
+					// not reached yet, so it does not restrict the facts.
+					continue;
+				}
+				Set<Fact> edge = factsOnEdge(pred, u);
+				if (in == null) {
+					in = edge;
+				} else {
+					in.retainAll(edge);
+				}
+			}
+			if (in != null && !in.equals(factsBefore.get(u))) {
+				factsBefore.put(u, in);
+				worklist.addAll(graph.getSuccsOf(u));
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the index of 'ref' is certainly within the bounds of
+	 * its array before 'u'.
+	 *
+	 * @param u
+	 * @param ref
+	 * @return
+	 */
+	public boolean isInBounds(Unit u, ArrayRef ref) {
+		Set<Fact> facts = factsBefore.get(u);
+		if (facts == null || !(ref.getBase() instanceof Local) || !(ref.getIndex() instanceof Local)) {
+			return false;
+		}
+		Local index = (Local) ref.getIndex();
+		return facts.contains(new Fact(Kind.NonNegative, index, null))
+				&& facts.contains(new Fact(Kind.LessThanLengthOf, index, (Local) ref.getBase()));
+	}
+
+	private Set<Fact> factsOnEdge(Unit pred, Unit succ) {
+		Set<Fact> facts = factsAfter(pred, factsBefore.get(pred));
+		if (pred instanceof IfStmt) {
+			IfStmt ifStmt = (IfStmt) pred;
+			Unit fallThrough = body.getUnits().getSuccOf(pred);
+			if (ifStmt.getTarget() != fallThrough) {
+				assume((ConditionExpr) ifStmt.getCondition(), succ == ifStmt.getTarget(), facts);
+			}
+		}
+		return facts;
+	}
+
+	private Set<Fact> factsAfter(Unit u, Set<Fact> before) {
+		Set<Fact> after = new HashSet<Fact>(before);
+		if (!(u instanceof DefinitionStmt) || !(((DefinitionStmt) u).getLeftOp() instanceof Local)) {
+			return after;
+		}
+		Local x = (Local) ((DefinitionStmt) u).getLeftOp();
+		Value rhs = ((DefinitionStmt) u).getRightOp();
+		Set<Fact> gen = new HashSet<Fact>();
+		if (rhs instanceof IntConstant) {
+			if (((IntConstant) rhs).value >= 0) {
+				gen.add(new Fact(Kind.NonNegative, x, null));
+			}
+		} else if (rhs instanceof Local) {
+			for (Fact f : before) {
+				if (f.mentions((Local) rhs)) {
+					gen.add(f.replace((Local) rhs, x));
+				}
+			}
+		} else if (rhs instanceof LengthExpr && ((LengthExpr) rhs).getOp() instanceof Local) {
+			gen.add(new Fact(Kind.NonNegative, x, null));
+			gen.add(new Fact(Kind.LengthOf, x, (Local) ((LengthExpr) rhs).getOp()));
+		} else if (rhs instanceof AddExpr || rhs instanceof SubExpr) {
+			genAddition(x, rhs, before, gen);
+		}
+		Iterator<Fact> it = after.iterator();
+		while (it.hasNext()) {
+			if (it.next().mentions(x)) {
+				it.remove();
+			}
+		}
+		after.addAll(gen);
+		return after;
+	}
+
+	/**
+	 * Facts for x = y + c or x = y - c, where c is a constant.
+	 */
+	private void genAddition(Local x, Value rhs, Set<Fact> before, Set<Fact> gen) {
+		Value op1 = ((BinopExpr) rhs).getOp1(), op2 = ((BinopExpr) rhs).getOp2();
+		Local y;
+		long delta;
+		if (op1 instanceof Local && op2 instanceof IntConstant) {
+			y = (Local) op1;
+			delta = ((IntConstant) op2).value;
+		} else if (rhs instanceof AddExpr && op2 instanceof Local && op1 instanceof IntConstant) {
+			y = (Local) op2;
+			delta = ((IntConstant) op1).value;
+		} else {
+			return;
+		}
+		if (rhs instanceof SubExpr) {
+			delta = -delta;
+		}
+		boolean nonNegative = before.contains(new Fact(Kind.NonNegative, y, null));
+		for (Fact f : before) {
+			if (f.x != y) {
+				continue;
+			}
+			if (delta == 0) {
+				gen.add(f.replace(y, x));
+			} else if (delta == 1 && f.kind == Kind.LessThanLengthOf && nonNegative) {
+				// y < a.length, so y + 1 does not overflow.
+				gen.add(new Fact(Kind.NonNegative, x, null));
+			} else if (delta < 0 && f.kind == Kind.LessThanLengthOf && nonNegative) {
+				// y >= 0, so y + delta does not overflow.
+				gen.add(new Fact(Kind.LessThanLengthOf, x, f.array));
+			} else if (delta < 0 && f.kind == Kind.LengthOf) {
+				gen.add(new Fact(Kind.LessThanLengthOf, x, f.array));
+			}
+		}
+	}
+
+	/**
+	 * Adds the facts that follow from 'cond' (or its negation if 'holds' is
+	 * false) to 'facts'.
+	 */
+	private void assume(ConditionExpr cond, boolean holds, Set<Fact> facts) {
+		Value left = cond.getOp1(), right = cond.getOp2();
+		if (cond instanceof LtExpr) {
+			if (holds) {
+				assumeLess(left, right, facts);
+			} else {
+				assumeLessOrEqual(right, left, facts);
+			}
+		} else if (cond instanceof GeExpr) {
+			if (holds) {
+				assumeLessOrEqual(right, left, facts);
+			} else {
+				assumeLess(left, right, facts);
+			}
+		} else if (cond instanceof GtExpr) {
+			if (holds) {
+				assumeLess(right, left, facts);
+			} else {
+				assumeLessOrEqual(left, right, facts);
+			}
+		} else if (cond instanceof LeExpr) {
+			if (holds) {
+				assumeLessOrEqual(left, right, facts);
+			} else {
+				assumeLess(right, left, facts);
+			}
+		} else if ((cond instanceof EqExpr && holds) || (cond instanceof NeExpr && !holds)) {
+			assumeLessOrEqual(left, right, facts);
+			assumeLessOrEqual(right, left, facts);
+		}
+	}
+
+	// a < b
+	private void assumeLess(Value a, Value b, Set<Fact> facts) {
+		if (a instanceof Local && b instanceof Local) {
+			for (Fact f : new HashSet<Fact>(facts)) {
+				if (f.x == b && f.kind == Kind.LengthOf) {
+					facts.add(new Fact(Kind.LessThanLengthOf, (Local) a, f.array));
+				}
+			}
+		} else if (a instanceof IntConstant && b instanceof Local && ((IntConstant) a).value >= -1) {
+			facts.add(new Fact(Kind.NonNegative, (Local) b, null));
+		}
+	}
+
+	// a <= b
+	private void assumeLessOrEqual(Value a, Value b, Set<Fact> facts) {
+		if (a instanceof Local && b instanceof Local) {
+			for (Fact f : new HashSet<Fact>(facts)) {
+				if (f.x == b && f.kind == Kind.LessThanLengthOf) {
+					facts.add(new Fact(Kind.LessThanLengthOf, (Local) a, f.array));
+				}
+			}
+		} else if (a instanceof IntConstant && b instanceof Local && ((IntConstant) a).value >= 0) {
+			facts.add(new Fact(Kind.NonNegative, (Local) b, null));
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+/**
+ * Index of the class hierarchy of the Scene for the resolution of virtual
+ * calls. Each class gets an id, and the subtypes of a class are a bitset
+ * over these ids. For a class, the subtypes are the class and its
+ * subclasses; for an interface, the classes that implement it or one of its
+ * subinterfaces, and their subclasses (like Hierarchy.getImplementersOf).
+ * The methods that a class declares are indexed by subsignature.
+ *
+ * The index is built from the classes in the Scene when it is created;
+ * classes that are added later have no id. The hierarchy is computed in the
+ * constructor; the subtype bitsets and the method tables are computed on
+ * first use and cached. All methods are thread-safe.
+ *
+ * @author schaef
+ *
+ */
+public class DispatchIndex {
+
+	private final List<SootClass> classes;
+	private final Map<SootClass, Integer> ids = new HashMap<SootClass, Integer>();
+	// direct subclasses of classes, direct subinterfaces and direct
+	// implementers of interfaces, by id.
+	private final List<List<Integer>> directSubclasses, directSubinterfaces, directImplementers;
+
+	private final ConcurrentHashMap<SootClass, BitSet> subtypes = new ConcurrentHashMap<SootClass, BitSet>();
+	private final ConcurrentHashMap<SootClass, Map<String, SootMethod>> methodTables = new ConcurrentHashMap<SootClass, Map<String, SootMethod>>();
+
+	public DispatchIndex() {
+		classes = new ArrayList<SootClass>(Scene.v().getClasses());
+		directSubclasses = new ArrayList<List<Integer>>(classes.size());
+		directSubinterfaces = new ArrayList<List<Integer>>(classes.size());
+		directImplementers = new ArrayList<List<Integer>>(classes.size());
+		for (int i = 0; i < classes.size(); i++) {
+			ids.put(classes.get(i), i);
+			directSubclasses.add(new LinkedList<Integer>());
+			directSubinterfaces.add(new LinkedList<Integer>());
+			directImplementers.add(new LinkedList<Integer>());
+		}
+		for (int i = 0; i < classes.size(); i++) {
+			SootClass sc = classes.get(i);
+			if (!sc.isInterface() && sc.hasSuperclass() && ids.containsKey(sc.getSuperclass())) {
+				directSubclasses.get(ids.get(sc.getSuperclass())).add(i);
+			}
+			for (SootClass itf : sc.getInterfaces()) {
+				if (!ids.containsKey(itf)) {
+					continue;
+				}
+				if (sc.isInterface()) {
+					directSubinterfaces.get(ids.get(itf)).add(i);
+				} else {
+					directImplementers.get(ids.get(itf)).add(i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of classes with an id.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return classes.size();
+	}
+
+	/**
+	 * Returns the id of 'sc', or -1 if 'sc' was not in the Scene when the
+	 * index was created.
+	 *
+	 * @param sc
+	 * @return
+	 */
+	public int getId(SootClass sc) {
+		Integer id = ids.get(sc);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the class with the id 'id'.
+	 *
+	 * @param id
+	 * @return
+	 */
+	public SootClass getClass(int id) {
+		return classes.get(id);
+	}
+
+	/**
+	 * Returns true if 'sc' has an id.
+	 *
+	 * @param sc
+	 * @return
+	 */
+	public boolean contains(SootClass sc) {
+		return ids.containsKey(sc);
+	}
+
+	/**
+	 * Returns the ids of the classes whose instances have the type 'sc', or
+	 * null if 'sc' has no id. The result must not be modified.
+	 *
+	 * @param sc
+	 * @return
+	 */
+	public BitSet getSubtypes(SootClass sc) {
+		Integer id = ids.get(sc);
+		if (id == null) {
+			return null;
+		}
+		BitSet result = subtypes.get(sc);
+		if (result == null) {
+			result = new BitSet(classes.size());
+			if (sc.isInterface()) {
+				BitSet interfaces = new BitSet(classes.size());
+				collect(id, directSubinterfaces, interfaces);
+				for (int itf = interfaces.nextSetBit(0); itf >= 0; itf = interfaces.nextSetBit(itf + 1)) {
+					for (int impl : directImplementers.get(itf)) {
+						collect(impl, directSubclasses, result);
+					}
+				}
+			} else {
+				collect(id, directSubclasses, result);
+			}
+			BitSet old = subtypes.putIfAbsent(sc, result);
+			if (old != null) {
+				result = old;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if 'sub' is 'sup' or a subtype of 'sup' according to
+	 * getSubtypes. Returns false if either class has no id.
+	 *
+	 * @param sub
+	 * @param sup
+	 * @return
+	 */
+	public boolean isSubtypeIncluding(SootClass sub, SootClass sup) {
+		BitSet sups = getSubtypes(sup);
+		Integer id = ids.get(sub);
+		return sups != null && id != null && sups.get(id);
+	}
+
+	/**
+	 * Returns the method with the subsignature 'subSignature' that 'sc'
+	 * declares (not inherits), or null if there is none.
+	 *
+	 * @param sc
+	 * @param subSignature
+	 * @return
+	 */
+	public SootMethod getDeclaredMethod(SootClass sc, String subSignature) {
+		Map<String, SootMethod> table = methodTables.get(sc);
+		if (table == null) {
+			Map<String, SootMethod> methods = new HashMap<String, SootMethod>();
+			for (SootMethod sm : sc.getMethods()) {
+				methods.put(sm.getSubSignature(), sm);
+			}
+			table = Collections.unmodifiableMap(methods);
+			Map<String, SootMethod> old = methodTables.putIfAbsent(sc, table);
+			if (old != null) {
+				table = old;
+			}
+		}
+		return table.get(subSignature);
+	}
+
+	// adds 'root' and everything reachable from it in 'edges' to 'result'.
+	private void collect(int root, List<List<Integer>> edges, BitSet result) {
+		LinkedList<Integer> todo = new LinkedList<Integer>();
+		todo.add(root);
+		while (!todo.isEmpty()) {
+			int next = todo.pop();
+			if (!result.get(next)) {
+				result.set(next);
+				todo.addAll(edges.get(next));
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.util.Collections;
+import java.util.List;
+
+import soot.SootClass;
+import soot.SootMethod;
+import soot.tagkit.AttributeValueException;
+import soot.tagkit.Tag;
+
+/**
+ * Attached by the VirtualCallResolver to a virtual call with several
+ * possible callees, if the call is translated as a type switch. The
+ * translation reads the dynamic type of the base once and branches to one
+ * block per callee. Callee i is called if the dynamic type is a subtype of
+ * its declaring class, but not of one of its excluded classes (i.e., the
+ * declaring classes of the callees that override it). The last callee is
+ * called if no other callee is. So the guards of the branches are mutually
+ * exclusive.
+ *
+ * @author schaef
+ *
+ */
+public class DispatchTag implements Tag {
+
+	public static final String name = "DispatchTag";
+
+	private final List<SootMethod> callees;
+	private final List<List<SootClass>> excludedClasses;
+
+	/**
+	 * @param callees
+	 *            The possible callees, subclasses first.
+	 * @param excludedClasses
+	 *            For each callee, the classes whose instances do not call it.
+	 */
+	public DispatchTag(List<SootMethod> callees, List<List<SootClass>> excludedClasses) {
+		this.callees = Collections.unmodifiableList(callees);
+		this.excludedClasses = Collections.unmodifiableList(excludedClasses);
+	}
+
+	public List<SootMethod> getCallees() {
+		return callees;
+	}
+
+	public List<SootClass> getExcludedClasses(int callee) {
+		return excludedClasses.get(callee);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public byte[] getValue() throws AttributeValueException {
+		throw new AttributeValueException();
+	}
+
+	@Override
+	public String toString() {
+		return name + callees;
+	}
+}
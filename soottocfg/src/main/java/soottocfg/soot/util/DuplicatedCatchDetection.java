@@ -5,7 +5,6 @@ package soottocfg.soot.util;
 
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -46,6 +45,10 @@ import soot.toolkits.graph.UnitGraph;
  */
 public class DuplicatedCatchDetection {
 
+	// structural hash of each unit that has been hashed (null for units that
+	// are never duplicates). See shallowHash.
+	private final Map<Unit, Integer> unitHashes = new HashMap<Unit, Integer>();
+
 	/**
 	 * Java finally blocks get inlined in bytecode. That is, one Java statement
 	 * can correspond to multiple bytecode instructions that are almost
@@ -54,6 +57,10 @@ public class DuplicatedCatchDetection {
 	 * one is not. This procedure tries to identify for each statement in a
 	 * finally block the set of statements it corresponds to.
 	 * 
+	 * The finally blocks are indexed by the structural hash of their first
+	 * statement, so that each statement of the body is only compared with
+	 * the finally blocks that may start with a duplicate of it.
+	 * 
 	 * @param body
 	 * @return
 	 */
@@ -61,14 +68,20 @@ public class DuplicatedCatchDetection {
 		Hierarchy hierarchy = Scene.v().getActiveHierarchy();
 		SootClass throwableClass = Scene.v().getSootClass("java.lang.Throwable");
 
+		unitHashes.clear();
+		UnitGraph graph = null;
+
 		Map<Trap, List<Unit>> catchBlocks = new HashMap<Trap, List<Unit>>();
 		// first collect all monitor traps.
 		Set<Unit> usedHandlers = new HashSet<Unit>();
 		for (Trap t : body.getTraps()) {
 			if (t.getException() == throwableClass) {
 				if (!usedHandlers.contains(t.getHandlerUnit())) {
+					if (graph == null) {
+						graph = new CompleteUnitGraph(body);
+					}
 					// collect the catch block of this trap
-					List<Unit> catchUnits = collectCatchBlock(body, t.getHandlerUnit());
+					List<Unit> catchUnits = collectCatchBlock(graph, t.getHandlerUnit());
 					// if its a proper catch block
 					if (tryRemoveCatchBlockBoilderplate(catchUnits)) {
 						// do not add trivial catch blocks.
@@ -87,12 +100,25 @@ public class DuplicatedCatchDetection {
 		Map<Unit, Set<Unit>> duplicatedUnits = new HashMap<Unit, Set<Unit>>();
 
 		if (!catchBlocks.isEmpty()) {
-			UnitGraph graph = new CompleteUnitGraph(body);
-			Iterator<Unit> iterator = graph.iterator();
-			while (iterator.hasNext()) {
-				Unit u = iterator.next();
-				for (Entry<Trap, List<Unit>> entry : catchBlocks.entrySet()) {
-					List<Unit> finallyCopy = new LinkedList<Unit>(entry.getValue());
+			Map<Integer, List<List<Unit>>> catchBlocksByHash = new HashMap<Integer, List<List<Unit>>>();
+			for (List<Unit> catchUnits : catchBlocks.values()) {
+				Integer hash = shallowHash(catchUnits.get(0));
+				if (hash == null) {
+					// nothing can be a duplicate of the first unit.
+					continue;
+				}
+				if (!catchBlocksByHash.containsKey(hash)) {
+					catchBlocksByHash.put(hash, new LinkedList<List<Unit>>());
+				}
+				catchBlocksByHash.get(hash).add(catchUnits);
+			}
+			for (Unit u : graph) {
+				Integer hash = shallowHash(u);
+				if (hash == null || !catchBlocksByHash.containsKey(hash)) {
+					continue;
+				}
+				for (List<Unit> catchUnits : catchBlocksByHash.get(hash)) {
+					List<Unit> finallyCopy = new LinkedList<Unit>(catchUnits);
 					Map<Unit, Unit> dupl = findDuplicates(graph, u, finallyCopy);
 					if (dupl.size() > 0) {
 						// StringBuilder sb = new StringBuilder();
@@ -171,6 +197,10 @@ public class DuplicatedCatchDetection {
 			// make sure that we do not mark a unit as its own duplicate.
 			return false;
 		}
+		Integer hashA = shallowHash(a);
+		if (hashA == null || !hashA.equals(shallowHash(b))) {
+			return false;
+		}
 		// NOTE: DO NOT USE getJavaSourceStartLineNumber because it is
 		// non-deterministic
 		// if
@@ -243,6 +273,60 @@ public class DuplicatedCatchDetection {
 		}
 	}
 
+	/**
+	 * Returns a hash of 'u' that is equal for units for which
+	 * isDuplicateButNotSame holds, i.e., that ignores the names of locals.
+	 * Returns null for units that are never duplicates (e.g., gotos). The
+	 * hashes are cached.
+	 * 
+	 * @param u
+	 * @return
+	 */
+	private Integer shallowHash(Unit u) {
+		if (unitHashes.containsKey(u)) {
+			return unitHashes.get(u);
+		}
+		Integer hash = null;
+		if (u instanceof DefinitionStmt) {
+			DefinitionStmt ds = (DefinitionStmt) u;
+			hash = (31 + shallowHash(ds.getLeftOp())) * 31 + shallowHash(ds.getRightOp());
+		} else if (u instanceof InvokeStmt) {
+			hash = 2 * 31 + shallowHash(((InvokeStmt) u).getInvokeExpr());
+		} else if (u instanceof IfStmt) {
+			hash = 3 * 31 + shallowHash(((IfStmt) u).getCondition());
+		} else if (u instanceof SwitchStmt) {
+			hash = 4 * 31 + shallowHash(((SwitchStmt) u).getKey());
+		}
+		unitHashes.put(u, hash);
+		return hash;
+	}
+
+	// follows the structure of shallowCompareValue.
+	private int shallowHash(Value v) {
+		if (v instanceof Local) {
+			return v.getType().hashCode();
+		} else if (v instanceof InstanceFieldRef) {
+			InstanceFieldRef ifr = (InstanceFieldRef) v;
+			return ifr.getField().hashCode() * 31 + shallowHash(ifr.getBase());
+		} else if (v instanceof InvokeExpr) {
+			InvokeExpr ivk = (InvokeExpr) v;
+			int hash = ivk.getMethod().hashCode();
+			for (int i = 0; i < ivk.getArgCount(); i++) {
+				hash = hash * 31 + shallowHash(ivk.getArg(i));
+			}
+			if (v instanceof InstanceInvokeExpr) {
+				hash = hash * 31 + shallowHash(((InstanceInvokeExpr) v).getBase());
+			}
+			return hash;
+		} else if (v instanceof UnopExpr) {
+			return v.getClass().hashCode() * 31 + shallowHash(((UnopExpr) v).getOp());
+		} else if (v instanceof BinopExpr) {
+			BinopExpr bop = (BinopExpr) v;
+			return (bop.getSymbol().hashCode() * 31 + shallowHash(bop.getOp1())) * 31 + shallowHash(bop.getOp2());
+		}
+		return v.toString().hashCode();
+	}
+
 	private boolean shallowCompareUnopExpr(UnopExpr a, UnopExpr b) {
 		// TODO add stuff to handle double negation.
 		return a.getClass() == b.getClass() && shallowCompareValue(a.getOp(), b.getOp());
@@ -259,29 +343,33 @@ public class DuplicatedCatchDetection {
 	 * Gets the handler unit of a trap and collects all units that are only
 	 * reachable via (or dominated by) this handler unit.
 	 * 
-	 * @param body
-	 *            Body of the procedure.
+	 * @param graph
+	 *            Unit graph of the procedure.
 	 * @param catchEntry
 	 *            the first statement in a catch-block (i.e., the handler unit
 	 *            in a Trap).
 	 * @return List of Units that constitute a catch-block.
 	 */
-	private List<Unit> collectCatchBlock(Body body, Unit catchEntry) {
+	private List<Unit> collectCatchBlock(UnitGraph graph, Unit catchEntry) {
 		// TODO: check if there is a function to compute this on the UnitGraph
 		// in soot.
-		UnitGraph graph = new CompleteUnitGraph(body);
 		// collect all blocks reachable from catchEntry
 		Queue<Unit> todo = new LinkedList<Unit>();
 		List<Unit> done = new LinkedList<Unit>();
+		// the units in done, and the units in todo or done.
+		Set<Unit> doneSet = new HashSet<Unit>();
+		Set<Unit> queued = new HashSet<Unit>();
 		todo.add(catchEntry);
+		queued.add(catchEntry);
 
 		while (!todo.isEmpty()) {
 			Unit u = todo.poll();
 			done.add(u);
+			doneSet.add(u);
 			for (Unit next : graph.getSuccsOf(u)) {
-				if (done.containsAll(graph.getPredsOf(next))) {
+				if (doneSet.containsAll(graph.getPredsOf(next))) {
 					// if we have seen all predecessors, we're done.
-					if (!todo.contains(next) && !done.contains(next)) {
+					if (queued.add(next)) {
 						todo.add(next);
 					}
 				} else {
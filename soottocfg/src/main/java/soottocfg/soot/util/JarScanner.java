@@ -0,0 +1,145 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Enumerates the classes and the manifest class path of jar files. A jar is
+ * opened once as zip FileSystem to read both. The result for each jar is
+ * cached by its path, modification time, and size, so jars that did not
+ * change are not opened again in the same JVM (e.g., in daemon or batch
+ * mode).
+ *
+ * Jars are scanned sequentially on the calling thread. SootRunner only
+ * scans the input jar; the jars on its manifest class path are passed to
+ * Soot without being opened, so there is nothing to scan in parallel.
+ *
+ * @author schaef
+ *
+ */
+public class JarScanner {
+
+	/**
+	 * The classes and the class path of a jar file.
+	 */
+	public static class JarInfo {
+		private final long lastModified, length;
+		private final List<String> classes;
+		private final List<File> classPath;
+
+		private JarInfo(long lastModified, long length, List<String> classes, List<File> classPath) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.classes = Collections.unmodifiableList(classes);
+			this.classPath = Collections.unmodifiableList(classPath);
+		}
+
+		/**
+		 * Names of all classes in the jar, e.g., "java.lang.Object".
+		 *
+		 * @return
+		 */
+		public List<String> getClasses() {
+			return classes;
+		}
+
+		/**
+		 * Jars listed in the Class-Path attribute of the manifest, resolved
+		 * relative to the folder of the jar.
+		 *
+		 * @return
+		 */
+		public List<File> getClassPath() {
+			return classPath;
+		}
+	}
+
+	private static final Map<String, JarInfo> cache = new ConcurrentHashMap<String, JarInfo>();
+
+	private JarScanner() {
+	}
+
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns the classes and the class path of 'jar'.
+	 *
+	 * @param jar
+	 * @return
+	 */
+	public static JarInfo scan(File jar) {
+		String key = jar.getAbsolutePath();
+		JarInfo info = cache.get(key);
+		if (info != null && info.lastModified == jar.lastModified() && info.length == jar.length()) {
+			return info;
+		}
+		// read the time stamp before the content, so that a jar that is
+		// modified while we read it is scanned again next time.
+		long lastModified = jar.lastModified(), length = jar.length();
+		final List<String> classes = new LinkedList<String>();
+		List<File> classPath = new LinkedList<File>();
+		try (FileSystem fs = FileSystems.newFileSystem(jar.toPath(), (ClassLoader) null)) {
+			for (final Path root : fs.getRootDirectories()) {
+				Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						String name = root.relativize(file).toString();
+						if (name.endsWith(".class")) {
+							classes.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+						}
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			}
+			Path manifestFile = fs.getPath("META-INF", "MANIFEST.MF");
+			if (Files.exists(manifestFile)) {
+				try (InputStream in = Files.newInputStream(manifestFile)) {
+					classPath.addAll(parseClassPath(jar, new Manifest(in)));
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+		info = new JarInfo(lastModified, length, classes, classPath);
+		cache.put(key, info);
+		return info;
+	}
+
+	private static List<File> parseClassPath(File jar, Manifest manifest) {
+		List<File> jarFiles = new LinkedList<File>();
+		Attributes mainAttributes = manifest.getMainAttributes();
+		if (mainAttributes == null) {
+			return jarFiles;
+		}
+		String classPath = mainAttributes.getValue(Attributes.Name.CLASS_PATH);
+		if (classPath == null) {
+			return jarFiles;
+		}
+		for (String classPathItem : classPath.split(" ")) {
+			if (classPathItem.endsWith(".jar")) {
+				jarFiles.add(new File(jar.getParent(), classPathItem));
+			}
+		}
+		return jarFiles;
+	}
+}
@@ -0,0 +1,429 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soottocfg.cfg.Program;
+import soottocfg.cfg.SourceLocation;
+import soottocfg.cfg.Variable;
+import soottocfg.cfg.expression.BinaryExpression;
+import soottocfg.cfg.expression.BinaryExpression.BinaryOperator;
+import soottocfg.cfg.expression.BooleanLiteral;
+import soottocfg.cfg.expression.Expression;
+import soottocfg.cfg.expression.IdentifierExpression;
+import soottocfg.cfg.expression.IntegerLiteral;
+import soottocfg.cfg.expression.UnaryExpression;
+import soottocfg.cfg.expression.UnaryExpression.UnaryOperator;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.Method;
+import soottocfg.cfg.statement.AssertStatement;
+import soottocfg.cfg.statement.AssumeStatement;
+
+/**
+ * Pre/post summaries of library methods. A method that is called but not
+ * translated (e.g., because it belongs to the JDK) has no body, so the
+ * checkers treat it as a method with an empty contract. If the method has a
+ * summary, it gets a body with a single block that asserts the 'requires'
+ * and assumes the 'ensures' clauses of its summary instead.
+ *
+ * A call can dispatch to an override of the summarized method, which the
+ * summary does not describe. So a summary is only used if all possible
+ * targets of a call are known to the summary: the method is static,
+ * private, or final, its class is final or not in the Scene, or no subtype
+ * of its class outside the JDK declares the method.
+ *
+ * The summaries are read from a text file; the format is described in the
+ * bundled file library_summaries.txt. The first line that is not a comment
+ * must be 'version N', and files with a version other than VERSION are
+ * rejected.
+ *
+ * @author schaef
+ *
+ */
+public class LibrarySummaries {
+
+	public static final int VERSION = 1;
+
+	private static final String bundledSummaries = "library_summaries.txt";
+	private static final String returnVariableName = "$ret_";
+
+	private static class Summary {
+		final List<String> requires = new LinkedList<String>();
+		final List<String> ensures = new LinkedList<String>();
+		// line of the signature, for error messages.
+		final int line;
+
+		Summary(int line) {
+			this.line = line;
+		}
+	}
+
+	private final String sourceName;
+	private final Map<String, Summary> summaries = new LinkedHashMap<String, Summary>();
+
+	private LibrarySummaries(String sourceName) {
+		this.sourceName = sourceName;
+	}
+
+	/**
+	 * Loads the summaries that are bundled with soottocfg.
+	 *
+	 * @return
+	 */
+	public static LibrarySummaries loadBundled() {
+		InputStream in = LibrarySummaries.class.getResourceAsStream(bundledSummaries);
+		if (in == null) {
+			throw new RuntimeException("Resource " + bundledSummaries + " not found.");
+		}
+		return load(in, bundledSummaries);
+	}
+
+	/**
+	 * Loads the summaries from 'file'.
+	 *
+	 * @param file
+	 * @return
+	 */
+	public static LibrarySummaries load(File file) {
+		try {
+			return load(new FileInputStream(file), file.getPath());
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+	}
+
+	private static LibrarySummaries load(InputStream in, String sourceName) {
+		LibrarySummaries result = new LibrarySummaries(sourceName);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			boolean versionSeen = false;
+			Summary current = null;
+			int lineNumber = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				if (!versionSeen) {
+					if (!line.equals("version " + VERSION)) {
+						throw new RuntimeException(sourceName + ":" + lineNumber + ": expected 'version " + VERSION
+								+ "' but found '" + line + "'");
+					}
+					versionSeen = true;
+				} else if (line.startsWith("<")) {
+					current = new Summary(lineNumber);
+					result.summaries.put(line, current);
+				} else if (current != null && line.startsWith("requires ")) {
+					current.requires.add(line.substring("requires ".length()));
+				} else if (current != null && line.startsWith("ensures ")) {
+					current.ensures.add(line.substring("ensures ".length()));
+				} else {
+					throw new RuntimeException(sourceName + ":" + lineNumber + ": cannot parse '" + line + "'");
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+		return result;
+	}
+
+	public boolean hasSummary(String signature) {
+		return summaries.containsKey(signature);
+	}
+
+	public int size() {
+		return summaries.size();
+	}
+
+	/**
+	 * Adds a body built from its summary to each method in 'program' that
+	 * has no body and a summary, unless a call of the method may dispatch
+	 * to an override outside the JDK. Uses the classes in the Scene.
+	 *
+	 * @param program
+	 * @return Number of methods that got a body.
+	 */
+	public int applyTo(Program program) {
+		int applied = 0;
+		DispatchIndex index = null;
+		for (Method m : program.getMethods()) {
+			if (m.getSource() != null || !hasSummary(m.getMethodName())) {
+				continue;
+			}
+			String className = Scene.signatureToClass(m.getMethodName());
+			if (Scene.v().containsClass(className)) {
+				// built on first use, because most programs only call
+				// methods of classes that are not in the Scene.
+				if (index == null) {
+					index = new DispatchIndex();
+				}
+				if (mayDispatchOutsideJdk(index, Scene.v().getSootClass(className),
+						Scene.signatureToSubsignature(m.getMethodName()))) {
+					continue;
+				}
+			}
+			createBody(m, summaries.get(m.getMethodName()));
+			applied++;
+		}
+		return applied;
+	}
+
+	/**
+	 * Returns true if a call of the method with 'subSignature' on an
+	 * instance of 'sc' may execute a method that is declared outside the
+	 * JDK in a proper subtype of 'sc'.
+	 *
+	 * @param index
+	 * @param sc
+	 * @param subSignature
+	 * @return
+	 */
+	private boolean mayDispatchOutsideJdk(DispatchIndex index, SootClass sc, String subSignature) {
+		SootMethod sm = index.getDeclaredMethod(sc, subSignature);
+		if (sc.isFinal() || (sm != null && (sm.isStatic() || sm.isPrivate() || sm.isFinal()))) {
+			return false;
+		}
+		BitSet subtypes = index.getSubtypes(sc);
+		if (subtypes == null) {
+			// added to the Scene after the index was built.
+			return true;
+		}
+		for (int i = subtypes.nextSetBit(0); i >= 0; i = subtypes.nextSetBit(i + 1)) {
+			SootClass sub = index.getClass(i);
+			if (sub != sc && !sub.isJavaLibraryClass() && index.getDeclaredMethod(sub, subSignature) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void createBody(Method m, Summary summary) {
+		SourceLocation loc = null;
+		Variable returnVariable = null;
+		if (m.getReturnType().isPresent()) {
+			returnVariable = new Variable(returnVariableName, m.getReturnType().get());
+		}
+		CfgBlock block = new CfgBlock(m);
+		for (String clause : summary.requires) {
+			block.addStatement(new AssertStatement(loc, parse(clause, m, returnVariable, summary)));
+		}
+		for (String clause : summary.ensures) {
+			block.addStatement(new AssumeStatement(loc, parse(clause, m, returnVariable, summary)));
+		}
+		m.initialize(null, returnVariable, new HashSet<Variable>(), block, false);
+	}
+
+	private Expression parse(String clause, Method m, Variable returnVariable, Summary summary) {
+		try {
+			Parser parser = new Parser(clause, m, returnVariable);
+			Expression e = parser.parseImplication();
+			parser.skipSpaces();
+			if (parser.pos < clause.length()) {
+				throw new RuntimeException("unexpected '" + clause.substring(parser.pos) + "'");
+			}
+			return e;
+		} catch (RuntimeException e) {
+			throw new RuntimeException(sourceName + ":" + summary.line + ": " + m.getMethodName() + ": "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Recursive descent parser for the clauses of a summary. Operators bind
+	 * as in Java, and '->' binds weakest.
+	 */
+	private static class Parser {
+		private final String text;
+		private final Method method;
+		private final Variable returnVariable;
+		private int pos = 0;
+
+		Parser(String text, Method method, Variable returnVariable) {
+			this.text = text;
+			this.method = method;
+			this.returnVariable = returnVariable;
+		}
+
+		Expression parseImplication() {
+			Expression left = parseOr();
+			if (accept("->")) {
+				// right associative.
+				return new BinaryExpression(null, BinaryOperator.Implies, left, parseImplication());
+			}
+			return left;
+		}
+
+		private Expression parseOr() {
+			Expression left = parseAnd();
+			while (accept("||")) {
+				left = new BinaryExpression(null, BinaryOperator.Or, left, parseAnd());
+			}
+			return left;
+		}
+
+		private Expression parseAnd() {
+			Expression left = parseComparison();
+			while (accept("&&")) {
+				left = new BinaryExpression(null, BinaryOperator.And, left, parseComparison());
+			}
+			return left;
+		}
+
+		private Expression parseComparison() {
+			Expression left = parseSum();
+			BinaryOperator op;
+			if (accept("==")) {
+				op = BinaryOperator.Eq;
+			} else if (accept("!=")) {
+				op = BinaryOperator.Ne;
+			} else if (accept("<=")) {
+				op = BinaryOperator.Le;
+			} else if (accept(">=")) {
+				op = BinaryOperator.Ge;
+			} else if (accept("<")) {
+				op = BinaryOperator.Lt;
+			} else if (accept(">")) {
+				op = BinaryOperator.Gt;
+			} else {
+				return left;
+			}
+			return new BinaryExpression(null, op, left, parseSum());
+		}
+
+		private Expression parseSum() {
+			Expression left = parseProduct();
+			while (true) {
+				if (peek("->")) {
+					return left;
+				} else if (accept("+")) {
+					left = new BinaryExpression(null, BinaryOperator.Plus, left, parseProduct());
+				} else if (accept("-")) {
+					left = new BinaryExpression(null, BinaryOperator.Minus, left, parseProduct());
+				} else {
+					return left;
+				}
+			}
+		}
+
+		private Expression parseProduct() {
+			Expression left = parseUnary();
+			while (true) {
+				if (accept("*")) {
+					left = new BinaryExpression(null, BinaryOperator.Mul, left, parseUnary());
+				} else if (accept("/")) {
+					left = new BinaryExpression(null, BinaryOperator.Div, left, parseUnary());
+				} else if (accept("%")) {
+					left = new BinaryExpression(null, BinaryOperator.Mod, left, parseUnary());
+				} else {
+					return left;
+				}
+			}
+		}
+
+		private Expression parseUnary() {
+			if (peek("!=")) {
+				throw new RuntimeException("unexpected '!=' at " + pos);
+			} else if (accept("!")) {
+				return new UnaryExpression(null, UnaryOperator.LNot, parseUnary());
+			} else if (!peek("->") && accept("-")) {
+				skipSpaces();
+				if (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+					return new IntegerLiteral(null, -parseNumber());
+				}
+				return new UnaryExpression(null, UnaryOperator.Neg, parseUnary());
+			}
+			return parsePrimary();
+		}
+
+		private Expression parsePrimary() {
+			skipSpaces();
+			if (accept("(")) {
+				Expression e = parseImplication();
+				if (!accept(")")) {
+					throw new RuntimeException("expected ')' at " + pos);
+				}
+				return e;
+			} else if (acceptWord("true")) {
+				return BooleanLiteral.trueLiteral();
+			} else if (acceptWord("false")) {
+				return BooleanLiteral.falseLiteral();
+			} else if (acceptWord("null")) {
+				return SootTranslationHelpers.v().getMemoryModel().mkNullConstant();
+			} else if (acceptWord("$ret")) {
+				if (returnVariable == null) {
+					throw new RuntimeException("$ret used in a void method");
+				}
+				return new IdentifierExpression(null, returnVariable);
+			} else if (accept("$")) {
+				int index = (int) parseNumber();
+				if (index >= method.getInParams().size()) {
+					throw new RuntimeException("no parameter $" + index);
+				}
+				return new IdentifierExpression(null, method.getInParam(index));
+			} else if (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+				return new IntegerLiteral(null, parseNumber());
+			}
+			throw new RuntimeException("unexpected '" + text.substring(pos) + "'");
+		}
+
+		private long parseNumber() {
+			skipSpaces();
+			int start = pos;
+			while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+				pos++;
+			}
+			if (start == pos) {
+				throw new RuntimeException("expected a number at " + pos);
+			}
+			return Long.parseLong(text.substring(start, pos));
+		}
+
+		private void skipSpaces() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private boolean peek(String token) {
+			skipSpaces();
+			return text.startsWith(token, pos);
+		}
+
+		private boolean accept(String token) {
+			if (peek(token)) {
+				pos += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		private boolean acceptWord(String word) {
+			if (peek(word)) {
+				int end = pos + word.length();
+				if (end == text.length() || !Character.isLetterOrDigit(text.charAt(end))) {
+					pos = end;
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
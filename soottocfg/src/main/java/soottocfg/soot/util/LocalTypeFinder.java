@@ -1,13 +1,15 @@
 /**
- * 
+ *
  */
 package soottocfg.soot.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import soot.Body;
@@ -30,23 +32,100 @@ import soot.toolkits.graph.DirectedGraph;
 import soot.toolkits.scalar.ForwardFlowAnalysis;
 
 /**
+ * Computes the possible types of each local before each unit. The locals
+ * and all types that can be assigned in the body are numbered, and a flow
+ * fact is a bit matrix with one row per local and one column per type,
+ * stored in a flat long[]. The types that each assignment can add are
+ * computed once per unit before the analysis.
+ *
  * @author schaef
  *
  */
-public class LocalTypeFinder extends ForwardFlowAnalysis<Unit, Map<Local, Set<Type>>> {
+public class LocalTypeFinder extends ForwardFlowAnalysis<Unit, LocalTypeFinder.TypeMatrix> {
+
+	/**
+	 * Row l, column t is set if local l may have type t.
+	 */
+	public static final class TypeMatrix {
+		private final long[] bits;
+
+		private TypeMatrix(int size) {
+			bits = new long[size];
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof TypeMatrix && Arrays.equals(bits, ((TypeMatrix) o).bits);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(bits);
+		}
+	}
 
 	private final Hierarchy hierarchy;
 	private final Body body;
+	// may be null, then the subtypes come from the hierarchy.
+	private final DispatchIndex dispatchIndex;
+
+	private final Map<Local, Integer> localIds = new HashMap<Local, Integer>();
+	private final Map<Type, Integer> typeIds = new HashMap<Type, Integer>();
+	private final List<Type> types = new ArrayList<Type>();
+	// number of longs per row.
+	private final int rowLength;
+	// types added by each assignment to a local that is not a copy.
+	private final Map<Unit, long[]> assignedTypes = new HashMap<Unit, long[]>();
 
 	public LocalTypeFinder(DirectedGraph<Unit> graph, Body b) {
+		this(graph, b, null);
+	}
+
+	public LocalTypeFinder(DirectedGraph<Unit> graph, Body b, DispatchIndex index) {
 		super(graph);
 		this.body = b;
+		this.dispatchIndex = index;
 		hierarchy = Scene.v().getActiveHierarchy();
+
+		for (Local l : body.getLocals()) {
+			localIds.put(l, localIds.size());
+			typeId(l.getType());
+		}
+		Map<Unit, Set<Type>> assigned = new HashMap<Unit, Set<Type>>();
+		for (Unit u : graph) {
+			if (u instanceof DefinitionStmt && ((DefinitionStmt) u).getLeftOp() instanceof Local
+					&& !(((DefinitionStmt) u).getRightOp() instanceof Local)) {
+				Set<Type> rhsTypes = getPossibleRhsTypes(((DefinitionStmt) u).getRightOp());
+				for (Type t : rhsTypes) {
+					typeId(t);
+				}
+				assigned.put(u, rhsTypes);
+			}
+		}
+		rowLength = (types.size() + 63) / 64;
+		for (Map.Entry<Unit, Set<Type>> entry : assigned.entrySet()) {
+			long[] row = new long[rowLength];
+			for (Type t : entry.getValue()) {
+				int id = typeIds.get(t);
+				row[id / 64] |= 1L << (id % 64);
+			}
+			assignedTypes.put(entry.getKey(), row);
+		}
 		this.doAnalysis();
 	}
 
 	public Set<Type> getLocalTypesBefore(Unit u, Local l) {
-		Set<Type> ret = new HashSet<Type>(this.getFlowBefore(u).get(l));
+		Set<Type> ret = new HashSet<Type>();
+		long[] bits = this.getFlowBefore(u).bits;
+		int offset = localIds.get(l) * rowLength;
+		for (int i = 0; i < rowLength; i++) {
+			long word = bits[offset + i];
+			while (word != 0) {
+				int bit = Long.numberOfTrailingZeros(word);
+				ret.add(types.get(i * 64 + bit));
+				word &= word - 1;
+			}
+		}
 		if (ret.isEmpty()) {
 			//can only happen if l is not initialized.
 			ret.add(l.getType());
@@ -55,29 +134,49 @@ public class LocalTypeFinder extends ForwardFlowAnalysis<Unit, Map<Local, Set<Ty
 	}
 
 	@Override
-	protected void flowThrough(Map<Local, Set<Type>> in, Unit u, Map<Local, Set<Type>> out) {
+	protected void flowThrough(TypeMatrix in, Unit u, TypeMatrix out) {
 		copy(in, out);
-		
+
 		if (u instanceof DefinitionStmt) {
 			DefinitionStmt ds = (DefinitionStmt) u;
 			if (ds.getLeftOp() instanceof Local) {
-				Local l = (Local) ds.getLeftOp();
-//				out.put(l, getPossibleRhsTypes(u, ds.getRightOp(), in));
-				out.get(l).addAll(getPossibleRhsTypes(u, ds.getRightOp(), in));
+				int target = localIds.get(ds.getLeftOp()) * rowLength;
+				Value rhs = ds.getRightOp();
+				if (rhs instanceof Local) {
+					// just use the set of the other local.
+					int source = localIds.get(rhs) * rowLength;
+					boolean empty = true;
+					for (int i = 0; i < rowLength; i++) {
+						out.bits[target + i] |= in.bits[source + i];
+						empty = empty && in.bits[source + i] == 0;
+					}
+					if (empty) {
+						int id = typeIds.get(rhs.getType());
+						out.bits[target + id / 64] |= 1L << (id % 64);
+					}
+				} else {
+					long[] row = assignedTypes.get(u);
+					for (int i = 0; i < rowLength; i++) {
+						out.bits[target + i] |= row[i];
+					}
+				}
 			}
 		}
 	}
 
-	private Set<Type> getPossibleRhsTypes(Unit u, Value rhs, Map<Local, Set<Type>> in) {
+	private int typeId(Type t) {
+		Integer id = typeIds.get(t);
+		if (id == null) {
+			id = types.size();
+			typeIds.put(t, id);
+			types.add(t);
+		}
+		return id;
+	}
+
+	private Set<Type> getPossibleRhsTypes(Value rhs) {
 		Set<Type> res = new HashSet<Type>();
-		if (rhs instanceof Local) {
-			// just use the set of the other local.
-			if (in.get(rhs).isEmpty()) {
-				res.add(rhs.getType());
-			} else {
-				res.addAll(in.get(rhs));
-			}
-		} else if (rhs instanceof AnyNewExpr) {
+		if (rhs instanceof AnyNewExpr) {
 			// only add the type of the NewExpr.
 			res.add(rhs.getType());
 		} else if (rhs instanceof ThisRef) {
@@ -87,6 +186,13 @@ public class LocalTypeFinder extends ForwardFlowAnalysis<Unit, Map<Local, Set<Ty
 				|| rhs instanceof InvokeExpr) {
 			if (rhs.getType() instanceof RefType) {
 				SootClass sc = ((RefType) rhs.getType()).getSootClass();
+				BitSet subtypes = dispatchIndex == null ? null : dispatchIndex.getSubtypes(sc);
+				if (subtypes != null) {
+					for (int i = subtypes.nextSetBit(0); i >= 0; i = subtypes.nextSetBit(i + 1)) {
+						res.add(dispatchIndex.getClass(i).getType());
+					}
+					return res;
+				}
 				List<SootClass> classes = null;
 				if (sc.isInterface()) {
 					classes = hierarchy.getImplementersOf(sc);
@@ -112,34 +218,20 @@ public class LocalTypeFinder extends ForwardFlowAnalysis<Unit, Map<Local, Set<Ty
 	}
 
 	@Override
-	protected void copy(Map<Local, Set<Type>> from, Map<Local, Set<Type>> to) {		
-		for (Entry<Local, Set<Type>> entry : from.entrySet()) {			
-			to.put(entry.getKey(), new HashSet<Type>(entry.getValue()));	
-		}
+	protected void copy(TypeMatrix from, TypeMatrix to) {
+		System.arraycopy(from.bits, 0, to.bits, 0, from.bits.length);
 	}
 
 	@Override
-	protected void merge(Map<Local, Set<Type>> in1, Map<Local, Set<Type>> in2, Map<Local, Set<Type>> out) {
-		out.clear();
-		for (Entry<Local, Set<Type>> entry : in1.entrySet()) {
-			out.put(entry.getKey(), new HashSet<Type>(entry.getValue()));
-		}		
-		for (Entry<Local, Set<Type>> entry : in2.entrySet()) {
-			if (out.containsKey(entry.getKey())) {
-				out.get(entry.getKey()).addAll(entry.getValue());
-			} else {
-				out.put(entry.getKey(), new HashSet<Type>(entry.getValue()));
-			}
+	protected void merge(TypeMatrix in1, TypeMatrix in2, TypeMatrix out) {
+		for (int i = 0; i < out.bits.length; i++) {
+			out.bits[i] = in1.bits[i] | in2.bits[i];
 		}
 	}
 
 	@Override
-	protected Map<Local, Set<Type>> newInitialFlow() {		
-		Map<Local, Set<Type>> ret = new HashMap<Local, Set<Type>>();
-		for (Local l : body.getLocals()) {
-			ret.put(l, new HashSet<Type>());
-		}
-		return ret;
+	protected TypeMatrix newInitialFlow() {
+		return new TypeMatrix(localIds.size() * rowLength);
 	}
 
 }
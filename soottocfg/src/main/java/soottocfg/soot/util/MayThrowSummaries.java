@@ -0,0 +1,422 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.Hierarchy;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Trap;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.ArrayRef;
+import soot.jimple.CastExpr;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InterfaceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Stmt;
+import soot.jimple.ThrowStmt;
+import soot.jimple.VirtualInvokeExpr;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soottocfg.soot.SootRunner;
+
+/**
+ * Bottom-up summaries of the exceptions that may escape a method, i.e., that
+ * a call to the method may leave in the exception global after the
+ * ExceptionTransformer made the exception handling explicit. An exception
+ * class in a summary stands for the class and all its subclasses.
+ *
+ * The summary of a method with a body contains the exceptions of its throw
+ * statements, the runtime exceptions that ExceptionTransformer turns into
+ * exceptional returns (null dereferences, array accesses, and casts; unless
+ * they are turned into assertions), and the summaries of its callees, minus
+ * the exceptions that are certainly caught by a trap of the method. The
+ * summary of a method without body (e.g., a library method) is its throws
+ * clause plus RuntimeException and Error.
+ *
+ * The summaries are computed per strongly connected component of the call
+ * graph, callees first, and iterated to a fixpoint within each component.
+ * The callees of a call are taken from Soot's call graph if there is one,
+ * and otherwise from the class hierarchy.
+ *
+ * The summaries, and the exceptions that may escape each call, are computed
+ * on the bodies before any transformation and are not changed afterwards.
+ * Queries do not use the Hierarchy (whose caches are not thread-safe), so
+ * they can be made from any thread. A call that was added to a body later
+ * gets the summary of the called method without body, which covers all
+ * methods that may be dispatched to.
+ *
+ * @author schaef
+ *
+ */
+public class MayThrowSummaries {
+
+	private static class CallSite {
+		final SootMethod callee;
+		final Collection<SootMethod> targets;
+		final List<Trap> traps;
+
+		CallSite(SootMethod callee, Collection<SootMethod> targets, List<Trap> traps) {
+			this.callee = callee;
+			this.targets = targets;
+			this.traps = traps;
+		}
+	}
+
+	private final boolean uncaughtAsAssertion;
+	private final Hierarchy hierarchy;
+	private final SootClass runtimeExceptionClass, errorClass, throwableClass, nullPointerExceptionClass,
+			arrayIndexOutOfBoundsExceptionClass, classCastExceptionClass;
+	// null if there is no assertion class.
+	private final SootMethod assertMethod;
+
+	// exceptions thrown by the method itself, and its calls.
+	private final Map<SootMethod, Set<SootClass>> localExceptions = new HashMap<SootMethod, Set<SootClass>>();
+	private final Map<SootMethod, List<CallSite>> callSites = new HashMap<SootMethod, List<CallSite>>();
+
+	private final Map<SootMethod, Set<SootClass>> summaries = new HashMap<SootMethod, Set<SootClass>>();
+	// exceptions that may escape each call, ignoring its traps.
+	private final Map<Unit, CallSite> callSiteOfUnit = new HashMap<Unit, CallSite>();
+	private final Map<Unit, Set<SootClass>> thrownByCall = new HashMap<Unit, Set<SootClass>>();
+
+	/**
+	 * Computes the summaries of 'methods'. All other methods are treated as
+	 * methods without body.
+	 *
+	 * @param methods
+	 *            Concrete methods whose bodies are translated.
+	 * @param uncaughtAsAssertion
+	 *            Same as the flag of ExceptionTransformer: if true, uncaught
+	 *            runtime exceptions are assertions and do not escape.
+	 */
+	public MayThrowSummaries(Collection<SootMethod> methods, boolean uncaughtAsAssertion) {
+		this.uncaughtAsAssertion = uncaughtAsAssertion;
+		hierarchy = Scene.v().getActiveHierarchy();
+		runtimeExceptionClass = Scene.v().getSootClass("java.lang.RuntimeException");
+		errorClass = Scene.v().getSootClass("java.lang.Error");
+		throwableClass = Scene.v().getSootClass("java.lang.Throwable");
+		nullPointerExceptionClass = Scene.v().getSootClass("java.lang.NullPointerException");
+		arrayIndexOutOfBoundsExceptionClass = Scene.v().getSootClass("java.lang.ArrayIndexOutOfBoundsException");
+		classCastExceptionClass = Scene.v().getSootClass("java.lang.ClassCastException");
+		if (Scene.v().containsClass(SootRunner.assertionClassName)) {
+			assertMethod = SootTranslationHelpers.v().getAssertMethod();
+		} else {
+			assertMethod = null;
+		}
+
+		for (SootMethod sm : methods) {
+			Body body;
+			try {
+				body = sm.retrieveActiveBody();
+			} catch (RuntimeException e) {
+				// treated like a method without body.
+				continue;
+			}
+			collectExceptions(sm, body);
+		}
+		for (List<SootMethod> component : stronglyConnectedComponents()) {
+			computeFixpoint(component);
+		}
+		for (Map.Entry<Unit, CallSite> entry : callSiteOfUnit.entrySet()) {
+			Set<SootClass> thrown = new HashSet<SootClass>();
+			for (SootMethod target : entry.getValue().targets) {
+				thrown.addAll(getThrownExceptions(target));
+			}
+			thrownByCall.put(entry.getKey(), thrown);
+		}
+	}
+
+	/**
+	 * Returns the number of methods with a computed summary.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return summaries.size();
+	}
+
+	/**
+	 * Returns the exceptions that may escape 'sm'.
+	 *
+	 * @param sm
+	 * @return
+	 */
+	public Set<SootClass> getThrownExceptions(SootMethod sm) {
+		if (summaries.containsKey(sm)) {
+			return Collections.unmodifiableSet(summaries.get(sm));
+		}
+		return summaryWithoutBody(sm);
+	}
+
+	/**
+	 * Returns the exceptions that may escape the call 'ivk' in 'u'.
+	 *
+	 * @param u
+	 * @param ivk
+	 * @return
+	 */
+	public Set<SootClass> getThrownExceptions(Unit u, InvokeExpr ivk) {
+		CallSite call = callSiteOfUnit.get(u);
+		if (call != null && call.callee == ivk.getMethod()) {
+			return Collections.unmodifiableSet(thrownByCall.get(u));
+		}
+		// not a call that we have seen.
+		return summaryWithoutBody(ivk.getMethod());
+	}
+
+	/**
+	 * Returns true if an instance of 'exception' may escape the call 'ivk'
+	 * in 'u'.
+	 *
+	 * @param u
+	 * @param ivk
+	 * @param exception
+	 * @return
+	 */
+	public boolean mayThrow(Unit u, InvokeExpr ivk, SootClass exception) {
+		for (SootClass thrown : getThrownExceptions(u, ivk)) {
+			// a subclass of 'thrown' may be an instance of 'exception' as
+			// well.
+			if (isSubclassOfIncluding(thrown, exception) || isSubclassOfIncluding(exception, thrown)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Set<SootClass> summaryWithoutBody(SootMethod sm) {
+		Set<SootClass> result = new HashSet<SootClass>();
+		if (sm.getDeclaringClass().getName().equals("java.lang.Object") && sm.isConstructor()) {
+			return result;
+		}
+		if (sm == assertMethod) {
+			// becomes an assertion.
+			return result;
+		}
+		result.addAll(sm.getExceptions());
+		result.add(runtimeExceptionClass);
+		result.add(errorClass);
+		return result;
+	}
+
+	private void collectExceptions(SootMethod sm, Body body) {
+		Set<SootClass> local = new HashSet<SootClass>();
+		List<CallSite> calls = new LinkedList<CallSite>();
+		TrapIndex trapIndex = new TrapIndex(body);
+		for (Unit u : body.getUnits()) {
+			List<Trap> traps = trapIndex.getTrapsGuardingUnit(u);
+			if (u instanceof ThrowStmt) {
+				Value op = ((ThrowStmt) u).getOp();
+				SootClass thrown = throwableClass;
+				if (op.getType() instanceof RefType) {
+					thrown = ((RefType) op.getType()).getSootClass();
+				}
+				addIfNotCaught(thrown, traps, local);
+			}
+			if (!uncaughtAsAssertion) {
+				for (ValueBox vb : u.getUseAndDefBoxes()) {
+					Value v = vb.getValue();
+					if (v instanceof InstanceInvokeExpr
+							&& !isThisLocal(sm, body, ((InstanceInvokeExpr) v).getBase())) {
+						addIfNotCaught(nullPointerExceptionClass, traps, local);
+					} else if (v instanceof InstanceFieldRef && !isThisLocal(sm, body, ((InstanceFieldRef) v).getBase())) {
+						addIfNotCaught(nullPointerExceptionClass, traps, local);
+					} else if (v instanceof ArrayRef) {
+						addIfNotCaught(arrayIndexOutOfBoundsExceptionClass, traps, local);
+					} else if (v instanceof CastExpr) {
+						addIfNotCaught(classCastExceptionClass, traps, local);
+					}
+				}
+			}
+			if (((Stmt) u).containsInvokeExpr()) {
+				InvokeExpr ivk = ((Stmt) u).getInvokeExpr();
+				CallSite call = new CallSite(ivk.getMethod(), getTargets(u, ivk), traps);
+				calls.add(call);
+				callSiteOfUnit.put(u, call);
+			}
+		}
+		localExceptions.put(sm, local);
+		callSites.put(sm, calls);
+	}
+
+	private boolean isThisLocal(SootMethod sm, Body body, Value v) {
+		return !sm.isStatic() && v == body.getThisLocal();
+	}
+
+	private void addIfNotCaught(SootClass exception, List<Trap> traps, Set<SootClass> result) {
+		for (Trap t : traps) {
+			if (isSubclassOfIncluding(exception, t.getException())) {
+				return;
+			}
+		}
+		result.add(exception);
+	}
+
+	/**
+	 * Like Hierarchy.isClassSubclassOfIncluding, but without the checks and
+	 * caches of the Hierarchy. Exceptions are classes, so it is enough to
+	 * follow the superclasses.
+	 *
+	 * @param child
+	 * @param parent
+	 * @return
+	 */
+	private static boolean isSubclassOfIncluding(SootClass child, SootClass parent) {
+		SootClass c = child;
+		while (c != parent) {
+			if (!c.hasSuperclass()) {
+				return false;
+			}
+			c = c.getSuperclass();
+		}
+		return true;
+	}
+
+	private Collection<SootMethod> getTargets(Unit u, InvokeExpr ivk) {
+		if (Scene.v().hasCallGraph()) {
+			CallGraph cg = Scene.v().getCallGraph();
+			List<SootMethod> targets = new LinkedList<SootMethod>();
+			Iterator<Edge> it = cg.edgesOutOf(u);
+			while (it.hasNext()) {
+				targets.add(it.next().tgt());
+			}
+			if (!targets.isEmpty()) {
+				return targets;
+			}
+			// the unit was created after the call graph.
+		}
+		SootMethod callee = ivk.getMethod();
+		if (ivk instanceof VirtualInvokeExpr || ivk instanceof InterfaceInvokeExpr) {
+			try {
+				List<SootMethod> targets = hierarchy.resolveAbstractDispatch(callee.getDeclaringClass(), callee);
+				if (!targets.isEmpty()) {
+					return targets;
+				}
+			} catch (RuntimeException e) {
+				// e.g., phantom classes. Use the callee itself.
+			}
+		}
+		return Collections.singletonList(callee);
+	}
+
+	/**
+	 * Returns the strongly connected components of the call graph between
+	 * the methods with body (Tarjan's algorithm). Callees come before their
+	 * callers. The algorithm uses an explicit stack, since call chains can
+	 * be longer than the Java stack permits.
+	 *
+	 * @return
+	 */
+	private List<List<SootMethod>> stronglyConnectedComponents() {
+		List<List<SootMethod>> components = new LinkedList<List<SootMethod>>();
+		Map<SootMethod, Integer> index = new HashMap<SootMethod, Integer>();
+		Map<SootMethod, Integer> lowLink = new HashMap<SootMethod, Integer>();
+		LinkedList<SootMethod> tarjanStack = new LinkedList<SootMethod>();
+		Set<SootMethod> onStack = new HashSet<SootMethod>();
+		LinkedList<SootMethod> callStack = new LinkedList<SootMethod>();
+		LinkedList<Iterator<SootMethod>> successorStack = new LinkedList<Iterator<SootMethod>>();
+
+		for (SootMethod root : localExceptions.keySet()) {
+			if (index.containsKey(root)) {
+				continue;
+			}
+			visit(root, index, lowLink, tarjanStack, onStack);
+			callStack.push(root);
+			successorStack.push(successors(root).iterator());
+			while (!callStack.isEmpty()) {
+				SootMethod m = callStack.peek();
+				Iterator<SootMethod> it = successorStack.peek();
+				if (it.hasNext()) {
+					SootMethod succ = it.next();
+					if (!index.containsKey(succ)) {
+						visit(succ, index, lowLink, tarjanStack, onStack);
+						callStack.push(succ);
+						successorStack.push(successors(succ).iterator());
+					} else if (onStack.contains(succ)) {
+						lowLink.put(m, Math.min(lowLink.get(m), index.get(succ)));
+					}
+					continue;
+				}
+				callStack.pop();
+				successorStack.pop();
+				if (!callStack.isEmpty()) {
+					SootMethod caller = callStack.peek();
+					lowLink.put(caller, Math.min(lowLink.get(caller), lowLink.get(m)));
+				}
+				if (lowLink.get(m).equals(index.get(m))) {
+					List<SootMethod> component = new LinkedList<SootMethod>();
+					SootMethod member;
+					do {
+						member = tarjanStack.pop();
+						onStack.remove(member);
+						component.add(member);
+					} while (member != m);
+					components.add(component);
+				}
+			}
+		}
+		return components;
+	}
+
+	private void visit(SootMethod m, Map<SootMethod, Integer> index, Map<SootMethod, Integer> lowLink,
+			LinkedList<SootMethod> tarjanStack, Set<SootMethod> onStack) {
+		index.put(m, index.size());
+		lowLink.put(m, index.get(m));
+		tarjanStack.push(m);
+		onStack.add(m);
+	}
+
+	private List<SootMethod> successors(SootMethod m) {
+		List<SootMethod> result = new LinkedList<SootMethod>();
+		for (CallSite call : callSites.get(m)) {
+			for (SootMethod target : call.targets) {
+				if (localExceptions.containsKey(target)) {
+					result.add(target);
+				}
+			}
+		}
+		return result;
+	}
+
+	private void computeFixpoint(List<SootMethod> component) {
+		for (SootMethod m : component) {
+			summaries.put(m, new HashSet<SootClass>(localExceptions.get(m)));
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (SootMethod m : component) {
+				Set<SootClass> summary = summaries.get(m);
+				for (CallSite call : callSites.get(m)) {
+					for (SootMethod target : call.targets) {
+						// copy, because target may be m.
+						for (SootClass thrown : new ArrayList<SootClass>(getThrownExceptions(target))) {
+							if (!summary.contains(thrown)) {
+								int before = summary.size();
+								addIfNotCaught(thrown, call.traps, summary);
+								changed = changed || summary.size() != before;
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,312 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.Hierarchy;
+import soot.Local;
+import soot.RefLikeType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AnyNewExpr;
+import soot.jimple.CastExpr;
+import soot.jimple.CaughtExceptionRef;
+import soot.jimple.ClassConstant;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.DynamicInvokeExpr;
+import soot.jimple.InterfaceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.MethodHandle;
+import soot.jimple.ParameterRef;
+import soot.jimple.ReturnStmt;
+import soot.jimple.Stmt;
+import soot.jimple.StringConstant;
+import soot.jimple.ThisRef;
+import soot.jimple.VirtualInvokeExpr;
+import soot.toolkits.graph.CompleteUnitGraph;
+import soot.toolkits.scalar.LocalDefs;
+import soot.toolkits.scalar.SimpleLocalDefs;
+
+/**
+ * Interprocedural facts about references that are never null, to complement
+ * Soot's intraprocedural NullnessAnalysis, which knows nothing about
+ * parameters and the results of calls. The facts are:
+ * <ul>
+ * <li>methods that never return null,</li>
+ * <li>parameters of private methods that are never null at any call site.
+ * These are only computed if all call sites are known, that is, if all
+ * methods of the class and its inner and outer classes are analyzed, the
+ * method is called directly at least once, and no method handle (e.g., of
+ * a lambda) refers to it.</li>
+ * </ul>
+ * A value is non-null if it is created by new, a constant other than null,
+ * 'this', a caught exception, a non-null parameter, the result of a call
+ * whose targets never return null, or a local whose definitions are all
+ * non-null. Fields are never non-null: even a final field that is only
+ * assigned non-null values can be read before it is assigned, e.g., by a
+ * method that a super constructor calls.
+ *
+ * The facts are computed as a greatest fixpoint: all candidates are assumed
+ * to be non-null, and candidates are removed until each remaining one is
+ * justified by the others. Only the methods passed to the constructor are
+ * analyzed; other methods may return null and pass null to anything.
+ *
+ * The facts are computed on the bodies before any transformation. Queries
+ * on a transformed body must pass the local definitions of that body.
+ *
+ * @author schaef
+ *
+ */
+public class NonNullSummaries {
+
+	private final Hierarchy hierarchy;
+
+	// the definitions in the bodies before any transformation.
+	private final Map<SootMethod, LocalDefs> localDefs = new LinkedHashMap<SootMethod, LocalDefs>();
+
+	private final Set<SootMethod> nonNullReturns = new HashSet<SootMethod>();
+	private final Map<SootMethod, Set<Integer>> nonNullParameters = new HashMap<SootMethod, Set<Integer>>();
+
+	/**
+	 * Computes the facts for 'methods'.
+	 *
+	 * @param methods
+	 *            Concrete methods whose bodies are translated.
+	 */
+	public NonNullSummaries(Collection<SootMethod> methods) {
+		hierarchy = Scene.v().getActiveHierarchy();
+		for (SootMethod sm : methods) {
+			try {
+				localDefs.put(sm, new SimpleLocalDefs(new CompleteUnitGraph(sm.retrieveActiveBody())));
+			} catch (RuntimeException e) {
+				// treated like a method without body.
+			}
+		}
+		// start with all candidates. Private methods can only be called by
+		// their own class and the classes nested in the same top-level class,
+		// so their parameters are only candidates if all methods of these
+		// classes are analyzed.
+		Set<String> completeNests = getCompleteNests();
+		Set<SootMethod> calledDirectly = new HashSet<SootMethod>();
+		Set<SootMethod> referencedByHandles = new HashSet<SootMethod>();
+		for (SootMethod sm : localDefs.keySet()) {
+			for (Unit u : sm.getActiveBody().getUnits()) {
+				if (!((Stmt) u).containsInvokeExpr()) {
+					continue;
+				}
+				InvokeExpr ivk = ((Stmt) u).getInvokeExpr();
+				if (ivk instanceof DynamicInvokeExpr) {
+					referencedByHandles.addAll(getHandleTargets((DynamicInvokeExpr) ivk));
+				} else {
+					calledDirectly.add(ivk.getMethod());
+				}
+			}
+		}
+		for (SootMethod sm : localDefs.keySet()) {
+			if (sm.getReturnType() instanceof RefLikeType) {
+				nonNullReturns.add(sm);
+			}
+			if (sm.isPrivate() && completeNests.contains(getNestName(sm.getDeclaringClass()))
+					&& calledDirectly.contains(sm) && !referencedByHandles.contains(sm)) {
+				Set<Integer> params = new HashSet<Integer>();
+				for (int i = 0; i < sm.getParameterCount(); i++) {
+					if (sm.getParameterType(i) instanceof RefLikeType) {
+						params.add(i);
+					}
+				}
+				nonNullParameters.put(sm, params);
+			}
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (SootMethod sm : localDefs.keySet()) {
+				changed = removeUnjustifiedFacts(sm) || changed;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if 'sm' never returns null.
+	 *
+	 * @param sm
+	 * @return
+	 */
+	public boolean isNonNullReturn(SootMethod sm) {
+		return nonNullReturns.contains(sm);
+	}
+
+	/**
+	 * Returns true if the parameter 'index' of 'sm' is never null.
+	 *
+	 * @param sm
+	 * @param index
+	 * @return
+	 */
+	public boolean isNonNullParameter(SootMethod sm, int index) {
+		return nonNullParameters.containsKey(sm) && nonNullParameters.get(sm).contains(index);
+	}
+
+	/**
+	 * Returns true if 'v' is never null before 'u', which is a unit of the
+	 * body of 'sm'.
+	 *
+	 * @param sm
+	 * @param defs
+	 *            The local definitions of the current body of 'sm', which
+	 *            may differ from the body the facts were computed on.
+	 * @param u
+	 * @param v
+	 * @return
+	 */
+	public boolean isNonNullBefore(SootMethod sm, LocalDefs defs, Unit u, Value v) {
+		return isNonNull(sm, defs, u, v, new HashSet<Unit>());
+	}
+
+	/**
+	 * Returns the names of the top-level classes whose concrete methods,
+	 * including those of their nested classes, are all analyzed.
+	 *
+	 * @return
+	 */
+	private Set<String> getCompleteNests() {
+		Set<String> complete = new HashSet<String>();
+		for (SootMethod sm : localDefs.keySet()) {
+			complete.add(getNestName(sm.getDeclaringClass()));
+		}
+		for (SootClass sc : new LinkedList<SootClass>(Scene.v().getClasses())) {
+			String nest = getNestName(sc);
+			if (!complete.contains(nest)) {
+				continue;
+			}
+			if (sc.isPhantom()) {
+				complete.remove(nest);
+				continue;
+			}
+			for (SootMethod sm : sc.getMethods()) {
+				if (sm.isConcrete() && !localDefs.containsKey(sm)) {
+					complete.remove(nest);
+					break;
+				}
+			}
+		}
+		return complete;
+	}
+
+	private String getNestName(SootClass sc) {
+		String name = sc.getName();
+		int pos = name.indexOf('$');
+		return pos < 0 ? name : name.substring(0, pos);
+	}
+
+	private Set<SootMethod> getHandleTargets(DynamicInvokeExpr ivk) {
+		Set<SootMethod> targets = new HashSet<SootMethod>();
+		for (Value arg : ivk.getBootstrapArgs()) {
+			if (arg instanceof MethodHandle && ((MethodHandle) arg).getMethodRef() != null) {
+				try {
+					targets.add(((MethodHandle) arg).getMethodRef().resolve());
+				} catch (RuntimeException e) {
+					// not a method we analyze.
+				}
+			}
+		}
+		return targets;
+	}
+
+	private boolean removeUnjustifiedFacts(SootMethod sm) {
+		boolean changed = false;
+		Body body = sm.getActiveBody();
+		LocalDefs defs = localDefs.get(sm);
+		for (Unit u : body.getUnits()) {
+			if (u instanceof ReturnStmt && nonNullReturns.contains(sm)
+					&& !isNonNull(sm, defs, u, ((ReturnStmt) u).getOp(), new HashSet<Unit>())) {
+				nonNullReturns.remove(sm);
+				changed = true;
+			}
+			if (((Stmt) u).containsInvokeExpr()) {
+				InvokeExpr ivk = ((Stmt) u).getInvokeExpr();
+				Set<Integer> params = nonNullParameters.get(ivk.getMethod());
+				if (params == null) {
+					continue;
+				}
+				for (int i = 0; i < ivk.getArgCount(); i++) {
+					if (params.contains(i) && !isNonNull(sm, defs, u, ivk.getArg(i), new HashSet<Unit>())) {
+						params.remove(i);
+						changed = true;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	private boolean isNonNull(SootMethod sm, LocalDefs defs, Unit u, Value v, Set<Unit> visited) {
+		if (v instanceof Local) {
+			List<Unit> defsOfV;
+			try {
+				defsOfV = defs.getDefsOfAt((Local) v, u);
+			} catch (RuntimeException e) {
+				// u is not in the body that defs was computed on.
+				return false;
+			}
+			if (defsOfV == null || defsOfV.isEmpty()) {
+				return false;
+			}
+			for (Unit def : defsOfV) {
+				if (!visited.add(def)) {
+					// the other definitions decide.
+					continue;
+				}
+				if (!(def instanceof DefinitionStmt)
+						|| !isNonNull(sm, defs, def, ((DefinitionStmt) def).getRightOp(), visited)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (v instanceof AnyNewExpr || v instanceof StringConstant || v instanceof ClassConstant
+				|| v instanceof ThisRef || v instanceof CaughtExceptionRef) {
+			return true;
+		} else if (v instanceof CastExpr) {
+			return isNonNull(sm, defs, u, ((CastExpr) v).getOp(), visited);
+		} else if (v instanceof ParameterRef) {
+			return isNonNullParameter(sm, ((ParameterRef) v).getIndex());
+		} else if (v instanceof InvokeExpr) {
+			for (SootMethod target : getTargets((InvokeExpr) v)) {
+				if (!nonNullReturns.contains(target)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private Collection<SootMethod> getTargets(InvokeExpr ivk) {
+		SootMethod callee = ivk.getMethod();
+		Set<SootMethod> targets = new HashSet<SootMethod>();
+		if (ivk instanceof VirtualInvokeExpr || ivk instanceof InterfaceInvokeExpr) {
+			try {
+				targets.addAll(hierarchy.resolveAbstractDispatch(callee.getDeclaringClass(), callee));
+			} catch (RuntimeException e) {
+				// e.g., phantom classes. Use the callee itself.
+			}
+		}
+		if (targets.isEmpty()) {
+			targets.add(callee);
+		}
+		return targets;
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Collects the wall time and the allocated bytes of each phase of the
+ * translation, in total and per method, and keeps the methods that took
+ * longest. Methods can be translated on several threads at once, so each
+ * method is measured by its own MethodTimer, which is merged into the
+ * totals when the method is done.
+ *
+ * Allocated bytes are only available if the JVM supports
+ * com.sun.management.ThreadMXBean; otherwise they are reported as n/a.
+ *
+ * @author schaef
+ *
+ */
+public class PhaseTimer {
+
+	public enum Phase {
+		SootLoad, PointsToAnalysis, MayThrowAnalysis, NonNullAnalysis, UnreachableCodeEliminator, DuplicatedCatchDetection, AssertionReconstruction, ExceptionTransformer, SwitchStatementRemover, VirtualCallResolver, SootStmtSwitch, FinalizeMethod
+	}
+
+	/**
+	 * Measures the phases of one method. It must only be used by one thread
+	 * at a time.
+	 */
+	public class MethodTimer {
+		private final String methodName;
+		private final Map<Phase, long[]> phases = new EnumMap<Phase, long[]>(Phase.class);
+		private long phaseStartNanos, phaseStartBytes;
+		private long totalNanos = 0, totalBytes = 0;
+
+		private MethodTimer(String methodName) {
+			this.methodName = methodName;
+		}
+
+		/**
+		 * Starts measuring the next phase.
+		 */
+		public void begin() {
+			phaseStartBytes = allocatedBytes();
+			phaseStartNanos = System.nanoTime();
+		}
+
+		/**
+		 * Stops measuring and adds the time and bytes since the last call
+		 * to begin to 'phase'.
+		 *
+		 * @param phase
+		 */
+		public void end(Phase phase) {
+			long nanos = System.nanoTime() - phaseStartNanos;
+			long bytes = measureAllocation ? allocatedBytes() - phaseStartBytes : 0;
+			if (!phases.containsKey(phase)) {
+				phases.put(phase, new long[2]);
+			}
+			phases.get(phase)[0] += nanos;
+			phases.get(phase)[1] += bytes;
+			totalNanos += nanos;
+			totalBytes += bytes;
+		}
+
+		public String getMethodName() {
+			return methodName;
+		}
+
+		public long getNanos() {
+			return totalNanos;
+		}
+
+		public long getAllocatedBytes() {
+			return totalBytes;
+		}
+	}
+
+	private static final Comparator<MethodTimer> byTime = new Comparator<MethodTimer>() {
+		@Override
+		public int compare(MethodTimer a, MethodTimer b) {
+			return Long.compare(a.getNanos(), b.getNanos());
+		}
+	};
+
+	private final ThreadMXBean threadBean;
+	private final boolean measureAllocation;
+	private final int topN;
+
+	private final Map<Phase, long[]> totals = new EnumMap<Phase, long[]>(Phase.class);
+	// the topN slowest methods, slowest last.
+	private final PriorityQueue<MethodTimer> slowest;
+	private int methods = 0;
+	private final Map<String, Long> counters = new TreeMap<String, Long>();
+
+	/**
+	 * @param topN
+	 *            Number of slowest methods that are kept for the report.
+	 */
+	public PhaseTimer(int topN) {
+		this.topN = topN;
+		slowest = new PriorityQueue<MethodTimer>(Math.max(1, topN + 1), byTime);
+		threadBean = ManagementFactory.getThreadMXBean();
+		boolean supported = false;
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+			supported = bean.isThreadAllocatedMemorySupported();
+			if (supported && !bean.isThreadAllocatedMemoryEnabled()) {
+				bean.setThreadAllocatedMemoryEnabled(true);
+			}
+		}
+		measureAllocation = supported;
+		for (Phase p : Phase.values()) {
+			totals.put(p, new long[2]);
+		}
+	}
+
+	/**
+	 * Creates a timer for the method 'methodName'.
+	 *
+	 * @param methodName
+	 * @return
+	 */
+	public MethodTimer startMethod(String methodName) {
+		return new MethodTimer(methodName);
+	}
+
+	/**
+	 * Adds the measurements of 'mt' to the totals.
+	 *
+	 * @param mt
+	 */
+	public synchronized void finishMethod(MethodTimer mt) {
+		methods++;
+		for (Map.Entry<Phase, long[]> entry : mt.phases.entrySet()) {
+			totals.get(entry.getKey())[0] += entry.getValue()[0];
+			totals.get(entry.getKey())[1] += entry.getValue()[1];
+		}
+		if (topN > 0) {
+			slowest.add(mt);
+			if (slowest.size() > topN) {
+				slowest.poll();
+			}
+		}
+	}
+
+	/**
+	 * Adds a measurement that does not belong to a method (e.g., loading
+	 * the classes).
+	 *
+	 * @param phase
+	 * @param nanos
+	 * @param bytes
+	 */
+	public synchronized void addTotal(Phase phase, long nanos, long bytes) {
+		totals.get(phase)[0] += nanos;
+		totals.get(phase)[1] += bytes;
+	}
+
+	/**
+	 * Adds 'n' to the counter 'name' (e.g., the number of checks that an
+	 * analysis eliminated). Counters are listed in the report.
+	 *
+	 * @param name
+	 * @param n
+	 */
+	public synchronized void count(String name, long n) {
+		Long old = counters.get(name);
+		counters.put(name, (old == null ? 0 : old) + n);
+	}
+
+	/**
+	 * Returns the value of the counter 'name', or 0 if it has not been used.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public synchronized long getCount(String name) {
+		Long value = counters.get(name);
+		return value == null ? 0 : value;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far,
+	 * or -1 if not supported.
+	 *
+	 * @return
+	 */
+	public long allocatedBytes() {
+		if (!measureAllocation) {
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Returns the total time per phase (summed over all threads).
+	 *
+	 * @param phase
+	 * @return time in nanoseconds.
+	 */
+	public synchronized long getNanos(Phase phase) {
+		return totals.get(phase)[0];
+	}
+
+	/**
+	 * Returns the slowest methods, slowest first.
+	 *
+	 * @return
+	 */
+	public synchronized List<MethodTimer> getSlowestMethods() {
+		List<MethodTimer> result = new ArrayList<MethodTimer>(slowest);
+		Collections.sort(result, Collections.reverseOrder(byTime));
+		return result;
+	}
+
+	/**
+	 * Returns a table with the time and allocated bytes per phase, the
+	 * counters, and, if 'withMethods' is set, the slowest methods.
+	 *
+	 * @param withMethods
+	 * @return
+	 */
+	public synchronized String report(boolean withMethods) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Translated %d methods%n", methods));
+		sb.append(String.format("%-28s %10s %12s%n", "Phase", "ms", "MB"));
+		for (Phase p : Phase.values()) {
+			long[] t = totals.get(p);
+			sb.append(String.format("%-28s %10d %12s%n", p, t[0] / 1000000L, megaBytes(t[1])));
+		}
+		for (Map.Entry<String, Long> entry : counters.entrySet()) {
+			sb.append(String.format("%-28s %10d%n", entry.getKey(), entry.getValue()));
+		}
+		if (withMethods && !slowest.isEmpty()) {
+			sb.append(String.format("Slowest %d methods:%n", slowest.size()));
+			for (MethodTimer mt : getSlowestMethods()) {
+				sb.append(String.format("%10d ms %10s MB  %s%n", mt.getNanos() / 1000000L,
+						megaBytes(mt.getAllocatedBytes()), mt.getMethodName()));
+			}
+		}
+		return sb.toString();
+	}
+
+	private String megaBytes(long bytes) {
+		if (!measureAllocation) {
+			return "n/a";
+		}
+		return String.format("%.1f", bytes / (1024.0 * 1024.0));
+	}
+}
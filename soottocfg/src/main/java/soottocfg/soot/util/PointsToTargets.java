@@ -0,0 +1,318 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import soot.ArrayType;
+import soot.Body;
+import soot.Hierarchy;
+import soot.Local;
+import soot.NullType;
+import soot.PointsToAnalysis;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.ArrayRef;
+import soot.jimple.CastExpr;
+import soot.jimple.CaughtExceptionRef;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.FieldRef;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InterfaceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.ParameterRef;
+import soot.jimple.ReturnStmt;
+import soot.jimple.Stmt;
+import soot.jimple.ThisRef;
+import soot.jimple.VirtualInvokeExpr;
+import soot.jimple.toolkits.pointer.DumbPointsToAnalysis;
+
+/**
+ * Targets of virtual calls according to the points-to analysis of the Scene
+ * (see SootRunner.runPointsToAnalysis). The targets of a call are the
+ * methods that the call dispatches to for the types of the objects that its
+ * base may point to. They are computed on first use and cached per call
+ * site. All methods are thread-safe.
+ *
+ * The points-to sets only contain objects that are allocated in the bodies
+ * of the application classes. A base that may also hold other objects has
+ * no known targets. These objects enter through the parameters (and 'this')
+ * of entry points, of methods without callers in the application classes,
+ * and of methods that override a library method; through results of calls
+ * to methods without body; through fields of library classes; through array
+ * elements; and through caught exceptions. From there, they may flow to
+ * locals, parameters, results, and fields of the application classes. This
+ * flow is computed by a flow-insensitive fixpoint over all application
+ * classes when the object is created.
+ *
+ * @author schaef
+ *
+ */
+public class PointsToTargets {
+
+	// stands for 'no targets known' in the cache.
+	private static final Set<SootMethod> unknown = Collections.emptySet();
+
+	// index of 'this' in openParameters.
+	private static final int thisIndex = -1;
+
+	private final PointsToAnalysis pointsTo;
+	private final Hierarchy hierarchy;
+	private final ConcurrentHashMap<Unit, Set<SootMethod>> targets = new ConcurrentHashMap<Unit, Set<SootMethod>>();
+
+	// the bodies of the application classes and the targets of their calls.
+	private final Map<SootMethod, Body> bodies = new LinkedHashMap<SootMethod, Body>();
+	private final Map<Unit, Collection<SootMethod>> callTargets = new HashMap<Unit, Collection<SootMethod>>();
+
+	private final Set<Local> analyzedLocals = new HashSet<Local>();
+	// values that may hold objects that are not allocated in the bodies.
+	private final Set<Local> openLocals = new HashSet<Local>();
+	private final Map<SootMethod, Set<Integer>> openParameters = new HashMap<SootMethod, Set<Integer>>();
+	private final Set<SootMethod> openReturns = new HashSet<SootMethod>();
+	private final Set<SootField> openFields = new HashSet<SootField>();
+
+	/**
+	 * @param entryPoints
+	 *            Methods that are called with arbitrary arguments.
+	 */
+	public PointsToTargets(Collection<SootMethod> entryPoints) {
+		pointsTo = Scene.v().getPointsToAnalysis();
+		hierarchy = Scene.v().getActiveHierarchy();
+		for (SootClass sc : new LinkedList<SootClass>(Scene.v().getApplicationClasses())) {
+			for (SootMethod sm : sc.getMethods()) {
+				if (!sm.isConcrete()) {
+					continue;
+				}
+				try {
+					bodies.put(sm, sm.retrieveActiveBody());
+				} catch (RuntimeException e) {
+					// treated like a method without body.
+				}
+			}
+		}
+		Set<SootMethod> called = new HashSet<SootMethod>();
+		for (Body body : bodies.values()) {
+			analyzedLocals.addAll(body.getLocals());
+			for (Unit u : body.getUnits()) {
+				if (((Stmt) u).containsInvokeExpr()) {
+					Collection<SootMethod> callees = resolve(((Stmt) u).getInvokeExpr());
+					callTargets.put(u, callees);
+					called.addAll(callees);
+				}
+			}
+		}
+		for (SootMethod sm : bodies.keySet()) {
+			Set<Integer> params = new HashSet<Integer>();
+			if (entryPoints.contains(sm) || !called.contains(sm) || overridesLibraryMethod(sm)) {
+				params.add(thisIndex);
+				for (int i = 0; i < sm.getParameterCount(); i++) {
+					params.add(i);
+				}
+			}
+			openParameters.put(sm, params);
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Entry<SootMethod, Body> entry : bodies.entrySet()) {
+				changed = propagateOpenValues(entry.getKey(), entry.getValue()) || changed;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the Scene has a points-to analysis that knows more than
+	 * the declared types.
+	 *
+	 * @return
+	 */
+	public static boolean isAvailable() {
+		return Scene.v().hasPointsToAnalysis() && !(Scene.v().getPointsToAnalysis() instanceof DumbPointsToAnalysis);
+	}
+
+	/**
+	 * Returns the methods that 'ivk', the call at 'u', may dispatch to, or
+	 * null if they are not known (e.g., because the base may hold objects
+	 * that are not allocated in the application classes).
+	 *
+	 * @param u
+	 * @param ivk
+	 * @return
+	 */
+	public Set<SootMethod> getTargets(Unit u, InstanceInvokeExpr ivk) {
+		Set<SootMethod> result = targets.get(u);
+		if (result == null) {
+			result = computeTargets(ivk);
+			Set<SootMethod> old = targets.putIfAbsent(u, result);
+			if (old != null) {
+				result = old;
+			}
+		}
+		return result == unknown ? null : result;
+	}
+
+	private Set<SootMethod> computeTargets(InstanceInvokeExpr ivk) {
+		if (!(ivk.getBase() instanceof Local)) {
+			return unknown;
+		}
+		Local base = (Local) ivk.getBase();
+		if (!analyzedLocals.contains(base) || openLocals.contains(base)) {
+			return unknown;
+		}
+		Set<Type> types;
+		synchronized (pointsTo) {
+			types = pointsTo.reachingObjects(base).possibleTypes();
+		}
+		SootMethod callee = ivk.getMethod();
+		Set<SootMethod> result = new HashSet<SootMethod>();
+		for (Type t : types) {
+			SootClass sc;
+			if (t instanceof RefType) {
+				sc = ((RefType) t).getSootClass();
+			} else if (t instanceof ArrayType) {
+				sc = Scene.v().getSootClass("java.lang.Object");
+			} else if (t instanceof NullType) {
+				continue;
+			} else {
+				// e.g., AnySubType for objects created by native code.
+				return unknown;
+			}
+			try {
+				result.add(hierarchy.resolveConcreteDispatch(sc, callee));
+			} catch (RuntimeException e) {
+				// e.g., phantom classes.
+				return unknown;
+			}
+		}
+		return result.isEmpty() ? unknown : Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Marks the locals, fields, parameters, and the result that get an open
+	 * value in the body of 'sm'. Returns true if something was marked.
+	 */
+	private boolean propagateOpenValues(SootMethod sm, Body body) {
+		boolean changed = false;
+		for (Unit u : body.getUnits()) {
+			if (u instanceof DefinitionStmt) {
+				Value left = ((DefinitionStmt) u).getLeftOp();
+				if (isOpen(sm, u, ((DefinitionStmt) u).getRightOp())) {
+					if (left instanceof Local) {
+						changed = openLocals.add((Local) left) || changed;
+					} else if (left instanceof FieldRef) {
+						changed = openFields.add(((FieldRef) left).getField()) || changed;
+					}
+				}
+			} else if (u instanceof ReturnStmt && isOpen(sm, u, ((ReturnStmt) u).getOp())) {
+				changed = openReturns.add(sm) || changed;
+			}
+			if (!((Stmt) u).containsInvokeExpr()) {
+				continue;
+			}
+			InvokeExpr ivk = ((Stmt) u).getInvokeExpr();
+			Set<Integer> open = new HashSet<Integer>();
+			if (ivk instanceof InstanceInvokeExpr && isOpen(sm, u, ((InstanceInvokeExpr) ivk).getBase())) {
+				open.add(thisIndex);
+			}
+			for (int i = 0; i < ivk.getArgCount(); i++) {
+				if (isOpen(sm, u, ivk.getArg(i))) {
+					open.add(i);
+				}
+			}
+			if (open.isEmpty()) {
+				continue;
+			}
+			for (SootMethod target : callTargets.get(u)) {
+				if (openParameters.containsKey(target)) {
+					changed = openParameters.get(target).addAll(open) || changed;
+				}
+			}
+		}
+		return changed;
+	}
+
+	private boolean isOpen(SootMethod sm, Unit u, Value v) {
+		if (v instanceof Local) {
+			return openLocals.contains(v);
+		} else if (v instanceof CastExpr) {
+			return isOpen(sm, u, ((CastExpr) v).getOp());
+		} else if (v instanceof ParameterRef) {
+			return openParameters.get(sm).contains(((ParameterRef) v).getIndex());
+		} else if (v instanceof ThisRef) {
+			return openParameters.get(sm).contains(thisIndex);
+		} else if (v instanceof FieldRef) {
+			SootField sf = ((FieldRef) v).getField();
+			return !sf.getDeclaringClass().isApplicationClass() || openFields.contains(sf);
+		} else if (v instanceof ArrayRef || v instanceof CaughtExceptionRef) {
+			return true;
+		} else if (v instanceof InvokeExpr) {
+			for (SootMethod target : callTargets.get(u)) {
+				if (!bodies.containsKey(target) || openReturns.contains(target)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		// new expressions, constants, and values that are not references.
+		return false;
+	}
+
+	private Collection<SootMethod> resolve(InvokeExpr ivk) {
+		SootMethod callee = ivk.getMethod();
+		if (ivk instanceof VirtualInvokeExpr || ivk instanceof InterfaceInvokeExpr) {
+			try {
+				List<SootMethod> callees = hierarchy.resolveAbstractDispatch(callee.getDeclaringClass(), callee);
+				if (!callees.isEmpty()) {
+					return callees;
+				}
+			} catch (RuntimeException e) {
+				// e.g., phantom classes. Use the callee itself.
+			}
+		}
+		return Collections.singletonList(callee);
+	}
+
+	/**
+	 * Returns true if 'sm' overrides or implements a method of a class that
+	 * is not an application class, so that library code may call it.
+	 */
+	private boolean overridesLibraryMethod(SootMethod sm) {
+		if (sm.isStatic() || sm.isPrivate() || sm.isConstructor()) {
+			return false;
+		}
+		LinkedList<SootClass> todo = new LinkedList<SootClass>();
+		Set<SootClass> done = new HashSet<SootClass>();
+		todo.add(sm.getDeclaringClass());
+		while (!todo.isEmpty()) {
+			SootClass sc = todo.pop();
+			if (!done.add(sc)) {
+				continue;
+			}
+			if (!sc.isApplicationClass() && sc.declaresMethod(sm.getSubSignature())) {
+				return true;
+			}
+			if (sc.hasSuperclass()) {
+				todo.add(sc.getSuperclass());
+			}
+			todo.addAll(sc.getInterfaces());
+		}
+		return false;
+	}
+}
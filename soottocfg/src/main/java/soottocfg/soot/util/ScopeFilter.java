@@ -0,0 +1,151 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which classes and methods are in the scope of the analysis. A
+ * scope is a list of patterns of three kinds:
+ *
+ * - a method signature in Soot format, e.g., "<foo.Bar: void baz(int)>",
+ * which puts this one method in scope.
+ *
+ * - a class glob, e.g., "foo.*.Bar" or "foo.**Test", where '*' matches any
+ * part of a name without a '.', '**' matches anything, and '?' matches a
+ * single character. It puts all methods of the matching classes in scope.
+ *
+ * - a package or class name, e.g., "foo.bar", which puts all methods of
+ * foo.bar, of its inner classes, and of all classes in the package foo.bar
+ * and its sub-packages in scope.
+ *
+ * An empty scope contains everything.
+ *
+ * @author schaef
+ *
+ */
+public class ScopeFilter {
+
+	private final List<String> prefixes = new LinkedList<String>();
+	private final List<Pattern> globs = new LinkedList<Pattern>();
+	// class name -> signatures of the methods in scope.
+	private final Map<String, Set<String>> methods = new HashMap<String, Set<String>>();
+
+	public ScopeFilter() {
+	}
+
+	/**
+	 * @param patterns
+	 *            Patterns as described above. Blank patterns are ignored.
+	 */
+	public ScopeFilter(Collection<String> patterns) {
+		for (String p : patterns) {
+			add(p);
+		}
+	}
+
+	/**
+	 * Adds a pattern to the scope.
+	 *
+	 * @param pattern
+	 */
+	public void add(String pattern) {
+		String p = pattern.trim();
+		if (p.isEmpty()) {
+			return;
+		}
+		if (p.startsWith("<") && p.endsWith(">") && p.contains(":")) {
+			String className = p.substring(1, p.indexOf(':'));
+			if (!methods.containsKey(className)) {
+				methods.put(className, new HashSet<String>());
+			}
+			methods.get(className).add(p);
+		} else if (p.contains("*") || p.contains("?")) {
+			globs.add(Pattern.compile(globToRegex(p)));
+		} else {
+			prefixes.add(p);
+		}
+	}
+
+	private static String globToRegex(String glob) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*') {
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					sb.append(".*");
+					i++;
+				} else {
+					sb.append("[^.]*");
+				}
+			} else if (c == '?') {
+				sb.append("[^.]");
+			} else {
+				sb.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return sb.toString();
+	}
+
+	public boolean isEmpty() {
+		return prefixes.isEmpty() && globs.isEmpty() && methods.isEmpty();
+	}
+
+	/**
+	 * True if all methods of 'className' are in scope.
+	 *
+	 * @param className
+	 * @return
+	 */
+	public boolean containsAllMethodsOf(String className) {
+		if (isEmpty()) {
+			return true;
+		}
+		for (String prefix : prefixes) {
+			if (className.equals(prefix) || className.startsWith(prefix + ".")
+					|| className.startsWith(prefix + "$")) {
+				return true;
+			}
+		}
+		for (Pattern glob : globs) {
+			if (glob.matcher(className).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * True if at least one method of 'className' is in scope. Only the
+	 * bodies of such classes have to be loaded.
+	 *
+	 * @param className
+	 * @return
+	 */
+	public boolean containsClass(String className) {
+		return methods.containsKey(className) || containsAllMethodsOf(className);
+	}
+
+	/**
+	 * True if the method with the Soot signature 'signature' declared in
+	 * 'className' is in scope.
+	 *
+	 * @param className
+	 * @param signature
+	 * @return
+	 */
+	public boolean containsMethod(String className, String signature) {
+		if (methods.containsKey(className) && methods.get(className).contains(signature)) {
+			return true;
+		}
+		return containsAllMethodsOf(className);
+	}
+}
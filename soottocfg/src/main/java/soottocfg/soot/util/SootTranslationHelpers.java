@@ -3,10 +3,10 @@
  */
 package soottocfg.soot.util;
 
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.base.Optional;
 
@@ -60,39 +60,83 @@ public enum SootTranslationHelpers {
 	public static final String lengthFieldName = "$length";
 	public static final String indexFieldNamePrefix = "$idx_";
 
-	private transient SootMethod currentMethod;
-	private transient SootClass currentClass;
-	private transient String currentSourceFileName;
+	/**
+	 * The class and method that are currently translated. Methods can be
+	 * translated on several threads at the same time, so each thread has its
+	 * own context.
+	 */
+	private static class TranslationContext {
+		private SootMethod currentMethod;
+		private SootClass currentClass;
+		private String currentSourceFileName;
+	}
+
+	private final transient ThreadLocal<TranslationContext> context = new ThreadLocal<TranslationContext>() {
+		@Override
+		protected TranslationContext initialValue() {
+			return new TranslationContext();
+		}
+	};
 
-	private transient MemoryModel memoryModel;
+	private transient volatile MemoryModel memoryModel;
 	private MemModel memoryModelKind = MemModel.PackUnpack;
 
-	private transient Program program;
+	private transient volatile Program program;
 
+	/**
+	 * Resets the shared state and the translation context of the calling
+	 * thread. Worker threads set their own context before translating a
+	 * method.
+	 */
 	public void reset() {
-		currentMethod = null;
-		currentClass = null;
-		currentSourceFileName = null;
+		context.remove();
 		memoryModel = null;
 		program = null;
 		arrayTypes.clear();
 	}
 
-	private transient Map<soot.ArrayType, SootClass> arrayTypes = new HashMap<soot.ArrayType, SootClass>();
+	private final transient Map<soot.ArrayType, SootClass> arrayTypes = new ConcurrentHashMap<soot.ArrayType, SootClass>();
 
+	/**
+	 * Returns the class that represents arrays of type 't'. The name of the
+	 * class is made of the element type and the number of dimensions of 't',
+	 * so it does not matter in which order the array types are looked up.
+	 * 
+	 * @param t
+	 * @return
+	 */
 	public SootClass getFakeArrayClass(soot.ArrayType t) {
-		if (!arrayTypes.containsKey(t)) {
-			SootClass arrayClass = new SootClass("JayHornArr" + arrayTypes.size(), Modifier.PUBLIC);
-			arrayClass.addField(new SootField(SootTranslationHelpers.lengthFieldName,
-					RefType.v(Scene.v().getSootClass("java.lang.Integer"))));
-			arrayClass.addField(new SootField(SootTranslationHelpers.arrayElementTypeFieldName,
-					RefType.v(Scene.v().getSootClass("java.lang.Class"))));
-			arrayClass.addField(new SootField(SootTranslationHelpers.typeFieldName,
-					RefType.v(Scene.v().getSootClass("java.lang.Class"))));
-			// TODO create some fields of t.getElementType()
-			arrayTypes.put(t, arrayClass);
+		SootClass arrayClass = arrayTypes.get(t);
+		if (arrayClass != null) {
+			return arrayClass;
 		}
-		return arrayTypes.get(t);
+		// each array class must only be created once.
+		synchronized (arrayTypes) {
+			if (!arrayTypes.containsKey(t)) {
+				arrayClass = new SootClass(fakeArrayClassName(t), Modifier.PUBLIC);
+				arrayClass.addField(new SootField(SootTranslationHelpers.lengthFieldName,
+						RefType.v(Scene.v().getSootClass("java.lang.Integer"))));
+				arrayClass.addField(new SootField(SootTranslationHelpers.arrayElementTypeFieldName,
+						RefType.v(Scene.v().getSootClass("java.lang.Class"))));
+				arrayClass.addField(new SootField(SootTranslationHelpers.typeFieldName,
+						RefType.v(Scene.v().getSootClass("java.lang.Class"))));
+				// TODO create some fields of t.getElementType()
+				arrayTypes.put(t, arrayClass);
+			}
+			return arrayTypes.get(t);
+		}
+	}
+
+	/**
+	 * Returns the name of the class that represents arrays of type 't'. The
+	 * number of dimensions is always last, so different array types get
+	 * different names.
+	 * 
+	 * @param t
+	 * @return
+	 */
+	public static String fakeArrayClassName(soot.ArrayType t) {
+		return "JayHornArr_" + t.baseType.toString() + "_" + t.numDimensions;
 	}
 
 	public ClassConstant getClassConstant(Type t) {
@@ -110,8 +154,9 @@ public enum SootTranslationHelpers {
 	}
 
 	public Method lookupOrCreateMethod(SootMethod m) {
-		if (this.program.loopupMethod(m.getSignature()) != null) {
-			return this.program.loopupMethod(m.getSignature());
+		Method existing = this.program.loopupMethod(m.getSignature());
+		if (existing != null) {
+			return existing;
 		}
 		int parameterCount = 0;
 		final List<Variable> parameterList = new LinkedList<Variable>();
@@ -126,9 +171,17 @@ public enum SootTranslationHelpers {
 		
 		Optional<soottocfg.cfg.type.Type> optRetType = Optional.absent();
 		if (!m.getReturnType().equals(VoidType.v())) {
-			optRetType = Optional.of(memoryModel.lookupType(m.getReturnType()));
+			optRetType = Optional.of(getMemoryModel().lookupType(m.getReturnType()));
 		} 
-		return Method.createMethodInProgram(program, m.getSignature(), parameterList, optRetType);
+		// the types are looked up outside of the lock on program because
+		// the memory model may also need that lock to create globals.
+		synchronized (program) {
+			existing = this.program.loopupMethod(m.getSignature());
+			if (existing != null) {
+				return existing;
+			}
+			return Method.createMethodInProgram(program, m.getSignature(), parameterList, optRetType);
+		}
 	}
 
 	public Stmt getDefaultReturnStatement(Type returnType, Host createdFrom) {
@@ -186,7 +239,7 @@ public enum SootTranslationHelpers {
 		if (lineNumber < 0) {
 			lineNumber = SootTranslationHelpers.v().getJavaSourceLine(SootTranslationHelpers.v().getCurrentMethod());
 		}
-		return new SourceLocation(this.currentSourceFileName, lineNumber);
+		return new SourceLocation(getCurrentSourceFileName(), lineNumber);
 	}
 
 	public SourceLocation getSourceLocation(SootMethod sm) {
@@ -196,7 +249,7 @@ public enum SootTranslationHelpers {
 			lineNumber = SootTranslationHelpers.v().getJavaSourceLine(SootTranslationHelpers.v().getCurrentMethod());
 		}
 
-		return new SourceLocation(this.currentSourceFileName, lineNumber);
+		return new SourceLocation(getCurrentSourceFileName(), lineNumber);
 	}
 
 	public void setMemoryModelKind(MemModel kind) {
@@ -204,30 +257,38 @@ public enum SootTranslationHelpers {
 	}
 
 	public MemoryModel getMemoryModel() {
-		if (this.memoryModel == null) {
-			// TODO:
-			if (memoryModelKind == MemModel.PackUnpack) {
-				this.memoryModel = new NewMemoryModel();
-			} else if (memoryModelKind == MemModel.BurstallBornat) {
-				this.memoryModel = new SimpleBurstallBornatModel();
-			} else {
-				throw new RuntimeException("Unknown memory model");
+		MemoryModel mm = this.memoryModel;
+		if (mm == null) {
+			synchronized (this) {
+				mm = this.memoryModel;
+				if (mm == null) {
+					// TODO:
+					if (memoryModelKind == MemModel.PackUnpack) {
+						mm = new NewMemoryModel();
+					} else if (memoryModelKind == MemModel.BurstallBornat) {
+						mm = new SimpleBurstallBornatModel();
+					} else {
+						throw new RuntimeException("Unknown memory model");
+					}
+					this.memoryModel = mm;
+				}
 			}
 		}
-		return this.memoryModel;
+		return mm;
 	}
 
 	public SootClass getCurrentClass() {
-		return currentClass;
+		return context.get().currentClass;
 	}
 
 	public void setCurrentClass(SootClass currentClass) {
+		TranslationContext ctx = context.get();
 		String fn = findFileName(currentClass.getTags());
 		if (fn != null) {
-			this.currentSourceFileName = fn;
+			ctx.currentSourceFileName = fn;
 		}
 
-		this.currentClass = currentClass;
+		ctx.currentClass = currentClass;
 	}
 
 	private String findFileName(List<Tag> tags) {
@@ -251,19 +312,20 @@ public enum SootTranslationHelpers {
 	}
 
 	public SootMethod getCurrentMethod() {
-		return currentMethod;
+		return context.get().currentMethod;
 	}
 
 	public void setCurrentMethod(SootMethod currentMethod) {
+		TranslationContext ctx = context.get();
 		String fn = findFileName(currentMethod.getTags());
 		if (fn != null) {
-			this.currentSourceFileName = fn;
+			ctx.currentSourceFileName = fn;
 		}
-		this.currentMethod = currentMethod;
+		ctx.currentMethod = currentMethod;
 	}
 
 	public String getCurrentSourceFileName() {
-		return this.currentSourceFileName;
+		return context.get().currentSourceFileName;
 	}
 
 	public int getJavaSourceLine(AbstractHost ah) {
@@ -0,0 +1,646 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import soot.jimple.ClassConstant;
+import soot.jimple.Constant;
+import soot.jimple.DoubleConstant;
+import soot.jimple.FloatConstant;
+import soot.jimple.StringConstant;
+import soottocfg.cfg.ClassVariable;
+import soottocfg.cfg.Program;
+import soottocfg.cfg.Variable;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.CfgEdge;
+import soottocfg.cfg.method.Method;
+import soottocfg.cfg.type.Type;
+import soottocfg.soot.memory_model.BasicMemoryModel;
+
+/**
+ * Persistent cache of translated methods. There is one entry per class of
+ * the input, which contains the translation of all its methods. The entry is
+ * keyed by a hash over the translation options, the class file, and the class
+ * files of all classes of the input that the translation of the class may
+ * depend on, so it is only used if none of them changed. These are the
+ * classes that the class file references (e.g., supertypes, callees, and
+ * field types), the subtypes of these classes (because virtual calls are
+ * resolved to their overrides), and, transitively, their dependencies.
+ * Classes on the classpath are assumed not to change.
+ *
+ * Methods of an entry reference things that are shared with the rest of the
+ * program: other methods (e.g., the target of a call), globals (e.g., fields
+ * or string constants), and class variables. These are not stored in the
+ * entry. Instead, they are written as references by name and looked up
+ * in the current Program (or the current memory model) when the entry is
+ * restored. Referenced methods that do not exist yet are created without a
+ * body, and get their body later when they are translated or restored.
+ * Constants are looked up by their value. The names of the other globals
+ * and of the class variables only depend on what they represent (e.g., a
+ * field or an array type), not on the order in which they were created, so
+ * they refer to the same thing in every run.
+ *
+ * @author schaef
+ *
+ */
+public class TranslationCache {
+
+	// increase this whenever the format of the translation changes.
+	private static final int formatVersion = 2;
+	// class names in descriptors and signatures, e.g., Ljava/lang/String;
+	private static final Pattern classDescriptor = Pattern.compile("L([^;<>()\\[:]+)[;<]");
+	private static final String suffix = ".cfg";
+
+	private final File directory;
+	private final String optionsKey;
+
+	/**
+	 * @param directory
+	 *            Directory in which the entries are stored. It is created if
+	 *            it does not exist.
+	 * @param optionsKey
+	 *            String representation of all options that affect the
+	 *            translation.
+	 */
+	public TranslationCache(File directory, String optionsKey) {
+		this.directory = directory;
+		this.optionsKey = optionsKey;
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new RuntimeException("Cannot create translation cache " + directory);
+		}
+	}
+
+	/**
+	 * Computes the key for each class in 'input', which can be a jar file or
+	 * a class folder. Other inputs (e.g., apk files) are not supported and
+	 * yield an empty map.
+	 *
+	 * @param input
+	 * @return Map from class name to the key of its entry.
+	 */
+	public Map<String, String> fingerprintClasses(String input) {
+		ClassFiles classFiles = new ClassFiles();
+		File file = new File(input);
+		try {
+			if (input.endsWith(".jar")) {
+				try (JarFile jarFile = new JarFile(file)) {
+					for (JarEntry entry : Collections.list(jarFile.entries())) {
+						if (entry.getName().endsWith(".class")) {
+							try (InputStream in = jarFile.getInputStream(entry)) {
+								classFiles.add(className(entry.getName()), ByteStreams.toByteArray(in));
+							}
+						}
+					}
+				}
+			} else if (file.isDirectory()) {
+				readDirectory(file, "", classFiles);
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to read " + input + ": " + e.toString());
+			return new LinkedHashMap<String, String>();
+		}
+		Map<String, String> closureHashes = classFiles.hashDependencies();
+		Map<String, String> fingerprints = new LinkedHashMap<String, String>();
+		for (String className : classFiles.contentHashes.keySet()) {
+			Hasher hasher = Hashing.sha1().newHasher();
+			hasher.putInt(formatVersion);
+			hasher.putString(optionsKey, StandardCharsets.UTF_8);
+			hasher.putString(className, StandardCharsets.UTF_8);
+			hasher.putString(closureHashes.get(className), StandardCharsets.UTF_8);
+			fingerprints.put(className, hasher.hash().toString());
+		}
+		return fingerprints;
+	}
+
+	private void readDirectory(File dir, String prefix, ClassFiles classFiles) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File f : files) {
+			if (f.isDirectory()) {
+				readDirectory(f, prefix + f.getName() + "/", classFiles);
+			} else if (f.getName().endsWith(".class")) {
+				classFiles.add(className(prefix + f.getName()), Files.readAllBytes(f.toPath()));
+			}
+		}
+	}
+
+	private static String className(String fileName) {
+		return fileName.substring(0, fileName.length() - ".class".length()).replace('/', '.');
+	}
+
+	/**
+	 * The hash of the content and the dependencies of each class file of
+	 * the input.
+	 */
+	private static class ClassFiles {
+		private final Map<String, String> contentHashes = new LinkedHashMap<String, String>();
+		private final Map<String, Set<String>> references = new HashMap<String, Set<String>>();
+		private final Map<String, Set<String>> supertypes = new HashMap<String, Set<String>>();
+
+		void add(String className, byte[] classFile) throws IOException {
+			contentHashes.put(className, Hashing.sha1().hashBytes(classFile).toString());
+			Set<String> refs = new HashSet<String>();
+			Set<String> supers = new HashSet<String>();
+			readReferences(classFile, refs, supers);
+			references.put(className, refs);
+			supertypes.put(className, supers);
+		}
+
+		/**
+		 * Computes for each class a hash over the content of all classes
+		 * that it depends on, i.e., the classes reachable over references
+		 * and subtype edges. The graph is split into strongly connected
+		 * components, and the hash of a component covers the content of its
+		 * classes and the hashes of the components it depends on. So the
+		 * hash of a class changes if any class it depends on changes.
+		 *
+		 * @return Map from class name to the hash of its dependencies.
+		 */
+		Map<String, String> hashDependencies() {
+			// edges to referenced classes and to direct subtypes, both
+			// restricted to the input.
+			final Map<String, Set<String>> successors = new HashMap<String, Set<String>>();
+			for (String className : contentHashes.keySet()) {
+				Set<String> succ = new TreeSet<String>();
+				for (String ref : references.get(className)) {
+					if (contentHashes.containsKey(ref) && !ref.equals(className)) {
+						succ.add(ref);
+					}
+				}
+				successors.put(className, succ);
+			}
+			for (Entry<String, Set<String>> entry : supertypes.entrySet()) {
+				for (String supertype : entry.getValue()) {
+					if (successors.containsKey(supertype)) {
+						successors.get(supertype).add(entry.getKey());
+					}
+				}
+			}
+
+			// iterative version of Tarjan's algorithm, which finishes each
+			// component after all components that it can reach.
+			Map<String, String> closureHashes = new HashMap<String, String>();
+			Map<String, Integer> index = new HashMap<String, Integer>();
+			Map<String, Integer> lowlink = new HashMap<String, Integer>();
+			Deque<String> componentStack = new ArrayDeque<String>();
+			Set<String> onStack = new HashSet<String>();
+			Deque<String> callStack = new ArrayDeque<String>();
+			Map<String, Iterator<String>> pending = new HashMap<String, Iterator<String>>();
+			for (String root : contentHashes.keySet()) {
+				if (index.containsKey(root)) {
+					continue;
+				}
+				callStack.push(root);
+				while (!callStack.isEmpty()) {
+					String v = callStack.peek();
+					if (!index.containsKey(v)) {
+						index.put(v, index.size());
+						lowlink.put(v, index.get(v));
+						componentStack.push(v);
+						onStack.add(v);
+						pending.put(v, successors.get(v).iterator());
+					}
+					Iterator<String> it = pending.get(v);
+					if (it.hasNext()) {
+						String w = it.next();
+						if (!index.containsKey(w)) {
+							callStack.push(w);
+						} else if (onStack.contains(w)) {
+							lowlink.put(v, Math.min(lowlink.get(v), index.get(w)));
+						}
+						continue;
+					}
+					callStack.pop();
+					pending.remove(v);
+					if (!callStack.isEmpty()) {
+						String parent = callStack.peek();
+						lowlink.put(parent, Math.min(lowlink.get(parent), lowlink.get(v)));
+					}
+					if (lowlink.get(v).equals(index.get(v))) {
+						List<String> component = new LinkedList<String>();
+						String w;
+						do {
+							w = componentStack.pop();
+							onStack.remove(w);
+							component.add(w);
+						} while (!w.equals(v));
+						String hash = hashComponent(component, successors, closureHashes);
+						for (String member : component) {
+							closureHashes.put(member, hash);
+						}
+					}
+				}
+			}
+			return closureHashes;
+		}
+
+		private String hashComponent(List<String> component, Map<String, Set<String>> successors,
+				Map<String, String> closureHashes) {
+			Set<String> members = new HashSet<String>(component);
+			Set<String> parts = new TreeSet<String>();
+			for (String className : component) {
+				parts.add(className + "=" + contentHashes.get(className));
+				for (String succ : successors.get(className)) {
+					if (!members.contains(succ)) {
+						// finished before this component.
+						parts.add(closureHashes.get(succ));
+					}
+				}
+			}
+			Hasher hasher = Hashing.sha1().newHasher();
+			for (String part : parts) {
+				hasher.putString(part, StandardCharsets.UTF_8);
+				hasher.putChar('\n');
+			}
+			return hasher.hash().toString();
+		}
+	}
+
+	/**
+	 * Adds the names of all classes that are mentioned in the constant pool
+	 * of 'classFile' to 'references', and the names of its super class and
+	 * interfaces to 'supertypes'.
+	 *
+	 * @param classFile
+	 * @param references
+	 * @param supertypes
+	 * @throws IOException
+	 */
+	private static void readReferences(byte[] classFile, Set<String> references, Set<String> supertypes)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+		if (in.readInt() != 0xCAFEBABE) {
+			throw new IOException("Not a class file.");
+		}
+		// minor and major version
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+		int count = in.readUnsignedShort();
+		String[] utf8 = new String[count];
+		int[] classNames = new int[count];
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case 1: // Utf8
+				utf8[i] = in.readUTF();
+				break;
+			case 7: // Class
+				classNames[i] = in.readUnsignedShort();
+				break;
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				in.readUnsignedShort();
+				break;
+			case 15: // MethodHandle
+				in.readUnsignedByte();
+				in.readUnsignedShort();
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				in.readInt();
+				break;
+			case 5: // Long
+			case 6: // Double
+				in.readLong();
+				// takes two entries.
+				i++;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+		for (int i = 1; i < count; i++) {
+			if (classNames[i] != 0) {
+				references.add(classNameOf(utf8[classNames[i]]));
+			}
+			if (utf8[i] != null) {
+				// descriptors and generic signatures of fields, methods,
+				// and local variables.
+				Matcher m = classDescriptor.matcher(utf8[i]);
+				while (m.find()) {
+					references.add(m.group(1).replace('/', '.'));
+				}
+			}
+		}
+		// access flags and this class
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+		int superClass = in.readUnsignedShort();
+		if (superClass != 0) {
+			supertypes.add(classNameOf(utf8[classNames[superClass]]));
+		}
+		int interfaces = in.readUnsignedShort();
+		for (int i = 0; i < interfaces; i++) {
+			supertypes.add(classNameOf(utf8[classNames[in.readUnsignedShort()]]));
+		}
+	}
+
+	// array classes are written as descriptors, e.g., [Ljava/lang/String;
+	private static String classNameOf(String internalName) {
+		Matcher m = classDescriptor.matcher(internalName);
+		if (internalName.startsWith("[") && m.find()) {
+			return m.group(1).replace('/', '.');
+		}
+		return internalName.replace('/', '.');
+	}
+
+	public boolean contains(String fingerprint) {
+		return entryFile(fingerprint).isFile();
+	}
+
+	/**
+	 * Restores the methods of the entry 'fingerprint' into 'program'.
+	 *
+	 * @param fingerprint
+	 * @param program
+	 * @param memoryModel
+	 *            Memory model that is used to look up class variables and
+	 *            constants.
+	 * @return The restored methods, or null if the entry cannot be read. In
+	 *         that case, the entry is deleted.
+	 */
+	public List<Method> restore(String fingerprint, Program program, BasicMemoryModel memoryModel) {
+		File file = entryFile(fingerprint);
+		CachedClass cachedClass;
+		try (CacheInputStream in = new CacheInputStream(new BufferedInputStream(new FileInputStream(file)), program,
+				memoryModel)) {
+			cachedClass = (CachedClass) in.readObject();
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			System.err.println("Ignoring broken cache entry " + file + ": " + e.toString());
+			if (!file.delete()) {
+				System.err.println("Failed to delete " + file);
+			}
+			return null;
+		}
+		List<Method> methods = new LinkedList<Method>();
+		for (CachedMethod cm : cachedClass.methods) {
+			Method m = cm.method;
+			if (!m.vertexSet().isEmpty()) {
+				// already restored, e.g., from another entry of the same
+				// class.
+				continue;
+			}
+			for (CfgBlock b : cm.blocks) {
+				m.addVertex(b);
+			}
+			for (int i = 0; i < cm.edges.size(); i++) {
+				m.addEdge(cm.edgeSources.get(i), cm.edgeTargets.get(i), cm.edges.get(i));
+			}
+			m.restore(cm.thisVariable, cm.returnVariable, cm.locals, cm.source, cm.isProgramEntry);
+			methods.add(m);
+		}
+		return methods;
+	}
+
+	/**
+	 * Writes the translation of 'methods' (the methods of one class) into
+	 * the entry 'fingerprint'. Existing entries are replaced.
+	 *
+	 * @param fingerprint
+	 * @param methods
+	 * @param program
+	 * @param memoryModel
+	 */
+	public void store(String fingerprint, Collection<Method> methods, Program program,
+			BasicMemoryModel memoryModel) {
+		CachedClass cachedClass = new CachedClass();
+		for (Method m : methods) {
+			if (m.getSource() == null) {
+				continue;
+			}
+			cachedClass.methods.add(new CachedMethod(m));
+		}
+		File file = entryFile(fingerprint);
+		// write to a temporary file first so that we never leave a
+		// broken entry if we get killed.
+		File tmp = new File(directory, fingerprint + ".tmp" + Thread.currentThread().getId());
+		try (CacheOutputStream out = new CacheOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)),
+				program, memoryModel)) {
+			out.writeObject(cachedClass);
+		} catch (IOException e) {
+			System.err.println("Failed to write cache entry " + file + ": " + e.toString());
+			tmp.delete();
+			return;
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				System.err.println("Failed to write cache entry " + file);
+				tmp.delete();
+			}
+		}
+	}
+
+	private File entryFile(String fingerprint) {
+		return new File(directory, fingerprint + suffix);
+	}
+
+	private static class CachedClass implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final List<CachedMethod> methods = new LinkedList<CachedMethod>();
+	}
+
+	/**
+	 * Everything that is needed to restore the body of a method. The Method
+	 * itself is written as a MethodRef.
+	 */
+	private static class CachedMethod implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final Method method;
+		private final Variable thisVariable, returnVariable;
+		private final List<Variable> locals;
+		private final CfgBlock source;
+		private final List<CfgBlock> blocks;
+		private final List<CfgEdge> edges = new LinkedList<CfgEdge>();
+		private final List<CfgBlock> edgeSources = new LinkedList<CfgBlock>();
+		private final List<CfgBlock> edgeTargets = new LinkedList<CfgBlock>();
+		private final boolean isProgramEntry;
+
+		CachedMethod(Method m) {
+			method = m;
+			thisVariable = m.getThisVariable().orNull();
+			returnVariable = m.getOutParam().orNull();
+			locals = new LinkedList<Variable>(m.getLocals());
+			source = m.getSource();
+			blocks = new LinkedList<CfgBlock>(m.vertexSet());
+			for (CfgEdge e : m.edgeSet()) {
+				edges.add(e);
+				edgeSources.add(m.getEdgeSource(e));
+				edgeTargets.add(m.getEdgeTarget(e));
+			}
+			isProgramEntry = m.isProgramEntryPoint();
+		}
+	}
+
+	private static class MethodRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String signature;
+		private final List<Variable> parameters;
+		private final Type returnType;
+
+		MethodRef(Method m) {
+			signature = m.getMethodName();
+			parameters = new LinkedList<Variable>(m.getInParams());
+			returnType = m.getReturnType().orNull();
+		}
+	}
+
+	private static class ClassVariableRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String name;
+
+		ClassVariableRef(ClassVariable cv) {
+			name = cv.getName();
+		}
+	}
+
+	private static class GlobalRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String name;
+		private final Type type;
+		private final boolean constant, unique;
+		// set if the global represents a string, double, or float constant.
+		private final String constantKind, constantValue;
+
+		GlobalRef(Variable v, Constant c) {
+			name = v.getName();
+			type = v.getType();
+			constant = v.isConstant();
+			unique = v.isUnique();
+			if (c instanceof StringConstant) {
+				constantKind = "string";
+				constantValue = ((StringConstant) c).value;
+			} else if (c instanceof DoubleConstant) {
+				constantKind = "double";
+				constantValue = Double.toString(((DoubleConstant) c).value);
+			} else if (c instanceof FloatConstant) {
+				constantKind = "float";
+				constantValue = Float.toString(((FloatConstant) c).value);
+			} else {
+				constantKind = null;
+				constantValue = null;
+			}
+		}
+	}
+
+	/**
+	 * Replaces methods, globals, and class variables by references.
+	 */
+	private static class CacheOutputStream extends ObjectOutputStream {
+		private final BasicMemoryModel memoryModel;
+		private final Set<Variable> globals = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+
+		CacheOutputStream(OutputStream out, Program program, BasicMemoryModel memoryModel) throws IOException {
+			super(out);
+			this.memoryModel = memoryModel;
+			Collections.addAll(globals, program.getGlobalVariables());
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if (obj instanceof Method) {
+				return new MethodRef((Method) obj);
+			} else if (obj instanceof ClassVariable) {
+				return new ClassVariableRef((ClassVariable) obj);
+			} else if (obj instanceof Variable && globals.contains(obj)) {
+				return new GlobalRef((Variable) obj, memoryModel.findConstant((Variable) obj));
+			}
+			return obj;
+		}
+	}
+
+	/**
+	 * Resolves the references written by CacheOutputStream in the current
+	 * program.
+	 */
+	private static class CacheInputStream extends ObjectInputStream {
+		private final Program program;
+		private final BasicMemoryModel memoryModel;
+
+		CacheInputStream(InputStream in, Program program, BasicMemoryModel memoryModel) throws IOException {
+			super(in);
+			this.program = program;
+			this.memoryModel = memoryModel;
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj instanceof MethodRef) {
+				MethodRef ref = (MethodRef) obj;
+				synchronized (program) {
+					Method m = program.loopupMethod(ref.signature);
+					if (m == null) {
+						m = Method.createMethodInProgram(program, ref.signature, ref.parameters,
+								Optional.fromNullable(ref.returnType));
+					}
+					return m;
+				}
+			} else if (obj instanceof ClassVariableRef) {
+				return memoryModel.lookupClassVariable(ClassConstant.v(((ClassVariableRef) obj).name));
+			} else if (obj instanceof GlobalRef) {
+				GlobalRef ref = (GlobalRef) obj;
+				if ("string".equals(ref.constantKind)) {
+					return memoryModel.lookupConstantVariable(StringConstant.v(ref.constantValue));
+				} else if ("double".equals(ref.constantKind)) {
+					return memoryModel.lookupConstantVariable(DoubleConstant.v(Double.parseDouble(ref.constantValue)));
+				} else if ("float".equals(ref.constantKind)) {
+					return memoryModel.lookupConstantVariable(FloatConstant.v(Float.parseFloat(ref.constantValue)));
+				}
+				return program.lookupGlobalVariable(ref.name, ref.type, ref.constant, ref.unique);
+			}
+			return obj;
+		}
+	}
+}
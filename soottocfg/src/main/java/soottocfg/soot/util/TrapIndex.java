@@ -0,0 +1,69 @@
+/**
+ *
+ */
+package soottocfg.soot.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import soot.Body;
+import soot.Trap;
+import soot.Unit;
+
+/**
+ * Maps each unit of a body to the traps whose range contains it. The
+ * position of each unit is computed once, and then each trap is added to
+ * the units between its begin and end unit, so building the index takes
+ * time linear in the number of units plus the size of the result, instead
+ * of scanning all traps for every unit.
+ *
+ * Like Body.getUnits().iterator(begin, end), the range of a trap includes
+ * its end unit. The index reflects the body at the time it was built.
+ *
+ * @author schaef
+ *
+ */
+public class TrapIndex {
+
+	private final Map<Unit, List<Trap>> trapsPerUnit = new HashMap<Unit, List<Trap>>();
+
+	public TrapIndex(Body b) {
+		List<Unit> units = new ArrayList<Unit>(b.getUnits());
+		Map<Unit, Integer> position = new HashMap<Unit, Integer>();
+		for (int i = 0; i < units.size(); i++) {
+			position.put(units.get(i), i);
+		}
+		for (Trap t : b.getTraps()) {
+			Integer begin = position.get(t.getBeginUnit());
+			Integer end = position.get(t.getEndUnit());
+			if (begin == null || end == null) {
+				continue;
+			}
+			for (int i = begin; i <= end; i++) {
+				Unit u = units.get(i);
+				if (!trapsPerUnit.containsKey(u)) {
+					trapsPerUnit.put(u, new LinkedList<Trap>());
+				}
+				trapsPerUnit.get(u).add(t);
+			}
+		}
+	}
+
+	/**
+	 * Returns the traps that may catch exceptions thrown by 'u', in the
+	 * order of the trap list of the body.
+	 *
+	 * @param u
+	 * @return
+	 */
+	public List<Trap> getTrapsGuardingUnit(Unit u) {
+		if (!trapsPerUnit.containsKey(u)) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(trapsPerUnit.get(u));
+	}
+}
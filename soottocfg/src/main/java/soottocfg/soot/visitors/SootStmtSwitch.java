@@ -21,6 +21,7 @@ package soottocfg.soot.visitors;
 
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -33,6 +34,7 @@ import soot.Local;
 import soot.PatchingChain;
 import soot.RefType;
 import soot.Scene;
+import soot.SootClass;
 import soot.SootField;
 import soot.SootMethod;
 import soot.Unit;
@@ -66,10 +68,12 @@ import soot.jimple.StmtSwitch;
 import soot.jimple.TableSwitchStmt;
 import soot.jimple.ThrowStmt;
 import soot.toolkits.graph.CompleteUnitGraph;
+import soottocfg.cfg.ClassVariable;
 import soottocfg.cfg.SourceLocation;
 import soottocfg.cfg.expression.BinaryExpression;
 import soottocfg.cfg.expression.BinaryExpression.BinaryOperator;
 import soottocfg.cfg.expression.Expression;
+import soottocfg.cfg.expression.IdentifierExpression;
 import soottocfg.cfg.expression.UnaryExpression;
 import soottocfg.cfg.expression.UnaryExpression.UnaryOperator;
 import soottocfg.cfg.method.CfgBlock;
@@ -79,6 +83,7 @@ import soottocfg.cfg.statement.AssignStatement;
 import soottocfg.cfg.statement.AssumeStatement;
 import soottocfg.cfg.statement.CallStatement;
 import soottocfg.cfg.statement.Statement;
+import soottocfg.soot.util.DispatchTag;
 import soottocfg.soot.util.MethodInfo;
 import soottocfg.soot.util.SootTranslationHelpers;
 
@@ -378,6 +383,98 @@ public class SootStmtSwitch implements StmtSwitch {
 		if (isHandledAsSpecialCase(u, optionalLhs, call)) {
 			return;
 		}
+		DispatchTag dispatch = (DispatchTag) u.getTag(DispatchTag.name);
+		if (dispatch != null && call instanceof InstanceInvokeExpr) {
+			translateTypeSwitch(u, optionalLhs, (InstanceInvokeExpr) call, dispatch);
+			return;
+		}
+		translateCall(u, optionalLhs, call, call.getMethod());
+	}
+
+	/**
+	 * Translates a virtual call that has been tagged by the
+	 * VirtualCallResolver. The dynamic type of the base is read once, and
+	 * the current block branches to one block per callee. The guards of
+	 * these edges are mutually exclusive (see DispatchTag). All callee
+	 * blocks continue in a new block that becomes the current block.
+	 * 
+	 * @param u
+	 * @param optionalLhs
+	 * @param call
+	 * @param dispatch
+	 */
+	private void translateTypeSwitch(Unit u, Value optionalLhs, InstanceInvokeExpr call, DispatchTag dispatch) {
+		Local dynamicType = readDynamicType(call.getBase());
+		List<SootMethod> callees = dispatch.getCallees();
+		CfgBlock dispatchBlock = currentBlock;
+		CfgBlock joinBlock = new CfgBlock(methodInfo.getMethod());
+		for (int i = 0; i < callees.size(); i++) {
+			Expression guard;
+			if (i < callees.size() - 1) {
+				guard = dispatchGuard(dynamicType, dispatch, i);
+			} else {
+				// the last callee is called if no other one is.
+				guard = null;
+				for (int j = 0; j < i; j++) {
+					Expression other = dispatchGuard(dynamicType, dispatch, j);
+					guard = guard == null ? other : new BinaryExpression(loc, BinaryOperator.Or, guard, other);
+				}
+				guard = new UnaryExpression(loc, UnaryOperator.LNot, guard);
+			}
+			CfgBlock calleeBlock = new CfgBlock(methodInfo.getMethod());
+			connectBlocks(dispatchBlock, calleeBlock, guard);
+			currentBlock = calleeBlock;
+			// translate the arguments again for each call, so that the calls
+			// do not share expressions.
+			translateCall(u, optionalLhs, call, callees.get(i));
+			connectBlocks(calleeBlock, joinBlock);
+		}
+		currentBlock = joinBlock;
+	}
+
+	/**
+	 * Returns a new expression that holds if the dynamic type is a subtype
+	 * of the declaring class of callee i but not of its excluded classes.
+	 */
+	private Expression dispatchGuard(Local dynamicType, DispatchTag dispatch, int callee) {
+		Expression guard = isSubtypeOf(dynamicType, dispatch.getCallees().get(callee).getDeclaringClass());
+		for (SootClass excluded : dispatch.getExcludedClasses(callee)) {
+			guard = new BinaryExpression(loc, BinaryOperator.And, guard,
+					new UnaryExpression(loc, UnaryOperator.LNot, isSubtypeOf(dynamicType, excluded)));
+		}
+		return guard;
+	}
+
+	private Expression isSubtypeOf(Local dynamicType, SootClass sc) {
+		dynamicType.apply(valueSwitch);
+		Expression left = valueSwitch.popExpression();
+		ClassVariable cv = SootTranslationHelpers.v().getMemoryModel()
+				.lookupClassVariable(SootTranslationHelpers.v().getClassConstant(sc.getType()));
+		return new BinaryExpression(loc, BinaryOperator.PoLeq, left, new IdentifierExpression(loc, cv));
+	}
+
+	/**
+	 * Reads the type field of 'base' into a fresh local, like the
+	 * translation of InstanceOfExpr.
+	 */
+	private Local readDynamicType(Value base) {
+		soot.Type t = base.getType();
+		SootField typeField;
+		if (t instanceof RefType) {
+			typeField = ((RefType) t).getSootClass().getFieldByName(SootTranslationHelpers.typeFieldName);
+		} else if (t instanceof ArrayType) {
+			typeField = Scene.v().getSootClass("java.lang.Object").getFieldByName(SootTranslationHelpers.typeFieldName);
+		} else {
+			throw new RuntimeException("Not implemented. " + t + ", " + t.getClass());
+		}
+		Local dynamicType = Jimple.v().newLocal("$dynType" + sootBody.getLocalCount(), typeField.getType());
+		sootBody.getLocals().add(dynamicType);
+		SootTranslationHelpers.v().getMemoryModel().mkHeapReadStatement(getCurrentStmt(),
+				Jimple.v().newInstanceFieldRef(base, typeField.makeRef()), dynamicType);
+		return dynamicType;
+	}
+
+	private void translateCall(Unit u, Value optionalLhs, InvokeExpr call, SootMethod callee) {
 		// translate the expressions in the arguments first.
 		LinkedList<Expression> args = new LinkedList<Expression>();
 		for (int i = 0; i < call.getArgs().size(); i++) {
@@ -410,7 +507,7 @@ public class SootStmtSwitch implements StmtSwitch {
 			receiver = Optional.of(valueSwitch.popExpression());
 		}
 
-		Method method = SootTranslationHelpers.v().lookupOrCreateMethod(call.getMethod());
+		Method method = SootTranslationHelpers.v().lookupOrCreateMethod(callee);
 		CallStatement stmt = new CallStatement(SootTranslationHelpers.v().getSourceLocation(u), method, args, receiver);
 		this.currentBlock.addStatement(stmt);
 	}
@@ -1,10 +1,14 @@
 package soottocfg.test;
 
 import com.google.common.io.Files;
+
+import soot.Scene;
+import soot.SootClass;
 import soottocfg.randoop.Javac;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.ProcessBuilder.Redirect;
 import java.nio.charset.Charset;
 import java.util.List;
@@ -97,6 +101,49 @@ public final class Util {
 		return tempDir;
 	}
 
+	/**
+	 * Writes 'lines' to the file 'fileName' in a temp folder, compiles it
+	 * into another temp folder, and returns this folder. The source is
+	 * deleted, the caller has to delete the returned folder.
+	 * 
+	 * @param fileName the name of the source file, e.g., Foo.java
+	 * @param lines the lines of the source file
+	 * @return the folder that contains the class file(s)
+	 * @throws IOException
+	 */
+	public static File compileJavaSource(String fileName, List<String> lines) throws IOException {
+		final File sourceDir = Files.createTempDir();
+		try {
+			final File source = new File(sourceDir, fileName);
+			try (PrintWriter out = new PrintWriter(source, "UTF-8")) {
+				for (String line : lines) {
+					out.println(line);
+				}
+			}
+			return compileJavaFiles(new File[] { source });
+		} finally {
+			delete(sourceDir);
+		}
+	}
+
+	/**
+	 * Resets Soot and loads the class 'className' and the classes it needs
+	 * from 'classDir' as application class.
+	 * 
+	 * @param classDir the folder that contains the class files
+	 * @param className the name of the class to load
+	 * @return the loaded class
+	 */
+	public static SootClass loadSootClass(File classDir, String className) {
+		soot.G.reset();
+		soot.options.Options.v().set_soot_classpath(classDir.getAbsolutePath());
+		soot.options.Options.v().set_prepend_classpath(true);
+		SootClass sc = Scene.v().loadClassAndSupport(className);
+		sc.setApplicationClass();
+		Scene.v().loadNecessaryClasses();
+		return sc;
+	}
+
 	public static void delete(File f) throws IOException {
 		if (f.isDirectory()) {
 			for (File c : f.listFiles())
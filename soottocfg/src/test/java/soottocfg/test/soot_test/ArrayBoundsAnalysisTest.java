@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.Body;
+import soot.Scene;
+import soot.Unit;
+import soot.ValueBox;
+import soot.jimple.ArrayRef;
+import soottocfg.soot.util.ArrayBoundsAnalysis;
+import soottocfg.test.Util;
+
+/**
+ * Checks that the array accesses in the loops that javac generates for the
+ * usual loop idioms are proved in bounds, and that accesses that may be out
+ * of bounds are not.
+ *
+ * @author schaef
+ *
+ */
+public class ArrayBoundsAnalysisTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	private static File classDir = null;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		classDir = Util.compileJavaFile(new File(testRoot + "analysis_tests/ArrayBounds01.java"));
+		Assert.assertNotNull(classDir);
+		soot.G.reset();
+		soot.options.Options.v().set_soot_classpath(classDir.getAbsolutePath());
+		soot.options.Options.v().set_prepend_classpath(true);
+		Scene.v().loadClassAndSupport("ArrayBounds01").setApplicationClass();
+		Scene.v().loadNecessaryClasses();
+	}
+
+	@AfterClass
+	public static void tearDown() throws IOException {
+		soot.G.reset();
+		if (classDir != null) {
+			Util.delete(classDir);
+		}
+	}
+
+	@Test
+	public void testLoopIdioms() {
+		Assert.assertTrue(isInBounds("countUp"));
+		Assert.assertTrue(isInBounds("countDown"));
+		Assert.assertTrue(isInBounds("lessOrEqual"));
+	}
+
+	@Test
+	public void testMayBeOutOfBounds() {
+		Assert.assertFalse(isInBounds("pastTheEnd"));
+		Assert.assertFalse(isInBounds("countDownFromLength"));
+		Assert.assertFalse(isInBounds("otherArray"));
+		Assert.assertFalse(isInBounds("unknownIndex"));
+		Assert.assertFalse(isInBounds("negativeStart"));
+	}
+
+	/**
+	 * True if the only array access in 'methodName' is in bounds.
+	 */
+	private boolean isInBounds(String methodName) {
+		Body body = Scene.v().getSootClass("ArrayBounds01").getMethodByName(methodName).retrieveActiveBody();
+		ArrayBoundsAnalysis analysis = new ArrayBoundsAnalysis(body);
+		Unit access = null;
+		ArrayRef ref = null;
+		for (Unit u : body.getUnits()) {
+			for (ValueBox vb : u.getUseAndDefBoxes()) {
+				if (vb.getValue() instanceof ArrayRef) {
+					Assert.assertNull("More than one array access in " + methodName, access);
+					access = u;
+					ref = (ArrayRef) vb.getValue();
+				}
+			}
+		}
+		Assert.assertNotNull(access);
+		return analysis.isInBounds(access, ref);
+	}
+}
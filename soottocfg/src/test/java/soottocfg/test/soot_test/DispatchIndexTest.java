@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.Hierarchy;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soottocfg.soot.util.DispatchIndex;
+import soottocfg.test.Util;
+
+/**
+ * Checks that the subtypes and the callees of virtual calls according to a
+ * DispatchIndex are the same as according to Soot's Hierarchy, for the
+ * classes and interfaces in Dispatch01.
+ *
+ * @author schaef
+ *
+ */
+public class DispatchIndexTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	private static final String[] classNames = { "Dispatch01", "DispatchShape", "DispatchNamed",
+			"DispatchAbstractShape", "DispatchCircle", "DispatchSquare", "DispatchUnitSquare", "DispatchBase",
+			"DispatchDerived" };
+
+	private static File classDir = null;
+	private static List<SootClass> classes = new LinkedList<SootClass>();
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		classDir = Util.compileJavaFile(new File(testRoot + "analysis_tests/Dispatch01.java"));
+		Assert.assertNotNull(classDir);
+		soot.G.reset();
+		soot.options.Options.v().set_soot_classpath(classDir.getAbsolutePath());
+		soot.options.Options.v().set_prepend_classpath(true);
+		for (String className : classNames) {
+			SootClass sc = Scene.v().loadClassAndSupport(className);
+			sc.setApplicationClass();
+			classes.add(sc);
+		}
+		Scene.v().loadNecessaryClasses();
+	}
+
+	@AfterClass
+	public static void tearDown() throws IOException {
+		soot.G.reset();
+		classes.clear();
+		if (classDir != null) {
+			Util.delete(classDir);
+		}
+	}
+
+	@Test
+	public void testSubtypes() {
+		DispatchIndex index = new DispatchIndex();
+		Hierarchy hierarchy = Scene.v().getActiveHierarchy();
+		for (SootClass sc : classes) {
+			Set<SootClass> expected = new HashSet<SootClass>();
+			if (sc.isInterface()) {
+				expected.addAll(hierarchy.getImplementersOf(sc));
+			} else {
+				expected.addAll(hierarchy.getSubclassesOfIncluding(sc));
+			}
+			Assert.assertEquals(sc.getName(), expected, subtypes(index, sc));
+		}
+	}
+
+	@Test
+	public void testCallees() {
+		DispatchIndex index = new DispatchIndex();
+		Hierarchy hierarchy = Scene.v().getActiveHierarchy();
+		int calls = 0;
+		for (SootClass sc : classes) {
+			for (SootMethod sm : sc.getMethods()) {
+				if (sm.isStatic() || sm.isPrivate() || sm.isConstructor() || sm.isStaticInitializer()) {
+					continue;
+				}
+				calls++;
+				Set<SootMethod> expected = new HashSet<SootMethod>(hierarchy.resolveAbstractDispatch(sc, sm));
+				Assert.assertEquals(sm.getSignature(), expected, callees(index, sc, sm));
+			}
+		}
+		Assert.assertTrue(calls > 5);
+	}
+
+	private Set<SootClass> subtypes(DispatchIndex index, SootClass sc) {
+		Set<SootClass> result = new HashSet<SootClass>();
+		BitSet ids = index.getSubtypes(sc);
+		for (int i = ids.nextSetBit(0); i >= 0; i = ids.nextSetBit(i + 1)) {
+			result.add(index.getClass(i));
+		}
+		return result;
+	}
+
+	/**
+	 * The methods that a call of 'sm' on an instance of 'sc' may dispatch to:
+	 * for each concrete subtype, the closest declaration in it or its
+	 * superclasses.
+	 */
+	private Set<SootMethod> callees(DispatchIndex index, SootClass sc, SootMethod sm) {
+		Set<SootMethod> result = new HashSet<SootMethod>();
+		for (SootClass sub : subtypes(index, sc)) {
+			if (sub.isInterface() || sub.isAbstract()) {
+				continue;
+			}
+			SootClass current = sub;
+			SootMethod target = index.getDeclaredMethod(current, sm.getSubSignature());
+			while (target == null && current.hasSuperclass()) {
+				current = current.getSuperclass();
+				target = index.getDeclaredMethod(current, sm.getSubSignature());
+			}
+			Assert.assertNotNull(target);
+			result.add(target);
+		}
+		return result;
+	}
+}
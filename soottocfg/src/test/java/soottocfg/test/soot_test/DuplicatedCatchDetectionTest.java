@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.Body;
+import soot.SootClass;
+import soot.Unit;
+import soot.jimple.InvokeStmt;
+import soottocfg.soot.util.DuplicatedCatchDetection;
+import soottocfg.test.Util;
+
+/**
+ * Checks the duplicates that DuplicatedCatchDetection finds for the
+ * statements of finally blocks. The finally blocks only call methods, and
+ * each call is named by the called method and the number of calls of that
+ * method before it, e.g., a#1 for the second call of a. javac copies each
+ * finally block once for the normal exit and once for the exception
+ * handler, so a#0 is in the normal copy of the first finally block, and a#1
+ * in its handler.
+ *
+ * @author schaef
+ *
+ */
+public class DuplicatedCatchDetectionTest {
+
+	private static final int finallyBlocks = 100;
+
+	@Test
+	public void testDifferentFinallyBlocks() throws IOException {
+		List<String> source = Arrays.asList("public class TwoFinally {", "  void work() { }", "  void a() { }",
+				"  void b() { }", "  void c() { }", "  void f() {", "    try { work(); } finally { a(); b(); }",
+				"    try { work(); } finally { a(); c(); }", "  }", "}");
+		Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+		// the copies of a() that are followed by c() only match in a().
+		expected.put("a#1", names("a#0", "a#2", "a#3"));
+		expected.put("b#1", names("b#0"));
+		expected.put("a#3", names("a#0", "a#1", "a#2"));
+		expected.put("c#1", names("c#0"));
+		Assert.assertEquals(expected, findDuplicates("TwoFinally", source));
+	}
+
+	/**
+	 * Benchmark for a method with 'finallyBlocks' finally regions. Comparing
+	 * each unit with all copies of all finally blocks grows quadratically
+	 * with the regions, so the timeout fails the test if the detection gets
+	 * that slow again.
+	 */
+	@Test(timeout = 60000)
+	public void testManyFinallyBlocks() throws IOException {
+		List<String> source = new LinkedList<String>();
+		source.add("public class ManyFinally {");
+		source.add("  void work(int i) { }");
+		source.add("  void a() { }");
+		source.add("  void b() { }");
+		source.add("  void f() {");
+		for (int i = 0; i < finallyBlocks; i++) {
+			source.add("    try { work(" + i + "); } finally { a(); b(); }");
+		}
+		source.add("  }");
+		source.add("}");
+		// each statement of a handler is a duplicate of all other copies.
+		Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+		for (String method : new String[] { "a", "b" }) {
+			for (int handler = 1; handler < 2 * finallyBlocks; handler += 2) {
+				Set<String> copies = new HashSet<String>();
+				for (int i = 0; i < 2 * finallyBlocks; i++) {
+					if (i != handler) {
+						copies.add(method + "#" + i);
+					}
+				}
+				expected.put(method + "#" + handler, copies);
+			}
+		}
+		Assert.assertEquals(expected, findDuplicates("ManyFinally", source));
+	}
+
+	/**
+	 * Compiles 'source', and returns the duplicates in the method f of
+	 * 'className' by the names of the calls.
+	 */
+	private Map<String, Set<String>> findDuplicates(String className, List<String> source) throws IOException {
+		File classFileDir = Util.compileJavaSource(className + ".java", source);
+		Assert.assertNotNull(classFileDir);
+		try {
+			SootClass sc = Util.loadSootClass(classFileDir, className);
+			Body body = sc.getMethodByName("f").retrieveActiveBody();
+			Map<Unit, String> unitNames = new HashMap<Unit, String>();
+			Map<String, Integer> calls = new HashMap<String, Integer>();
+			for (Unit u : body.getUnits()) {
+				if (u instanceof InvokeStmt) {
+					String method = ((InvokeStmt) u).getInvokeExpr().getMethod().getName();
+					int count = calls.containsKey(method) ? calls.get(method) : 0;
+					calls.put(method, count + 1);
+					unitNames.put(u, method + "#" + count);
+				}
+			}
+			Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+			for (Entry<Unit, Set<Unit>> entry : new DuplicatedCatchDetection()
+					.identifiedDuplicatedUnitsFromFinallyBlocks(body).entrySet()) {
+				Set<String> duplicates = new HashSet<String>();
+				for (Unit u : entry.getValue()) {
+					Assert.assertTrue(u.toString(), unitNames.containsKey(u));
+					duplicates.add(unitNames.get(u));
+				}
+				Assert.assertTrue(entry.getKey().toString(), unitNames.containsKey(entry.getKey()));
+				result.put(unitNames.get(entry.getKey()), duplicates);
+			}
+			return result;
+		} finally {
+			soot.G.reset();
+			Util.delete(classFileDir);
+		}
+	}
+
+	private Set<String> names(String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import soottocfg.soot.util.JarScanner;
+import soottocfg.soot.util.JarScanner.JarInfo;
+import soottocfg.test.Util;
+
+/**
+ * Checks the classes and the manifest class path that JarScanner reads
+ * from a jar, and that a changed jar is scanned again.
+ *
+ * @author schaef
+ *
+ */
+public class JarScannerTest {
+
+	@Test
+	public void testScan() throws IOException {
+		File dir = Files.createTempDir();
+		try {
+			File jar = new File(dir, "a.jar");
+			writeJar(jar, "b.jar lib/c.jar", "a/A.class", "a/A$Inner.class", "a/readme.txt");
+			// the class path of b.jar must not end up in the class path of
+			// a.jar.
+			writeJar(new File(dir, "b.jar"), "d.jar", "b/B.class");
+
+			JarInfo info = JarScanner.scan(jar);
+			Assert.assertEquals(new HashSet<String>(Arrays.asList("a.A", "a.A$Inner")),
+					new HashSet<String>(info.getClasses()));
+			List<File> expected = new LinkedList<File>();
+			expected.add(new File(dir, "b.jar"));
+			expected.add(new File(dir, "lib/c.jar"));
+			Assert.assertEquals(expected, info.getClassPath());
+
+			// make sure that the time stamp changes.
+			Assert.assertTrue(jar.delete());
+			writeJar(jar, null, "a/A.class", "a/B.class");
+			Assert.assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+			info = JarScanner.scan(jar);
+			Assert.assertEquals(2, info.getClasses().size());
+			Assert.assertTrue(info.getClassPath().isEmpty());
+		} finally {
+			JarScanner.clearCache();
+			Util.delete(dir);
+		}
+	}
+
+	private void writeJar(File jar, String classPath, String... entries) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (classPath != null) {
+			manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+		}
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+			for (String entry : entries) {
+				out.putNextEntry(new JarEntry(entry));
+				out.write(new byte[] { 0 });
+				out.closeEntry();
+			}
+		}
+	}
+}
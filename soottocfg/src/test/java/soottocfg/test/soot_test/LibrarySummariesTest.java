@@ -0,0 +1,189 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+
+import soottocfg.cfg.Program;
+import soottocfg.cfg.Variable;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.Method;
+import soottocfg.cfg.statement.Statement;
+import soottocfg.cfg.type.IntType;
+import soottocfg.cfg.type.Type;
+import soottocfg.soot.util.LibrarySummaries;
+import soottocfg.test.Util;
+
+/**
+ * Checks the parser of the library summaries, the error messages for
+ * malformed entries, the statements that a summary is encoded into, and
+ * that summaries are not used for methods with overrides outside the JDK.
+ *
+ * @author schaef
+ *
+ */
+public class LibrarySummariesTest {
+
+	private static final String intMethod = "<A: int f(int,int)>";
+	private static final String voidMethod = "<A: void g()>";
+
+	@Test
+	public void testBundled() {
+		LibrarySummaries summaries = LibrarySummaries.loadBundled();
+		Assert.assertTrue(summaries.size() > 0);
+		Assert.assertTrue(summaries.hasSummary("<java.lang.Math: int abs(int)>"));
+	}
+
+	@Test
+	public void testEncoding() throws IOException {
+		LibrarySummaries summaries = load("# comment", "", "version " + LibrarySummaries.VERSION, intMethod,
+				"\trequires $0 >= 0 && $1 != 0", "\trequires !($1 < -1)",
+				"\tensures $0 > 0 -> $ret == $0 / $1 + 1", voidMethod, "\tensures true", "<A: void h()>",
+				"\trequires false");
+		Assert.assertEquals(3, summaries.size());
+
+		Program program = new Program();
+		Method f = createMethod(program, intMethod, 2, true);
+		Method g = createMethod(program, voidMethod, 0, false);
+		// methods that have a body or no summary are not changed.
+		Method h = createMethod(program, "<A: void h()>", 0, false);
+		CfgBlock body = new CfgBlock(h);
+		h.initialize(null, null, new HashSet<Variable>(), body, false);
+		Method k = createMethod(program, "<A: void k()>", 0, false);
+
+		Assert.assertEquals(2, summaries.applyTo(program));
+		Assert.assertEquals(Arrays.asList("assert ((p0 >= 0) && (p1 != 0))", "assert (!(p1 < -1))",
+				"assume ((p0 > 0) -> ($ret_ == ((p0 / p1) + 1)))"), statements(f));
+		Assert.assertTrue(f.getOutParam().isPresent());
+		Assert.assertEquals(Arrays.asList("assume true"), statements(g));
+		Assert.assertFalse(g.getOutParam().isPresent());
+		Assert.assertSame(body, h.getSource());
+		Assert.assertTrue(body.getStatements().isEmpty());
+		Assert.assertNull(k.getSource());
+	}
+
+	@Test
+	public void testOverrides() throws IOException {
+		final String objectHashCode = "<java.lang.Object: int hashCode()>";
+		final String stringLength = "<java.lang.String: int length()>";
+		final String negativeHashCode = "<Negative: int hashCode()>";
+		File classDir = Util.compileJavaSource("Negative.java",
+				Arrays.asList("class Negative { public int hashCode() { return -1; } }"));
+		Assert.assertNotNull(classDir);
+		try {
+			Util.loadSootClass(classDir, "Negative");
+			LibrarySummaries summaries = load("version " + LibrarySummaries.VERSION, objectHashCode,
+					"\tensures $ret >= 0", stringLength, "\tensures $ret >= 0", negativeHashCode,
+					"\tensures $ret < 0");
+			Program program = new Program();
+			// calls of Object.hashCode may dispatch to Negative.hashCode.
+			Method hashCode = createMethod(program, objectHashCode, 1, true);
+			// String is final.
+			Method length = createMethod(program, stringLength, 1, true);
+			// Negative has no subclasses.
+			Method negative = createMethod(program, negativeHashCode, 1, true);
+
+			Assert.assertEquals(2, summaries.applyTo(program));
+			Assert.assertNull(hashCode.getSource());
+			Assert.assertEquals(Arrays.asList("assume ($ret_ >= 0)"), statements(length));
+			Assert.assertEquals(Arrays.asList("assume ($ret_ < 0)"), statements(negative));
+		} finally {
+			soot.G.reset();
+			Util.delete(classDir);
+		}
+	}
+
+	@Test
+	public void testMalformedFile() throws IOException {
+		assertLoadFails("expected 'version " + LibrarySummaries.VERSION + "'", intMethod, "\tensures true");
+		assertLoadFails("expected 'version " + LibrarySummaries.VERSION + "'", "version 0", intMethod);
+		assertLoadFails(":2: cannot parse 'requires true'", "version " + LibrarySummaries.VERSION,
+				"requires true");
+		assertLoadFails(":3: cannot parse 'assert true'", "version " + LibrarySummaries.VERSION, intMethod,
+				"assert true");
+	}
+
+	@Test
+	public void testMalformedClause() throws IOException {
+		assertApplyFails("$ret used in a void method", voidMethod, "\tensures $ret == 0");
+		assertApplyFails("no parameter $2", intMethod, "\trequires $2 > 0");
+		assertApplyFails("expected ')'", intMethod, "\trequires ($0 > 0");
+		assertApplyFails("unexpected ')'", intMethod, "\trequires $0 > 0)");
+		assertApplyFails("unexpected '!='", intMethod, "\trequires $0 > != 0");
+	}
+
+	private void assertLoadFails(String message, String... lines) throws IOException {
+		try {
+			load(lines);
+			Assert.fail("Expected an error containing " + message);
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private void assertApplyFails(String message, String... lines) throws IOException {
+		String[] file = new String[lines.length + 1];
+		file[0] = "version " + LibrarySummaries.VERSION;
+		System.arraycopy(lines, 0, file, 1, lines.length);
+		LibrarySummaries summaries = load(file);
+		Program program = new Program();
+		createMethod(program, intMethod, 2, true);
+		createMethod(program, voidMethod, 0, false);
+		try {
+			summaries.applyTo(program);
+			Assert.fail("Expected an error containing " + message);
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(":2: "));
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private LibrarySummaries load(String... lines) throws IOException {
+		File file = File.createTempFile("summaries", ".txt");
+		try {
+			try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+				for (String line : lines) {
+					out.println(line);
+				}
+			}
+			return LibrarySummaries.load(file);
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	private Method createMethod(Program program, String name, int parameters, boolean returnsInt) {
+		List<Variable> params = new LinkedList<Variable>();
+		for (int i = 0; i < parameters; i++) {
+			params.add(new Variable("p" + i, IntType.instance()));
+		}
+		Optional<Type> returnType = Optional.absent();
+		if (returnsInt) {
+			returnType = Optional.<Type> of(IntType.instance());
+		}
+		return Method.createMethodInProgram(program, name, params, returnType);
+	}
+
+	private List<String> statements(Method m) {
+		Assert.assertNotNull(m.getSource());
+		List<String> result = new LinkedList<String>();
+		for (Statement s : m.getSource().getStatements()) {
+			result.add(s.toString());
+		}
+		return result;
+	}
+}
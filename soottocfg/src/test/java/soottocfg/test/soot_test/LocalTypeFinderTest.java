@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import soot.Body;
+import soot.Local;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.toolkits.graph.CompleteUnitGraph;
+import soottocfg.soot.SootRunner;
+import soottocfg.soot.util.DispatchIndex;
+import soottocfg.soot.util.LocalTypeFinder;
+import soottocfg.test.Util;
+
+/**
+ * Compares the types computed by LocalTypeFinder, with and without a
+ * DispatchIndex, with those of the MapLocalTypeFinder for all locals before
+ * all units of all methods in the test resources.
+ *
+ * @author schaef
+ *
+ */
+@RunWith(Parameterized.class)
+public class LocalTypeFinderTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	private final File sourceDir;
+
+	@Parameterized.Parameters(name = "{index}: check ({1})")
+	public static Collection<Object[]> data() {
+		List<Object[]> dirs = new LinkedList<Object[]>();
+		for (String name : new String[] { "soot_tests", "translation_tests", "dynamic_tests" }) {
+			dirs.add(new Object[] { new File(testRoot + name), name });
+		}
+		return dirs;
+	}
+
+	public LocalTypeFinderTest(File sourceDir, String name) {
+		this.sourceDir = sourceDir;
+	}
+
+	@Test
+	public void test() throws IOException {
+		List<File> sourceFiles = new LinkedList<File>();
+		File[] directoryListing = sourceDir.listFiles();
+		Assert.assertNotNull("Test data not found", directoryListing);
+		for (File child : directoryListing) {
+			if (child.isFile() && child.getName().endsWith(".java")) {
+				sourceFiles.add(child);
+			}
+		}
+		File classDir = Util.compileJavaFiles(sourceFiles.toArray(new File[sourceFiles.size()]));
+		Assert.assertNotNull(classDir);
+		try {
+			soot.G.reset();
+			new SootRunner().run(classDir.getAbsolutePath(), null);
+			DispatchIndex index = new DispatchIndex();
+			int comparisons = 0;
+			for (SootClass sc : new LinkedList<SootClass>(Scene.v().getApplicationClasses())) {
+				for (SootMethod sm : sc.getMethods()) {
+					if (!sm.isConcrete()) {
+						continue;
+					}
+					Body body = sm.retrieveActiveBody();
+					CompleteUnitGraph graph = new CompleteUnitGraph(body);
+					MapLocalTypeFinder expected = new MapLocalTypeFinder(graph, body);
+					LocalTypeFinder actual = new LocalTypeFinder(graph, body);
+					LocalTypeFinder indexed = new LocalTypeFinder(graph, body, index);
+
+					for (Unit u : body.getUnits()) {
+						for (Local l : body.getLocals()) {
+							String where = sm.getSignature() + ", " + l + " before " + u;
+							Assert.assertEquals(where, expected.getLocalTypesBefore(u, l),
+									actual.getLocalTypesBefore(u, l));
+							Assert.assertEquals(where, expected.getLocalTypesBefore(u, l),
+									indexed.getLocalTypesBefore(u, l));
+							comparisons++;
+						}
+					}
+				}
+			}
+			Assert.assertTrue("Nothing compared in " + sourceDir.getName(), comparisons > 0);
+		} finally {
+			soot.G.reset();
+			Util.delete(classDir);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Jimple;
+import soot.jimple.Stmt;
+import soottocfg.soot.util.MayThrowSummaries;
+import soottocfg.test.Util;
+
+/**
+ * Checks which methods and calls of MayThrow01 may throw an IOException:
+ * calls to a callee that throws, virtual calls where only an override
+ * throws, and calls in a recursive component.
+ *
+ * @author schaef
+ *
+ */
+public class MayThrowSummariesTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	private static File classDir = null;
+	private static MayThrowSummaries summaries;
+	private static SootClass ioException;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		classDir = Util.compileJavaFile(new File(testRoot + "analysis_tests/MayThrow01.java"));
+		Assert.assertNotNull(classDir);
+		soot.G.reset();
+		soot.options.Options.v().set_soot_classpath(classDir.getAbsolutePath());
+		soot.options.Options.v().set_prepend_classpath(true);
+		List<SootMethod> methods = new LinkedList<SootMethod>();
+		for (String className : new String[] { "MayThrow01", "MayThrowBase", "MayThrowSub" }) {
+			Scene.v().loadClassAndSupport(className).setApplicationClass();
+		}
+		Scene.v().loadNecessaryClasses();
+		for (SootClass sc : Scene.v().getApplicationClasses()) {
+			for (SootMethod sm : sc.getMethods()) {
+				if (sm.isConcrete()) {
+					methods.add(sm);
+				}
+			}
+		}
+		summaries = new MayThrowSummaries(methods, true);
+		ioException = Scene.v().getSootClass("java.io.IOException");
+	}
+
+	@AfterClass
+	public static void tearDown() throws IOException {
+		soot.G.reset();
+		if (classDir != null) {
+			Util.delete(classDir);
+		}
+	}
+
+	@Test
+	public void testThrowingCallee() {
+		Assert.assertTrue(throwsIOException("thrower"));
+		Assert.assertTrue(throwsIOException("callsThrower"));
+		Assert.assertTrue(callMayThrowIOException("callsThrower"));
+		// caught by the caller.
+		Assert.assertTrue(callMayThrowIOException("catchesThrower"));
+		Assert.assertFalse(throwsIOException("catchesThrower"));
+		// no calls to library methods, no throw statements.
+		Assert.assertTrue(summaries.getThrownExceptions(method("MayThrow01", "noThrow")).isEmpty());
+		Assert.assertTrue(summaries.getThrownExceptions(method("MayThrow01", "callsNoThrow")).isEmpty());
+		Assert.assertFalse(callMayThrowIOException("callsNoThrow"));
+	}
+
+	@Test
+	public void testThrowingOverride() {
+		Assert.assertFalse(summaries.getThrownExceptions(method("MayThrowBase", "m")).contains(ioException));
+		Assert.assertTrue(summaries.getThrownExceptions(method("MayThrowSub", "m")).contains(ioException));
+		Assert.assertTrue(throwsIOException("callsVirtual"));
+		Assert.assertTrue(callMayThrowIOException("callsVirtual"));
+	}
+
+	@Test
+	public void testRecursiveComponent() {
+		Assert.assertTrue(throwsIOException("odd"));
+		// only through the call to odd.
+		Assert.assertTrue(throwsIOException("even"));
+		Assert.assertTrue(callMayThrowIOException("even"));
+	}
+
+	@Test
+	public void testUnknownCall() {
+		// a call that was not in the body when the summaries were computed
+		// may throw everything the called method declares.
+		Stmt call = findCall(method("MayThrow01", "callsNoThrow"));
+		Unit copy = Jimple.v().newInvokeStmt(call.getInvokeExpr());
+		Assert.assertTrue(summaries.getThrownExceptions(copy, call.getInvokeExpr())
+				.contains(Scene.v().getSootClass("java.lang.RuntimeException")));
+		call = findCall(method("MayThrow01", "callsVirtual"));
+		copy = Jimple.v().newInvokeStmt(call.getInvokeExpr());
+		Assert.assertTrue(summaries.mayThrow(copy, call.getInvokeExpr(), ioException));
+	}
+
+	private SootMethod method(String className, String methodName) {
+		return Scene.v().getSootClass(className).getMethodByName(methodName);
+	}
+
+	private boolean throwsIOException(String methodName) {
+		return summaries.getThrownExceptions(method("MayThrow01", methodName)).contains(ioException);
+	}
+
+	/**
+	 * True if the only call in 'methodName' may throw an IOException.
+	 */
+	private boolean callMayThrowIOException(String methodName) {
+		Stmt call = findCall(method("MayThrow01", methodName));
+		InvokeExpr ivk = call.getInvokeExpr();
+		return summaries.mayThrow(call, ivk, ioException);
+	}
+
+	private Stmt findCall(SootMethod sm) {
+		Stmt result = null;
+		for (Unit u : sm.retrieveActiveBody().getUnits()) {
+			if (((Stmt) u).containsInvokeExpr()) {
+				Assert.assertNull("More than one call in " + sm, result);
+				result = (Stmt) u;
+			}
+		}
+		Assert.assertNotNull(result);
+		return result;
+	}
+}
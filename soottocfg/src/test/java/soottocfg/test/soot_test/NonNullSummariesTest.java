@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.Body;
+import soot.Local;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.FieldRef;
+import soot.jimple.Jimple;
+import soot.jimple.NullConstant;
+import soot.jimple.Stmt;
+import soot.toolkits.graph.CompleteUnitGraph;
+import soot.toolkits.scalar.LocalDefs;
+import soot.toolkits.scalar.SimpleLocalDefs;
+import soottocfg.soot.util.NonNullSummaries;
+import soottocfg.test.Util;
+
+/**
+ * Checks the non-null facts for NonNull01: returns, parameters of private
+ * methods whose call sites are all known, final fields that are read before
+ * they are assigned, and queries on a body that changed after the facts
+ * were computed.
+ *
+ * @author schaef
+ *
+ */
+public class NonNullSummariesTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	private static File classDir = null;
+	private static List<SootMethod> methods = new LinkedList<SootMethod>();
+	private static NonNullSummaries summaries;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		classDir = Util.compileJavaFile(new File(testRoot + "analysis_tests/NonNull01.java"));
+		Assert.assertNotNull(classDir);
+		soot.G.reset();
+		soot.options.Options.v().set_soot_classpath(classDir.getAbsolutePath());
+		soot.options.Options.v().set_prepend_classpath(true);
+		for (String className : new String[] { "NonNull01", "NonNullBase", "NonNullSub" }) {
+			Scene.v().loadClassAndSupport(className).setApplicationClass();
+		}
+		Scene.v().loadNecessaryClasses();
+		for (SootClass sc : Scene.v().getApplicationClasses()) {
+			for (SootMethod sm : sc.getMethods()) {
+				if (sm.isConcrete()) {
+					methods.add(sm);
+				}
+			}
+		}
+		summaries = new NonNullSummaries(methods);
+	}
+
+	@AfterClass
+	public static void tearDown() throws IOException {
+		soot.G.reset();
+		methods.clear();
+		if (classDir != null) {
+			Util.delete(classDir);
+		}
+	}
+
+	@Test
+	public void testReturns() {
+		Assert.assertTrue(summaries.isNonNullReturn(method("NonNull01", "create")));
+		Assert.assertFalse(summaries.isNonNullReturn(method("NonNull01", "maybeNull")));
+	}
+
+	@Test
+	public void testParameters() {
+		Assert.assertTrue(summaries.isNonNullParameter(method("NonNull01", "allNonNull"), 0));
+		Assert.assertFalse(summaries.isNonNullParameter(method("NonNull01", "someNull"), 0));
+		// may be called through reflection.
+		Assert.assertFalse(summaries.isNonNullParameter(method("NonNull01", "neverCalled"), 0));
+	}
+
+	@Test
+	public void testCallerNotAnalyzed() {
+		// without callsSomeNull, there may be other callers that pass null.
+		List<SootMethod> someMethods = new LinkedList<SootMethod>(methods);
+		Assert.assertTrue(someMethods.remove(method("NonNull01", "callsSomeNull")));
+		NonNullSummaries partial = new NonNullSummaries(someMethods);
+		Assert.assertFalse(partial.isNonNullParameter(method("NonNull01", "allNonNull"), 0));
+		Assert.assertTrue(partial.isNonNullReturn(method("NonNull01", "create")));
+	}
+
+	@Test
+	public void testFieldReadBeforeAssignment() {
+		SootMethod init = method("NonNullSub", "init");
+		Body body = init.retrieveActiveBody();
+		LocalDefs defs = new SimpleLocalDefs(new CompleteUnitGraph(body));
+		int fieldReads = 0;
+		for (Unit u : body.getUnits()) {
+			if (u instanceof DefinitionStmt && ((DefinitionStmt) u).getRightOp() instanceof FieldRef) {
+				fieldReads++;
+				Assert.assertFalse(summaries.isNonNullBefore(init, defs, u, ((DefinitionStmt) u).getRightOp()));
+			}
+		}
+		Assert.assertEquals(1, fieldReads);
+	}
+
+	@Test
+	public void testChangedBody() {
+		SootMethod sm = method("NonNull01", "allNonNull");
+		Body body = sm.retrieveActiveBody();
+		Local param = body.getParameterLocal(0);
+		Stmt call = null;
+		for (Unit u : body.getUnits()) {
+			if (((Stmt) u).containsInvokeExpr()) {
+				call = (Stmt) u;
+			}
+		}
+		Assert.assertNotNull(call);
+		Assert.assertTrue(
+				summaries.isNonNullBefore(sm, new SimpleLocalDefs(new CompleteUnitGraph(body)), call, param));
+		// a definition that was added after the facts were computed.
+		Unit assignNull = Jimple.v().newAssignStmt(param, NullConstant.v());
+		body.getUnits().insertBefore(assignNull, call);
+		try {
+			Assert.assertFalse(
+					summaries.isNonNullBefore(sm, new SimpleLocalDefs(new CompleteUnitGraph(body)), call, param));
+		} finally {
+			body.getUnits().remove(assignNull);
+		}
+	}
+
+	private SootMethod method(String className, String methodName) {
+		return Scene.v().getSootClass(className).getMethodByName(methodName);
+	}
+}
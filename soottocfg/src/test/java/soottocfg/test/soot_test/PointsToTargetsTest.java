@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import soot.Scene;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.Stmt;
+import soottocfg.soot.SootRunner;
+import soottocfg.soot.util.PointsToTargets;
+import soottocfg.test.Util;
+
+/**
+ * Checks that the points-to analysis narrows the targets of calls whose
+ * receivers are only allocated in PointsTo01, and that it gives no targets
+ * for receivers that may also come from a library or an entry point.
+ *
+ * @author schaef
+ *
+ */
+public class PointsToTargetsTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	private static File classDir = null;
+	private static PointsToTargets pointsTo;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		classDir = Util.compileJavaFile(new File(testRoot + "analysis_tests/PointsTo01.java"));
+		Assert.assertNotNull(classDir);
+		soot.G.reset();
+		SootRunner runner = new SootRunner();
+		runner.run(classDir.getAbsolutePath(), null);
+		runner.runPointsToAnalysis();
+		Assert.assertTrue(PointsToTargets.isAvailable());
+		pointsTo = new PointsToTargets(Arrays.asList(method("main"), method("entryPoint")));
+	}
+
+	@AfterClass
+	public static void tearDown() throws IOException {
+		soot.G.reset();
+		if (classDir != null) {
+			Util.delete(classDir);
+		}
+	}
+
+	@Test
+	public void testNarrowed() {
+		Assert.assertEquals(areaOf("PointsToSquare"), targetsOfArea("allocated"));
+		Assert.assertEquals(areaOf("PointsToCircle"), targetsOfArea("fromField"));
+	}
+
+	@Test
+	public void testNotAllocated() {
+		// the points-to sets only contain a PointsToTriangle.
+		Assert.assertNull(targetsOfArea("fromLibrary"));
+		Assert.assertNull(targetsOfArea("entryPoint"));
+	}
+
+	private static SootMethod method(String methodName) {
+		return Scene.v().getSootClass("PointsTo01").getMethodByName(methodName);
+	}
+
+	private Set<SootMethod> areaOf(String className) {
+		return new HashSet<SootMethod>(
+				Arrays.asList(Scene.v().getSootClass(className).getMethodByName("area")));
+	}
+
+	/**
+	 * The targets of the only call to area in 'methodName'.
+	 */
+	private Set<SootMethod> targetsOfArea(String methodName) {
+		Set<SootMethod> result = null;
+		boolean found = false;
+		for (Unit u : method(methodName).retrieveActiveBody().getUnits()) {
+			Stmt s = (Stmt) u;
+			if (s.containsInvokeExpr() && s.getInvokeExpr().getMethod().getName().equals("area")) {
+				Assert.assertFalse("More than one call to area in " + methodName, found);
+				found = true;
+				result = pointsTo.getTargets(u, (InstanceInvokeExpr) s.getInvokeExpr());
+			}
+		}
+		Assert.assertTrue(found);
+		return result;
+	}
+}
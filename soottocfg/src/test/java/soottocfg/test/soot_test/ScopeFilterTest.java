@@ -0,0 +1,82 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soottocfg.soot.util.ScopeFilter;
+
+/**
+ * Checks which classes and methods the different kinds of scope patterns
+ * put in scope.
+ *
+ * @author schaef
+ *
+ */
+public class ScopeFilterTest {
+
+	@Test
+	public void testEmptyScope() {
+		ScopeFilter scope = new ScopeFilter(Arrays.asList("", "  "));
+		Assert.assertTrue(scope.isEmpty());
+		Assert.assertTrue(scope.containsAllMethodsOf("foo.Bar"));
+		Assert.assertTrue(scope.containsMethod("foo.Bar", "<foo.Bar: void baz()>"));
+	}
+
+	@Test
+	public void testPrefix() {
+		ScopeFilter scope = new ScopeFilter(Arrays.asList("foo.bar", " foo.Baz "));
+		Assert.assertFalse(scope.isEmpty());
+		// the package and its sub-packages.
+		Assert.assertTrue(scope.containsAllMethodsOf("foo.bar.A"));
+		Assert.assertTrue(scope.containsAllMethodsOf("foo.bar.sub.A"));
+		// the class and its inner classes.
+		Assert.assertTrue(scope.containsAllMethodsOf("foo.Baz"));
+		Assert.assertTrue(scope.containsAllMethodsOf("foo.Baz$Inner"));
+		// a prefix only matches at a '.' or '$'.
+		Assert.assertFalse(scope.containsAllMethodsOf("foo.barbaz.A"));
+		Assert.assertFalse(scope.containsAllMethodsOf("foo.Bazaar"));
+		Assert.assertFalse(scope.containsAllMethodsOf("foo.A"));
+		Assert.assertFalse(scope.containsClass("foo.A"));
+	}
+
+	@Test
+	public void testGlob() {
+		ScopeFilter scope = new ScopeFilter(Arrays.asList("foo.*.Bar", "baz.**Test", "qux.A?"));
+		// '*' does not match a '.'.
+		Assert.assertTrue(scope.containsAllMethodsOf("foo.x.Bar"));
+		Assert.assertFalse(scope.containsAllMethodsOf("foo.x.y.Bar"));
+		Assert.assertFalse(scope.containsAllMethodsOf("foo.Bar"));
+		// '**' matches anything.
+		Assert.assertTrue(scope.containsAllMethodsOf("baz.Test"));
+		Assert.assertTrue(scope.containsAllMethodsOf("baz.x.y.MyTest"));
+		Assert.assertFalse(scope.containsAllMethodsOf("baz.x.TestCase"));
+		// '?' matches a single character.
+		Assert.assertTrue(scope.containsAllMethodsOf("qux.AB"));
+		Assert.assertFalse(scope.containsAllMethodsOf("qux.A"));
+		Assert.assertFalse(scope.containsAllMethodsOf("qux.ABC"));
+		// other characters are matched literally.
+		Assert.assertFalse(scope.containsAllMethodsOf("fooxx.Bar"));
+	}
+
+	@Test
+	public void testMethodSignature() {
+		ScopeFilter scope = new ScopeFilter(Arrays.asList("<foo.Bar: void baz(int)>"));
+		Assert.assertFalse(scope.isEmpty());
+		Assert.assertTrue(scope.containsClass("foo.Bar"));
+		Assert.assertFalse(scope.containsAllMethodsOf("foo.Bar"));
+		Assert.assertTrue(scope.containsMethod("foo.Bar", "<foo.Bar: void baz(int)>"));
+		Assert.assertFalse(scope.containsMethod("foo.Bar", "<foo.Bar: void baz()>"));
+		Assert.assertFalse(scope.containsClass("foo.Bar$Inner"));
+		Assert.assertFalse(scope.containsMethod("foo.Other", "<foo.Bar: void baz(int)>"));
+
+		// a prefix puts all methods in scope, in addition to the signature.
+		scope.add("foo.Bar");
+		Assert.assertTrue(scope.containsAllMethodsOf("foo.Bar"));
+		Assert.assertTrue(scope.containsMethod("foo.Bar", "<foo.Bar: void baz()>"));
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.Body;
+import soot.SootClass;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.ConditionExpr;
+import soot.jimple.EqExpr;
+import soot.jimple.GeExpr;
+import soot.jimple.GotoStmt;
+import soot.jimple.GtExpr;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.LookupSwitchStmt;
+import soot.jimple.LtExpr;
+import soot.jimple.SwitchStmt;
+import soot.jimple.TableSwitchStmt;
+import soottocfg.soot.transformers.SwitchStatementRemover;
+import soottocfg.test.Util;
+
+/**
+ * Checks that the IfStmts created by the SwitchStatementRemover jump to the
+ * same target as the switch for all case values and their neighbors, and
+ * that the number of IfStmts on each path is logarithmic in the number of
+ * cases.
+ *
+ * @author schaef
+ *
+ */
+public class SwitchStatementRemoverTest {
+
+	private static final int denseCases = 200;
+	private static final int[] sparseCases = { Integer.MIN_VALUE, -1000, -3, 7, 8, 9, 100, 1 << 20,
+			Integer.MAX_VALUE };
+
+	@Test
+	public void testSwitches() throws IOException {
+		List<String> source = new LinkedList<String>();
+		source.add("public class Switches {");
+		source.add("  static int dense(int x) {");
+		source.add("    switch (x) {");
+		for (int i = 0; i < denseCases; i++) {
+			source.add("    case " + i + ":");
+			// groups of three cases share a target.
+			if (i % 3 == 2) {
+				source.add("      return " + i + ";");
+			}
+		}
+		source.add("    default: return -1;");
+		source.add("    }");
+		source.add("  }");
+		source.add("  static int sparse(int x) {");
+		source.add("    switch (x) {");
+		for (int i = 0; i < sparseCases.length; i++) {
+			source.add("    case " + sparseCases[i] + ":");
+			if (i % 2 == 0) {
+				source.add("      return " + i + ";");
+			}
+		}
+		source.add("    default: return -1;");
+		source.add("    }");
+		source.add("  }");
+		source.add("}");
+		File classFileDir = Util.compileJavaSource("Switches.java", source);
+		Assert.assertNotNull(classFileDir);
+		try {
+			SootClass sc = Util.loadSootClass(classFileDir, "Switches");
+			checkMethod(sc.getMethodByName("dense").retrieveActiveBody());
+			checkMethod(sc.getMethodByName("sparse").retrieveActiveBody());
+		} finally {
+			soot.G.reset();
+			Util.delete(classFileDir);
+		}
+	}
+
+	private void checkMethod(Body body) {
+		// the unit before each switch, and the target of each tested key.
+		Map<Unit, Map<Integer, Unit>> expected = new HashMap<Unit, Map<Integer, Unit>>();
+		Map<Unit, Value> keys = new HashMap<Unit, Value>();
+		Set<Unit> targets = new HashSet<Unit>();
+		int maxCases = 0;
+		for (Unit u : body.getUnits()) {
+			if (u instanceof SwitchStmt) {
+				SwitchStmt s = (SwitchStmt) u;
+				Map<Integer, Unit> keyTargets = new HashMap<Integer, Unit>();
+				for (int key : getTestKeys(s)) {
+					keyTargets.put(key, getTarget(s, key));
+				}
+				Unit pred = body.getUnits().getPredOf(u);
+				Assert.assertNotNull(pred);
+				expected.put(pred, keyTargets);
+				keys.put(pred, s.getKey());
+				targets.addAll(s.getTargets());
+				targets.add(s.getDefaultTarget());
+				maxCases = Math.max(maxCases, s.getTargets().size());
+			}
+		}
+		Assert.assertFalse("No switch in " + body.getMethod(), expected.isEmpty());
+
+		new SwitchStatementRemover().transform(body);
+
+		for (Unit u : body.getUnits()) {
+			Assert.assertFalse(u instanceof SwitchStmt);
+		}
+		// ceil(log2(number of ranges)) plus the checks of one range.
+		int maxDepth = 34 - Integer.numberOfLeadingZeros(2 * maxCases + 1);
+		for (Map.Entry<Unit, Map<Integer, Unit>> entry : expected.entrySet()) {
+			Unit entryUnit = body.getUnits().getSuccOf(entry.getKey());
+			for (Map.Entry<Integer, Unit> keyTarget : entry.getValue().entrySet()) {
+				int depth = 0;
+				Unit current = entryUnit;
+				while (!targets.contains(current)) {
+					if (current instanceof GotoStmt) {
+						current = ((GotoStmt) current).getTarget();
+					} else {
+						Assert.assertTrue(current.toString(), current instanceof IfStmt);
+						IfStmt ifStmt = (IfStmt) current;
+						depth++;
+						Value key = keys.get(entry.getKey());
+						if (holds((ConditionExpr) ifStmt.getCondition(), key, keyTarget.getKey())) {
+							current = ifStmt.getTarget();
+						} else {
+							current = body.getUnits().getSuccOf(current);
+						}
+					}
+				}
+				Assert.assertEquals("Key " + keyTarget.getKey() + " in " + body.getMethod(), keyTarget.getValue(),
+						current);
+				Assert.assertTrue(depth + " comparisons for " + maxCases + " cases", depth <= maxDepth);
+			}
+		}
+	}
+
+	private boolean holds(ConditionExpr cond, Value key, int value) {
+		Assert.assertSame(key, cond.getOp1());
+		Assert.assertTrue(cond.getOp2() instanceof IntConstant);
+		int constant = ((IntConstant) cond.getOp2()).value;
+		if (cond instanceof EqExpr) {
+			return value == constant;
+		} else if (cond instanceof GeExpr) {
+			return value >= constant;
+		} else if (cond instanceof LtExpr) {
+			return value < constant;
+		} else if (cond instanceof GtExpr) {
+			return value > constant;
+		}
+		Assert.fail("Unexpected condition " + cond);
+		return false;
+	}
+
+	private List<Integer> getTestKeys(SwitchStmt s) {
+		List<Integer> caseValues = new LinkedList<Integer>();
+		if (s instanceof TableSwitchStmt) {
+			for (int i = ((TableSwitchStmt) s).getLowIndex(); i <= ((TableSwitchStmt) s).getHighIndex(); i++) {
+				caseValues.add(i);
+			}
+		} else {
+			for (int i = 0; i < ((LookupSwitchStmt) s).getTargetCount(); i++) {
+				caseValues.add(((LookupSwitchStmt) s).getLookupValue(i));
+			}
+		}
+		List<Integer> keys = new LinkedList<Integer>();
+		keys.add(Integer.MIN_VALUE);
+		keys.add(0);
+		keys.add(Integer.MAX_VALUE);
+		for (int value : caseValues) {
+			// may overflow, which is fine.
+			keys.add(value - 1);
+			keys.add(value);
+			keys.add(value + 1);
+		}
+		return keys;
+	}
+
+	private Unit getTarget(SwitchStmt s, int key) {
+		if (s instanceof TableSwitchStmt) {
+			TableSwitchStmt ts = (TableSwitchStmt) s;
+			if (key >= ts.getLowIndex() && key <= ts.getHighIndex()) {
+				return ts.getTarget(key - ts.getLowIndex());
+			}
+		} else {
+			LookupSwitchStmt ls = (LookupSwitchStmt) s;
+			for (int i = 0; i < ls.getTargetCount(); i++) {
+				if (ls.getLookupValue(i) == key) {
+					return ls.getTarget(i);
+				}
+			}
+		}
+		return s.getDefaultTarget();
+	}
+}
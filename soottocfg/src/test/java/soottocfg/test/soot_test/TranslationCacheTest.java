@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import soottocfg.cfg.Variable;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.Method;
+import soottocfg.soot.SootToCfg;
+import soottocfg.soot.util.TranslationCache;
+import soottocfg.test.Util;
+
+/**
+ * Checks that the key of a cache entry changes if a class that the class
+ * depends on changes, and that it does not change otherwise. Also checks
+ * that a restored method is the same as a fresh translation.
+ *
+ * @author schaef
+ *
+ */
+public class TranslationCacheTest {
+
+	private static final String base = "class Base { int m() { return 1; } }";
+	private static final String caller = "class Caller { int call(Base b) { return b.m() + new Callee().h(); } }";
+	private static final String callee = "class Callee { int h() { return 2; } }";
+	private static final String unrelated = "class Unrelated { int u() { return 3; } }";
+
+	@Test
+	public void testDependencies() throws IOException {
+		File cacheDir = Files.createTempDir();
+		try {
+			TranslationCache cache = new TranslationCache(cacheDir, "options");
+			Map<String, String> original = fingerprint(cache, base, caller, callee, unrelated);
+			Assert.assertEquals(4, original.size());
+			Assert.assertEquals(original, fingerprint(cache, base, caller, callee, unrelated));
+
+			// a changed callee.
+			Map<String, String> changed = fingerprint(cache, base, caller,
+					"class Callee { int h() { throw new RuntimeException(); } }", unrelated);
+			Assert.assertNotEquals(original.get("Callee"), changed.get("Callee"));
+			Assert.assertNotEquals(original.get("Caller"), changed.get("Caller"));
+			Assert.assertEquals(original.get("Base"), changed.get("Base"));
+			Assert.assertEquals(original.get("Unrelated"), changed.get("Unrelated"));
+
+			// a new override of a called method.
+			changed = fingerprint(cache, base, caller, callee, unrelated,
+					"class Sub extends Base { int m() { return 4; } }");
+			Assert.assertNotEquals(original.get("Caller"), changed.get("Caller"));
+			Assert.assertNotEquals(original.get("Base"), changed.get("Base"));
+			Assert.assertEquals(original.get("Callee"), changed.get("Callee"));
+			Assert.assertEquals(original.get("Unrelated"), changed.get("Unrelated"));
+
+			// other options.
+			changed = fingerprint(new TranslationCache(cacheDir, "other options"), base, caller, callee, unrelated);
+			Assert.assertNotEquals(original.get("Unrelated"), changed.get("Unrelated"));
+		} finally {
+			Util.delete(cacheDir);
+		}
+	}
+
+	@Test
+	public void testRestoreWithOtherConstants() throws IOException {
+		final String a = "class A { String a(int[][] x) { if (x.length > 1) { return \"first\"; } return \"second\" + 1.5; } }";
+		final String signature = "<A: java.lang.String a(int[][])>";
+		File cacheDir = Files.createTempDir();
+		File before = Util.compileJavaSource("Classes.java",
+				Arrays.asList(a, "class B { String b() { return \"second\"; } }"));
+		// B now creates other constants and array types, so the globals of
+		// the program are created in a different order when A is restored.
+		File after = Util.compileJavaSource("Classes.java", Arrays.asList(a,
+				"class B { String b(int[] y, float f) { return \"third\" + y.length + 2.5 + f + 0.5f + \"first\"; } }"));
+		Assert.assertNotNull(before);
+		Assert.assertNotNull(after);
+		try {
+			SootToCfg store = new SootToCfg();
+			store.setCacheDirectory(cacheDir);
+			store.run(before.getAbsolutePath(), null);
+			Assert.assertTrue(store.getRestoredMethods().isEmpty());
+
+			SootToCfg restore = new SootToCfg();
+			restore.setCacheDirectory(cacheDir);
+			restore.run(after.getAbsolutePath(), null);
+			Assert.assertTrue(restore.getRestoredMethods().contains(signature));
+			String restored = printMethod(restore.getProgram().loopupMethod(signature));
+
+			SootToCfg fresh = new SootToCfg();
+			fresh.run(after.getAbsolutePath(), null);
+			Assert.assertEquals(printMethod(fresh.getProgram().loopupMethod(signature)), restored);
+		} finally {
+			soot.G.reset();
+			Util.delete(before);
+			Util.delete(after);
+			Util.delete(cacheDir);
+		}
+	}
+
+	/**
+	 * Prints the sorted locals and the sorted blocks of 'm', because neither
+	 * order is fixed.
+	 */
+	private String printMethod(Method m) {
+		Assert.assertNotNull(m);
+		List<String> locals = new ArrayList<String>();
+		for (Variable v : m.getLocals()) {
+			locals.add(v.getName() + ":" + v.getType());
+		}
+		Collections.sort(locals);
+		List<String> blocks = new ArrayList<String>();
+		for (CfgBlock b : m.vertexSet()) {
+			blocks.add(b.toString());
+		}
+		Collections.sort(blocks);
+		return locals + "\n" + blocks;
+	}
+
+	private Map<String, String> fingerprint(TranslationCache cache, String... classes) throws IOException {
+		File classFileDir = Util.compileJavaSource("Classes.java", Arrays.asList(classes));
+		Assert.assertNotNull(classFileDir);
+		try {
+			return cache.fingerprintClasses(classFileDir.getAbsolutePath());
+		} finally {
+			Util.delete(classFileDir);
+		}
+	}
+}
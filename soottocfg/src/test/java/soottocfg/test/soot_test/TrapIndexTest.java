@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package soottocfg.test.soot_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.Body;
+import soot.SootClass;
+import soot.Trap;
+import soot.Unit;
+import soottocfg.soot.util.TrapIndex;
+import soottocfg.test.Util;
+
+/**
+ * Compares the TrapIndex with scanning all traps for each unit on a method
+ * with deeply nested try/catch blocks.
+ *
+ * @author schaef
+ *
+ */
+public class TrapIndexTest {
+
+	private static final int nesting = 60;
+
+	@Test
+	public void testDeepNesting() throws IOException {
+		List<String> source = new LinkedList<String>();
+		source.add("public class DeepTraps {");
+		source.add("  static int f(int x) {");
+		for (int i = 0; i < nesting; i++) {
+			source.add("    try { x = x / (x - " + i + ");");
+		}
+		for (int i = 0; i < nesting; i++) {
+			source.add("    } catch (ArithmeticException e" + i + ") { x = x + " + i + "; }");
+		}
+		source.add("    return x;");
+		source.add("  }");
+		source.add("}");
+		File classFileDir = Util.compileJavaSource("DeepTraps.java", source);
+		Assert.assertNotNull(classFileDir);
+		try {
+			SootClass sc = Util.loadSootClass(classFileDir, "DeepTraps");
+			Body body = sc.getMethodByName("f").retrieveActiveBody();
+			Assert.assertTrue(body.getTraps().size() >= nesting);
+
+			TrapIndex index = new TrapIndex(body);
+			for (Unit u : body.getUnits()) {
+				Assert.assertEquals(scanTraps(u, body), index.getTrapsGuardingUnit(u));
+			}
+		} finally {
+			soot.G.reset();
+			Util.delete(classFileDir);
+		}
+	}
+
+	private List<Trap> scanTraps(Unit u, Body b) {
+		List<Trap> result = new LinkedList<Trap>();
+		for (Trap t : b.getTraps()) {
+			Iterator<Unit> it = b.getUnits().iterator(t.getBeginUnit(), t.getEndUnit());
+			while (it.hasNext()) {
+				if (u.equals(it.next())) {
+					result.add(t);
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package soottocfg.test.translation_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soottocfg.cfg.Variable;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.Method;
+import soottocfg.soot.SootToCfg;
+import soottocfg.test.Util;
+
+/**
+ * Translates the soot tests with one and with several translation threads,
+ * and with staged pre-processing, and checks that all produce the same CFG
+ * for each method.
+ *
+ * @author schaef
+ *
+ */
+public class ParallelTranslationTest {
+
+	private static final String userDir = System.getProperty("user.dir") + "/";
+	private static final String testRoot = userDir + "src/test/resources/";
+
+	@Test
+	public void testParallelTranslation() throws IOException {
+		SootToCfg parallel = new SootToCfg();
+		parallel.setTranslationThreads(4);
+		compareWithSequential(parallel);
+	}
+
+	@Test
+	public void testStagedPreprocessing() throws IOException {
+		SootToCfg staged = new SootToCfg();
+		staged.setStagedPreprocessing(true, 1);
+		compareWithSequential(staged);
+	}
+
+	/**
+	 * Translates the soot tests with 'soot2cfg' and with the default
+	 * sequential translation, and compares the results.
+	 */
+	private void compareWithSequential(SootToCfg soot2cfg) throws IOException {
+		List<File> sourceFiles = new LinkedList<File>();
+		File[] directoryListing = new File(testRoot + "soot_tests/").listFiles();
+		Assert.assertNotNull(directoryListing);
+		for (File child : directoryListing) {
+			if (child.isFile() && child.getName().endsWith(".java")) {
+				sourceFiles.add(child);
+			}
+		}
+		File classFileDir = Util.compileJavaFiles(sourceFiles.toArray(new File[sourceFiles.size()]));
+		Assert.assertNotNull(classFileDir);
+		try {
+			// translate first, because the constructor of SootToCfg resets
+			// Soot.
+			Map<String, String> other = translate(soot2cfg, classFileDir);
+			Map<String, String> sequential = translate(new SootToCfg(), classFileDir);
+			Assert.assertFalse(sequential.isEmpty());
+			Assert.assertEquals(sequential.keySet(), other.keySet());
+			for (String methodName : sequential.keySet()) {
+				Assert.assertEquals(methodName, sequential.get(methodName), other.get(methodName));
+			}
+		} finally {
+			soot.G.reset();
+			Util.delete(classFileDir);
+		}
+	}
+
+	/**
+	 * Translates the classes in 'classFileDir' with 'soot2cfg' and returns a
+	 * printout of each translated method. The locals are sorted, because
+	 * the order of the locals in Method.toString is not fixed. The sorted
+	 * names of the globals are stored under the key "globals", because
+	 * the names of globals for constants must not depend on the order in
+	 * which the methods are translated.
+	 */
+	private Map<String, String> translate(SootToCfg soot2cfg, File classFileDir) {
+		soot2cfg.run(classFileDir.getAbsolutePath(), null);
+		Map<String, String> result = new HashMap<String, String>();
+		for (Method m : soot2cfg.getProgram().getMethods()) {
+			List<String> locals = new ArrayList<String>();
+			for (Variable v : m.getLocals()) {
+				locals.add(v.getName() + ":" + v.getType());
+			}
+			Collections.sort(locals);
+			StringBuilder sb = new StringBuilder();
+			sb.append(locals);
+			sb.append("\n");
+			for (CfgBlock b : m.vertexSet()) {
+				sb.append(b);
+			}
+			result.put(m.getMethodName(), sb.toString());
+		}
+		List<String> globals = new ArrayList<String>();
+		for (Variable v : soot2cfg.getProgram().getGlobalVariables()) {
+			globals.add(v.getName() + ":" + v.getType());
+		}
+		Collections.sort(globals);
+		result.put("globals", globals.toString());
+		return result;
+	}
+}
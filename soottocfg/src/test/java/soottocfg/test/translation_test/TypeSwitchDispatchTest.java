@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package soottocfg.test.translation_test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.Scene;
+import soot.SootClass;
+import soottocfg.cfg.ClassVariable;
+import soottocfg.cfg.expression.BinaryExpression;
+import soottocfg.cfg.expression.BinaryExpression.BinaryOperator;
+import soottocfg.cfg.expression.Expression;
+import soottocfg.cfg.expression.IdentifierExpression;
+import soottocfg.cfg.expression.UnaryExpression;
+import soottocfg.cfg.expression.UnaryExpression.UnaryOperator;
+import soottocfg.cfg.method.CfgBlock;
+import soottocfg.cfg.method.CfgEdge;
+import soottocfg.cfg.method.Method;
+import soottocfg.cfg.statement.CallStatement;
+import soottocfg.cfg.statement.Statement;
+import soottocfg.soot.SootToCfg;
+import soottocfg.test.Util;
+
+/**
+ * Checks that a virtual call with three possible callees is translated as a
+ * single branch with one labeled edge per callee if type switch dispatch is
+ * enabled, and that for each dynamic type of the base exactly one guard
+ * holds, whose edge leads to the method that Java dispatches to. This
+ * includes a type that does not declare the method.
+ *
+ * @author schaef
+ *
+ */
+public class TypeSwitchDispatchTest {
+
+	@Test
+	public void testDispatch() throws IOException {
+		File classFileDir = Util.compileJavaSource("Dispatch.java",
+				Arrays.asList("public class Dispatch {", "  static int call(A a) { return a.m(); }", "}",
+						"class A { int m() { return 1; } }", "class B extends A { int m() { return 2; } }",
+						"class C extends B { int m() { return 3; } }", "class D extends A { }"));
+		Assert.assertNotNull(classFileDir);
+		try {
+			soot.G.reset();
+			SootToCfg soot2cfg = new SootToCfg();
+			soot2cfg.setTypeSwitchDispatch(true);
+			soot2cfg.run(classFileDir.getAbsolutePath(), null);
+			Method m = soot2cfg.getProgram().loopupMethod("<Dispatch: int call(A)>");
+			Assert.assertNotNull(m);
+
+			CfgBlock dispatch = null;
+			for (CfgBlock b : m.vertexSet()) {
+				if (m.outDegreeOf(b) == 3) {
+					Assert.assertNull("More than one dispatch", dispatch);
+					dispatch = b;
+				}
+			}
+			Assert.assertNotNull("No dispatch in " + m, dispatch);
+			for (CfgEdge e : m.outgoingEdgesOf(dispatch)) {
+				Assert.assertTrue(e.getLabel().isPresent());
+			}
+
+			// the dynamic type and the method that Java calls for it.
+			String[][] expected = { { "A", "<A: int m()>" }, { "B", "<B: int m()>" }, { "C", "<C: int m()>" },
+					{ "D", "<A: int m()>" } };
+			for (String[] typeAndCallee : expected) {
+				SootClass dynamicType = Scene.v().getSootClass(typeAndCallee[0]);
+				List<CfgEdge> taken = new LinkedList<CfgEdge>();
+				for (CfgEdge e : m.outgoingEdgesOf(dispatch)) {
+					if (holds(e.getLabel().get(), dynamicType)) {
+						taken.add(e);
+					}
+				}
+				Assert.assertEquals("Guards that hold for " + dynamicType, 1, taken.size());
+				Assert.assertEquals(typeAndCallee[1], getCallee(m.getEdgeTarget(taken.get(0))));
+			}
+		} finally {
+			soot.G.reset();
+			Util.delete(classFileDir);
+		}
+	}
+
+	private String getCallee(CfgBlock b) {
+		String callee = null;
+		for (Statement s : b.getStatements()) {
+			if (s instanceof CallStatement) {
+				Assert.assertNull("More than one call in " + b, callee);
+				callee = ((CallStatement) s).getCallTarget().getMethodName();
+			}
+		}
+		Assert.assertNotNull("No call in " + b, callee);
+		return callee;
+	}
+
+	/**
+	 * Evaluates a dispatch guard, which consists of subtype tests of the
+	 * dynamic type, negations, conjunctions, and disjunctions.
+	 */
+	private boolean holds(Expression guard, SootClass dynamicType) {
+		if (guard instanceof UnaryExpression) {
+			UnaryExpression ue = (UnaryExpression) guard;
+			Assert.assertEquals(UnaryOperator.LNot, ue.getOp());
+			return !holds(ue.getExpression(), dynamicType);
+		}
+		Assert.assertTrue(guard.toString(), guard instanceof BinaryExpression);
+		BinaryExpression be = (BinaryExpression) guard;
+		if (be.getOp() == BinaryOperator.And) {
+			return holds(be.getLeft(), dynamicType) && holds(be.getRight(), dynamicType);
+		} else if (be.getOp() == BinaryOperator.Or) {
+			return holds(be.getLeft(), dynamicType) || holds(be.getRight(), dynamicType);
+		}
+		Assert.assertEquals(BinaryOperator.PoLeq, be.getOp());
+		Assert.assertTrue(be.getRight().toString(), be.getRight() instanceof IdentifierExpression);
+		ClassVariable cv = (ClassVariable) ((IdentifierExpression) be.getRight()).getVariable();
+		for (SootClass sc = dynamicType; sc != null; sc = sc.hasSuperclass() ? sc.getSuperclass() : null) {
+			if (sc.getName().equals(cv.getName().replace('/', '.'))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,62 @@
+public class ArrayBounds01 {
+
+	static int countUp(int[] a) {
+		int s = 0;
+		for (int i = 0; i < a.length; i++) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	static int countDown(int[] a) {
+		int s = 0;
+		for (int i = a.length - 1; i >= 0; i--) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	static int lessOrEqual(int[] a) {
+		int s = 0;
+		for (int i = 0; i <= a.length - 1; i++) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	static int pastTheEnd(int[] a) {
+		int s = 0;
+		for (int i = 0; i <= a.length; i++) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	static int countDownFromLength(int[] a) {
+		int s = 0;
+		for (int i = a.length; i >= 0; i--) {
+			s += a[i];
+		}
+		return s;
+	}
+
+	static int otherArray(int[] a, int[] b) {
+		int s = 0;
+		for (int i = 0; i < a.length; i++) {
+			s += b[i];
+		}
+		return s;
+	}
+
+	static int unknownIndex(int[] a, int i) {
+		return a[i];
+	}
+
+	static int negativeStart(int[] a) {
+		int s = 0;
+		for (int i = -1; i < a.length; i++) {
+			s += a[i];
+		}
+		return s;
+	}
+}
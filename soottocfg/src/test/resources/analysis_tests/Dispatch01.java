@@ -0,0 +1,49 @@
+interface DispatchShape {
+	int area();
+}
+
+interface DispatchNamed extends DispatchShape {
+	String name();
+}
+
+abstract class DispatchAbstractShape implements DispatchShape {
+	public String toString() {
+		return "shape " + area();
+	}
+}
+
+class DispatchCircle extends DispatchAbstractShape {
+	public int area() {
+		return 3;
+	}
+}
+
+class DispatchSquare extends DispatchAbstractShape implements DispatchNamed {
+	public int area() {
+		return 4;
+	}
+
+	public String name() {
+		return "square";
+	}
+}
+
+// inherits area and name from DispatchSquare.
+class DispatchUnitSquare extends DispatchSquare {
+}
+
+class DispatchBase {
+	public int area() {
+		return 0;
+	}
+}
+
+// implements DispatchShape with the method inherited from DispatchBase.
+class DispatchDerived extends DispatchBase implements DispatchShape {
+}
+
+public class Dispatch01 extends DispatchCircle implements DispatchNamed {
+	public String name() {
+		return "dispatch";
+	}
+}
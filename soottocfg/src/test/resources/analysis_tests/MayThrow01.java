@@ -0,0 +1,64 @@
+import java.io.IOException;
+
+class MayThrowBase {
+	int m(int x) throws IOException {
+		return x;
+	}
+}
+
+class MayThrowSub extends MayThrowBase {
+	int m(int x) throws IOException {
+		if (x > 0) {
+			throw new IOException();
+		}
+		return x;
+	}
+}
+
+public class MayThrow01 {
+
+	static int thrower(int x) throws IOException {
+		if (x > 0) {
+			throw new IOException();
+		}
+		return x;
+	}
+
+	static int callsThrower(int x) throws IOException {
+		return thrower(x);
+	}
+
+	static int catchesThrower(int x) {
+		try {
+			return thrower(x);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	static int noThrow(int x) {
+		return x + 1;
+	}
+
+	static int callsNoThrow(int x) {
+		return noThrow(x);
+	}
+
+	static int callsVirtual(MayThrowBase b, int x) throws IOException {
+		return b.m(x);
+	}
+
+	static int even(int x) throws IOException {
+		if (x == 0) {
+			return 0;
+		}
+		return odd(x - 1);
+	}
+
+	static int odd(int x) throws IOException {
+		if (x < 0) {
+			throw new IOException();
+		}
+		return even(x - 1);
+	}
+}
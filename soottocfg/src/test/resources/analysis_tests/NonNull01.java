@@ -0,0 +1,51 @@
+class NonNullBase {
+	NonNullBase() {
+		init();
+	}
+
+	void init() {
+	}
+}
+
+class NonNullSub extends NonNullBase {
+	private final Object f = new Object();
+
+	// called by the constructor of NonNullBase before f is assigned.
+	void init() {
+		f.hashCode();
+	}
+}
+
+public class NonNull01 {
+
+	static Object create() {
+		return new Object();
+	}
+
+	static Object maybeNull(int x) {
+		if (x > 0) {
+			return null;
+		}
+		return new Object();
+	}
+
+	private static int allNonNull(Object o) {
+		return o.hashCode();
+	}
+
+	private static int someNull(Object o) {
+		return o == null ? 0 : 1;
+	}
+
+	private static int neverCalled(Object o) {
+		return o.hashCode();
+	}
+
+	static int callsAllNonNull() {
+		return allNonNull(new Object()) + allNonNull(create());
+	}
+
+	static int callsSomeNull(int x) {
+		return someNull(new Object()) + someNull(maybeNull(x));
+	}
+}
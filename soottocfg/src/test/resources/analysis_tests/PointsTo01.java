@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.List;
+
+interface PointsToShape {
+	int area();
+}
+
+class PointsToCircle implements PointsToShape {
+	public int area() {
+		return 1;
+	}
+}
+
+class PointsToSquare implements PointsToShape {
+	public int area() {
+		return 2;
+	}
+}
+
+class PointsToTriangle implements PointsToShape {
+	public int area() {
+		return 3;
+	}
+}
+
+public class PointsTo01 {
+
+	private PointsToShape field;
+
+	public static void main(String[] args) {
+		PointsTo01 p = new PointsTo01();
+		p.field = new PointsToCircle();
+		p.allocated(new PointsToSquare());
+		p.fromField();
+		p.fromLibrary(new ArrayList<PointsToShape>());
+		p.entryPoint(null);
+	}
+
+	int allocated(PointsToShape s) {
+		return s.area();
+	}
+
+	int fromField() {
+		return field.area();
+	}
+
+	// the list may contain any shape.
+	int fromLibrary(List<PointsToShape> list) {
+		PointsToShape s = new PointsToTriangle();
+		if (list.size() > 0) {
+			s = list.get(0);
+		}
+		return s.area();
+	}
+
+	// also called from outside with any shape.
+	int entryPoint(PointsToShape s) {
+		if (s == null) {
+			s = new PointsToTriangle();
+		}
+		return s.area();
+	}
+}